@@ -6,6 +6,7 @@ import java.util.List;
 import lejos.nxt.LightSensor;
 import lejos.nxt.SensorPort;
 import lejos.nxt.SensorPortListener;
+import mazestormer.barcode.StrokeRecorder;
 import mazestormer.command.Command;
 import mazestormer.command.CommandReplier;
 import mazestormer.command.CommandType;
@@ -15,25 +16,34 @@ import mazestormer.command.LightReadCommand;
 import mazestormer.condition.Condition;
 import mazestormer.condition.ConditionFuture;
 import mazestormer.condition.LightCompareCondition;
+import mazestormer.condition.StrokeEdgesCondition;
+import mazestormer.condition.ThresholdIndex;
 import mazestormer.report.ReportType;
+import mazestormer.report.RequestReport;
+import mazestormer.report.StrokeEdgesReport;
 import mazestormer.robot.CalibratedLightSensor;
 import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.Pilot;
 
 public class PhysicalLightSensor extends LightSensor implements CalibratedLightSensor, SensorPortListener,
 		MessageListener<Command> {
 
 	private final SensorPort port;
-	private List<LightConditionFuture> lightListeners = new ArrayList<LightConditionFuture>();
+	private List<LightListener> lightListeners = new ArrayList<LightListener>();
+	private final ThresholdIndex<LightConditionFuture> lightConditions = new ThresholdIndex<LightConditionFuture>();
+	private final List<LightConditionFuture> matchedConditions = new ArrayList<LightConditionFuture>();
 
 	private final NXTCommunicator communicator;
+	private final Pilot pilot;
 
 	// private List<MessageListener<Command>> messageListeners = new
 	// ArrayList<MessageListener<Command>>();
 
-	public PhysicalLightSensor(NXTCommunicator communicator, SensorPort port) {
+	public PhysicalLightSensor(NXTCommunicator communicator, SensorPort port, Pilot pilot) {
 		super(port);
 		this.port = port;
 		this.communicator = communicator;
+		this.pilot = pilot;
 		setup();
 	}
 
@@ -72,28 +82,58 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 		communicator.addListener(listener);
 	}
 
-	public void addLightListener(LightConditionFuture listener) {
+	public void addLightListener(LightListener listener) {
 		lightListeners.add(listener);
 	}
 
-	public void removeLightListener(LightConditionFuture listener) {
+	public void removeLightListener(LightListener listener) {
 		lightListeners.remove(listener);
 	}
 
 	protected void callLightListeners(final int normalizedLightValue) {
+		if (lightListeners.isEmpty())
+			return;
 		// Clone listeners array for safe iteration
-		final LightConditionFuture[] listeners = lightListeners
-				.toArray(new LightConditionFuture[lightListeners.size()]);
+		final LightListener[] listeners = lightListeners.toArray(new LightListener[lightListeners.size()]);
 		// Call listeners
-		for (LightConditionFuture listener : listeners) {
+		for (LightListener listener : listeners) {
 			listener.lightValueChanged(normalizedLightValue);
 		}
 	}
 
+	/**
+	 * Resolves the light conditions matching the given value.
+	 * 
+	 * <p>
+	 * Only called from the sensor port listener thread.
+	 * </p>
+	 */
+	protected void resolveLightConditions(int normalizedLightValue) {
+		if (lightConditions.removeMatches(normalizedLightValue, matchedConditions) == 0)
+			return;
+
+		final LightConditionFuture[] matches = matchedConditions
+				.toArray(new LightConditionFuture[matchedConditions.size()]);
+		matchedConditions.clear();
+		/*
+		 * Resolve in separate thread to ensure no deadlocks can occur on the
+		 * light sensor port listener.
+		 */
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (LightConditionFuture future : matches) {
+					future.resolve();
+				}
+			}
+		}).start();
+	}
+
 	@Override
 	public void stateChanged(SensorPort source, int oldValue, int newValue) {
 		if (source == port) {
 			int normalizedLightValue = 1023 - newValue;
+			resolveLightConditions(normalizedLightValue);
 			callLightListeners(normalizedLightValue);
 		}
 	}
@@ -106,9 +146,8 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 		SensorPortListeners.get(port).removeSensorPortListener(this);
 
 		// Remove registered light listeners
-		for (LightConditionFuture listener : lightListeners) {
-			removeLightListener(listener);
-		}
+		lightListeners.clear();
+		lightConditions.clear();
 
 		// Remove registered message listeners
 		// for (MessageListener<Command> listener : messageListeners) {
@@ -193,6 +232,8 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 			case LIGHT_GREATER_THAN:
 			case LIGHT_SMALLER_THAN:
 				return new LightConditionFuture((LightCompareCondition) condition);
+			case RECORD_STROKE_EDGES:
+				return new StrokeEdgesFuture((StrokeEdgesCondition) condition);
 			default:
 				return null;
 			}
@@ -200,6 +241,15 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 
 	}
 
+	/**
+	 * Listens for light value changes on the sensor port.
+	 */
+	private interface LightListener {
+
+		public void lightValueChanged(int normalizedLightValue);
+
+	}
+
 	/**
 	 * Resolves a light value condition.
 	 */
@@ -207,7 +257,7 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 
 		public LightConditionFuture(LightCompareCondition condition) {
 			super(condition);
-			addLightListener(this);
+			lightConditions.add(condition, this);
 		}
 
 		@Override
@@ -215,14 +265,45 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 			return (LightCompareCondition) super.getCondition();
 		}
 
+		@Override
+		protected void resolve() {
+			// Resolved by the sensor
+			super.resolve();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			lightConditions.remove(getCondition(), this);
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+	}
+
+	/**
+	 * Records the stroke edges of a barcode while travelling over it.
+	 */
+	private class StrokeEdgesFuture extends ConditionFuture implements LightListener {
+
+		private final StrokeRecorder recorder;
+
+		public StrokeEdgesFuture(StrokeEdgesCondition condition) {
+			super(condition);
+			this.recorder = new StrokeRecorder(condition);
+			addLightListener(this);
+		}
+
+		@Override
+		public StrokeEdgesCondition getCondition() {
+			return (StrokeEdgesCondition) super.getCondition();
+		}
+
+		@Override
 		public void lightValueChanged(int normalizedLightValue) {
-			if (matches(normalizedLightValue)) {
+			float position = pilot.getMovement().getDistanceTraveled();
+			if (recorder.addSample(normalizedLightValue, position)) {
 				// Remove as light listener
 				removeLightListener(this);
-				/*
-				 * Resolve in separate thread to ensure no deadlocks can occur
-				 * on the light sensor port listener.
-				 */
+				// Resolve in separate thread, see resolveLightConditions
 				new Thread(new Runnable() {
 					@Override
 					public void run() {
@@ -232,9 +313,9 @@ public class PhysicalLightSensor extends LightSensor implements CalibratedLightS
 			}
 		}
 
-		public boolean matches(int normalizedLightValue) {
-			return normalizedLightValue >= getCondition().getMinThreshold()
-					&& normalizedLightValue <= getCondition().getMaxThreshold();
+		@Override
+		public RequestReport<?> createReport() {
+			return new StrokeEdgesReport(ReportType.STROKE_EDGES, recorder.getEdges());
 		}
 
 		@Override
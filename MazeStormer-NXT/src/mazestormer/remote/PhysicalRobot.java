@@ -10,10 +10,14 @@ import lejos.robotics.localization.OdometryPoseProvider;
 import lejos.robotics.localization.PoseProvider;
 import lejos.util.Delay;
 import mazestormer.command.Command;
+import mazestormer.command.CommandReplier;
+import mazestormer.command.CommandType;
 import mazestormer.command.ShutdownCommand;
+import mazestormer.command.TrajectoryReadCommand;
 import mazestormer.condition.Condition;
 import mazestormer.detect.RangeFeatureDetector;
 import mazestormer.report.ReportType;
+import mazestormer.report.Trajectory;
 import mazestormer.report.UpdateReport;
 import mazestormer.robot.CalibratedLightSensor;
 import mazestormer.robot.ControllableRobot;
@@ -21,6 +25,7 @@ import mazestormer.robot.IRSensor;
 import mazestormer.robot.Pilot;
 import mazestormer.robot.RobotUpdate;
 import mazestormer.robot.RobotUpdateListener;
+import mazestormer.robot.TrajectoryRecorder;
 
 public class PhysicalRobot extends NXTComponent implements ControllableRobot, MessageListener<Command>, Runnable {
 
@@ -33,6 +38,8 @@ public class PhysicalRobot extends NXTComponent implements ControllableRobot, Me
 	private final PhysicalRangeScanner scanner;
 	private final PhysicalIRSensor infrared;
 
+	private final TrajectoryRecorder trajectory;
+
 	private Thread thread;
 	private boolean isRunning = false;
 
@@ -44,7 +51,7 @@ public class PhysicalRobot extends NXTComponent implements ControllableRobot, Me
 		poseProvider = new OdometryPoseProvider(getPilot());
 
 		// Light sensor
-		light = new PhysicalLightSensor(communicator, SensorPort.S1);
+		light = new PhysicalLightSensor(communicator, SensorPort.S1, pilot);
 		light.setFloodlight(true);
 
 		// Scanner
@@ -56,11 +63,17 @@ public class PhysicalRobot extends NXTComponent implements ControllableRobot, Me
 		// Infrared
 		infrared = new PhysicalIRSensor(communicator, SensorPort.S3);
 
+		// Trajectory log
+		trajectory = new TrajectoryRecorder(this);
+		addMessageListener(new TrajectoryReplier());
+
 		// Command listener
 		addMessageListener(this);
 
 		// Start reporting updates
 		startReporting();
+		// Start recording trajectory
+		trajectory.start();
 	}
 
 	@Override
@@ -132,6 +145,8 @@ public class PhysicalRobot extends NXTComponent implements ControllableRobot, Me
 	public void terminate() {
 		// Stop reporting updates
 		stopReporting();
+		// Stop recording trajectory
+		trajectory.stop();
 		// Stop all communications
 		getCommunicator().stop();
 		// Release resources
@@ -179,4 +194,31 @@ public class PhysicalRobot extends NXTComponent implements ControllableRobot, Me
 		send(new UpdateReport(ReportType.UPDATE, RobotUpdate.create(this, true, true)));
 	}
 
+	/**
+	 * Handles trajectory log requests.
+	 */
+	private class TrajectoryReplier extends CommandReplier<Trajectory> {
+
+		public TrajectoryReplier() {
+			super(getCommunicator());
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (!(command instanceof TrajectoryReadCommand))
+				return;
+
+			reply((TrajectoryReadCommand) command, trajectory.getLog().drain());
+		}
+
+		@Override
+		protected ReportType getResponseType(MessageType<Command> requestType) {
+			if (requestType == CommandType.TRAJECTORY_READ) {
+				return ReportType.TRAJECTORY;
+			}
+			return null;
+		}
+
+	}
+
 }
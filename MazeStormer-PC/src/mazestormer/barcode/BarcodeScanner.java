@@ -2,26 +2,24 @@ package mazestormer.barcode;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.logging.Level;
 
-import lejos.robotics.navigation.Move;
 import mazestormer.condition.Condition;
 import mazestormer.condition.ConditionType;
 import mazestormer.condition.LightCompareCondition;
+import mazestormer.condition.StrokeEdgesCondition;
 import mazestormer.maze.IMaze;
 import mazestormer.player.Player;
-import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.ControllablePCRobot;
 import mazestormer.state.State;
 import mazestormer.state.StateListener;
 import mazestormer.state.StateMachine;
 import mazestormer.util.Future;
 
 import com.google.common.base.Strings;
-import com.google.common.math.DoubleMath;
 
 public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.BarcodeState> implements
 		StateListener<BarcodeScanner.BarcodeState>, BarcodeScannerListener {
@@ -47,9 +45,8 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 	 * State
 	 */
 
-	private volatile float strokeStart;
-	private volatile float strokeEnd;
-	private final List<Float> distances = new ArrayList<Float>();
+	private volatile Future<float[]> strokeEdges;
+	private volatile float[] edges;
 
 	private final List<BarcodeScannerListener> listeners = new ArrayList<BarcodeScannerListener>();
 
@@ -60,8 +57,8 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		addStateListener(this);
 	}
 
-	public ControllableRobot getRobot() {
-		return (ControllableRobot) player.getRobot();
+	public ControllablePCRobot getRobot() {
+		return (ControllablePCRobot) player.getRobot();
 	}
 
 	public IMaze getMaze() {
@@ -76,10 +73,6 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		this.scanSpeed = scanSpeed;
 	}
 
-	protected Move getMovement() {
-		return getRobot().getPilot().getMovement();
-	}
-
 	protected double getBarLength() {
 		return getMaze().getBarLength();
 	}
@@ -118,31 +111,21 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		return getRobot().when(condition).stop().build();
 	}
 
-	private Future<Void> onSecondBlack() {
-		Condition condition = new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN,
-				Threshold.BLACK_WHITE.getThresholdValue());
-		return getRobot().when(condition).build();
-	}
-
-	private Future<Void> onWhiteToBlack() {
-		Condition condition = new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN,
-				Threshold.WHITE_BLACK.getThresholdValue());
-		return getRobot().when(condition).build();
-	}
-
-	private Future<Void> onBlackToWhite() {
-		Condition condition = new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN,
-				Threshold.BLACK_WHITE.getThresholdValue());
-		return getRobot().when(condition).build();
+	private Future<float[]> recordStrokes() {
+		// Record all strokes until the end of the barcode
+		float minLength = (float) ((Barcode.getNbBars() - 1) * getBarLength());
+		int maxStrokes = Barcode.getNbBars();
+		StrokeEdgesCondition condition = new StrokeEdgesCondition(Threshold.WHITE_BLACK.getThresholdValue(),
+				Threshold.BLACK_WHITE.getThresholdValue(), NOISE_LENGTH, minLength, maxStrokes);
+		return getRobot().recordStrokeEdges(condition);
 	}
 
 	protected void findStart() {
 		// Save original speed
 		originalTravelSpeed = getRobot().getPilot().getTravelSpeed();
 		// Reset state
-		strokeStart = 0f;
-		strokeEnd = 0f;
-		distances.clear();
+		strokeEdges = null;
+		edges = null;
 
 		// Find first black line
 		log("Start looking for black line.");
@@ -164,55 +147,22 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		log("Find start of barcode again.");
 		// Go forward
 		getRobot().getPilot().forward();
-		// Find first black stroke again
-		bindTransition(onSecondBlack(), BarcodeState.STROKE_START);
-	}
-
-	protected void strokeStart() {
-		log("Found start of barcode.");
-		// At begin of barcode
-		strokeStart = getMovement().getDistanceTraveled();
-		// Find white stroke
-		transition(BarcodeState.FIND_STROKE_WHITE);
-	}
-
-	protected void findWhiteStroke() {
-		bindTransition(onBlackToWhite(), BarcodeState.STROKE_WHITE);
-	}
-
-	protected void findBlackStroke() {
-		bindTransition(onWhiteToBlack(), BarcodeState.STROKE_BLACK);
-	}
-
-	protected void stroke(boolean foundBlack) {
-		boolean nextStrokeBlack = addStroke(foundBlack);
-
-		if (isCompleted()) {
-			// Completed
-			transition(BarcodeState.FINISH);
-		} else {
-			// Iterate
-			if (nextStrokeBlack) {
-				transition(BarcodeState.FIND_STROKE_BLACK);
-			} else {
-				transition(BarcodeState.FIND_STROKE_WHITE);
-			}
-		}
+		// Record strokes from the first black stroke onwards
+		strokeEdges = recordStrokes();
+		bindTransition(strokeEdges, BarcodeState.STROKES_RECORDED);
 	}
 
-	protected void blackToBrown() {
-		// Came from a black stroke
-		boolean foundBlack = false;
-		// Add last stroke
-		addStroke(foundBlack);
-
-		if (isCompleted()) {
-			// Completed
-			transition(BarcodeState.FINISH);
-		} else {
-			// Failed
+	protected void strokesRecorded() {
+		try {
+			edges = strokeEdges.get();
+		} catch (Exception e) {
+			log("Failed to record strokes: " + e.getMessage());
 			transition(BarcodeState.FAILED);
+			return;
 		}
+		log("Found stroke edges: " + Arrays.toString(edges));
+		// Completed
+		transition(BarcodeState.FINISH);
 	}
 
 	protected void failed() {
@@ -221,68 +171,9 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		stop();
 	}
 
-	private boolean addStroke(boolean foundBlack) {
-		// Get stroke width
-		strokeEnd = getMovement().getDistanceTraveled();
-		log(strokeStart + " - " + strokeEnd);
-		float strokeWidth = Math.abs(strokeEnd - strokeStart);
-
-		if (strokeWidth >= NOISE_LENGTH) {
-			// Store width
-			distances.add(strokeWidth);
-			// Set start of next stroke
-			strokeStart = strokeEnd;
-			log("Found " + (foundBlack ? "white" : "black") + " stroke of " + strokeWidth + " cm");
-			// Find next stroke
-			return !foundBlack;
-		} else {
-			log("Noise: " + strokeWidth);
-			// Noise detected, retry same stroke
-			return foundBlack;
-		}
-	}
-
-	private boolean isCompleted() {
-		return getTotalSum(distances) >= (Barcode.getNbBars() - 1) * getBarLength();
-	}
-
-	private int readBarcode(List<Float> distances) {
-		final double barLength = getBarLength();
-		int result = 0;
-		int index = Barcode.getNbValueBars() - 1;
-
-		// Iterate over distances until barcode complete
-		ListIterator<Float> it = distances.listIterator();
-		while (it.hasNext() && index >= 0) {
-			int i = it.nextIndex();
-			float distance = it.next();
-			double at;
-			if (i == 0) {
-				// First bar
-				// Cut off first black stroke
-				at = Math.max((distance - barLength) / barLength, 0);
-			} else {
-				at = Math.max(distance / barLength, 1);
-			}
-			// TODO Check rounding
-			int limit = DoubleMath.roundToInt(at, RoundingMode.HALF_DOWN);
-			// Odd indices are white, even indices are black
-			int barBit = i & 1; // == i % 2
-			// Set bit from index to index-a
-			for (int j = 0; j < limit && index >= 0; j++) {
-				result |= barBit << index;
-				index--;
-			}
-		}
-		return result;
-	}
-
-	private static float getTotalSum(Iterable<Float> values) {
-		float sum = 0;
-		for (float value : values) {
-			sum += value;
-		}
-		return sum;
+	private int readBarcode(float[] edges) {
+		float[] widths = BarcodeDecoder.getStrokeWidths(edges);
+		return BarcodeDecoder.decode(widths, getBarLength(), Barcode.getNbValueBars());
 	}
 
 	@Override
@@ -302,7 +193,7 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 		// Reset
 		stateStopped();
 		// Read barcode
-		Barcode barcode = new Barcode(readBarcode(distances));
+		Barcode barcode = new Barcode(readBarcode(edges));
 		// Notify listeners
 		for (BarcodeScannerListener listener : listeners) {
 			listener.onEndBarcode(barcode);
@@ -340,40 +231,10 @@ public class BarcodeScanner extends StateMachine<BarcodeScanner, BarcodeScanner.
 				scanner.findStartAgain();
 			}
 		},
-		STROKE_START {
-			@Override
-			public void execute(BarcodeScanner scanner) {
-				scanner.strokeStart();
-			}
-		},
-		FIND_STROKE_BLACK {
-			@Override
-			public void execute(BarcodeScanner scanner) {
-				scanner.findBlackStroke();
-			}
-		},
-		FIND_STROKE_WHITE {
-			@Override
-			public void execute(BarcodeScanner scanner) {
-				scanner.findWhiteStroke();
-			}
-		},
-		STROKE_BLACK {
-			@Override
-			public void execute(BarcodeScanner scanner) {
-				scanner.stroke(true);
-			}
-		},
-		STROKE_WHITE {
-			@Override
-			public void execute(BarcodeScanner scanner) {
-				scanner.stroke(false);
-			}
-		},
-		BLACK_TO_BROWN {
+		STROKES_RECORDED {
 			@Override
 			public void execute(BarcodeScanner scanner) {
-				scanner.blackToBrown();
+				scanner.strokesRecorded();
 			}
 		},
 		FINISH {
@@ -0,0 +1,91 @@
+package mazestormer.barcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import mazestormer.condition.StrokeEdgesCondition;
+
+import org.junit.Test;
+
+public class StrokeRecorderTest {
+
+	private static final double barLength = 1.85d; // cm
+	private static final float sampleDistance = 0.1f; // cm
+	private static final float noiseLength = 0.65f; // cm
+
+	private static final int black = 300;
+	private static final int white = 600;
+
+	@Test
+	public void decodeAll() {
+		for (int value = 0; value < (1 << Barcode.getNbValueBars()); value++) {
+			assertEquals(value, scan(value, false));
+		}
+	}
+
+	@Test
+	public void ignoreNoise() {
+		for (int value = 0; value < (1 << Barcode.getNbValueBars()); value++) {
+			assertEquals(value, scan(value, true));
+		}
+	}
+
+	@Test
+	public void waitForStart() {
+		StrokeRecorder recorder = new StrokeRecorder(createCondition());
+		assertFalse(recorder.addSample(white, 0f));
+		assertFalse(recorder.isStarted());
+		assertFalse(recorder.addSample(black, 1f));
+		assertTrue(recorder.isStarted());
+		assertEquals(1, recorder.getEdges().length);
+	}
+
+	private int scan(int value, boolean withNoise) {
+		StrokeRecorder recorder = new StrokeRecorder(createCondition());
+
+		// White area in front of barcode
+		float position = 0f;
+		for (; position < 2f; position += sampleDistance) {
+			recorder.addSample(white, position);
+		}
+
+		// Leading black bar, value bars and terminating black bar
+		int previousLight = white;
+		for (int bar = 0; bar < Barcode.getNbBars(); bar++) {
+			int light = isWhite(value, bar) ? white : black;
+			float barStart = position;
+			float barEnd = position + (float) barLength;
+			for (; position < barEnd; position += sampleDistance) {
+				recorder.addSample(light, position);
+				if (withNoise && position == barStart) {
+					// Sensor jitter right after the edge
+					recorder.addSample(previousLight, position + sampleDistance / 2);
+				}
+			}
+			previousLight = light;
+		}
+
+		// White area behind barcode
+		for (float end = position + 2f; position < end; position += sampleDistance) {
+			recorder.addSample(white, position);
+		}
+
+		assertTrue(recorder.isComplete());
+		float[] widths = BarcodeDecoder.getStrokeWidths(recorder.getEdges());
+		return BarcodeDecoder.decode(widths, barLength, Barcode.getNbValueBars());
+	}
+
+	private static boolean isWhite(int value, int bar) {
+		if (bar == 0 || bar == Barcode.getNbBars() - 1)
+			return false;
+		int bit = Barcode.getNbValueBars() - bar;
+		return ((value >>> bit) & 1) == 1;
+	}
+
+	private static StrokeEdgesCondition createCondition() {
+		float minLength = (float) ((Barcode.getNbBars() - 1) * barLength);
+		return new StrokeEdgesCondition(Threshold.WHITE_BLACK.getThresholdValue(),
+				Threshold.BLACK_WHITE.getThresholdValue(), noiseLength, minLength, Barcode.getNbBars());
+	}
+
+}
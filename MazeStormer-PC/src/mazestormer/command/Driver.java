@@ -182,6 +182,10 @@ public class Driver extends StateMachine<Driver, Driver.ExplorerState> implement
 		this.lineAdjustInterval = interval;
 	}
 
+	public double getScanSpeed() {
+		return barcodeScanner.getScanSpeed();
+	}
+
 	public void setScanSpeed(double scanSpeed) {
 		barcodeScanner.setScanSpeed(scanSpeed);
 	}
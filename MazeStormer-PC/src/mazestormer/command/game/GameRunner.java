@@ -321,6 +321,8 @@ public class GameRunner extends Commander {
 		public void onPartnerDisconnected(Player partner) {
 			// Stop publishing tiles
 			tileReporter.stop();
+			// Partner discards our tiles
+			tileReporter.forgetPartner(partner.getPlayerID());
 			// TODO Stop driving to partner
 			// Revert to exploring the maze
 		}
@@ -1,63 +1,247 @@
 package mazestormer.command.game;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mazestormer.game.Game;
 import mazestormer.maze.DefaultMazeListener;
+import mazestormer.maze.IMaze;
 import mazestormer.maze.Tile;
+import mazestormer.maze.parser.TileTokens;
+import mazestormer.util.LongPoint;
 
-public class TileReporter extends DefaultMazeListener implements Runnable {
+/**
+ * Reports explored tiles to the partner.
+ *
+ * <p>
+ * Queued tiles are de-duplicated by position, so a tile which is queued several
+ * times between two flushes is only encoded once, in its latest state. For
+ * every partner, the reporter remembers the token it last published for each
+ * position and skips tiles which did not change since. Tiles which failed to
+ * publish are queued again. Changed tiles are encoded in the format negotiated
+ * with the partner, see {@link Game#encodeTiles(Collection)}.
+ * </p>
+ *
+ * <p>
+ * The flush delay adapts to the time it takes to publish a batch: when the
+ * broker is slow, batches are collected for longer.
+ * </p>
+ */
+public class TileReporter extends DefaultMazeListener {
+
+	/**
+	 * Initial delay between flushes, in milliseconds.
+	 */
+	private static final long delay = 100;
+
+	/**
+	 * Minimum delay between flushes, in milliseconds.
+	 */
+	private static final long minDelay = 50;
+
+	/**
+	 * Maximum delay between flushes, in milliseconds.
+	 */
+	private static final long maxDelay = 1000;
+
+	/**
+	 * Ratio of the flush delay to the publish latency.
+	 */
+	private static final double latencyFactor = 10d;
+
+	/**
+	 * Weight of a new latency measurement in the moving average.
+	 */
+	private static final double latencyWeight = 0.25d;
 
 	private final Game game;
 	private final ScheduledExecutorService executor;
 
-	private final BlockingQueue<Tile> queue = new LinkedBlockingQueue<Tile>();
+	private Map<LongPoint, Tile> queue = new LinkedHashMap<LongPoint, Tile>();
+	private final Map<String, Map<LongPoint, String>> published = new HashMap<String, Map<LongPoint, String>>();
+
 	private ScheduledFuture<?> task;
+	private int generation = 0;
+	private final Object flushLock = new Object();
 
-	/**
-	 * Delay in milliseconds.
-	 */
-	private static final long delay = 100;
+	private volatile double publishLatency = 0d; // ms
+	private volatile long flushDelay = delay;
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong skippedCount = new AtomicLong();
 
 	public TileReporter(Game game, ScheduledExecutorService executor) {
 		this.game = game;
 		this.executor = executor;
 	}
 
-	public void start() {
+	public synchronized void start() {
 		stop();
-		task = executor.scheduleWithFixedDelay(this, 0, delay, TimeUnit.MILLISECONDS);
+		task = executor.schedule(new Flusher(generation), 0, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		// Invalidate running flusher
+		generation++;
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		queue.clear();
+	}
+
+	/**
+	 * Forget which tiles were published to the given partner.
+	 *
+	 * <p>
+	 * Call this when the partner lost its copy of the tiles, so they are all
+	 * sent again.
+	 * </p>
+	 *
+	 * @param partnerID
+	 *            The partner's player identifier.
+	 */
+	public synchronized void forgetPartner(String partnerID) {
+		published.remove(partnerID);
+	}
+
+	/**
+	 * Get the current delay between flushes, in milliseconds.
+	 */
+	public long getFlushDelay() {
+		return flushDelay;
 	}
 
-	public void stop() {
-		if (task == null)
+	/**
+	 * Get the moving average of the time needed to publish a batch, in
+	 * milliseconds.
+	 */
+	public double getPublishLatency() {
+		return publishLatency;
+	}
+
+	/**
+	 * Get the number of published tiles.
+	 */
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * Get the number of queued tiles which were not published because they
+	 * were queued again or unchanged since their last publication.
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	/**
+	 * Publish all queued tiles which changed since their last publication.
+	 *
+	 * <p>
+	 * Flushes never run concurrently, even when an old flusher is still
+	 * finishing after a restart.
+	 * </p>
+	 */
+	private void flush() {
+		synchronized (flushLock) {
+			flushInternal();
+		}
+	}
+
+	private void flushInternal() {
+		if (!game.hasPartner())
 			return;
+		String partnerID = game.getPartner().getPlayerID();
 
-		task.cancel(false);
-		task = null;
-		queue.clear();
+		// Take queued tiles
+		Map<LongPoint, Tile> tiles;
+		Map<LongPoint, String> partnerTiles;
+		synchronized (this) {
+			if (queue.isEmpty())
+				return;
+			tiles = queue;
+			queue = new LinkedHashMap<LongPoint, Tile>();
+			partnerTiles = published.get(partnerID);
+			if (partnerTiles == null) {
+				partnerTiles = new HashMap<LongPoint, String>();
+				published.put(partnerID, partnerTiles);
+			}
+		}
+
+		// Find changed tiles
+		// The published tokens are only modified by the flusher
+		IMaze maze = game.getLocalMaze();
+		Map<LongPoint, String> changedTokens = new LinkedHashMap<LongPoint, String>();
+		List<Tile> changedTiles = new ArrayList<Tile>(tiles.size());
+		for (Tile tile : tiles.values()) {
+			String token = TileTokens.encode(maze, tile.getPosition());
+			if (token.equals(partnerTiles.get(tile.getPosition()))) {
+				skippedCount.incrementAndGet();
+			} else {
+				changedTokens.put(tile.getPosition(), token);
+				changedTiles.add(tile);
+			}
+		}
+		if (changedTiles.isEmpty())
+			return;
+
+		// Encode in the format negotiated with the partner
+		List<peno.htttp.Tile> batch = game.encodeTiles(changedTiles);
+
+		// Publish
+		boolean isPublished;
+		long start = System.nanoTime();
+		try {
+			isPublished = game.publishTiles(batch);
+		} catch (IOException e) {
+			e.printStackTrace();
+			isPublished = false;
+		}
+		updateLatency(System.nanoTime() - start);
+
+		if (isPublished) {
+			// Remember published tokens
+			partnerTiles.putAll(changedTokens);
+			sentCount.addAndGet(changedTiles.size());
+		} else {
+			synchronized (this) {
+				// Retry on next flush, unless queued again in the meantime
+				for (Map.Entry<LongPoint, Tile> entry : tiles.entrySet()) {
+					if (!queue.containsKey(entry.getKey())) {
+						queue.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		}
 	}
 
-	@Override
-	public void run() {
-		List<Tile> tiles = new ArrayList<Tile>();
-		queue.drainTo(tiles);
-		game.sendTiles(tiles);
+	private void updateLatency(long latencyNanos) {
+		double latency = TimeUnit.NANOSECONDS.toMicros(latencyNanos) / 1000d;
+		publishLatency = (1d - latencyWeight) * publishLatency + latencyWeight * latency;
+		long newDelay = (long) (latencyFactor * publishLatency);
+		flushDelay = Math.max(minDelay, Math.min(maxDelay, newDelay));
 	}
 
-	public void offer(Tile tile) {
-		queue.add(tile);
+	public synchronized void offer(Tile tile) {
+		Tile previous = queue.put(tile.getPosition(), tile);
+		if (previous != null) {
+			skippedCount.incrementAndGet();
+		}
 	}
 
-	public void offer(Collection<? extends Tile> tiles) {
-		queue.addAll(tiles);
+	public synchronized void offer(Collection<? extends Tile> tiles) {
+		for (Tile tile : tiles) {
+			offer(tile);
+		}
 	}
 
 	@Override
@@ -65,4 +249,32 @@ public class TileReporter extends DefaultMazeListener implements Runnable {
 		offer(tile);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Flushes the queue and reschedules itself with the current flush delay.
+	 */
+	private class Flusher implements Runnable {
+
+		private final int generation;
+
+		public Flusher(int generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				// Keep reporting
+				e.printStackTrace();
+			}
+			synchronized (TileReporter.this) {
+				if (generation == TileReporter.this.generation) {
+					task = executor.schedule(this, flushDelay, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+
+	}
+
+}
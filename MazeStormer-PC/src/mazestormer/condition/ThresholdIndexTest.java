@@ -0,0 +1,96 @@
+package mazestormer.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ThresholdIndexTest {
+
+	private final ThresholdIndex<String> index = new ThresholdIndex<String>();
+	private final List<String> matches = new ArrayList<String>();
+
+	@Test
+	public void greaterThan() {
+		index.add(new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN, 500), "500");
+		index.add(new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN, 300), "300");
+		index.add(new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN, 400), "400");
+
+		assertEquals(0, index.removeMatches(200, matches));
+		assertEquals(2, index.removeMatches(450, matches));
+		assertEquals(Arrays.asList("300", "400"), matches);
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void smallerThan() {
+		index.add(new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN, 500), "500");
+		index.add(new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN, 300), "300");
+		index.add(new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN, 400), "400");
+
+		assertEquals(0, index.removeMatches(600, matches));
+		assertEquals(2, index.removeMatches(350, matches));
+		assertEquals(Arrays.asList("400", "500"), matches);
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void remove() {
+		LightCompareCondition condition = new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN, 400);
+		index.add(condition, "a");
+		index.add(condition, "b");
+
+		assertTrue(index.remove(condition, "a"));
+		assertEquals(1, index.removeMatches(400, matches));
+		assertEquals(Arrays.asList("b"), matches);
+		assertTrue(index.isEmpty());
+	}
+
+	@Test
+	public void sameAsLinearScan() {
+		Random random = new Random(42);
+		List<LightCompareCondition> conditions = new ArrayList<LightCompareCondition>();
+		for (int i = 0; i < 200; i++) {
+			LightCompareCondition condition;
+			switch (random.nextInt(3)) {
+			case 0:
+				condition = new LightCompareCondition(ConditionType.LIGHT_GREATER_THAN, random.nextInt(1024));
+				break;
+			case 1:
+				condition = new LightCompareCondition(ConditionType.LIGHT_SMALLER_THAN, random.nextInt(1024));
+				break;
+			default:
+				int min = random.nextInt(1024);
+				condition = new LightCompareCondition(ConditionType.LIGHT_BETWEEN, min, min + random.nextInt(200));
+				break;
+			}
+			conditions.add(condition);
+			index.add(condition, String.valueOf(i));
+		}
+
+		while (!index.isEmpty()) {
+			int value = random.nextInt(1024);
+			List<String> expected = new ArrayList<String>();
+			for (int i = 0; i < conditions.size(); i++) {
+				LightCompareCondition condition = conditions.get(i);
+				if (condition != null && value >= condition.getMinThreshold() && value <= condition.getMaxThreshold()) {
+					expected.add(String.valueOf(i));
+					conditions.set(i, null);
+				}
+			}
+			matches.clear();
+			index.removeMatches(value, matches);
+			assertEquals(expected.size(), matches.size());
+			assertTrue(matches.containsAll(expected));
+		}
+		for (LightCompareCondition condition : conditions) {
+			assertEquals(null, condition);
+		}
+	}
+
+}
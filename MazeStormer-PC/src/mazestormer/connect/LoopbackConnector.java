@@ -0,0 +1,150 @@
+package mazestormer.connect;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import mazestormer.command.CommandType;
+import mazestormer.command.ShutdownCommand;
+import mazestormer.loopback.LoopbackLink;
+import mazestormer.loopback.SimulatedBrick;
+import mazestormer.physical.PhysicalCommunicator;
+import mazestormer.physical.PhysicalRobot;
+import mazestormer.robot.ControllablePCRobot;
+import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.Pilot;
+import mazestormer.simulator.VirtualRobot;
+import mazestormer.world.World;
+
+/**
+ * Connects a physical robot to a simulated brick over an in-process loopback
+ * link.
+ * 
+ * <p>
+ * Useful for testing and benchmarking the communication protocol without
+ * hardware. The latency and bandwidth of the link can be configured before
+ * connecting.
+ * </p>
+ */
+public class LoopbackConnector implements Connector {
+
+	private long latency = 0; // ms
+	private long bandwidth = 0; // bytes/s
+
+	private LoopbackLink link;
+	private SimulatedBrick brick;
+	private PhysicalCommunicator communicator;
+	private ControllablePCRobot robot;
+
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Set the one-way latency of the link.
+	 * 
+	 * @param latency
+	 *            The latency in milliseconds.
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	public long getBandwidth() {
+		return bandwidth;
+	}
+
+	/**
+	 * Set the bandwidth of the link.
+	 * 
+	 * @param bandwidth
+	 *            The bandwidth in bytes per second, or zero for unlimited
+	 *            bandwidth.
+	 */
+	public void setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	public LoopbackLink getLink() {
+		checkState(isConnected());
+		return link;
+	}
+
+	public SimulatedBrick getBrick() {
+		checkState(isConnected());
+		return brick;
+	}
+
+	public PhysicalCommunicator getCommunicator() {
+		checkState(isConnected());
+		return communicator;
+	}
+
+	@Override
+	public ControllablePCRobot getRobot() throws IllegalStateException {
+		checkState(isConnected());
+		return robot;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return communicator != null && communicator.isListening() && robot != null;
+	}
+
+	@Override
+	public void connect(ConnectionContext context) {
+		if (isConnected())
+			return;
+
+		// Create link
+		link = new LoopbackLink(getLatency(), TimeUnit.MILLISECONDS, getBandwidth());
+
+		// Start brick
+		brick = new SimulatedBrick(link.getBrickInputStream(), link.getBrickOutputStream(), new VirtualRobot(
+				context.getWorld()));
+		brick.start();
+
+		// Create communicator
+		communicator = new PhysicalCommunicator(link.getHostInputStream(), link.getHostOutputStream());
+
+		// Create robot
+		robot = createRobot(communicator, context.getWorld());
+
+		// Start communicating
+		communicator.start();
+	}
+
+	private static ControllablePCRobot createRobot(PhysicalCommunicator communicator, World world) {
+		ControllablePCRobot robot = new PhysicalRobot(communicator, world);
+		// Set default speeds
+		Pilot pilot = robot.getPilot();
+		pilot.setTravelSpeed(ControllableRobot.travelSpeed);
+		pilot.setRotateSpeed(ControllableRobot.rotateSpeed);
+		return robot;
+	}
+
+	@Override
+	public void disconnect() {
+		if (!isConnected())
+			return;
+
+		robot.terminate();
+		robot = null;
+
+		try {
+			// Shut down
+			communicator.send(new ShutdownCommand(CommandType.SHUTDOWN));
+			communicator.terminate();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			brick.terminate();
+			link.close();
+			brick = null;
+			link = null;
+			communicator = null;
+		}
+	}
+
+}
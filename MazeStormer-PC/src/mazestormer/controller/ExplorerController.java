@@ -1,13 +1,28 @@
 package mazestormer.controller;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
 import mazestormer.command.Driver;
 import mazestormer.command.explore.Explorer;
+import mazestormer.physical.PhysicalRobot;
 import mazestormer.player.Player;
+import mazestormer.replay.RunLog;
+import mazestormer.replay.RunRecorder;
+import mazestormer.robot.ControllablePCRobot;
 import mazestormer.state.DefaultStateListener;
 
 public class ExplorerController extends SubController implements IExplorerController {
 
+	/**
+	 * System property with the directory in which runs on a physical robot are
+	 * recorded for replay. Runs are not recorded if not set.
+	 */
+	public static final String recordDirectoryProperty = "mazestormer.replay.dir";
+
 	private Explorer explorer;
+	private RunRecorder recorder;
 	private boolean isLineAdjustEnabled = true;
 	private int lineAdjustInterval = 10;
 
@@ -47,6 +62,7 @@ public class ExplorerController extends SubController implements IExplorerContro
 		explorer.getDriver().setScanSpeed(getBarcodeController().getScanSpeed());
 		// Start
 		explorer.getDriver().addStateListener(new ExplorerListener());
+		startRecording(explorer.getDriver());
 		explorer.start();
 	}
 
@@ -56,6 +72,33 @@ public class ExplorerController extends SubController implements IExplorerContro
 			explorer.stop();
 			explorer = null;
 		}
+		stopRecording();
+	}
+
+	private synchronized void startRecording(Driver driver) {
+		String directory = System.getProperty(recordDirectoryProperty);
+		ControllablePCRobot robot = getMainController().getControllableRobot();
+		if (directory == null || !(robot instanceof PhysicalRobot))
+			return;
+
+		recorder = new RunRecorder(((PhysicalRobot) robot).getCommunicator());
+		recorder.start(driver);
+	}
+
+	private synchronized void stopRecording() {
+		if (recorder == null)
+			return;
+
+		RunLog log = recorder.stop();
+		recorder = null;
+		File file = new File(System.getProperty(recordDirectoryProperty), "run-" + System.currentTimeMillis()
+				+ ".bin");
+		try {
+			log.write(file);
+			getPlayer().getLogger().info("Run recorded to " + file);
+		} catch (IOException e) {
+			getPlayer().getLogger().log(Level.WARNING, "Could not record run", e);
+		}
 	}
 
 	@Override
@@ -94,6 +137,7 @@ public class ExplorerController extends SubController implements IExplorerContro
 		@Override
 		public void stateStopped() {
 			postState(ExplorerEvent.EventType.STOPPED);
+			stopRecording();
 		}
 
 		@Override
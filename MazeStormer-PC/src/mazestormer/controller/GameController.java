@@ -4,22 +4,26 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import lejos.robotics.localization.PoseProvider;
 import mazestormer.controller.PlayerEvent.EventType;
 import mazestormer.player.Player;
 import mazestormer.player.PlayerIdentifier;
 import mazestormer.player.PlayerListener;
+import mazestormer.robot.ObservablePoseProvider;
+import mazestormer.robot.PoseListener;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class GameController extends SubController implements IGameController {
 
-	private Map<PlayerIdentifier, IPlayerController> pcs = new LinkedHashMap<PlayerIdentifier, IPlayerController>();
+	private Map<Player, IPlayerController> pcs = new LinkedHashMap<Player, IPlayerController>();
 	private final Listener listener = new Listener();
 
 	private final WorldController worldController;
@@ -28,16 +32,27 @@ public class GameController extends SubController implements IGameController {
 	private Runnable updateTask = new UpdateTask();
 	private ScheduledFuture<?> updateHandle;
 	private long updateInterval;
+	private long lastUpdateTime;
+	private long nextUpdateTime;
+	private final Object updateLock = new Object();
 	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("MapController-%d").build();
 	private static final long defaultUpdateFPS = 25;
 
+	/**
+	 * Interval between updates while no poses change, in milliseconds. Catches
+	 * changes of pose providers which do not notify their changes.
+	 */
+	private static final long idleUpdateInterval = 1000;
+
+	private final Map<Player, ObservablePoseProvider> observedPoses = new ConcurrentHashMap<Player, ObservablePoseProvider>();
+	private final PoseListener poseListener = new UpdatePoseListener();
+
 	public GameController(MainController mainController) {
 		super(mainController);
 
 		worldController = new WorldController(mainController, mainController.getWorld());
 
 		setUpdateFPS(defaultUpdateFPS);
-		scheduleUpdater();
 	}
 
 	@Override
@@ -69,17 +84,20 @@ public class GameController extends SubController implements IGameController {
 		player.addPlayerListener(listener);
 		this.pcs.put(player, new PlayerController(this.getMainController(), player));
 		postEvent(new PlayerEvent(EventType.PLAYER_ADDED, player));
+		requestUpdate();
 	}
 
 	@Override
 	public void removePlayer(Player player) {
 		player.removePlayerListener(listener);
 		this.pcs.remove(player);
+		unobservePose(player);
 		postEvent(new PlayerEvent(EventType.PLAYER_REMOVED, player));
 	}
 
 	private void renamePlayer(Player player) {
 		postEvent(new PlayerEvent(EventType.PLAYER_RENAMED, player));
+		requestUpdate();
 	}
 
 	private class Listener implements PlayerListener {
@@ -104,7 +122,7 @@ public class GameController extends SubController implements IGameController {
 		if (interval != this.updateInterval) {
 			this.updateInterval = interval;
 			// Reschedule with new delay
-			rescheduleUpdater();
+			requestUpdate();
 		}
 	}
 
@@ -112,44 +130,107 @@ public class GameController extends SubController implements IGameController {
 		setUpdateInterval((long) (1000f / (float) fps));
 	}
 
-	private void scheduleUpdater() {
-		// Cancel if still running
-		cancelUpdater();
-		// Reschedule updater
-		updateHandle = executor.scheduleAtFixedRate(updateTask, 0, getUpdateInterval(), TimeUnit.MILLISECONDS);
+	/**
+	 * Request a map update as soon as the frame rate allows.
+	 */
+	private void requestUpdate() {
+		synchronized (updateLock) {
+			long now = System.currentTimeMillis();
+			long updateTime = Math.max(now, lastUpdateTime + getUpdateInterval());
+			if (updateHandle == null || nextUpdateTime > updateTime) {
+				scheduleUpdate(updateTime - now);
+			}
+		}
 	}
 
-	private void cancelUpdater() {
+	private void scheduleUpdate(long delay) {
+		if (executor.isShutdown())
+			return;
+		// Cancel if still scheduled
 		if (updateHandle != null) {
 			updateHandle.cancel(false);
-			updateHandle = null;
 		}
+		nextUpdateTime = System.currentTimeMillis() + delay;
+		updateHandle = executor.schedule(updateTask, delay, TimeUnit.MILLISECONDS);
 	}
 
-	private void rescheduleUpdater() {
-		// Schedule only if still running
-		if (updateHandle != null && !updateHandle.isDone()) {
-			scheduleUpdater();
+	public void terminate() {
+		// Shutdown executor
+		synchronized (updateLock) {
+			executor.shutdown();
 		}
 	}
 
-	public void terminate() {
-		// Shutdown executor
-		executor.shutdown();
+	/**
+	 * Listen for pose changes of the robot of the given player.
+	 */
+	private void observePose(Player player) {
+		PoseProvider provider = (player.getRobot() == null) ? null : player.getRobot().getPoseProvider();
+		ObservablePoseProvider previous = observedPoses.get(player);
+		if (provider == previous)
+			return;
+
+		if (previous != null) {
+			previous.removePoseListener(poseListener);
+			observedPoses.remove(player);
+		}
+		if (provider instanceof ObservablePoseProvider) {
+			ObservablePoseProvider observable = (ObservablePoseProvider) provider;
+			observable.addPoseListener(poseListener);
+			observedPoses.put(player, observable);
+		}
 	}
 
+	private void unobservePose(Player player) {
+		ObservablePoseProvider previous = observedPoses.remove(player);
+		if (previous != null) {
+			previous.removePoseListener(poseListener);
+		}
+	}
+
+	/**
+	 * Updates the maps while poses change.
+	 * 
+	 * <p>
+	 * As long as any pose changed in the previous update, the maps are updated
+	 * at the configured frame rate. Otherwise, the updater waits for a pose
+	 * change notification or the idle update interval, whichever comes first.
+	 * </p>
+	 */
 	private class UpdateTask implements Runnable {
 
 		@Override
 		public void run() {
+			synchronized (updateLock) {
+				lastUpdateTime = System.currentTimeMillis();
+				updateHandle = null;
+			}
+
+			boolean isChanged = false;
 			// Update player controllers
-			for (IPlayerController pc : pcs.values()) {
-				pc.map().updatePoses();
+			for (Map.Entry<Player, IPlayerController> entry : pcs.entrySet()) {
+				observePose(entry.getKey());
+				isChanged |= entry.getValue().map().updatePoses();
 			}
 			// Update world
-			getWorldController().map().updatePoses();
+			isChanged |= getWorldController().map().updatePoses();
+
+			synchronized (updateLock) {
+				if (updateHandle == null) {
+					scheduleUpdate(isChanged ? getUpdateInterval() : idleUpdateInterval);
+				}
+			}
+		}
+
+	}
+
+	private class UpdatePoseListener implements PoseListener {
+
+		@Override
+		public void poseChanged(PoseProvider provider) {
+			requestUpdate();
 		}
 
 	}
 
-}
\ No newline at end of file
+}
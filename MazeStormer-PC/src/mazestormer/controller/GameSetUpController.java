@@ -8,6 +8,7 @@ import mazestormer.game.Game;
 import mazestormer.game.GameListener;
 import mazestormer.player.Player;
 import mazestormer.simulator.VirtualRobot;
+import mazestormer.telemetry.TelemetryRecorder;
 import mazestormer.world.World;
 import mazestormer.world.WorldSimulator;
 import peno.htttp.Callback;
@@ -92,6 +93,7 @@ public class GameSetUpController extends SubController implements IGameSetUpCont
 		Connection connection = connectionMode.getConnection();
 		game = new Game(connection, gameID, localPlayer);
 		game.addGameListener(new Listener());
+		game.addGameListener(TelemetryRecorder.getShared().createGameListener("game"));
 
 		worldSimulator = new WorldSimulator(connection, gameID, localPlayer, getWorld());
 
@@ -35,6 +35,15 @@ public interface IMapController extends EventSource {
 	 */
 	public void setLayerVisible(MapLayer layer, boolean isVisible);
 
-	public void updatePoses();
+	/**
+	 * Update the robot poses on this map.
+	 * 
+	 * <p>
+	 * Only robots whose pose changed since the last update are updated.
+	 * </p>
+	 * 
+	 * @return True if any pose changed.
+	 */
+	public boolean updatePoses();
 
 }
@@ -21,13 +21,14 @@ import mazestormer.player.RelativePlayer;
 import mazestormer.robot.ControllablePCRobot;
 import mazestormer.simulator.VirtualRobot;
 import mazestormer.simulator.collision.CollisionListener;
+import mazestormer.telemetry.TelemetryRecorder;
 import mazestormer.ui.MainView;
+import mazestormer.util.ConcurrentEventBus;
 import mazestormer.world.ModelType;
 import mazestormer.world.World;
 
 import org.apache.commons.cli.ParseException;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -102,8 +103,12 @@ public class MainController implements IMainController {
 
 	public MainController() {
 		// Create event bus on named executor
-		ExecutorService executor = Executors.newSingleThreadExecutor(factory);
-		registerEventBus(new AsyncEventBus(getClass().getSimpleName(), executor));
+		int nbThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads, factory);
+		registerEventBus(new ConcurrentEventBus(getClass().getSimpleName(), executor));
+
+		// Dump telemetry on failure
+		TelemetryRecorder.getShared().dumpOnFailure(TelemetryRecorder.getDefaultDirectory());
 
 		// Player and world
 		IMaze personalMaze = new CombinedMaze();
@@ -2,6 +2,8 @@ package mazestormer.controller;
 
 import java.awt.EventQueue;
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -9,6 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import lejos.robotics.navigation.Pose;
 import mazestormer.maze.IMaze;
 import mazestormer.player.Player;
+import mazestormer.robot.PoseChangeDetector;
 import mazestormer.robot.Robot;
 import mazestormer.ui.map.MapDocument;
 import mazestormer.ui.map.MapLayer;
@@ -27,6 +30,7 @@ public abstract class MapController extends SubController implements IMapControl
 
 	private MapDocument map;
 	private Map<Player, RobotLayer> robotLayers = new ConcurrentHashMap<Player, RobotLayer>();
+	private Map<Player, PoseChangeDetector> poseChanges = new ConcurrentHashMap<Player, PoseChangeDetector>();
 	private MapLayerHandler mapLayerHandler;
 
 	public MapController(MainController mainController) {
@@ -64,6 +68,7 @@ public abstract class MapController extends SubController implements IMapControl
 		if (robotLayer != null) {
 			removeLayer(robotLayer);
 			robotLayers.remove(player);
+			poseChanges.remove(player);
 		}
 	}
 
@@ -74,12 +79,15 @@ public abstract class MapController extends SubController implements IMapControl
 		} else {
 			robotLayer.setName("Robot " + player.getPlayerID());
 			postEvent(new MapLayerRenameEvent(this, robotLayer));
+			// Update tooltip with new name
+			getPoseChanges(player).reset();
 		}
 	}
 
 	protected MazeLayer addMaze(IMaze maze, String name, int zIndex) {
 		MazeLayer mazeLayer = new MazeLayer(name, maze);
 		mazeLayer.setZIndex(zIndex);
+		mazeLayer.setCulling(true);
 		addLayer(mazeLayer);
 		return mazeLayer;
 	}
@@ -128,10 +136,16 @@ public abstract class MapController extends SubController implements IMapControl
 		return pose == null ? null : CoordUtils.toMapCoordinates(pose);
 	}
 
-	private void updatePose(Player player) {
-		Pose robotPose = getRobotPose(player);
-		if (robotPose == null)
-			return;
+	private PoseChangeDetector getPoseChanges(Player player) {
+		PoseChangeDetector detector = poseChanges.get(player);
+		if (detector == null) {
+			detector = new PoseChangeDetector();
+			poseChanges.put(player, detector);
+		}
+		return detector;
+	}
+
+	private void updatePose(Player player, Pose robotPose) {
 		Pose mapPose = getMapPose(robotPose);
 
 		// Update layer
@@ -163,16 +177,30 @@ public abstract class MapController extends SubController implements IMapControl
 	}
 
 	@Override
-	public void updatePoses() {
+	public boolean updatePoses() {
+		// Collect changed poses
+		final List<Player> players = new ArrayList<Player>();
+		final List<Pose> poses = new ArrayList<Pose>();
+		for (Player player : robotLayers.keySet()) {
+			Pose robotPose = getRobotPose(player);
+			if (robotPose != null && getPoseChanges(player).update(robotPose)) {
+				players.add(player);
+				poses.add(robotPose);
+			}
+		}
+		if (players.isEmpty())
+			return false;
+
 		// Invoke Swing methods in AWT thread
 		EventQueue.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				for (Player player : robotLayers.keySet()) {
-					updatePose(player);
+				for (int i = 0; i < players.size(); i++) {
+					updatePose(players.get(i), poses.get(i));
 				}
 			}
 		});
+		return true;
 	}
 
 }
@@ -13,9 +13,11 @@ import mazestormer.detect.RangeFeatureListener;
 import mazestormer.player.RelativePlayer;
 import mazestormer.robot.ControllablePCRobot;
 import mazestormer.robot.MoveEvent;
+import mazestormer.robot.ObservablePoseProvider;
 import mazestormer.robot.RangeScannerListener;
 import mazestormer.robot.RobotUpdate;
 import mazestormer.robot.RobotUpdateListener;
+import mazestormer.telemetry.TelemetryRecorder;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -49,6 +51,16 @@ public class StateController extends SubController implements IStateController {
 			getRobot().addUpdateListener(updatePublisher);
 			getRobot().getRangeScanner().addListener(rangeReadingPublisher);
 			getRobot().getRangeDetector().addListener(rangeFeaturePublisher);
+			recordTelemetry();
+		}
+	}
+
+	private void recordTelemetry() {
+		TelemetryRecorder telemetry = TelemetryRecorder.getShared();
+		getRobot().addUpdateListener(telemetry.createUpdateListener("robot"));
+		if (getRobot().getPoseProvider() instanceof ObservablePoseProvider) {
+			((ObservablePoseProvider) getRobot().getPoseProvider()).addPoseListener(telemetry
+					.createPoseListener("robot"));
 		}
 	}
 
@@ -4,10 +4,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import mazestormer.game.broker.InProcessBroker;
+
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 
-public enum ConnectionMode {
+public enum ConnectionMode implements GameTransport {
 
 	LOCAL {
 		@Override
@@ -39,6 +41,22 @@ public enum ConnectionMode {
 		public String toString() {
 			return "P&O";
 		}
+	},
+	IN_PROCESS {
+		@Override
+		public ConnectionFactory createConnectionFactory() {
+			return null;
+		}
+
+		@Override
+		protected Connection newConnection() throws IOException {
+			return InProcessBroker.getShared().newConnection();
+		}
+
+		@Override
+		public String toString() {
+			return "In-process";
+		}
 	};
 
 	private final ConnectionFactory connectionFactory;
@@ -48,13 +66,18 @@ public enum ConnectionMode {
 		this.connectionFactory = createConnectionFactory();
 	}
 
+	@Override
 	public Connection getConnection() throws IOException {
 		if (connection == null || !connection.isOpen()) {
-			connection = connectionFactory.newConnection();
+			connection = newConnection();
 		}
 		return connection;
 	}
 
+	protected Connection newConnection() throws IOException {
+		return connectionFactory.newConnection();
+	}
+
 	protected abstract ConnectionFactory createConnectionFactory();
 
 	public static List<String> getNames() {
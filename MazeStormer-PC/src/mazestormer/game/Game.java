@@ -5,17 +5,20 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import lejos.geom.Point;
 import lejos.robotics.navigation.Pose;
-import mazestormer.infrared.IRRobot;
 import mazestormer.maze.CombinedMaze;
 import mazestormer.maze.CombinedMazeListener;
 import mazestormer.maze.Maze;
 import mazestormer.maze.Tile;
+import mazestormer.maze.parser.BinaryTiles;
 import mazestormer.maze.parser.Parser;
+import mazestormer.maze.parser.TileTokens;
 import mazestormer.observable.ObservableRobot;
 import mazestormer.player.AbsolutePlayer;
 import mazestormer.player.Player;
@@ -27,10 +30,17 @@ import peno.htttp.PlayerClient;
 import peno.htttp.PlayerHandler;
 import peno.htttp.PlayerType;
 
+import com.google.common.base.Splitter;
 import com.rabbitmq.client.Connection;
 
 public class Game {
 
+	/**
+	 * System property listing the identifiers of partner players which are
+	 * known to accept binary tiles, separated by commas.
+	 */
+	public static final String binaryTilesPartnersProperty = "mazestormer.game.binaryTilesPartners";
+
 	private final String id;
 
 	private final Player localPlayer;
@@ -42,11 +52,20 @@ public class Game {
 	private final CombinedMazeListener mazesMergedListener;
 	private final List<GameListener> listeners = new ArrayList<GameListener>();
 
+	private final Set<String> binaryTilesPartners = new CopyOnWriteArraySet<String>();
+	private volatile boolean partnerAcceptsBinaryTiles = false;
+
 	public Game(Connection connection, String id, Player localPlayer) throws IOException, IllegalStateException {
 		this.id = id;
 		this.localPlayer = localPlayer;
 		this.handler = new Handler();
 
+		// Partners accepting binary tiles
+		String partners = System.getProperty(binaryTilesPartnersProperty, "");
+		for (String partnerID : Splitter.on(',').trimResults().omitEmptyStrings().split(partners)) {
+			binaryTilesPartners.add(partnerID);
+		}
+
 		// Listen for maze merges
 		this.mazesMergedListener = new MazesMergedListener();
 		getLocalMaze().addCombinedMazeListener(mazesMergedListener);
@@ -216,25 +235,122 @@ public class Game {
 			return;
 		}
 
+		try {
+			publishTiles(encodeTiles(tiles));
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Encode a set of own tiles for the partner.
+	 * 
+	 * <p>
+	 * If the partner accepts binary tiles, all tiles are encoded in a single
+	 * binary token. Otherwise, every tile gets its own text token.
+	 * </p>
+	 * 
+	 * @param tiles
+	 *            The tiles to encode.
+	 */
+	public List<peno.htttp.Tile> encodeTiles(Collection<Tile> tiles) {
+		if (tiles.isEmpty())
+			return Collections.emptyList();
+
+		if (isBinaryTilesNegotiated()) {
+			// Copy latest state
+			List<Tile> localTiles = new ArrayList<Tile>(tiles.size());
+			for (Tile tile : tiles) {
+				localTiles.add(getLocalMaze().getTileAt(tile.getPosition()));
+			}
+			Tile first = localTiles.get(0);
+			String token = BinaryTiles.encode(localTiles);
+			return Collections.singletonList(new peno.htttp.Tile(first.getX(), first.getY(), token));
+		}
+
 		List<peno.htttp.Tile> tilesToSend = new ArrayList<>(tiles.size());
 		for (Tile tile : tiles) {
 			// TODO Is this conform with maze coordinate specification?
 			long x = tile.getX();
 			long y = tile.getY();
-			String token = Parser.stringify(getLocalMaze(), tile.getPosition());
+			String token = TileTokens.encode(getLocalMaze(), tile.getPosition());
 			tilesToSend.add(new peno.htttp.Tile(x, y, token));
 		}
+		return tilesToSend;
+	}
+
+	/**
+	 * Check whether binary tiles may be negotiated with the current partner.
+	 * 
+	 * <p>
+	 * Binary tiles are only announced to partners which are known to accept
+	 * them, since the announcement is sent as a tile which other partners may
+	 * fail to parse. See {@link #binaryTilesPartnersProperty}.
+	 * </p>
+	 */
+	public boolean isBinaryTilesEnabled() {
+		return hasPartner() && isBinaryTilesEnabled(getPartner().getPlayerID());
+	}
+
+	/**
+	 * Check whether binary tiles may be negotiated with the given partner.
+	 */
+	public boolean isBinaryTilesEnabled(String partnerID) {
+		return binaryTilesPartners.contains(partnerID);
+	}
+
+	/**
+	 * Set whether binary tiles may be negotiated with the given partner.
+	 */
+	public void setBinaryTilesEnabled(String partnerID, boolean isEnabled) {
+		if (isEnabled) {
+			binaryTilesPartners.add(partnerID);
+		} else {
+			binaryTilesPartners.remove(partnerID);
+		}
+	}
+
+	/**
+	 * Check whether the current partner accepts binary tiles.
+	 */
+	public boolean isBinaryTilesNegotiated() {
+		return isBinaryTilesEnabled() && partnerAcceptsBinaryTiles;
+	}
+
+	/**
+	 * Announce to the partner that binary tiles are accepted.
+	 */
+	private void announceBinaryTiles() {
+		if (!isBinaryTilesEnabled())
+			return;
 
 		try {
-			if (client.hasTeamPartner()) {
-				client.sendTiles(tilesToSend);
-			}
+			publishTiles(Collections.singletonList(new peno.htttp.Tile(0, 0, BinaryTiles.announcement)));
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
+			System.err.println("Could not announce binary tiles");
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Publish a set of encoded tiles to the partner.
+	 * 
+	 * @param tiles
+	 *            The encoded tiles.
+	 * @return True if the tiles were published, false if there is no partner
+	 *         to publish to.
+	 * @throws IOException
+	 *             If the tiles could not be published.
+	 */
+	public boolean publishTiles(List<peno.htttp.Tile> tiles) throws IOException {
+		if (!hasPartner() || !client.hasTeamPartner())
+			return false;
+
+		client.sendTiles(tiles);
+		return true;
+	}
+
 	/**
 	 * Get all own explored tiles to send to the partner.
 	 */
@@ -274,13 +390,17 @@ public class Game {
 
 		// Create robot to track partner's position
 		// Note: the size of the partner's robot are not important
-		IRRobot partnerRobot = new ObservableRobot(null, 0, 0);
+		ObservableRobot partnerRobot = new ObservableRobot(null, 0, 0);
+		// Partner only reports its tile
+		partnerRobot.getPoseEstimator().setReportedTileSize(getLocalMaze().getTileSize());
 		// Create partner
 		RelativePlayer partner = new RelativePlayer(partnerID, partnerRobot, new Maze());
 		partnerPlayer = partner;
 		absolutePartnerPlayer = null;
 		// Set partner maze
 		getLocalMaze().setPartnerMaze(partner.getMaze());
+		// Negotiate tile encoding
+		announceBinaryTiles();
 
 		// Call listeners
 		for (GameListener listener : listeners) {
@@ -299,6 +419,7 @@ public class Game {
 		// Unset partner
 		partnerPlayer = null;
 		absolutePartnerPlayer = null;
+		partnerAcceptsBinaryTiles = false;
 
 		// Call listeners
 		for (GameListener listener : listeners) {
@@ -410,12 +531,28 @@ public class Game {
 
 		@Override
 		public void teamTilesReceived(List<peno.htttp.Tile> tiles) {
+			if (!hasPartner())
+				return;
+
 			for (peno.htttp.Tile tile : tiles) {
+				String token = tile.getToken();
 				try {
-					// Parse tile
-					Tile parsedTile = Parser.parseTile(tile.getX(), tile.getY(), tile.getToken());
-					// Store in partner maze
-					getPartner().getMaze().importTile(parsedTile);
+					if (BinaryTiles.isAnnouncement(token)) {
+						// Partner accepts binary tiles
+						if (isBinaryTilesEnabled() && !partnerAcceptsBinaryTiles) {
+							partnerAcceptsBinaryTiles = true;
+							// Answer in case our announcement was missed
+							announceBinaryTiles();
+						}
+					} else if (BinaryTiles.isBinary(token)) {
+						// Decode straight into partner maze
+						BinaryTiles.decode(token, getPartner().getMaze());
+					} else {
+						// Parse tile
+						Tile parsedTile = Parser.parseTile(tile.getX(), tile.getY(), token);
+						// Store in partner maze
+						getPartner().getMaze().importTile(parsedTile);
+					}
 				} catch (ParseException e) {
 					e.printStackTrace();
 				}
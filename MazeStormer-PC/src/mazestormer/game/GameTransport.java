@@ -0,0 +1,26 @@
+package mazestormer.game;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.Connection;
+
+/**
+ * Provides connections to a game broker.
+ *
+ * <p>
+ * The game clients only rely on the exchange and queue operations of a
+ * {@link Connection}, so a transport can either connect to a RabbitMQ server or
+ * to a broker running in the same virtual machine.
+ * </p>
+ */
+public interface GameTransport {
+
+	/**
+	 * Get a connection to the game broker.
+	 * 
+	 * @throws IOException
+	 *             If the broker cannot be reached.
+	 */
+	public Connection getConnection() throws IOException;
+
+}
@@ -0,0 +1,676 @@
+package mazestormer.game.broker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mazestormer.game.broker.InProcessBroker.Message;
+import mazestormer.game.broker.InProcessBroker.MessageQueue;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Command;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.FlowListener;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Method;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+import com.rabbitmq.client.impl.ShutdownNotifierComponent;
+
+/**
+ * A channel on a {@link BrokerConnection}.
+ *
+ * <p>
+ * Consumer callbacks are invoked on a dedicated thread per channel, in the
+ * order in which the messages were published. Acknowledgements are accepted
+ * but have no effect: a message is considered handled as soon as it is handed
+ * to its consumer. Transactions and raw method calls are not supported.
+ * </p>
+ */
+class BrokerChannel extends ShutdownNotifierComponent implements Channel {
+
+	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("BrokerChannel-%d")
+			.setDaemon(true).build();
+
+	private final BrokerConnection connection;
+	private final InProcessBroker broker;
+	private final int channelNumber;
+
+	private final ScheduledExecutorService executor;
+	private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+	private final AtomicLong deliveryTag = new AtomicLong();
+	private final AtomicLong publishSequence = new AtomicLong();
+	private volatile boolean isConfirming = false;
+
+	private final List<ReturnListener> returnListeners = new CopyOnWriteArrayList<ReturnListener>();
+	private final List<FlowListener> flowListeners = new CopyOnWriteArrayList<FlowListener>();
+	private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<ConfirmListener>();
+	private volatile Consumer defaultConsumer;
+
+	public BrokerChannel(BrokerConnection connection, int channelNumber) {
+		this.connection = connection;
+		this.broker = connection.getBroker();
+		this.channelNumber = channelNumber;
+		this.executor = Executors.newSingleThreadScheduledExecutor(factory);
+	}
+
+	@Override
+	public int getChannelNumber() {
+		return channelNumber;
+	}
+
+	@Override
+	public Connection getConnection() {
+		return connection;
+	}
+
+	BrokerConnection getBrokerConnection() {
+		return connection;
+	}
+
+	/*
+	 * Life cycle
+	 */
+
+	@Override
+	public void close() throws IOException {
+		close(AMQP.REPLY_SUCCESS, "OK");
+	}
+
+	@Override
+	public void close(int closeCode, String closeMessage) throws IOException {
+		ensureIsOpen();
+		shutdown(new ShutdownSignalException(false, true, closeCode + " " + closeMessage, this));
+	}
+
+	@Override
+	public void abort() throws IOException {
+		abort(AMQP.REPLY_SUCCESS, "OK");
+	}
+
+	@Override
+	public void abort(int closeCode, String closeMessage) throws IOException {
+		shutdown(new ShutdownSignalException(false, true, closeCode + " " + closeMessage, this));
+	}
+
+	/**
+	 * Close this channel, cancel its consumers and stop delivering messages.
+	 */
+	void shutdown(final ShutdownSignalException cause) {
+		if (!setShutdownCauseIfOpen(cause))
+			return;
+
+		// Cancel consumers
+		List<Subscription> subscriptions;
+		synchronized (this) {
+			subscriptions = new ArrayList<Subscription>(this.subscriptions);
+			this.subscriptions.clear();
+		}
+		for (final Subscription subscription : subscriptions) {
+			broker.cancel(subscription);
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					subscription.getConsumer().handleShutdownSignal(subscription.getTag(), cause);
+				}
+			}, 0);
+		}
+
+		// Pending deliveries are put back when they run
+		executor.shutdown();
+		connection.channelClosed(this);
+		notifyListeners();
+	}
+
+	private void ensureIsOpen() {
+		if (!isOpen())
+			throw new AlreadyClosedException("Channel is already closed.", getCloseReason());
+	}
+
+	/*
+	 * Listeners
+	 */
+
+	@Override
+	public void addReturnListener(ReturnListener listener) {
+		returnListeners.add(listener);
+	}
+
+	@Override
+	public boolean removeReturnListener(ReturnListener listener) {
+		return returnListeners.remove(listener);
+	}
+
+	@Override
+	public void clearReturnListeners() {
+		returnListeners.clear();
+	}
+
+	@Override
+	public void addFlowListener(FlowListener listener) {
+		flowListeners.add(listener);
+	}
+
+	@Override
+	public boolean removeFlowListener(FlowListener listener) {
+		return flowListeners.remove(listener);
+	}
+
+	@Override
+	public void clearFlowListeners() {
+		flowListeners.clear();
+	}
+
+	@Override
+	public void addConfirmListener(ConfirmListener listener) {
+		confirmListeners.add(listener);
+	}
+
+	@Override
+	public boolean removeConfirmListener(ConfirmListener listener) {
+		return confirmListeners.remove(listener);
+	}
+
+	@Override
+	public void clearConfirmListeners() {
+		confirmListeners.clear();
+	}
+
+	@Override
+	public Consumer getDefaultConsumer() {
+		return defaultConsumer;
+	}
+
+	@Override
+	public void setDefaultConsumer(Consumer consumer) {
+		this.defaultConsumer = consumer;
+	}
+
+	/*
+	 * Flow control
+	 */
+
+	@Override
+	public AMQP.Channel.FlowOk flow(boolean active) throws IOException {
+		ensureIsOpen();
+		return new AMQImpl.Channel.FlowOk(true);
+	}
+
+	@Override
+	public AMQP.Channel.FlowOk getFlow() {
+		return new AMQImpl.Channel.FlowOk(true);
+	}
+
+	@Override
+	public void basicQos(int prefetchSize, int prefetchCount, boolean global) throws IOException {
+		ensureIsOpen();
+	}
+
+	@Override
+	public void basicQos(int prefetchCount) throws IOException {
+		ensureIsOpen();
+	}
+
+	/*
+	 * Exchanges
+	 */
+
+	@Override
+	public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type) throws IOException {
+		ensureIsOpen();
+		broker.declareExchange(exchange, type);
+		return new AMQImpl.Exchange.DeclareOk();
+	}
+
+	@Override
+	public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable)
+			throws IOException {
+		return exchangeDeclare(exchange, type);
+	}
+
+	@Override
+	public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable,
+			boolean autoDelete, Map<String, Object> arguments) throws IOException {
+		return exchangeDeclare(exchange, type);
+	}
+
+	@Override
+	public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable,
+			boolean autoDelete, boolean internal, Map<String, Object> arguments) throws IOException {
+		return exchangeDeclare(exchange, type);
+	}
+
+	@Override
+	public AMQP.Exchange.DeclareOk exchangeDeclarePassive(String exchange) throws IOException {
+		ensureIsOpen();
+		broker.checkExchange(exchange);
+		return new AMQImpl.Exchange.DeclareOk();
+	}
+
+	@Override
+	public AMQP.Exchange.DeleteOk exchangeDelete(String exchange, boolean ifUnused) throws IOException {
+		ensureIsOpen();
+		broker.deleteExchange(exchange, ifUnused);
+		return new AMQImpl.Exchange.DeleteOk();
+	}
+
+	@Override
+	public AMQP.Exchange.DeleteOk exchangeDelete(String exchange) throws IOException {
+		return exchangeDelete(exchange, false);
+	}
+
+	@Override
+	public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey)
+			throws IOException {
+		throw new UnsupportedOperationException("Exchange to exchange bindings are not supported.");
+	}
+
+	@Override
+	public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey,
+			Map<String, Object> arguments) throws IOException {
+		return exchangeBind(destination, source, routingKey);
+	}
+
+	@Override
+	public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey)
+			throws IOException {
+		throw new UnsupportedOperationException("Exchange to exchange bindings are not supported.");
+	}
+
+	@Override
+	public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey,
+			Map<String, Object> arguments) throws IOException {
+		return exchangeUnbind(destination, source, routingKey);
+	}
+
+	/*
+	 * Queues
+	 */
+
+	@Override
+	public AMQP.Queue.DeclareOk queueDeclare() throws IOException {
+		return queueDeclare("", false, true, true, null);
+	}
+
+	@Override
+	public AMQP.Queue.DeclareOk queueDeclare(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+			Map<String, Object> arguments) throws IOException {
+		ensureIsOpen();
+		return declareOk(broker.declareQueue(queue, connection, exclusive, autoDelete));
+	}
+
+	@Override
+	public AMQP.Queue.DeclareOk queueDeclarePassive(String queue) throws IOException {
+		ensureIsOpen();
+		return declareOk(broker.getQueue(queue, connection));
+	}
+
+	private AMQP.Queue.DeclareOk declareOk(MessageQueue queue) {
+		return new AMQImpl.Queue.DeclareOk(queue.getName(), broker.getMessageCount(queue),
+				broker.getConsumerCount(queue));
+	}
+
+	@Override
+	public AMQP.Queue.DeleteOk queueDelete(String queue) throws IOException {
+		return queueDelete(queue, false, false);
+	}
+
+	@Override
+	public AMQP.Queue.DeleteOk queueDelete(String queue, boolean ifUnused, boolean ifEmpty) throws IOException {
+		ensureIsOpen();
+		return new AMQImpl.Queue.DeleteOk(broker.deleteQueue(queue, connection, ifUnused, ifEmpty));
+	}
+
+	@Override
+	public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey) throws IOException {
+		ensureIsOpen();
+		broker.bind(queue, connection, exchange, routingKey);
+		return new AMQImpl.Queue.BindOk();
+	}
+
+	@Override
+	public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey,
+			Map<String, Object> arguments) throws IOException {
+		return queueBind(queue, exchange, routingKey);
+	}
+
+	@Override
+	public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey) throws IOException {
+		ensureIsOpen();
+		broker.unbind(queue, connection, exchange, routingKey);
+		return new AMQImpl.Queue.UnbindOk();
+	}
+
+	@Override
+	public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey,
+			Map<String, Object> arguments) throws IOException {
+		return queueUnbind(queue, exchange, routingKey);
+	}
+
+	@Override
+	public AMQP.Queue.PurgeOk queuePurge(String queue) throws IOException {
+		ensureIsOpen();
+		return new AMQImpl.Queue.PurgeOk(broker.purgeQueue(queue, connection));
+	}
+
+	/*
+	 * Publishing
+	 */
+
+	@Override
+	public void basicPublish(String exchange, String routingKey, BasicProperties props, byte[] body)
+			throws IOException {
+		basicPublish(exchange, routingKey, false, false, props, body);
+	}
+
+	@Override
+	public void basicPublish(String exchange, String routingKey, boolean mandatory, BasicProperties props,
+			byte[] body) throws IOException {
+		basicPublish(exchange, routingKey, mandatory, false, props, body);
+	}
+
+	@Override
+	public void basicPublish(final String exchange, final String routingKey, boolean mandatory, boolean immediate,
+			BasicProperties props, final byte[] body) throws IOException {
+		ensureIsOpen();
+		if (isConfirming) {
+			publishSequence.incrementAndGet();
+		}
+		if (props == null) {
+			props = new AMQP.BasicProperties();
+		}
+
+		boolean isRouted = broker.publish(exchange, routingKey, props, body.clone());
+		if (!isRouted && mandatory) {
+			// Return to sender
+			final BasicProperties properties = props;
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					for (ReturnListener listener : returnListeners) {
+						try {
+							listener.handleReturn(AMQP.NO_ROUTE, "NO_ROUTE", exchange, routingKey, properties, body);
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+			}, 0);
+		}
+	}
+
+	/*
+	 * Consuming
+	 */
+
+	@Override
+	public GetResponse basicGet(String queue, boolean autoAck) throws IOException {
+		ensureIsOpen();
+		Message message = broker.get(queue, connection);
+		if (message == null)
+			return null;
+		Envelope envelope = new Envelope(deliveryTag.incrementAndGet(), false, message.getExchange(),
+				message.getRoutingKey());
+		return new GetResponse(envelope, message.getProperties(), message.getBody(), 0);
+	}
+
+	@Override
+	public void basicAck(long deliveryTag, boolean multiple) throws IOException {
+		ensureIsOpen();
+	}
+
+	@Override
+	public void basicNack(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+		ensureIsOpen();
+	}
+
+	@Override
+	public void basicReject(long deliveryTag, boolean requeue) throws IOException {
+		ensureIsOpen();
+	}
+
+	@Override
+	public String basicConsume(String queue, Consumer callback) throws IOException {
+		return basicConsume(queue, false, callback);
+	}
+
+	@Override
+	public String basicConsume(String queue, boolean autoAck, Consumer callback) throws IOException {
+		return basicConsume(queue, autoAck, "", callback);
+	}
+
+	@Override
+	public String basicConsume(String queue, boolean autoAck, String consumerTag, Consumer callback)
+			throws IOException {
+		return basicConsume(queue, autoAck, consumerTag, false, false, null, callback);
+	}
+
+	@Override
+	public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal,
+			boolean exclusive, Map<String, Object> arguments, Consumer callback) throws IOException {
+		ensureIsOpen();
+		return broker.consume(queue, this, consumerTag, callback).getTag();
+	}
+
+	/**
+	 * Register a new subscription on this channel.
+	 *
+	 * <p>
+	 * Called by the broker before any message is delivered to the
+	 * subscription.
+	 * </p>
+	 */
+	void consumerRegistered(final Subscription subscription) {
+		synchronized (this) {
+			subscriptions.add(subscription);
+		}
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				subscription.getConsumer().handleConsumeOk(subscription.getTag());
+			}
+		}, 0);
+	}
+
+	@Override
+	public void basicCancel(String consumerTag) throws IOException {
+		ensureIsOpen();
+		final Subscription subscription = removeSubscription(consumerTag);
+		if (subscription == null)
+			throw new IOException("Unknown consumer tag '" + consumerTag + "'");
+
+		broker.cancel(subscription);
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				subscription.getConsumer().handleCancelOk(subscription.getTag());
+			}
+		}, 0);
+	}
+
+	/**
+	 * Notify a consumer that its queue was deleted.
+	 */
+	void consumerCancelled(final Subscription subscription) {
+		if (removeSubscription(subscription.getTag()) == null)
+			return;
+
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					subscription.getConsumer().handleCancel(subscription.getTag());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, 0);
+	}
+
+	private synchronized Subscription removeSubscription(String consumerTag) {
+		for (int i = 0; i < subscriptions.size(); i++) {
+			if (subscriptions.get(i).getTag().equals(consumerTag)) {
+				return subscriptions.remove(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Hand a message to a consumer of this channel after the given delay.
+	 *
+	 * <p>
+	 * When the consumer is no longer active once the delay has passed, the
+	 * message is put back on its queue.
+	 * </p>
+	 */
+	void deliver(final Subscription subscription, final Message message, long delay) {
+		boolean isScheduled = dispatch(new Runnable() {
+			@Override
+			public void run() {
+				if (!subscription.isActive() || !isOpen()) {
+					broker.requeue(subscription.getQueue(), message);
+					return;
+				}
+				Envelope envelope = new Envelope(deliveryTag.incrementAndGet(), false, message.getExchange(),
+						message.getRoutingKey());
+				try {
+					subscription.getConsumer().handleDelivery(subscription.getTag(), envelope,
+							message.getProperties(), message.getBody());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, delay);
+		if (!isScheduled) {
+			broker.requeue(subscription.getQueue(), message);
+		}
+	}
+
+	private boolean dispatch(final Runnable task, long delay) {
+		Runnable safeTask = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// Keep delivering
+					e.printStackTrace();
+				}
+			}
+		};
+		try {
+			if (delay > 0) {
+				executor.schedule(safeTask, delay, TimeUnit.MILLISECONDS);
+			} else {
+				executor.execute(safeTask);
+			}
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public AMQP.Basic.RecoverOk basicRecover() throws IOException {
+		return basicRecover(true);
+	}
+
+	@Override
+	public AMQP.Basic.RecoverOk basicRecover(boolean requeue) throws IOException {
+		// Messages are never held back
+		ensureIsOpen();
+		return new AMQImpl.Basic.RecoverOk();
+	}
+
+	@Override
+	public void basicRecoverAsync(boolean requeue) throws IOException {
+		ensureIsOpen();
+	}
+
+	/*
+	 * Transactions and confirms
+	 */
+
+	@Override
+	public AMQP.Tx.SelectOk txSelect() throws IOException {
+		throw new UnsupportedOperationException("Transactions are not supported.");
+	}
+
+	@Override
+	public AMQP.Tx.CommitOk txCommit() throws IOException {
+		throw new UnsupportedOperationException("Transactions are not supported.");
+	}
+
+	@Override
+	public AMQP.Tx.RollbackOk txRollback() throws IOException {
+		throw new UnsupportedOperationException("Transactions are not supported.");
+	}
+
+	@Override
+	public AMQP.Confirm.SelectOk confirmSelect() throws IOException {
+		ensureIsOpen();
+		isConfirming = true;
+		return new AMQImpl.Confirm.SelectOk();
+	}
+
+	@Override
+	public long getNextPublishSeqNo() {
+		return isConfirming ? publishSequence.get() + 1 : 0;
+	}
+
+	/*
+	 * Messages are accepted by the broker as soon as they are published.
+	 */
+
+	@Override
+	public boolean waitForConfirms() throws InterruptedException {
+		return true;
+	}
+
+	@Override
+	public boolean waitForConfirms(long timeout) throws InterruptedException, TimeoutException {
+		return true;
+	}
+
+	@Override
+	public void waitForConfirmsOrDie() throws IOException, InterruptedException {
+	}
+
+	@Override
+	public void waitForConfirmsOrDie(long timeout) throws IOException, InterruptedException, TimeoutException {
+	}
+
+	@Override
+	public void asyncRpc(Method method) throws IOException {
+		throw new UnsupportedOperationException("Raw method calls are not supported.");
+	}
+
+	@Override
+	public Command rpc(Method method) throws IOException {
+		throw new UnsupportedOperationException("Raw method calls are not supported.");
+	}
+
+	@Override
+	public String toString() {
+		return connection + "#" + channelNumber;
+	}
+
+}
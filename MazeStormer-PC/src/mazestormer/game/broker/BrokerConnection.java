@@ -0,0 +1,168 @@
+package mazestormer.game.broker;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.ShutdownNotifierComponent;
+
+/**
+ * A connection to an {@link InProcessBroker}.
+ *
+ * <p>
+ * Closing the connection closes all its channels and deletes its exclusive
+ * queues.
+ * </p>
+ */
+class BrokerConnection extends ShutdownNotifierComponent implements Connection {
+
+	private final InProcessBroker broker;
+	private final Map<Integer, BrokerChannel> channels = new HashMap<Integer, BrokerChannel>();
+	private int nextChannelNumber = 1;
+
+	public BrokerConnection(InProcessBroker broker) {
+		this.broker = broker;
+	}
+
+	public InProcessBroker getBroker() {
+		return broker;
+	}
+
+	@Override
+	public InetAddress getAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public int getPort() {
+		return -1;
+	}
+
+	@Override
+	public int getChannelMax() {
+		return 0;
+	}
+
+	@Override
+	public int getFrameMax() {
+		return 0;
+	}
+
+	@Override
+	public int getHeartbeat() {
+		return 0;
+	}
+
+	@Override
+	public Map<String, Object> getClientProperties() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Map<String, Object> getServerProperties() {
+		return Collections.<String, Object> singletonMap("product", "MazeStormer in-process broker");
+	}
+
+	@Override
+	public synchronized Channel createChannel() throws IOException {
+		ensureIsOpen();
+		while (channels.containsKey(nextChannelNumber)) {
+			nextChannelNumber++;
+		}
+		return createChannel(nextChannelNumber++);
+	}
+
+	@Override
+	public synchronized Channel createChannel(int channelNumber) throws IOException {
+		ensureIsOpen();
+		if (channels.containsKey(channelNumber))
+			return null;
+		BrokerChannel channel = new BrokerChannel(this, channelNumber);
+		channels.put(channelNumber, channel);
+		return channel;
+	}
+
+	synchronized void channelClosed(BrokerChannel channel) {
+		channels.remove(channel.getChannelNumber());
+	}
+
+	private void ensureIsOpen() {
+		if (!isOpen())
+			throw new AlreadyClosedException("Connection is already closed.", getCloseReason());
+	}
+
+	@Override
+	public void close() throws IOException {
+		close(AMQP.REPLY_SUCCESS, "OK");
+	}
+
+	@Override
+	public void close(int closeCode, String closeMessage) throws IOException {
+		ensureIsOpen();
+		shutdown(closeCode, closeMessage);
+	}
+
+	@Override
+	public void close(int timeout) throws IOException {
+		close();
+	}
+
+	@Override
+	public void close(int closeCode, String closeMessage, int timeout) throws IOException {
+		close(closeCode, closeMessage);
+	}
+
+	@Override
+	public void abort() {
+		abort(AMQP.REPLY_SUCCESS, "OK");
+	}
+
+	@Override
+	public void abort(int closeCode, String closeMessage) {
+		shutdown(closeCode, closeMessage);
+	}
+
+	@Override
+	public void abort(int timeout) {
+		abort();
+	}
+
+	@Override
+	public void abort(int closeCode, String closeMessage, int timeout) {
+		abort(closeCode, closeMessage);
+	}
+
+	private void shutdown(int closeCode, String closeMessage) {
+		ShutdownSignalException cause = new ShutdownSignalException(true, true, closeCode + " " + closeMessage, this);
+		if (!setShutdownCauseIfOpen(cause))
+			return;
+
+		// Close channels
+		List<BrokerChannel> channels;
+		synchronized (this) {
+			channels = new ArrayList<BrokerChannel>(this.channels.values());
+		}
+		for (BrokerChannel channel : channels) {
+			channel.shutdown(cause);
+		}
+
+		// Delete exclusive queues
+		broker.connectionClosed(this);
+		notifyListeners();
+	}
+
+	@Override
+	public String toString() {
+		return "in-process://" + Integer.toHexString(System.identityHashCode(broker));
+	}
+
+}
@@ -0,0 +1,543 @@
+package mazestormer.game.broker;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mazestormer.game.GameTransport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+
+/**
+ * A message broker running in the same virtual machine.
+ *
+ * <p>
+ * The broker implements the subset of AMQP used by the game protocol: direct,
+ * fanout and topic exchanges, the default exchange, named and server-named
+ * queues, exclusive and auto-delete queues and round-robin delivery to
+ * consumers. Its connections implement the RabbitMQ client interfaces, so the
+ * game clients can use it without any changes. This allows running complete
+ * games with several players without a RabbitMQ server.
+ * </p>
+ *
+ * <p>
+ * To simulate a real network, every delivery can be delayed by a fixed latency
+ * and dropped with a given probability. Messages are never reordered on a
+ * single channel.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class InProcessBroker implements GameTransport {
+
+	/**
+	 * Name of the default exchange, which routes messages to the queue named by
+	 * their routing key.
+	 */
+	public static final String defaultExchange = "";
+
+	private static InProcessBroker shared;
+
+	private final Map<String, Exchange> exchanges = new HashMap<String, Exchange>();
+	private final Map<String, MessageQueue> queues = new HashMap<String, MessageQueue>();
+	private final Random random;
+	private long nameCounter = 0;
+
+	private volatile long latency = 0; // ms
+	private volatile double lossRate = 0d;
+
+	private final AtomicLong publishedCount = new AtomicLong();
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong unroutableCount = new AtomicLong();
+
+	/**
+	 * Create a new broker.
+	 *
+	 * @param seed
+	 *            The seed for the random generator deciding which messages are
+	 *            lost.
+	 */
+	public InProcessBroker(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public InProcessBroker() {
+		this.random = new Random();
+	}
+
+	/**
+	 * Get the broker shared by all components in this virtual machine.
+	 */
+	public static synchronized InProcessBroker getShared() {
+		if (shared == null) {
+			shared = new InProcessBroker();
+		}
+		return shared;
+	}
+
+	/**
+	 * Open a new connection to this broker.
+	 */
+	public Connection newConnection() {
+		return new BrokerConnection(this);
+	}
+
+	@Override
+	public Connection getConnection() {
+		return newConnection();
+	}
+
+	/**
+	 * Get the delay of every delivery, in milliseconds.
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Set the delay of every delivery, in milliseconds.
+	 */
+	public void setLatency(long latency) {
+		if (latency < 0)
+			throw new IllegalArgumentException("Latency must be positive.");
+		this.latency = latency;
+	}
+
+	/**
+	 * Get the probability that a delivery is lost.
+	 */
+	public double getLossRate() {
+		return lossRate;
+	}
+
+	/**
+	 * Set the probability that a delivery is lost.
+	 *
+	 * <p>
+	 * Every queue receiving a published message decides independently
+	 * whether its copy is lost.
+	 * </p>
+	 */
+	public void setLossRate(double lossRate) {
+		if (lossRate < 0d || lossRate > 1d)
+			throw new IllegalArgumentException("Loss rate must be between 0 and 1.");
+		this.lossRate = lossRate;
+	}
+
+	/**
+	 * Get the number of published messages.
+	 */
+	public long getPublishedCount() {
+		return publishedCount.get();
+	}
+
+	/**
+	 * Get the number of messages handed to consumers.
+	 */
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * Get the number of deliveries which were lost on purpose.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Get the number of published messages which did not match any queue.
+	 */
+	public long getUnroutableCount() {
+		return unroutableCount.get();
+	}
+
+	/*
+	 * Exchanges
+	 */
+
+	synchronized void declareExchange(String name, String type) throws IOException {
+		if (name.equals(defaultExchange))
+			return;
+		if (!type.equals("direct") && !type.equals("fanout") && !type.equals("topic"))
+			throw new IOException("COMMAND_INVALID - unknown exchange type '" + type + "'");
+
+		Exchange exchange = exchanges.get(name);
+		if (exchange == null) {
+			exchanges.put(name, new Exchange(name, type));
+		} else if (!exchange.type.equals(type)) {
+			throw new IOException("PRECONDITION_FAILED - cannot redeclare exchange '" + name + "' with type '"
+					+ type + "'");
+		}
+	}
+
+	synchronized void checkExchange(String name) throws IOException {
+		if (!name.equals(defaultExchange)) {
+			getExchange(name);
+		}
+	}
+
+	synchronized void deleteExchange(String name, boolean ifUnused) throws IOException {
+		Exchange exchange = getExchange(name);
+		if (ifUnused && !exchange.bindings.isEmpty())
+			throw new IOException("PRECONDITION_FAILED - exchange '" + name + "' in use");
+		exchanges.remove(name);
+	}
+
+	private Exchange getExchange(String name) throws IOException {
+		Exchange exchange = exchanges.get(name);
+		if (exchange == null)
+			throw new IOException("NOT_FOUND - no exchange '" + name + "'");
+		return exchange;
+	}
+
+	/*
+	 * Queues
+	 */
+
+	synchronized MessageQueue declareQueue(String name, BrokerConnection connection, boolean exclusive,
+			boolean autoDelete) throws IOException {
+		if (name.isEmpty()) {
+			do {
+				name = "amq.gen-" + (++nameCounter);
+			} while (queues.containsKey(name));
+		}
+
+		MessageQueue queue = queues.get(name);
+		if (queue == null) {
+			queue = new MessageQueue(name, exclusive ? connection : null, autoDelete);
+			queues.put(name, queue);
+		} else {
+			checkAccess(queue, connection);
+		}
+		return queue;
+	}
+
+	synchronized MessageQueue getQueue(String name, BrokerConnection connection) throws IOException {
+		MessageQueue queue = queues.get(name);
+		if (queue == null)
+			throw new IOException("NOT_FOUND - no queue '" + name + "'");
+		checkAccess(queue, connection);
+		return queue;
+	}
+
+	private void checkAccess(MessageQueue queue, BrokerConnection connection) throws IOException {
+		if (queue.owner != null && queue.owner != connection)
+			throw new IOException("RESOURCE_LOCKED - cannot obtain exclusive access to queue '" + queue.name + "'");
+	}
+
+	synchronized int deleteQueue(String name, BrokerConnection connection, boolean ifUnused, boolean ifEmpty)
+			throws IOException {
+		MessageQueue queue = getQueue(name, connection);
+		if (ifUnused && !queue.consumers.isEmpty())
+			throw new IOException("PRECONDITION_FAILED - queue '" + name + "' in use");
+		if (ifEmpty && !queue.messages.isEmpty())
+			throw new IOException("PRECONDITION_FAILED - queue '" + name + "' not empty");
+		int messageCount = queue.messages.size();
+		removeQueue(queue);
+		return messageCount;
+	}
+
+	private void removeQueue(MessageQueue queue) {
+		queues.remove(queue.name);
+		// Remove bindings
+		for (Exchange exchange : exchanges.values()) {
+			Iterator<Binding> it = exchange.bindings.iterator();
+			while (it.hasNext()) {
+				if (it.next().queue == queue) {
+					it.remove();
+				}
+			}
+		}
+		// Notify consumers
+		for (Subscription subscription : queue.consumers) {
+			subscription.deactivate();
+			subscription.getChannel().consumerCancelled(subscription);
+		}
+		queue.consumers.clear();
+		queue.messages.clear();
+	}
+
+	synchronized int purgeQueue(String name, BrokerConnection connection) throws IOException {
+		MessageQueue queue = getQueue(name, connection);
+		int messageCount = queue.messages.size();
+		queue.messages.clear();
+		return messageCount;
+	}
+
+	synchronized void bind(String queueName, BrokerConnection connection, String exchangeName, String routingKey)
+			throws IOException {
+		MessageQueue queue = getQueue(queueName, connection);
+		Exchange exchange = getExchange(exchangeName);
+		Binding binding = new Binding(queue, routingKey);
+		if (!exchange.bindings.contains(binding)) {
+			exchange.bindings.add(binding);
+		}
+	}
+
+	synchronized void unbind(String queueName, BrokerConnection connection, String exchangeName, String routingKey)
+			throws IOException {
+		MessageQueue queue = getQueue(queueName, connection);
+		Exchange exchange = getExchange(exchangeName);
+		exchange.bindings.remove(new Binding(queue, routingKey));
+	}
+
+	/**
+	 * Delete the exclusive queues of a closed connection.
+	 */
+	synchronized void connectionClosed(BrokerConnection connection) {
+		for (MessageQueue queue : new ArrayList<MessageQueue>(queues.values())) {
+			if (queue.owner == connection) {
+				removeQueue(queue);
+			}
+		}
+	}
+
+	/*
+	 * Messages
+	 */
+
+	/**
+	 * Route a message to all matching queues.
+	 *
+	 * @return True if at least one queue matched.
+	 */
+	synchronized boolean publish(String exchangeName, String routingKey, AMQP.BasicProperties properties, byte[] body)
+			throws IOException {
+		publishedCount.incrementAndGet();
+
+		// Find queues
+		Set<MessageQueue> targets = new LinkedHashSet<MessageQueue>();
+		if (exchangeName.equals(defaultExchange)) {
+			MessageQueue queue = queues.get(routingKey);
+			if (queue != null) {
+				targets.add(queue);
+			}
+		} else {
+			getExchange(exchangeName).route(routingKey, targets);
+		}
+		if (targets.isEmpty()) {
+			unroutableCount.incrementAndGet();
+			return false;
+		}
+
+		// Deliver copies
+		Message message = new Message(exchangeName, routingKey, properties, body);
+		double lossRate = this.lossRate;
+		for (MessageQueue queue : targets) {
+			if (lossRate > 0d && random.nextDouble() < lossRate) {
+				droppedCount.incrementAndGet();
+			} else {
+				enqueue(queue, message, latency);
+			}
+		}
+		return true;
+	}
+
+	private void enqueue(MessageQueue queue, Message message, long delay) {
+		Subscription subscription = queue.nextConsumer();
+		if (subscription == null) {
+			queue.messages.add(message);
+		} else {
+			deliveredCount.incrementAndGet();
+			subscription.getChannel().deliver(subscription, message, delay);
+		}
+	}
+
+	/**
+	 * Put back a message which could not be handed to its consumer.
+	 */
+	synchronized void requeue(MessageQueue queue, Message message) {
+		deliveredCount.decrementAndGet();
+		if (queues.get(queue.name) == queue) {
+			enqueue(queue, message, 0);
+		}
+	}
+
+	synchronized Message get(String queueName, BrokerConnection connection) throws IOException {
+		return getQueue(queueName, connection).messages.poll();
+	}
+
+	synchronized int getMessageCount(MessageQueue queue) {
+		return queue.messages.size();
+	}
+
+	synchronized int getConsumerCount(MessageQueue queue) {
+		return queue.consumers.size();
+	}
+
+	/*
+	 * Consumers
+	 */
+
+	synchronized Subscription consume(String queueName, BrokerChannel channel, String consumerTag,
+			Consumer consumer) throws IOException {
+		MessageQueue queue = getQueue(queueName, channel.getBrokerConnection());
+		if (consumerTag.isEmpty()) {
+			consumerTag = "amq.ctag-" + (++nameCounter);
+		}
+		Subscription subscription = new Subscription(queue, channel, consumerTag, consumer);
+		channel.consumerRegistered(subscription);
+		queue.consumers.add(subscription);
+
+		// Deliver waiting messages
+		while (!queue.messages.isEmpty()) {
+			enqueue(queue, queue.messages.poll(), 0);
+		}
+		return subscription;
+	}
+
+	synchronized void cancel(Subscription subscription) {
+		if (!subscription.deactivate())
+			return;
+		MessageQueue queue = subscription.getQueue();
+		queue.consumers.remove(subscription);
+		if (queue.autoDelete && queue.consumers.isEmpty() && queues.get(queue.name) == queue) {
+			removeQueue(queue);
+		}
+	}
+
+	/**
+	 * A message on its way to a queue.
+	 */
+	static class Message {
+
+		private final String exchange;
+		private final String routingKey;
+		private final AMQP.BasicProperties properties;
+		private final byte[] body;
+
+		public Message(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+			this.exchange = exchange;
+			this.routingKey = routingKey;
+			this.properties = properties;
+			this.body = body;
+		}
+
+		public String getExchange() {
+			return exchange;
+		}
+
+		public String getRoutingKey() {
+			return routingKey;
+		}
+
+		public AMQP.BasicProperties getProperties() {
+			return properties;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+	}
+
+	/**
+	 * A named queue holding messages while it has no consumers.
+	 */
+	static class MessageQueue {
+
+		private final String name;
+		private final BrokerConnection owner;
+		private final boolean autoDelete;
+
+		private final Queue<Message> messages = new ArrayDeque<Message>();
+		private final List<Subscription> consumers = new ArrayList<Subscription>();
+		private int nextConsumer = 0;
+
+		public MessageQueue(String name, BrokerConnection owner, boolean autoDelete) {
+			this.name = name;
+			this.owner = owner;
+			this.autoDelete = autoDelete;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		private Subscription nextConsumer() {
+			if (consumers.isEmpty())
+				return null;
+			nextConsumer = (nextConsumer + 1) % consumers.size();
+			return consumers.get(nextConsumer);
+		}
+
+	}
+
+	private static class Exchange {
+
+		private final String name;
+		private final String type;
+		private final List<Binding> bindings = new ArrayList<Binding>();
+
+		public Exchange(String name, String type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		public void route(String routingKey, Set<MessageQueue> targets) {
+			for (Binding binding : bindings) {
+				if (binding.matches(type, routingKey)) {
+					targets.add(binding.queue);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + type + ")";
+		}
+
+	}
+
+	private static class Binding {
+
+		private final MessageQueue queue;
+		private final String key;
+
+		public Binding(MessageQueue queue, String key) {
+			this.queue = queue;
+			this.key = key;
+		}
+
+		public boolean matches(String type, String routingKey) {
+			switch (type) {
+			case "fanout":
+				return true;
+			case "topic":
+				return TopicMatcher.matches(key, routingKey);
+			default:
+				return key.equals(routingKey);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * queue.hashCode() + key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Binding))
+				return false;
+			Binding other = (Binding) obj;
+			return queue == other.queue && key.equals(other.key);
+		}
+
+	}
+
+}
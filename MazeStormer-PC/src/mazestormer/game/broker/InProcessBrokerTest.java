@@ -0,0 +1,173 @@
+package mazestormer.game.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+public class InProcessBrokerTest {
+
+	private static final long timeout = 1000; // ms
+
+	private InProcessBroker broker;
+	private Connection connection;
+	private Channel channel;
+
+	@Before
+	public void setUp() throws IOException {
+		broker = new InProcessBroker(42L);
+		connection = broker.newConnection();
+		channel = connection.createChannel();
+		channel.exchangeDeclare("game", "topic");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (connection.isOpen()) {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void topicPatterns() {
+		assertTrue(TopicMatcher.matches("player.*.tiles", "player.1.tiles"));
+		assertFalse(TopicMatcher.matches("player.*.tiles", "player.tiles"));
+		assertTrue(TopicMatcher.matches("player.#", "player"));
+		assertTrue(TopicMatcher.matches("#.tiles", "player.1.tiles"));
+		assertTrue(TopicMatcher.matches("a.#.b.#", "a.x.b.y.z"));
+		assertFalse(TopicMatcher.matches("a.#.b", "a.x.c"));
+	}
+
+	@Test
+	public void topicRouting() throws Exception {
+		Recorder tiles = consume(bind("*.tiles"), 1);
+		Recorder all = consume(bind("#"), 2);
+
+		publish("team1.tiles", "a");
+		publish("team1.position", "b");
+
+		tiles.await();
+		all.await();
+		assertEquals(1, tiles.getMessages().size());
+		assertEquals("a", tiles.getMessages().get(0));
+		assertEquals(2, all.getMessages().size());
+	}
+
+	@Test
+	public void bufferUntilConsumed() throws Exception {
+		String queue = bind("#");
+		publish("first", "1");
+		publish("second", "2");
+
+		Recorder recorder = consume(queue, 2);
+		recorder.await();
+		assertEquals(2, recorder.getMessages().size());
+		assertEquals("1", recorder.getMessages().get(0));
+		assertEquals("2", recorder.getMessages().get(1));
+	}
+
+	@Test
+	public void latency() throws Exception {
+		broker.setLatency(100);
+		Recorder recorder = consume(bind("#"), 1);
+
+		long start = System.nanoTime();
+		publish("key", "delayed");
+		recorder.await();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(1, recorder.getMessages().size());
+		assertTrue(elapsed >= 90);
+	}
+
+	@Test
+	public void loss() throws Exception {
+		broker.setLossRate(1d);
+		Recorder recorder = consume(bind("#"), 1);
+
+		publish("key", "lost");
+		recorder.await(100);
+
+		assertTrue(recorder.getMessages().isEmpty());
+		assertEquals(1, broker.getDroppedCount());
+	}
+
+	@Test
+	public void exclusiveQueueDeletedOnClose() throws Exception {
+		String queue = bind("#");
+		connection.close();
+
+		Channel other = broker.newConnection().createChannel();
+		try {
+			other.queueDeclarePassive(queue);
+			fail("Exclusive queue should be deleted.");
+		} catch (IOException expected) {
+		}
+	}
+
+	private String bind(String pattern) throws IOException {
+		String queue = channel.queueDeclare().getQueue();
+		channel.queueBind(queue, "game", pattern);
+		return queue;
+	}
+
+	private Recorder consume(String queue, int count) throws IOException {
+		Recorder recorder = new Recorder(channel, count);
+		channel.basicConsume(queue, true, recorder);
+		return recorder;
+	}
+
+	private void publish(String routingKey, String message) throws IOException {
+		channel.basicPublish("game", routingKey, null, message.getBytes());
+	}
+
+	private static class Recorder extends DefaultConsumer {
+
+		private final List<String> messages = new ArrayList<String>();
+		private final CountDownLatch latch;
+
+		public Recorder(Channel channel, int count) {
+			super(channel);
+			this.latch = new CountDownLatch(count);
+		}
+
+		public synchronized List<String> getMessages() {
+			return new ArrayList<String>(messages);
+		}
+
+		public void await() throws InterruptedException {
+			await(timeout);
+		}
+
+		public void await(long timeout) throws InterruptedException {
+			latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+				byte[] body) throws IOException {
+			synchronized (this) {
+				messages.add(new String(body));
+			}
+			latch.countDown();
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package mazestormer.game.broker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mazestormer.game.broker.InProcessBroker.MessageQueue;
+
+import com.rabbitmq.client.Consumer;
+
+/**
+ * A consumer registered on a queue through a channel.
+ */
+class Subscription {
+
+	private final MessageQueue queue;
+	private final BrokerChannel channel;
+	private final String tag;
+	private final Consumer consumer;
+	private final AtomicBoolean isActive = new AtomicBoolean(true);
+
+	public Subscription(MessageQueue queue, BrokerChannel channel, String tag, Consumer consumer) {
+		this.queue = queue;
+		this.channel = channel;
+		this.tag = tag;
+		this.consumer = consumer;
+	}
+
+	public MessageQueue getQueue() {
+		return queue;
+	}
+
+	public BrokerChannel getChannel() {
+		return channel;
+	}
+
+	public String getTag() {
+		return tag;
+	}
+
+	public Consumer getConsumer() {
+		return consumer;
+	}
+
+	public boolean isActive() {
+		return isActive.get();
+	}
+
+	/**
+	 * Stop delivering messages to this consumer.
+	 * 
+	 * @return True if this subscription was still active.
+	 */
+	public boolean deactivate() {
+		return isActive.compareAndSet(true, false);
+	}
+
+}
@@ -0,0 +1,62 @@
+package mazestormer.game.broker;
+
+/**
+ * Matches routing keys against topic binding patterns.
+ *
+ * <p>
+ * Both routing keys and patterns consist of words separated by dots. In a
+ * pattern, {@code *} matches exactly one word and {@code #} matches zero or
+ * more words.
+ * </p>
+ */
+public final class TopicMatcher {
+
+	private TopicMatcher() {
+	}
+
+	/**
+	 * Check whether the given routing key matches the given pattern.
+	 * 
+	 * @param pattern
+	 *            The binding pattern.
+	 * @param routingKey
+	 *            The routing key of a message.
+	 */
+	public static boolean matches(String pattern, String routingKey) {
+		return matches(split(pattern), 0, split(routingKey), 0);
+	}
+
+	private static boolean matches(String[] pattern, int p, String[] key, int k) {
+		while (p < pattern.length) {
+			String word = pattern[p];
+			if (word.equals("#")) {
+				// Skip consecutive wildcards
+				while (p + 1 < pattern.length && pattern[p + 1].equals("#")) {
+					p++;
+				}
+				if (p + 1 == pattern.length)
+					return true;
+				// Try every number of skipped words
+				for (int skip = k; skip <= key.length; skip++) {
+					if (matches(pattern, p + 1, key, skip))
+						return true;
+				}
+				return false;
+			}
+			if (k == key.length)
+				return false;
+			if (!word.equals("*") && !word.equals(key[k]))
+				return false;
+			p++;
+			k++;
+		}
+		return k == key.length;
+	}
+
+	private static String[] split(String words) {
+		if (words.isEmpty())
+			return new String[0];
+		return words.split("\\.", -1);
+	}
+
+}
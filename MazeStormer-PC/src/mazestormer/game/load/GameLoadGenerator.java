@@ -0,0 +1,608 @@
+package mazestormer.game.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mazestormer.game.ConnectionMode;
+import mazestormer.game.GameTransport;
+import mazestormer.game.broker.InProcessBroker;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.TileType;
+import mazestormer.util.LatencyHistogram;
+import peno.htttp.Callback;
+import peno.htttp.DisconnectReason;
+import peno.htttp.PlayerClient;
+import peno.htttp.PlayerDetails;
+import peno.htttp.PlayerHandler;
+import peno.htttp.PlayerType;
+import peno.htttp.SpectatorClient;
+import peno.htttp.SpectatorHandler;
+import peno.htttp.Tile;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Generates load on the game protocol and measures its latencies.
+ *
+ * <p>
+ * Synthetic players are spread over games of four players. Every player joins,
+ * becomes ready and joins a team when the game is rolled. Once the game is
+ * started, it periodically publishes its position, sends batches of tiles to
+ * its partner and locks and unlocks a seesaw. Every game is also watched by a
+ * number of spectators.
+ * </p>
+ *
+ * <p>
+ * Sequence numbers are encoded in the published coordinates, so receivers can
+ * look up when the message was sent. All clients run in the same virtual
+ * machine, so the latencies are measured with a single clock. Latencies are
+ * recorded in microseconds.
+ * </p>
+ *
+ * <p>
+ * Usage: {@code GameLoadGenerator [local|peno|in_process] [players]
+ * [spectators per game] [position interval in ms] [tile interval in ms]
+ * [duration in s] [broker latency in ms]}
+ * </p>
+ */
+public class GameLoadGenerator {
+
+	private static final int playersPerGame = 4;
+	private static final int[] seesawBarcodes = { 11, 13, 15, 17, 19, 21 };
+
+	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("GameLoadGenerator-%d")
+			.setDaemon(true).build();
+
+	private final GameTransport transport;
+	private final String runID = UUID.randomUUID().toString().substring(0, 8);
+
+	private int nbPlayers = 4;
+	private int nbSpectators = 1;
+	private long positionInterval = 2000; // ms
+	private long tileInterval = 1000; // ms
+	private int tileBatchSize = 10;
+	private long seesawInterval = 5000; // ms
+
+	private final LatencyHistogram joinLatency = new LatencyHistogram();
+	private final LatencyHistogram positionLatency = new LatencyHistogram();
+	private final LatencyHistogram tileLatency = new LatencyHistogram();
+	private final LatencyHistogram seesawLatency = new LatencyHistogram();
+	private final AtomicLong errorCount = new AtomicLong();
+
+	private ScheduledExecutorService executor;
+	private final List<SyntheticPlayer> players = new ArrayList<SyntheticPlayer>();
+	private final Map<String, SyntheticPlayer> playersByID = new HashMap<String, SyntheticPlayer>();
+	private final List<SpectatorClient> spectators = new ArrayList<SpectatorClient>();
+
+	public GameLoadGenerator(GameTransport transport) {
+		this.transport = transport;
+	}
+
+	public int getNbPlayers() {
+		return nbPlayers;
+	}
+
+	public void setNbPlayers(int nbPlayers) {
+		this.nbPlayers = nbPlayers;
+	}
+
+	/**
+	 * Get the number of spectators watching every game.
+	 */
+	public int getNbSpectators() {
+		return nbSpectators;
+	}
+
+	public void setNbSpectators(int nbSpectators) {
+		this.nbSpectators = nbSpectators;
+	}
+
+	/**
+	 * Get the time between two position updates of a player, in milliseconds.
+	 */
+	public long getPositionInterval() {
+		return positionInterval;
+	}
+
+	public void setPositionInterval(long positionInterval) {
+		this.positionInterval = positionInterval;
+	}
+
+	/**
+	 * Get the time between two tile batches of a player, in milliseconds.
+	 */
+	public long getTileInterval() {
+		return tileInterval;
+	}
+
+	public void setTileInterval(long tileInterval) {
+		this.tileInterval = tileInterval;
+	}
+
+	/**
+	 * Get the number of tiles in a single tile batch.
+	 */
+	public int getTileBatchSize() {
+		return tileBatchSize;
+	}
+
+	public void setTileBatchSize(int tileBatchSize) {
+		this.tileBatchSize = tileBatchSize;
+	}
+
+	/**
+	 * Get the time between two seesaw locks of a player, in milliseconds.
+	 */
+	public long getSeesawInterval() {
+		return seesawInterval;
+	}
+
+	public void setSeesawInterval(long seesawInterval) {
+		this.seesawInterval = seesawInterval;
+	}
+
+	/**
+	 * Get the time between joining a game and receiving the confirmation.
+	 */
+	public LatencyHistogram getJoinLatency() {
+		return joinLatency;
+	}
+
+	/**
+	 * Get the time between publishing a position and its delivery to the
+	 * partner and the spectators.
+	 */
+	public LatencyHistogram getPositionLatency() {
+		return positionLatency;
+	}
+
+	/**
+	 * Get the time between sending a tile and its delivery to the partner.
+	 */
+	public LatencyHistogram getTileLatency() {
+		return tileLatency;
+	}
+
+	/**
+	 * Get the time between locking a seesaw and its delivery to the
+	 * spectators.
+	 */
+	public LatencyHistogram getSeesawLatency() {
+		return seesawLatency;
+	}
+
+	/**
+	 * Get the number of failed protocol operations.
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * Run the generator.
+	 *
+	 * @param duration
+	 *            The time to keep generating load after all players joined.
+	 * @param unit
+	 *            The time unit of the duration.
+	 */
+	public void run(long duration, TimeUnit unit) throws IOException, InterruptedException {
+		executor = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+				factory);
+		try {
+			start();
+			unit.sleep(duration);
+		} finally {
+			stop();
+			executor.shutdownNow();
+		}
+	}
+
+	private void start() throws IOException, InterruptedException {
+		int nbGames = (nbPlayers + playersPerGame - 1) / playersPerGame;
+
+		// Spectators
+		for (int game = 0; game < nbGames; game++) {
+			for (int i = 0; i < nbSpectators; i++) {
+				SpectatorClient spectator = new SpectatorClient(transport.getConnection(), new SpectatorRecorder(),
+						getGameID(game));
+				spectator.start();
+				spectators.add(spectator);
+			}
+		}
+
+		// Players
+		for (int index = 0; index < nbPlayers; index++) {
+			SyntheticPlayer player = new SyntheticPlayer(index, getGameID(index / playersPerGame));
+			synchronized (this) {
+				players.add(player);
+				playersByID.put(player.getPlayerID(), player);
+			}
+		}
+		CountDownLatch joined = new CountDownLatch(nbPlayers);
+		for (SyntheticPlayer player : players) {
+			player.join(joined);
+		}
+		joined.await();
+	}
+
+	private void stop() {
+		for (SyntheticPlayer player : players) {
+			player.leave();
+		}
+		for (SpectatorClient spectator : spectators) {
+			spectator.stop();
+		}
+	}
+
+	private String getGameID(int game) {
+		return "load-" + runID + "-" + game;
+	}
+
+	private synchronized SyntheticPlayer getPlayer(String playerID) {
+		return playersByID.get(playerID);
+	}
+
+	private synchronized SyntheticPlayer getPlayer(long index) {
+		if (index < 0 || index >= players.size())
+			return null;
+		return players.get((int) index);
+	}
+
+	private static long elapsedMicros(long sendTime) {
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendTime);
+	}
+
+	private void failed(String operation, Throwable t) {
+		errorCount.incrementAndGet();
+		System.err.println("Could not " + operation + ": " + t.getMessage());
+	}
+
+	/**
+	 * Print the recorded latencies.
+	 */
+	public void printReport(PrintStream out) {
+		out.println(String.format("%d players, %d spectators per game, %d errors", nbPlayers, nbSpectators,
+				getErrorCount()));
+		out.println("join (us):     " + joinLatency);
+		out.println("position (us): " + positionLatency);
+		out.println("tiles (us):    " + tileLatency);
+		out.println("seesaw (us):   " + seesawLatency);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ConnectionMode mode = (args.length > 0) ? ConnectionMode.valueOf(args[0].toUpperCase())
+				: ConnectionMode.IN_PROCESS;
+		int players = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		int spectators = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+		long positionInterval = (args.length > 3) ? Long.parseLong(args[3]) : 2000;
+		long tileInterval = (args.length > 4) ? Long.parseLong(args[4]) : 1000;
+		long duration = (args.length > 5) ? Long.parseLong(args[5]) : 30;
+		long brokerLatency = (args.length > 6) ? Long.parseLong(args[6]) : 0;
+
+		InProcessBroker.getShared().setLatency(brokerLatency);
+
+		GameLoadGenerator generator = new GameLoadGenerator(mode);
+		generator.setNbPlayers(players);
+		generator.setNbSpectators(spectators);
+		generator.setPositionInterval(positionInterval);
+		generator.setTileInterval(tileInterval);
+		generator.run(duration, TimeUnit.SECONDS);
+		generator.printReport(System.out);
+	}
+
+	/**
+	 * Send times of the most recent messages, by sequence number.
+	 */
+	private static class SendLog {
+
+		private static final int capacity = 1024;
+
+		private final long[] sequences = new long[capacity];
+		private final long[] times = new long[capacity];
+		private long next = 0;
+
+		public synchronized long add(long time) {
+			long sequence = next++;
+			int i = (int) (sequence % capacity);
+			sequences[i] = sequence;
+			times[i] = time;
+			return sequence;
+		}
+
+		/**
+		 * Get the send time of the given message, or -1 if it is no longer
+		 * known.
+		 */
+		public synchronized long get(long sequence) {
+			if (sequence < 0)
+				return -1;
+			int i = (int) (sequence % capacity);
+			return (sequences[i] == sequence && sequence < next) ? times[i] : -1;
+		}
+
+	}
+
+	private class SyntheticPlayer implements PlayerHandler {
+
+		private final int index;
+		private final String playerID;
+		private final PlayerClient client;
+
+		private final SendLog positions = new SendLog();
+		private final SendLog tiles = new SendLog();
+		private volatile long seesawLockTime = -1;
+
+		private final List<ScheduledFuture<?>> tasks = new ArrayList<ScheduledFuture<?>>();
+
+		public SyntheticPlayer(int index, String gameID) throws IOException {
+			this.index = index;
+			this.playerID = "load-" + runID + "-player-" + index;
+			PlayerDetails details = new PlayerDetails(playerID, PlayerType.VIRTUAL, 0, 0);
+			this.client = new PlayerClient(transport.getConnection(), this, gameID, details);
+		}
+
+		public String getPlayerID() {
+			return playerID;
+		}
+
+		public void join(final CountDownLatch joined) {
+			final long start = System.nanoTime();
+			try {
+				client.join(new Callback<Void>() {
+					@Override
+					public void onSuccess(Void result) {
+						joinLatency.record(elapsedMicros(start));
+						joined.countDown();
+						try {
+							client.setReady(true);
+						} catch (IOException e) {
+							failed("set ready", e);
+						}
+					}
+
+					@Override
+					public void onFailure(Throwable t) {
+						failed("join", t);
+						joined.countDown();
+					}
+				});
+			} catch (IOException | IllegalStateException e) {
+				failed("join", e);
+				joined.countDown();
+			}
+		}
+
+		public void leave() {
+			stopTasks();
+			try {
+				client.leave();
+			} catch (IOException | IllegalStateException e) {
+				failed("leave", e);
+			}
+		}
+
+		private synchronized void startTasks() {
+			stopTasks();
+			tasks.add(executor.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					sendPosition();
+				}
+			}, 0, positionInterval, TimeUnit.MILLISECONDS));
+			tasks.add(executor.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					sendTiles();
+				}
+			}, tileInterval, tileInterval, TimeUnit.MILLISECONDS));
+			tasks.add(executor.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					lockSeesaw();
+				}
+			}, seesawInterval, seesawInterval, TimeUnit.MILLISECONDS));
+		}
+
+		private synchronized void stopTasks() {
+			for (ScheduledFuture<?> task : tasks) {
+				task.cancel(false);
+			}
+			tasks.clear();
+		}
+
+		private void sendPosition() {
+			long sequence = positions.add(System.nanoTime());
+			try {
+				// Encode player and sequence number in position
+				client.updatePosition(index, sequence, 0d);
+			} catch (IOException | IllegalStateException e) {
+				failed("update position", e);
+			}
+		}
+
+		private void sendTiles() {
+			if (!client.hasTeamPartner())
+				return;
+
+			long sequence = tiles.add(System.nanoTime());
+			List<Tile> batch = new ArrayList<Tile>(tileBatchSize);
+			for (int i = 0; i < tileBatchSize; i++) {
+				// Encode player and sequence number in tile position
+				batch.add(new Tile(index, sequence * tileBatchSize + i, createToken(i)));
+			}
+			try {
+				client.sendTiles(batch);
+			} catch (IOException | IllegalStateException e) {
+				failed("send tiles", e);
+			}
+		}
+
+		private void lockSeesaw() {
+			int barcode = seesawBarcodes[index % seesawBarcodes.length];
+			try {
+				seesawLockTime = System.nanoTime();
+				client.lockSeesaw(barcode);
+				client.unlockSeesaw();
+			} catch (IOException | IllegalStateException e) {
+				failed("lock seesaw", e);
+			}
+		}
+
+		private String createToken(int i) {
+			Orientation orientation = Orientation.values()[i % Orientation.values().length];
+			return TileType.STRAIGHT.getName() + '.' + orientation.getShortName();
+		}
+
+		@Override
+		public void gameRolled(int playerNumber, int objectNumber) {
+			try {
+				client.joinTeam(playerNumber % 2);
+			} catch (IOException | IllegalStateException e) {
+				failed("join team", e);
+			}
+		}
+
+		@Override
+		public void gameStarted() {
+			startTasks();
+		}
+
+		@Override
+		public void gameStopped() {
+			stopTasks();
+		}
+
+		@Override
+		public void gameWon(int teamNumber) {
+		}
+
+		@Override
+		public void playerJoining(String playerID) {
+		}
+
+		@Override
+		public void playerJoined(String playerID) {
+		}
+
+		@Override
+		public void playerDisconnected(String playerID, DisconnectReason reason) {
+		}
+
+		@Override
+		public void playerReady(String playerID, boolean isReady) {
+		}
+
+		@Override
+		public void playerFoundObject(String playerID, int playerNumber) {
+		}
+
+		@Override
+		public void teamConnected(String partnerID) {
+		}
+
+		@Override
+		public void teamDisconnected(String partnerID) {
+		}
+
+		@Override
+		public void teamTilesReceived(List<Tile> tiles) {
+			for (Tile tile : tiles) {
+				SyntheticPlayer sender = getPlayer(tile.getX());
+				if (sender != null) {
+					long sendTime = sender.tiles.get(tile.getY() / tileBatchSize);
+					if (sendTime >= 0) {
+						tileLatency.record(elapsedMicros(sendTime));
+					}
+				}
+			}
+		}
+
+		@Override
+		public void teamPosition(long x, long y, double angle) {
+			recordPosition(x, y);
+		}
+
+	}
+
+	private void recordPosition(long x, long y) {
+		SyntheticPlayer sender = getPlayer(x);
+		if (sender != null) {
+			long sendTime = sender.positions.get(y);
+			if (sendTime >= 0) {
+				positionLatency.record(elapsedMicros(sendTime));
+			}
+		}
+	}
+
+	private class SpectatorRecorder implements SpectatorHandler {
+
+		@Override
+		public void gameStarted() {
+		}
+
+		@Override
+		public void gameStopped() {
+		}
+
+		@Override
+		public void gameWon(int teamNumber) {
+		}
+
+		@Override
+		public void playerRolled(PlayerDetails playerDetails, int playerNumber) {
+		}
+
+		@Override
+		public void playerJoining(String playerID) {
+		}
+
+		@Override
+		public void playerJoined(String playerID) {
+		}
+
+		@Override
+		public void playerDisconnected(String playerID, DisconnectReason reason) {
+		}
+
+		@Override
+		public void playerReady(String playerID, boolean isReady) {
+		}
+
+		@Override
+		public void playerFoundObject(String playerID, int playerNumber) {
+		}
+
+		@Override
+		public void playerUpdate(PlayerDetails playerDetails, int playerNumber, long x, long y, double angle,
+				boolean foundObject) {
+			recordPosition(x, y);
+		}
+
+		@Override
+		public void lockedSeesaw(String playerID, int playerNumber, int barcode) {
+			SyntheticPlayer player = getPlayer(playerID);
+			if (player != null && player.seesawLockTime >= 0) {
+				seesawLatency.record(elapsedMicros(player.seesawLockTime));
+			}
+		}
+
+		@Override
+		public void unlockedSeesaw(String playerID, int playerNumber, int barcode) {
+		}
+
+	}
+
+}
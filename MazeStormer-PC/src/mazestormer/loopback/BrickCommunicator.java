@@ -0,0 +1,36 @@
+package mazestormer.loopback;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mazestormer.command.Command;
+import mazestormer.command.CommandReader;
+import mazestormer.remote.Communicator;
+import mazestormer.remote.MessageListener;
+import mazestormer.report.Report;
+
+/**
+ * Communicator on the brick side of a loopback link.
+ * 
+ * <p>
+ * Like the communicator on the NXT, commands are handled one at a time on the
+ * receiving thread.
+ * </p>
+ */
+public class BrickCommunicator extends Communicator<Report<?>, Command> {
+
+	private final List<MessageListener<? super Command>> listeners;
+
+	public BrickCommunicator(InputStream is, OutputStream os) {
+		super(is, os, new CommandReader());
+		this.listeners = new CopyOnWriteArrayList<MessageListener<? super Command>>();
+	}
+
+	@Override
+	protected List<MessageListener<? super Command>> getListeners() {
+		return listeners;
+	}
+
+}
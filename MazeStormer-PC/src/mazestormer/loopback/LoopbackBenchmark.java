@@ -0,0 +1,64 @@
+package mazestormer.loopback;
+
+import java.util.concurrent.TimeUnit;
+
+import mazestormer.connect.ConnectionContext;
+import mazestormer.connect.LoopbackConnector;
+import mazestormer.maze.Maze;
+import mazestormer.physical.PhysicalLightSensor;
+import mazestormer.player.RelativePlayer;
+import mazestormer.world.World;
+
+/**
+ * Measures the round-trip latency and throughput of light value requests over
+ * a loopback link.
+ * 
+ * <p>
+ * Usage: {@code LoopbackBenchmark [requests] [latency in ms] [bandwidth in
+ * bytes/s]}
+ * </p>
+ */
+public class LoopbackBenchmark {
+
+	public static void main(String[] args) {
+		int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		long latency = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		long bandwidth = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+
+		RelativePlayer player = new RelativePlayer("benchmark", null, new Maze());
+		World world = new World(player);
+		ConnectionContext context = new ConnectionContext();
+		context.setDeviceName("loopback");
+		context.setWorld(world);
+
+		LoopbackConnector connector = new LoopbackConnector();
+		connector.setLatency(latency);
+		connector.setBandwidth(bandwidth);
+		connector.connect(context);
+		player.setRobot(connector.getRobot());
+
+		// Always request a new value
+		PhysicalLightSensor light = (PhysicalLightSensor) connector.getRobot().getLightSensor();
+		light.setMaxStaleness(0);
+
+		LoopbackLink link = connector.getLink();
+		long hostBytes = link.getHostBytesSent();
+		long brickBytes = link.getBrickBytesSent();
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			light.getNormalizedLightValue();
+		}
+		long elapsed = System.nanoTime() - start;
+		hostBytes = link.getHostBytesSent() - hostBytes;
+		brickBytes = link.getBrickBytesSent() - brickBytes;
+
+		double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+		System.out.println(String.format("%d requests in %.3f s", requests, seconds));
+		System.out.println(String.format("round trip: %.1f us", elapsed / 1000d / requests));
+		System.out.println(String.format("throughput: %.0f requests/s", requests / seconds));
+		System.out.println(String.format("sent: %d bytes, received: %d bytes", hostBytes, brickBytes));
+
+		connector.disconnect();
+	}
+
+}
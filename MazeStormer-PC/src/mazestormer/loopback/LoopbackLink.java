@@ -0,0 +1,323 @@
+package mazestormer.loopback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process, full duplex link between a host and a simulated brick.
+ * 
+ * <p>
+ * Both directions behave like a serial link with a fixed latency and a
+ * limited bandwidth. Everything written between two flushes is sent as one
+ * packet, which is transmitted after all previously flushed packets and
+ * delivered to the other side once the latency has passed.
+ * </p>
+ */
+public class LoopbackLink {
+
+	private final Channel hostToBrick = new Channel();
+	private final Channel brickToHost = new Channel();
+
+	private volatile long latency;
+	private volatile long bandwidth;
+
+	/**
+	 * Create a new loopback link.
+	 * 
+	 * @param latency
+	 *            The one-way latency.
+	 * @param unit
+	 *            The time unit of the latency.
+	 * @param bandwidth
+	 *            The bandwidth in bytes per second, or zero for unlimited
+	 *            bandwidth.
+	 */
+	public LoopbackLink(long latency, TimeUnit unit, long bandwidth) {
+		setLatency(latency, unit);
+		setBandwidth(bandwidth);
+	}
+
+	/**
+	 * Create a new loopback link without latency and with unlimited bandwidth.
+	 */
+	public LoopbackLink() {
+		this(0, TimeUnit.MILLISECONDS, 0);
+	}
+
+	/**
+	 * Get the one-way latency.
+	 * 
+	 * @param unit
+	 *            The time unit of the result.
+	 */
+	public long getLatency(TimeUnit unit) {
+		return unit.convert(latency, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Set the one-way latency of packets which are sent from now on.
+	 * 
+	 * @param latency
+	 *            The latency.
+	 * @param unit
+	 *            The time unit of the latency.
+	 */
+	public void setLatency(long latency, TimeUnit unit) {
+		if (latency < 0) {
+			throw new IllegalArgumentException("Latency cannot be negative.");
+		}
+		this.latency = unit.toNanos(latency);
+	}
+
+	/**
+	 * Get the bandwidth in bytes per second, or zero for unlimited bandwidth.
+	 */
+	public long getBandwidth() {
+		return bandwidth;
+	}
+
+	/**
+	 * Set the bandwidth of packets which are sent from now on.
+	 * 
+	 * @param bandwidth
+	 *            The bandwidth in bytes per second, or zero for unlimited
+	 *            bandwidth.
+	 */
+	public void setBandwidth(long bandwidth) {
+		if (bandwidth < 0) {
+			throw new IllegalArgumentException("Bandwidth cannot be negative.");
+		}
+		this.bandwidth = bandwidth;
+	}
+
+	public InputStream getHostInputStream() {
+		return brickToHost.getSource();
+	}
+
+	public OutputStream getHostOutputStream() {
+		return hostToBrick.getSink();
+	}
+
+	public InputStream getBrickInputStream() {
+		return hostToBrick.getSource();
+	}
+
+	public OutputStream getBrickOutputStream() {
+		return brickToHost.getSink();
+	}
+
+	/**
+	 * Get the number of bytes sent from the host to the brick.
+	 */
+	public long getHostBytesSent() {
+		return hostToBrick.getBytesSent();
+	}
+
+	/**
+	 * Get the number of bytes sent from the brick to the host.
+	 */
+	public long getBrickBytesSent() {
+		return brickToHost.getBytesSent();
+	}
+
+	/**
+	 * Close both directions of this link.
+	 * 
+	 * <p>
+	 * Readers receive the packets which were already sent, followed by the end
+	 * of the stream.
+	 * </p>
+	 */
+	public void close() {
+		hostToBrick.close();
+		brickToHost.close();
+	}
+
+	/**
+	 * A single direction of the link.
+	 */
+	private class Channel {
+
+		private final LinkedList<Packet> packets = new LinkedList<Packet>();
+		private final Source source = new Source();
+		private final Sink sink = new Sink();
+
+		private long linkFreeTime = System.nanoTime();
+		private long bytesSent = 0;
+		private boolean isClosed = false;
+
+		public Source getSource() {
+			return source;
+		}
+
+		public Sink getSink() {
+			return sink;
+		}
+
+		public synchronized long getBytesSent() {
+			return bytesSent;
+		}
+
+		public synchronized void close() {
+			isClosed = true;
+			notifyAll();
+		}
+
+		private synchronized void send(byte[] data) throws IOException {
+			if (isClosed) {
+				throw new IOException("Link closed.");
+			}
+
+			// Transmit after all previous packets
+			long now = System.nanoTime();
+			long bandwidth = getBandwidth();
+			long transmitTime = (bandwidth == 0) ? 0 : data.length * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+			linkFreeTime = Math.max(now, linkFreeTime) + transmitTime;
+
+			packets.addLast(new Packet(data, linkFreeTime + latency));
+			bytesSent += data.length;
+			notifyAll();
+		}
+
+		/**
+		 * Wait until a packet is delivered.
+		 * 
+		 * @return The delivered packet, or null if the link was closed.
+		 */
+		private Packet awaitPacket() throws InterruptedException {
+			while (true) {
+				if (packets.isEmpty()) {
+					if (isClosed)
+						return null;
+					wait();
+				} else {
+					Packet packet = packets.getFirst();
+					long remaining = packet.getDeliveryTime() - System.nanoTime();
+					if (remaining <= 0)
+						return packet;
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			}
+		}
+
+		private synchronized int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			try {
+				Packet packet = awaitPacket();
+				if (packet == null)
+					return -1;
+				int n = packet.read(b, off, len);
+				if (packet.isConsumed()) {
+					packets.removeFirst();
+				}
+				return n;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		private synchronized int available() {
+			if (packets.isEmpty())
+				return 0;
+			Packet packet = packets.getFirst();
+			return (packet.getDeliveryTime() <= System.nanoTime()) ? packet.remaining() : 0;
+		}
+
+		private class Source extends InputStream {
+
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				int n = read(b, 0, 1);
+				return (n < 0) ? -1 : (b[0] & 0xFF);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return Channel.this.read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				return Channel.this.available();
+			}
+
+			@Override
+			public void close() {
+				Channel.this.close();
+			}
+
+		}
+
+		private class Sink extends OutputStream {
+
+			private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			@Override
+			public synchronized void write(int b) {
+				buffer.write(b);
+			}
+
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				buffer.write(b, off, len);
+			}
+
+			@Override
+			public synchronized void flush() throws IOException {
+				if (buffer.size() > 0) {
+					send(buffer.toByteArray());
+					buffer.reset();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+				Channel.this.close();
+			}
+
+		}
+
+	}
+
+	private static class Packet {
+
+		private final byte[] data;
+		private final long deliveryTime;
+		private int position = 0;
+
+		public Packet(byte[] data, long deliveryTime) {
+			this.data = data;
+			this.deliveryTime = deliveryTime;
+		}
+
+		public long getDeliveryTime() {
+			return deliveryTime;
+		}
+
+		public int remaining() {
+			return data.length - position;
+		}
+
+		public boolean isConsumed() {
+			return remaining() == 0;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			int n = Math.min(len, remaining());
+			System.arraycopy(data, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,418 @@
+package mazestormer.loopback;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lejos.robotics.RangeReading;
+import lejos.robotics.RangeReadings;
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.MoveListener;
+import lejos.robotics.navigation.MoveProvider;
+import mazestormer.command.Command;
+import mazestormer.command.CommandReplier;
+import mazestormer.command.CommandType;
+import mazestormer.command.ConditionalCommandListener;
+import mazestormer.command.IRReadCommand;
+import mazestormer.command.LightCalibrateCommand;
+import mazestormer.command.LightReadCommand;
+import mazestormer.command.PilotParameterCommand;
+import mazestormer.command.RotateCommand;
+import mazestormer.command.ScanCommand;
+import mazestormer.command.ShutdownCommand;
+import mazestormer.command.StopCommand;
+import mazestormer.command.TrajectoryReadCommand;
+import mazestormer.command.TravelCommand;
+import mazestormer.condition.Condition;
+import mazestormer.condition.ConditionFuture;
+import mazestormer.remote.MessageListener;
+import mazestormer.remote.MessageType;
+import mazestormer.report.MoveReport;
+import mazestormer.report.RangeReadingReport;
+import mazestormer.report.Report;
+import mazestormer.report.ReportType;
+import mazestormer.report.Trajectory;
+import mazestormer.report.UpdateReport;
+import mazestormer.robot.CalibratedLightSensor;
+import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.Pilot;
+import mazestormer.robot.RangeScannerListener;
+import mazestormer.robot.RobotUpdate;
+import mazestormer.robot.TrajectoryRecorder;
+import mazestormer.simulator.VirtualRobot;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A simulated NXT brick, backed by a virtual robot.
+ * 
+ * <p>
+ * The brick speaks the same wire protocol as the program running on the NXT:
+ * it executes received commands on the virtual robot, replies to requests,
+ * resolves conditional commands and periodically reports updates. Together
+ * with a {@link LoopbackLink}, this allows running the physical robot
+ * implementation without any hardware.
+ * </p>
+ */
+public class SimulatedBrick implements MessageListener<Command> {
+
+	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("SimulatedBrick-%d")
+			.setDaemon(true).build();
+
+	private final BrickCommunicator communicator;
+	private final VirtualRobot robot;
+
+	private final TrajectoryRecorder trajectory;
+
+	private final ScheduledExecutorService executor;
+	private ScheduledFuture<?> reportTask;
+	private ScheduledFuture<?> sampleTask;
+
+	/**
+	 * Create a new simulated brick.
+	 * 
+	 * @param is
+	 *            The input stream receiving commands.
+	 * @param os
+	 *            The output stream sending reports.
+	 * @param robot
+	 *            The virtual robot executing the commands.
+	 */
+	public SimulatedBrick(InputStream is, OutputStream os, VirtualRobot robot) {
+		this.communicator = new BrickCommunicator(is, os);
+		this.robot = robot;
+		this.trajectory = new TrajectoryRecorder(robot);
+		this.executor = Executors.newSingleThreadScheduledExecutor(factory);
+		setup();
+	}
+
+	private void setup() {
+		// Command listeners
+		communicator.addListener(this);
+		communicator.addListener(new PilotHandler());
+		communicator.addListener(new LightValueReplier());
+		communicator.addListener(new IRValueReplier());
+		communicator.addListener(new ScanReplier());
+		communicator.addListener(new LightConditionListener());
+		communicator.addListener(new TrajectoryReplier());
+
+		// Report range readings
+		robot.getRangeScanner().addListener(new RangeScannerListener() {
+			@Override
+			public void readingReceived(RangeReading reading) {
+				send(new RangeReadingReport(ReportType.RANGE_READING, reading));
+			}
+		});
+	}
+
+	public BrickCommunicator getCommunicator() {
+		return communicator;
+	}
+
+	public VirtualRobot getRobot() {
+		return robot;
+	}
+
+	/**
+	 * Start handling commands and reporting updates.
+	 */
+	public void start() {
+		communicator.start();
+		startReporting();
+	}
+
+	/**
+	 * Stop handling commands and release the virtual robot.
+	 */
+	public void terminate() {
+		stopReporting();
+		executor.shutdown();
+		robot.terminate();
+		try {
+			communicator.terminate();
+		} catch (IOException e) {
+			// Link already closed
+		}
+	}
+
+	private void send(Report<?> report) {
+		try {
+			communicator.send(report);
+		} catch (IOException e) {
+			// Link closed
+		}
+	}
+
+	@Override
+	public void messageReceived(Command command) {
+		if (command instanceof ShutdownCommand) {
+			// Shut down
+			terminate();
+		}
+	}
+
+	/*
+	 * Update reporting
+	 */
+
+	private synchronized void startReporting() {
+		if (reportTask != null)
+			return;
+
+		reportTask = executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					send(new UpdateReport(ReportType.UPDATE, RobotUpdate.create(robot, true, true)));
+				} catch (RuntimeException e) {
+					// Keep reporting
+					e.printStackTrace();
+				}
+			}
+		}, 0, ControllableRobot.updateReportDelay, TimeUnit.MILLISECONDS);
+
+		// Record trajectory on the same thread
+		sampleTask = executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					trajectory.sample();
+				} catch (RuntimeException e) {
+					// Keep recording
+					e.printStackTrace();
+				}
+			}
+		}, 0, TrajectoryRecorder.defaultSampleDelay, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void stopReporting() {
+		if (reportTask != null) {
+			reportTask.cancel(false);
+			reportTask = null;
+		}
+		if (sampleTask != null) {
+			sampleTask.cancel(false);
+			sampleTask = null;
+		}
+	}
+
+	/**
+	 * Handles pilot commands and reports movements.
+	 */
+	private class PilotHandler implements MessageListener<Command>, MoveListener {
+
+		public PilotHandler() {
+			getPilot().addMoveListener(this);
+		}
+
+		private Pilot getPilot() {
+			return robot.getPilot();
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (command instanceof TravelCommand) {
+				getPilot().travel(((TravelCommand) command).getDistance(), true);
+			} else if (command instanceof RotateCommand) {
+				onRotateCommand((RotateCommand) command);
+			} else if (command instanceof StopCommand) {
+				getPilot().stop();
+			} else if (command instanceof PilotParameterCommand) {
+				onParameterCommand((PilotParameterCommand) command);
+			}
+		}
+
+		private void onRotateCommand(RotateCommand command) {
+			double angle = command.getAngle();
+			if (Double.isInfinite(angle)) {
+				if (angle > 0) {
+					getPilot().rotateLeft();
+				} else {
+					getPilot().rotateRight();
+				}
+			} else {
+				getPilot().rotate(angle, true);
+			}
+		}
+
+		private void onParameterCommand(PilotParameterCommand command) {
+			double value = command.getValue();
+			switch (command.getType()) {
+			case SET_TRAVEL_SPEED:
+				getPilot().setTravelSpeed(value);
+				break;
+			case SET_ROTATE_SPEED:
+				getPilot().setRotateSpeed(value);
+				break;
+			case SET_ACCELERATION:
+				getPilot().setAcceleration((int) value);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void moveStarted(Move event, MoveProvider mp) {
+			send(new MoveReport(ReportType.MOVE_STARTED, event));
+		}
+
+		@Override
+		public void moveStopped(Move event, MoveProvider mp) {
+			send(new MoveReport(ReportType.MOVE_STOPPED, event));
+		}
+
+	}
+
+	/**
+	 * Handles light calibration commands and light value requests.
+	 */
+	private class LightValueReplier extends CommandReplier<Integer> {
+
+		public LightValueReplier() {
+			super(communicator);
+		}
+
+		private CalibratedLightSensor getLightSensor() {
+			return robot.getLightSensor();
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (command instanceof LightReadCommand) {
+				reply((LightReadCommand) command, getLightSensor().getNormalizedLightValue());
+			} else if (command instanceof LightCalibrateCommand) {
+				onCalibrateCommand((LightCalibrateCommand) command);
+			}
+		}
+
+		private void onCalibrateCommand(LightCalibrateCommand command) {
+			switch (command.getType()) {
+			case LIGHT_SET_LOW:
+				getLightSensor().setLow(command.getValue());
+				break;
+			case LIGHT_SET_HIGH:
+				getLightSensor().setHigh(command.getValue());
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		protected MessageType<Report<?>> getResponseType(MessageType<Command> requestType) {
+			return ReportType.LIGHT_VALUE;
+		}
+
+	}
+
+	/**
+	 * Handles infrared value requests.
+	 */
+	private class IRValueReplier extends CommandReplier<float[]> {
+
+		public IRValueReplier() {
+			super(communicator);
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (!(command instanceof IRReadCommand))
+				return;
+
+			// Only the angle is simulated
+			float[] values = new float[6];
+			values[0] = robot.getIRSensor().getAngle();
+			reply((IRReadCommand) command, values);
+		}
+
+		@Override
+		protected MessageType<Report<?>> getResponseType(MessageType<Command> requestType) {
+			return ReportType.IR_VALUE;
+		}
+
+	}
+
+	/**
+	 * Handles trajectory log requests.
+	 */
+	private class TrajectoryReplier extends CommandReplier<Trajectory> {
+
+		public TrajectoryReplier() {
+			super(communicator);
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (!(command instanceof TrajectoryReadCommand))
+				return;
+
+			reply((TrajectoryReadCommand) command, trajectory.getLog().drain());
+		}
+
+		@Override
+		protected MessageType<Report<?>> getResponseType(MessageType<Command> requestType) {
+			if (requestType == CommandType.TRAJECTORY_READ) {
+				return ReportType.TRAJECTORY;
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * Handles scan requests.
+	 */
+	private class ScanReplier extends CommandReplier<RangeReadings> {
+
+		public ScanReplier() {
+			super(communicator);
+		}
+
+		@Override
+		public void messageReceived(Command command) {
+			if (!(command instanceof ScanCommand))
+				return;
+
+			ScanCommand scan = (ScanCommand) command;
+			robot.getRangeScanner().setAngles(scan.getAngles());
+			reply(scan, robot.getRangeScanner().getRangeValues());
+		}
+
+		@Override
+		protected MessageType<Report<?>> getResponseType(MessageType<Command> requestType) {
+			return ReportType.SCAN;
+		}
+
+	}
+
+	/**
+	 * Handles light value and stroke edges conditions.
+	 */
+	private class LightConditionListener extends ConditionalCommandListener {
+
+		public LightConditionListener() {
+			super(communicator);
+		}
+
+		@Override
+		public ConditionFuture createFuture(Condition condition) {
+			switch (condition.getType()) {
+			case LIGHT_BETWEEN:
+			case LIGHT_GREATER_THAN:
+			case LIGHT_SMALLER_THAN:
+			case RECORD_STROKE_EDGES:
+				return robot.getConditionResolvers().resolve(condition);
+			default:
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package mazestormer.loopback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import lejos.robotics.navigation.Pose;
+import mazestormer.connect.ConnectionContext;
+import mazestormer.connect.LoopbackConnector;
+import mazestormer.maze.Maze;
+import mazestormer.physical.PhysicalRobot;
+import mazestormer.player.RelativePlayer;
+import mazestormer.report.Trajectory;
+import mazestormer.robot.ControllablePCRobot;
+import mazestormer.simulator.VirtualLightSensor;
+import mazestormer.world.World;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimulatedBrickTest {
+
+	private static final float delta = 0.5f;
+
+	private LoopbackConnector connector;
+	private ControllablePCRobot robot;
+
+	@Before
+	public void setUp() {
+		RelativePlayer player = new RelativePlayer("test", null, new Maze());
+		World world = new World(player);
+
+		connector = new LoopbackConnector();
+		connector.setLatency(5);
+		ConnectionContext context = new ConnectionContext();
+		context.setDeviceName("loopback");
+		context.setWorld(world);
+		connector.connect(context);
+
+		robot = connector.getRobot();
+		player.setRobot(robot);
+	}
+
+	@After
+	public void tearDown() {
+		connector.disconnect();
+	}
+
+	@Test
+	public void lightValue() {
+		assertEquals(VirtualLightSensor.BROWN_VALUE, robot.getLightSensor().getNormalizedLightValue());
+		assertTrue(connector.getLink().getBrickBytesSent() > 0);
+	}
+
+	@Test
+	public void travel() throws Exception {
+		robot.getPilot().travelComplete(5d).get(5, TimeUnit.SECONDS);
+		Pose pose = robot.getPoseProvider().getPose();
+		assertEquals(5f, pose.getX(), delta);
+		assertEquals(0f, pose.getY(), delta);
+	}
+
+	@Test
+	public void trajectory() throws Exception {
+		robot.getPilot().setTravelSpeed(10d);
+		robot.getPilot().travelComplete(5d).get(5, TimeUnit.SECONDS);
+		Trajectory trajectory = ((PhysicalRobot) robot).getTrajectoryFetcher().fetch().get(5, TimeUnit.SECONDS);
+
+		assertTrue(trajectory.getSize() > 1);
+		assertEquals(0, trajectory.getDroppedCount());
+		int last = trajectory.getSize() - 1;
+		assertEquals(5f, trajectory.getDistance(last), delta);
+		assertTrue(trajectory.getTime(last) > trajectory.getTime(0));
+		assertEquals(VirtualLightSensor.BROWN_VALUE, trajectory.getLightValue(last));
+	}
+
+}
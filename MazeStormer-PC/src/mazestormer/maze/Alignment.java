@@ -0,0 +1,71 @@
+package mazestormer.maze;
+
+/**
+ * A candidate transformation from partner tile coordinates to own tile
+ * coordinates, scored by how well both mazes agree under it.
+ */
+public class Alignment implements Comparable<Alignment> {
+
+	private final TileTransform transform;
+	private final int agreements;
+	private final int conflicts;
+	private final int barcodeMatches;
+	private final int score;
+
+	public Alignment(TileTransform transform, int agreements, int conflicts, int barcodeMatches, int score) {
+		this.transform = transform;
+		this.agreements = agreements;
+		this.conflicts = conflicts;
+		this.barcodeMatches = barcodeMatches;
+		this.score = score;
+	}
+
+	/**
+	 * Get the transformation from partner tile coordinates to own tile
+	 * coordinates.
+	 */
+	public TileTransform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Get the number of overlapping edges with the same known type.
+	 */
+	public int getAgreements() {
+		return agreements;
+	}
+
+	/**
+	 * Get the number of overlapping edges where one maze has a wall and the
+	 * other maze has an opening.
+	 */
+	public int getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * Get the number of common barcodes which are mapped onto each other.
+	 */
+	public int getBarcodeMatches() {
+		return barcodeMatches;
+	}
+
+	/**
+	 * Get the total score. Higher is better.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	@Override
+	public int compareTo(Alignment other) {
+		return Integer.compare(getScore(), other.getScore());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Alignment[score=%d, agreements=%d, conflicts=%d, barcodes=%d]", score, agreements,
+				conflicts, barcodeMatches);
+	}
+
+}
@@ -34,12 +34,20 @@ public class CombinedMaze implements IMaze {
 	private final PartnerMazeListener partnerListener = new PartnerMazeListener();
 	private final List<CombinedMazeListener> listeners = new ArrayList<CombinedMazeListener>();
 
-	private final IMaze totalMaze; // tilecoordinates in own relative system
+	private final Maze totalMaze; // tilecoordinates in own relative system
+	private final MazeMerger partnerMerger;
+	private final MazeAligner aligner = new MazeAligner();
 
 	private final List<Barcode> twoCommonBarcodes = new ArrayList<Barcode>(2);
 
 	private TileTransform tileTransformation = null;
 
+	/**
+	 * Number of new tiles after which the alignment is re-evaluated.
+	 */
+	private static final int realignInterval = 16;
+	private int nbTilesAtAlignment = 0;
+
 	public CombinedMaze(IMaze ownExploredMaze) {
 		this.ownMaze = ownExploredMaze;
 		ownMaze.addListener(new OwnMazeListener());
@@ -47,6 +55,7 @@ public class CombinedMaze implements IMaze {
 		// Copy own maze into total maze
 		this.totalMaze = new Maze();
 		totalMaze.importTiles(ownExploredMaze.getTiles());
+		this.partnerMerger = new MazeMerger(totalMaze);
 
 		this.partnerMaze = null;
 		this.tileTransformation = null;
@@ -88,6 +97,9 @@ public class CombinedMaze implements IMaze {
 				addCommonBarcode(barcode);
 			}
 		}
+
+		// Re-evaluate alignment
+		checkAlignment();
 	}
 
 	/**
@@ -98,10 +110,7 @@ public class CombinedMaze implements IMaze {
 	 *            A tile in the partner's coordinate system.
 	 */
 	private void updatePartnerTile(Tile partnerTile) {
-		if (getTileTransform() != null) {
-			// Copy to total maze
-			importPartnerTileIntoTotalMaze(partnerTile);
-		} else if (partnerTile.hasBarcode()) {
+		if (partnerTile.hasBarcode()) {
 			// Add to partner's mapping
 			LongPoint position = partnerTile.getPosition();
 			Barcode barcode = partnerTile.getBarcode();
@@ -112,13 +121,21 @@ public class CombinedMaze implements IMaze {
 				addCommonBarcode(barcode);
 			}
 		}
+
+		if (getTileTransform() != null) {
+			// Copy to total maze
+			importPartnerTileIntoTotalMaze(partnerTile);
+			// Re-evaluate alignment
+			checkAlignment();
+		}
 	}
 
 	/**
-	 * Creates/updates the corresponding tile in the total maze.
+	 * Creates/updates the corresponding tile in the total maze, if it changed
+	 * since it was last imported.
 	 */
 	private void importPartnerTileIntoTotalMaze(Tile partnerTile) {
-		getTotalMaze().importTile(partnerTile, getTileTransform());
+		partnerMerger.merge(partnerTile);
 	}
 
 	/**
@@ -142,63 +159,62 @@ public class CombinedMaze implements IMaze {
 			// Merge partner maze into the total maze using transformation
 			mergeTotalAndPartnerMazes();
 			// Call listeners
-			for (CombinedMazeListener listener : listeners) {
-				listener.mazesMerged();
-			}
+			fireMazesMerged();
+		}
+	}
+
+	private void fireMazesMerged() {
+		for (CombinedMazeListener listener : listeners) {
+			listener.mazesMerged();
 		}
 	}
 
 	/**
-	 * Calculates a tile tranformation that transforms the tilecoordinates of a
-	 * point in the own system to tilecoordinates in the partner's system. Saves
-	 * this transformation to the field tileTransformation.
+	 * Calculates the tile transformation that transforms tile coordinates in
+	 * the partner's system to tile coordinates in the own system, by scoring
+	 * the candidates of all common barcodes against the walls of both mazes.
+	 * Saves this transformation to the field tileTransformation.
 	 */
-	// TODO test: controleren of het niet juist omgekeerd is...
 	private void calculateTileTransformation() {
-		// genereer met behulp van de twee gemeenschappelijke barcodes vier
-		// LongPoints, die elk een tegel voorstellen in cordinaten van het
-		// eigen assenstelsel of dat van je teamgenoot (TP is kort voor
-		// TilePosition)
-		LongPoint ownFirstTP = ownBarcodeMapping.get(twoCommonBarcodes.get(0));
-		LongPoint ownSecondTP = ownBarcodeMapping.get(twoCommonBarcodes.get(1));
-		LongPoint partnerFirstTP = partnerBarcodeMapping.get(twoCommonBarcodes.get(0));
-		LongPoint partnerSecondTP = partnerBarcodeMapping.get(twoCommonBarcodes.get(1));
-
-		// bereken rotatie van ander assenstelsel in eigen assenstelsel
-		// \alpha_{X'} = \alpha_{21} - \alpha'_{21}
-		double rotation = Math
-				.atan2((ownSecondTP.getY() - ownFirstTP.getY()), (ownSecondTP.getX() - ownFirstTP.getX()))
-				- Math.atan2((partnerSecondTP.getY() - partnerFirstTP.getY()),
-						(partnerSecondTP.getX() - partnerFirstTP.getX()));
-
-		int rotationsFromOwnToPartner = (int) (rotation / Math.PI * 2);
-
-		// rond af naar veelvoud van pi/2
-		rotation = Math.PI / 2 * (double) (rotationsFromOwnToPartner);
-
-		// bereken cosinus en sinus (behoren beide tot {-1, 0, 1}
-		int cosineRotation = (int) Math.cos(rotation);
-		int sineRotation = (int) Math.sin(rotation);
-
-		// bereken aan de hand van deze rotatie de cordinaten van de oorsprong
-		// van het assenstelsel van je teamgenoot in je eigen assenstelsel
-		// x_{O'} = x_1 - x'_1*cos(\alpha_{X'}) + y'_1*sin(\alpha_{X'})
-		// y_{O'} = y_1 - x'_1*sin(\alpha_{X'}) - y'_1*cos(\alpha_{X'})
-		long biasX = (long) (ownFirstTP.getX() - partnerFirstTP.getX() * cosineRotation + partnerFirstTP.getY()
-				* sineRotation);
-		long biasY = (long) (ownFirstTP.getY() - partnerFirstTP.getX() * sineRotation - partnerFirstTP.getY()
-				* cosineRotation);
-
-		// stel met deze gegevens de TileTransform op en sla deze op
-		this.tileTransformation = new TileTransform(new LongPoint(biasX, biasY), rotationsFromOwnToPartner);
+		Alignment alignment = aligner.align(getOwnMaze(), ownBarcodeMapping, getPartnerMaze(),
+				partnerBarcodeMapping, getTileTransform());
+		this.tileTransformation = alignment.getTransform();
+		this.nbTilesAtAlignment = getNbKnownTiles();
 	}
 
-	private void mergeTotalAndPartnerMazes() {
-		for (Tile tile : getPartnerMaze().getTiles()) {
-			importPartnerTileIntoTotalMaze(tile);
+	/**
+	 * Re-evaluates the alignment if enough tiles were added since the last
+	 * alignment, and rebuilds the total maze if a better transformation is
+	 * found.
+	 */
+	private void checkAlignment() {
+		if (getTileTransform() == null || getNbKnownTiles() - nbTilesAtAlignment < realignInterval)
+			return;
+
+		TileTransform previous = getTileTransform();
+		calculateTileTransformation();
+		if (!getTileTransform().equals(previous)) {
+			// Rebuild with new transformation
+			partnerMerger.stop();
+			rebuild();
+			mergeTotalAndPartnerMazes();
+			fireMazesMerged();
 		}
 	}
 
+	private int getNbKnownTiles() {
+		return getOwnMaze().getNumberOfTiles() + getPartnerMaze().getNumberOfTiles();
+	}
+
+	/**
+	 * Merges all partner tiles into the total maze, firing a single batch of
+	 * events on the total maze.
+	 */
+	private void mergeTotalAndPartnerMazes() {
+		partnerMerger.start(getTileTransform());
+		partnerMerger.mergeAll(getPartnerMaze().getTiles());
+	}
+
 	/**
 	 * Returns the tileTransform, which is null if it not yet calculated.
 	 */
@@ -216,8 +232,9 @@ public class CombinedMaze implements IMaze {
 		twoCommonBarcodes.clear();
 		// Reset transformation
 		tileTransformation = null;
-		// Rebuild
-		rebuild();
+		partnerMerger.stop();
+		// The own maze is empty and the partner maze is no longer merged
+		getTotalMaze().clear();
 	}
 
 	private void resetPartnerMaze() {
@@ -229,8 +246,11 @@ public class CombinedMaze implements IMaze {
 		twoCommonBarcodes.clear();
 		// Reset transformation
 		tileTransformation = null;
-		// Rebuild
-		rebuild();
+		// Rebuild only if partner tiles were merged
+		if (partnerMerger.isMerging()) {
+			partnerMerger.stop();
+			rebuild();
+		}
 	}
 
 	private void rebuild() {
@@ -238,10 +258,6 @@ public class CombinedMaze implements IMaze {
 		getTotalMaze().clear();
 		// Import own maze
 		getTotalMaze().importTiles(getOwnMaze().getTiles());
-		// Import partner maze, if possible
-		if (getTileTransform() != null) {
-			mergeTotalAndPartnerMazes();
-		}
 	}
 
 	public final IMaze getOwnMaze() {
@@ -1,10 +1,14 @@
 package mazestormer.maze;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
 
+import mazestormer.barcode.Barcode;
 import mazestormer.maze.parser.Parser;
 import mazestormer.util.LongPoint;
 
@@ -98,6 +102,47 @@ public class CombinedMazeTest {
 		System.out.println(Parser.stringify(transformedSourceMaze));
 	}
 
+	@Test
+	public void testMergedTiles() {
+		assertNotNull(combinedMaze.getTileTransform());
+
+		// Every known edge must match the source maze
+		TileTransform sourceToOwn = transformSourceToOwn.inverse();
+		for (Tile sourceTile : sourceMaze.getTiles()) {
+			LongPoint position = sourceToOwn.transform(sourceTile.getPosition());
+			Tile tile = combinedMaze.getTileAt(position);
+			for (Orientation orientation : Orientation.values()) {
+				Edge.EdgeType type = tile.getEdgeAt(sourceToOwn.transform(orientation)).getType();
+				if (type != Edge.EdgeType.UNKNOWN) {
+					assertEquals(sourceTile.getEdgeAt(orientation).getType(), type);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAlignSingleBarcode() {
+		IMaze own = new Maze();
+		own.importTiles(sourceMaze.getTiles(), transformSourceToOwn.inverse());
+		IMaze partner = new Maze();
+		partner.importTiles(sourceMaze.getTiles(), transformSourceToPartner.inverse());
+
+		// Only use one common barcode as anchor
+		Barcode barcode = new Barcode((byte) 2);
+		Map<Barcode, LongPoint> ownBarcodes = new HashMap<Barcode, LongPoint>();
+		ownBarcodes.put(barcode, own.getBarcodeTile(barcode).getPosition());
+		Map<Barcode, LongPoint> partnerBarcodes = new HashMap<Barcode, LongPoint>();
+		partnerBarcodes.put(barcode, partner.getBarcodeTile(barcode).getPosition());
+
+		Alignment alignment = new MazeAligner().align(own, ownBarcodes, partner, partnerBarcodes, null);
+		assertEquals(0, alignment.getConflicts());
+		for (Tile sourceTile : sourceMaze.getTiles()) {
+			LongPoint partnerPosition = transformSourceToPartner.inverse().transform(sourceTile.getPosition());
+			LongPoint ownPosition = transformSourceToOwn.inverse().transform(sourceTile.getPosition());
+			assertEquals(ownPosition, alignment.getTransform().transform(partnerPosition));
+		}
+	}
+
 	/**
 	 * Parse the given source into a new maze.
 	 */
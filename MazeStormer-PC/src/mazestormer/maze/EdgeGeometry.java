@@ -1,6 +1,8 @@
 package mazestormer.maze;
 
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 import mazestormer.geom.GeometryUtils;
 import mazestormer.maze.Edge.EdgeType;
@@ -9,12 +11,21 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Polygon;
 
+/**
+ * The union of all walls in a maze.
+ * 
+ * <p>
+ * Added walls are collected and only merged into the geometry when it is
+ * requested, so that adding many walls at once takes a single union.
+ * </p>
+ */
 public class EdgeGeometry extends DefaultMazeListener {
 
 	private final IMaze maze;
 
 	private final GeometryFactory geomFact;
 	private Geometry geom;
+	private final List<Geometry> pending = new ArrayList<Geometry>();
 
 	public EdgeGeometry(IMaze maze) {
 		this.maze = maze;
@@ -26,7 +37,13 @@ public class EdgeGeometry extends DefaultMazeListener {
 		return maze;
 	}
 
-	public final Geometry getGeometry() {
+	public final synchronized Geometry getGeometry() {
+		if (!pending.isEmpty()) {
+			// Merge added walls
+			pending.add(geom);
+			geom = geomFact.buildGeometry(pending).union();
+			pending.clear();
+		}
 		return geom;
 	}
 
@@ -43,17 +60,18 @@ public class EdgeGeometry extends DefaultMazeListener {
 	 * @param edge
 	 *            The edge to add.
 	 */
-	private void addEdge(Edge edge) {
+	private synchronized void addEdge(Edge edge) {
 		if (edge.getType() == EdgeType.WALL) {
-			geom = geom.union(getGeometry(edge));
+			pending.add(getGeometry(edge));
 		}
 	}
 
 	/**
 	 * Reset the geometry.
 	 */
-	private final void reset() {
+	private final synchronized void reset() {
 		geom = GeometryUtils.emptyPolygon(geomFact);
+		pending.clear();
 	}
 
 	@Override
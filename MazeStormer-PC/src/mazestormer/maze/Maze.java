@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,6 +55,15 @@ public class Maze implements IMaze {
 
 	private final List<MazeListener> listeners = new ArrayList<MazeListener>();
 
+	/*
+	 * Batched notifications
+	 */
+	private int batchDepth = 0;
+	private final Set<Tile> batchAddedTiles = new LinkedHashSet<Tile>();
+	private final Set<Edge> batchChangedEdges = new LinkedHashSet<Edge>();
+	private final Set<Tile> batchChangedTiles = new LinkedHashSet<Tile>();
+	private final Set<Tile> batchExploredTiles = new LinkedHashSet<Tile>();
+
 	public Maze(float tileSize, float edgeSize, float barLength) {
 		this.tileSize = tileSize;
 		this.edgeSize = edgeSize;
@@ -188,6 +198,18 @@ public class Maze implements IMaze {
 		return tile;
 	}
 
+	/**
+	 * Get the tile at the given position, without creating it.
+	 * 
+	 * @param tilePosition
+	 *            The tile position.
+	 * @return The tile, or null if there is no tile at the given position.
+	 */
+	public Tile getExistingTileAt(LongPoint tilePosition) {
+		checkNotNull(tilePosition);
+		return tiles.get(tilePosition);
+	}
+
 	@Override
 	public Tile getTileAt(Point2D tilePosition) {
 		checkNotNull(tilePosition);
@@ -266,8 +288,13 @@ public class Maze implements IMaze {
 
 	@Override
 	public void importTiles(Iterable<Tile> tiles, TileTransform tileTransform) {
-		for (Tile tile : tiles) {
-			importTile(tile, tileTransform);
+		beginBatch();
+		try {
+			for (Tile tile : tiles) {
+				importTile(tile, tileTransform);
+			}
+		} finally {
+			endBatch();
 		}
 	}
 
@@ -479,6 +506,83 @@ public class Maze implements IMaze {
 		fireMazeCleared();
 	}
 
+	/**
+	 * Start a batch of changes.
+	 * 
+	 * <p>
+	 * Until the matching call to {@link #endBatch()}, tile and edge events are
+	 * collected instead of fired. At the end of the batch, every added tile,
+	 * changed edge, changed tile and explored tile is reported once, in that
+	 * order. Batches can be nested, in which case the events are fired at the
+	 * end of the outermost batch.
+	 * </p>
+	 */
+	public synchronized void beginBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * End a batch of changes and fire the collected events.
+	 * 
+	 * @throws IllegalStateException
+	 *             If no batch was started.
+	 */
+	public void endBatch() throws IllegalStateException {
+		List<Tile> added, changed, explored;
+		List<Edge> edges;
+		synchronized (this) {
+			if (batchDepth == 0)
+				throw new IllegalStateException("No batch started.");
+			if (--batchDepth > 0)
+				return;
+			added = new ArrayList<Tile>(batchAddedTiles);
+			edges = new ArrayList<Edge>(batchChangedEdges);
+			changed = new ArrayList<Tile>(batchChangedTiles);
+			explored = new ArrayList<Tile>(batchExploredTiles);
+			clearBatch();
+		}
+
+		for (Tile tile : added) {
+			fireTileAdded(tile);
+		}
+		for (Edge edge : edges) {
+			fireEdgeChanged(edge);
+		}
+		for (Tile tile : changed) {
+			fireTileChanged(tile);
+		}
+		for (Tile tile : explored) {
+			fireTileExplored(tile);
+		}
+	}
+
+	/**
+	 * Check whether a batch of changes is in progress.
+	 */
+	public synchronized boolean isBatching() {
+		return batchDepth > 0;
+	}
+
+	private void clearBatch() {
+		batchAddedTiles.clear();
+		batchChangedEdges.clear();
+		batchChangedTiles.clear();
+		batchExploredTiles.clear();
+	}
+
+	/**
+	 * Collect an event in the current batch.
+	 * 
+	 * @return True if the event was collected, false if no batch is in
+	 *         progress and the event should be fired.
+	 */
+	private synchronized <T> boolean collect(Set<T> batchEvents, T item) {
+		if (batchDepth == 0)
+			return false;
+		batchEvents.add(item);
+		return true;
+	}
+
 	@Override
 	public void addListener(MazeListener listener) {
 		checkNotNull(listener);
@@ -493,6 +597,8 @@ public class Maze implements IMaze {
 
 	private void fireTileAdded(Tile tile) {
 		checkNotNull(tile);
+		if (collect(batchAddedTiles, tile))
+			return;
 		for (MazeListener listener : listeners) {
 			listener.tileAdded(tile);
 		}
@@ -500,6 +606,8 @@ public class Maze implements IMaze {
 
 	private void fireTileChanged(Tile tile) {
 		checkNotNull(tile);
+		if (collect(batchChangedTiles, tile))
+			return;
 		for (MazeListener listener : listeners) {
 			listener.tileChanged(tile);
 		}
@@ -507,6 +615,8 @@ public class Maze implements IMaze {
 
 	private void fireTileExplored(Tile tile) {
 		checkNotNull(tile);
+		if (collect(batchExploredTiles, tile))
+			return;
 		for (MazeListener listener : listeners) {
 			listener.tileExplored(tile);
 		}
@@ -514,6 +624,8 @@ public class Maze implements IMaze {
 
 	private void fireEdgeChanged(Edge edge) {
 		checkNotNull(edge);
+		if (collect(batchChangedEdges, edge))
+			return;
 		for (MazeListener listener : listeners) {
 			listener.edgeChanged(edge);
 		}
@@ -526,6 +638,10 @@ public class Maze implements IMaze {
 	}
 
 	private void fireMazeCleared() {
+		// Drop events on removed tiles
+		synchronized (this) {
+			clearBatch();
+		}
 		for (MazeListener listener : listeners) {
 			listener.mazeCleared();
 		}
@@ -0,0 +1,427 @@
+package mazestormer.maze;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import mazestormer.barcode.Barcode;
+import mazestormer.maze.Edge.EdgeType;
+import mazestormer.util.LongPoint;
+
+/**
+ * Finds the transformation from partner tile coordinates to own tile
+ * coordinates under which the own and partner mazes agree best.
+ *
+ * <p>
+ * Every common barcode is used as an anchor: for each of the four rotations,
+ * the translation which maps the partner barcode tile onto the own barcode
+ * tile gives a candidate. Candidates are scored by the number of overlapping
+ * edges with the same known type, minus a penalty for every wall which
+ * overlaps an opening, plus a bonus for every common barcode mapped onto its
+ * own counterpart.
+ * </p>
+ *
+ * <p>
+ * Both mazes are packed into bitsets of walls and openings per row, so scoring
+ * a candidate only takes a few word operations per row. Candidates are scored
+ * in parallel.
+ * </p>
+ */
+public class MazeAligner {
+
+	private static final int THRESHOLD = 2;
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private int conflictPenalty = 4;
+	private int barcodeBonus = 8;
+
+	/**
+	 * Get the penalty for every overlapping wall and opening.
+	 */
+	public int getConflictPenalty() {
+		return conflictPenalty;
+	}
+
+	public void setConflictPenalty(int conflictPenalty) {
+		this.conflictPenalty = conflictPenalty;
+	}
+
+	/**
+	 * Get the bonus for every common barcode which is mapped onto its own
+	 * counterpart.
+	 */
+	public int getBarcodeBonus() {
+		return barcodeBonus;
+	}
+
+	public void setBarcodeBonus(int barcodeBonus) {
+		this.barcodeBonus = barcodeBonus;
+	}
+
+	/**
+	 * Find the best alignment of the partner maze onto the own maze.
+	 *
+	 * @param ownMaze
+	 *            The own maze.
+	 * @param ownBarcodes
+	 *            The positions of the barcodes in the own maze.
+	 * @param partnerMaze
+	 *            The partner maze.
+	 * @param partnerBarcodes
+	 *            The positions of the barcodes in the partner maze.
+	 * @param preferred
+	 *            A transformation which is also scored and preferred over
+	 *            other candidates with the same score, such as the currently
+	 *            used transformation. May be null.
+	 * @return The best alignment, or null if there are no common barcodes and
+	 *         no preferred transformation.
+	 */
+	public Alignment align(IMaze ownMaze, Map<Barcode, LongPoint> ownBarcodes, IMaze partnerMaze,
+			Map<Barcode, LongPoint> partnerBarcodes, TileTransform preferred) {
+		checkNotNull(ownMaze);
+		checkNotNull(partnerMaze);
+
+		// Collect candidates
+		Set<Candidate> candidates = new LinkedHashSet<Candidate>();
+		if (preferred != null) {
+			LongPoint translation = preferred.transform(new LongPoint(0, 0));
+			candidates.add(new Candidate(preferred.getNbCCWRotations(), (long) translation.getX(),
+					(long) translation.getY()));
+		}
+		for (Map.Entry<Barcode, LongPoint> entry : ownBarcodes.entrySet()) {
+			LongPoint partnerPosition = partnerBarcodes.get(entry.getKey());
+			if (partnerPosition == null)
+				continue;
+			LongPoint ownPosition = entry.getValue();
+			for (int rotation = 0; rotation < 4; rotation++) {
+				long[] rotated = rotate((long) partnerPosition.getX(), (long) partnerPosition.getY(), rotation);
+				candidates.add(new Candidate(rotation, (long) ownPosition.getX() - rotated[0], (long) ownPosition
+						.getY() - rotated[1]));
+			}
+		}
+		if (candidates.isEmpty())
+			return null;
+
+		// Pack mazes
+		Collection<Tile> partnerTiles = partnerMaze.getTiles();
+		EdgeGrid ownGrid = new EdgeGrid(ownMaze.getTiles(), 0);
+		EdgeGrid[] partnerGrids = new EdgeGrid[4];
+		for (Candidate candidate : candidates) {
+			int rotation = candidate.rotation;
+			if (partnerGrids[rotation] == null) {
+				partnerGrids[rotation] = new EdgeGrid(partnerTiles, rotation);
+			}
+		}
+
+		// Score candidates
+		Scorer scorer = new Scorer(ownGrid, ownBarcodes, partnerGrids, partnerBarcodes);
+		return POOL.invoke(new Task(scorer, new ArrayList<Candidate>(candidates)));
+	}
+
+	/**
+	 * Rotate a tile position counter-clockwise around the origin.
+	 */
+	private static long[] rotate(long x, long y, int nbCCWRotations) {
+		switch (nbCCWRotations & 3) {
+		case 1:
+			return new long[] { -y, x };
+		case 2:
+			return new long[] { -x, -y };
+		case 3:
+			return new long[] { y, -x };
+		default:
+			return new long[] { x, y };
+		}
+	}
+
+	/**
+	 * A rotation followed by a translation.
+	 */
+	private static class Candidate {
+
+		private final int rotation;
+		private final long dx;
+		private final long dy;
+
+		public Candidate(int rotation, long dx, long dy) {
+			this.rotation = rotation & 3;
+			this.dx = dx;
+			this.dy = dy;
+		}
+
+		public TileTransform toTransform() {
+			return new TileTransform(new LongPoint(dx, dy), rotation);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = rotation;
+			result = 31 * result + (int) (dx ^ (dx >>> 32));
+			result = 31 * result + (int) (dy ^ (dy >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Candidate))
+				return false;
+			Candidate other = (Candidate) obj;
+			return rotation == other.rotation && dx == other.dx && dy == other.dy;
+		}
+
+	}
+
+	private class Scorer {
+
+		private final EdgeGrid ownGrid;
+		private final Map<Barcode, LongPoint> ownBarcodes;
+		private final EdgeGrid[] partnerGrids;
+		private final Map<Barcode, LongPoint> partnerBarcodes;
+
+		public Scorer(EdgeGrid ownGrid, Map<Barcode, LongPoint> ownBarcodes, EdgeGrid[] partnerGrids,
+				Map<Barcode, LongPoint> partnerBarcodes) {
+			this.ownGrid = ownGrid;
+			this.ownBarcodes = ownBarcodes;
+			this.partnerGrids = partnerGrids;
+			this.partnerBarcodes = partnerBarcodes;
+		}
+
+		public Alignment score(Candidate candidate) {
+			EdgeGrid partnerGrid = partnerGrids[candidate.rotation];
+
+			// Edges
+			int[] counts = new int[2];
+			partnerGrid.compare(ownGrid, candidate.dx, candidate.dy, counts);
+			int agreements = counts[0];
+			int conflicts = counts[1];
+
+			// Barcodes
+			TileTransform transform = candidate.toTransform();
+			int barcodeMatches = 0;
+			for (Map.Entry<Barcode, LongPoint> entry : ownBarcodes.entrySet()) {
+				LongPoint partnerPosition = partnerBarcodes.get(entry.getKey());
+				if (partnerPosition != null && transform.transform(partnerPosition).equals(entry.getValue())) {
+					barcodeMatches++;
+				}
+			}
+
+			int score = agreements - conflictPenalty * conflicts + barcodeBonus * barcodeMatches;
+			return new Alignment(transform, agreements, conflicts, barcodeMatches, score);
+		}
+
+	}
+
+	private static class Task extends RecursiveTask<Alignment> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Scorer scorer;
+		private final List<Candidate> candidates;
+
+		public Task(Scorer scorer, List<Candidate> candidates) {
+			this.scorer = scorer;
+			this.candidates = candidates;
+		}
+
+		@Override
+		protected Alignment compute() {
+			final int size = candidates.size();
+			if (size <= THRESHOLD) {
+				// Compute directly
+				Alignment best = null;
+				for (Candidate candidate : candidates) {
+					best = better(best, scorer.score(candidate));
+				}
+				return best;
+			} else {
+				// Split up task
+				int mid = size >>> 1;
+				Task leftTask = new Task(scorer, candidates.subList(0, mid));
+				Task rightTask = new Task(scorer, candidates.subList(mid, size));
+				rightTask.fork();
+				Alignment left = leftTask.compute();
+				return better(left, rightTask.join());
+			}
+		}
+
+		/**
+		 * Get the better of two alignments, preferring the first one on ties.
+		 */
+		private static Alignment better(Alignment first, Alignment second) {
+			if (first == null)
+				return second;
+			return (second.compareTo(first) > 0) ? second : first;
+		}
+
+	}
+
+	/**
+	 * The known edges of a set of tiles, packed in bitsets.
+	 *
+	 * <p>
+	 * Every edge is stored as the south edge (horizontal) or west edge
+	 * (vertical) of a tile. Each row of tiles has one bitset per edge
+	 * direction and edge type, with one bit per column.
+	 * </p>
+	 */
+	private static class EdgeGrid {
+
+		private final long minX;
+		private final long minY;
+		private final int width;
+		private final int height;
+		private final int words;
+
+		private final long[] horizontalWalls;
+		private final long[] horizontalOpenings;
+		private final long[] verticalWalls;
+		private final long[] verticalOpenings;
+
+		/**
+		 * Pack the given tiles, rotated counter-clockwise around the origin.
+		 */
+		public EdgeGrid(Collection<Tile> tiles, int nbCCWRotations) {
+			// Copy tiles
+			List<long[]> positions = new ArrayList<long[]>(tiles.size());
+			List<Tile> sources = new ArrayList<Tile>(tiles.size());
+			long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE;
+			long maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+			for (Tile tile : tiles) {
+				long[] position = rotate(tile.getX(), tile.getY(), nbCCWRotations);
+				positions.add(position);
+				sources.add(tile);
+				minX = Math.min(minX, position[0]);
+				maxX = Math.max(maxX, position[0]);
+				minY = Math.min(minY, position[1]);
+				maxY = Math.max(maxY, position[1]);
+			}
+			if (positions.isEmpty()) {
+				minX = maxX = minY = maxY = 0;
+			}
+
+			// Include the north and east edges of the outer tiles
+			this.minX = minX;
+			this.minY = minY;
+			this.width = (int) (maxX - minX + 2);
+			this.height = (int) (maxY - minY + 2);
+			this.words = (width + Long.SIZE - 1) / Long.SIZE;
+			this.horizontalWalls = new long[height * words];
+			this.horizontalOpenings = new long[height * words];
+			this.verticalWalls = new long[height * words];
+			this.verticalOpenings = new long[height * words];
+
+			// Set edges
+			for (int i = 0; i < positions.size(); i++) {
+				long x = positions.get(i)[0], y = positions.get(i)[1];
+				Tile tile = sources.get(i);
+				for (Orientation orientation : Orientation.values()) {
+					EdgeType type = tile.getEdgeAt(orientation).getType();
+					if (type == EdgeType.UNKNOWN)
+						continue;
+					boolean isWall = (type == EdgeType.WALL);
+					switch (orientation.rotateCounterClockwise(nbCCWRotations)) {
+					case NORTH:
+						set(isWall ? horizontalWalls : horizontalOpenings, x, y + 1);
+						break;
+					case SOUTH:
+						set(isWall ? horizontalWalls : horizontalOpenings, x, y);
+						break;
+					case EAST:
+						set(isWall ? verticalWalls : verticalOpenings, x + 1, y);
+						break;
+					case WEST:
+						set(isWall ? verticalWalls : verticalOpenings, x, y);
+						break;
+					}
+				}
+			}
+		}
+
+		private void set(long[] bits, long x, long y) {
+			int column = (int) (x - minX);
+			int row = (int) (y - minY);
+			bits[row * words + (column >>> 6)] |= 1L << (column & 63);
+		}
+
+		/**
+		 * Get the word in the given row of a bitset, or zero if out of range.
+		 */
+		private long word(long[] bits, int row, int index) {
+			if (index < 0 || index >= words)
+				return 0L;
+			return bits[row * words + index];
+		}
+
+		/**
+		 * Get 64 bits in the given row of a bitset, starting from the given
+		 * column.
+		 */
+		private long extract(long[] bits, int row, int column) {
+			int index = column >> 6;
+			int shift = column & 63;
+			long low = word(bits, row, index) >>> shift;
+			if (shift == 0)
+				return low;
+			long high = word(bits, row, index + 1) << (Long.SIZE - shift);
+			return low | high;
+		}
+
+		/**
+		 * Compare these edges, translated by the given amount, with the edges
+		 * of another grid.
+		 *
+		 * @param other
+		 *            The other grid.
+		 * @param dx
+		 *            The translation along the X-axis.
+		 * @param dy
+		 *            The translation along the Y-axis.
+		 * @param counts
+		 *            Receives the number of agreements and conflicts.
+		 */
+		public void compare(EdgeGrid other, long dx, long dy, int[] counts) {
+			long columnShift = minX + dx - other.minX;
+			long rowShift = minY + dy - other.minY;
+			// Skip if not overlapping
+			if (columnShift >= other.width || columnShift + width <= 0)
+				return;
+			if (rowShift >= other.height || rowShift + height <= 0)
+				return;
+
+			int agreements = 0, conflicts = 0;
+			int firstRow = (int) Math.max(0, -rowShift);
+			int lastRow = (int) Math.min(height, other.height - rowShift);
+			for (int row = firstRow; row < lastRow; row++) {
+				int otherRow = (int) (row + rowShift);
+				for (int index = 0; index < words; index++) {
+					int otherColumn = (int) (index * Long.SIZE + columnShift);
+					long hw = horizontalWalls[row * words + index];
+					long ho = horizontalOpenings[row * words + index];
+					long vw = verticalWalls[row * words + index];
+					long vo = verticalOpenings[row * words + index];
+					long ohw = other.extract(other.horizontalWalls, otherRow, otherColumn);
+					long oho = other.extract(other.horizontalOpenings, otherRow, otherColumn);
+					long ovw = other.extract(other.verticalWalls, otherRow, otherColumn);
+					long ovo = other.extract(other.verticalOpenings, otherRow, otherColumn);
+					agreements += Long.bitCount(hw & ohw) + Long.bitCount(ho & oho) + Long.bitCount(vw & ovw)
+							+ Long.bitCount(vo & ovo);
+					conflicts += Long.bitCount(hw & oho) + Long.bitCount(ho & ohw) + Long.bitCount(vw & ovo)
+							+ Long.bitCount(vo & ovw);
+				}
+			}
+			counts[0] += agreements;
+			counts[1] += conflicts;
+		}
+
+	}
+
+}
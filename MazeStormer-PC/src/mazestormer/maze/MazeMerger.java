@@ -0,0 +1,188 @@
+package mazestormer.maze;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mazestormer.maze.Edge.EdgeType;
+import mazestormer.util.LongPoint;
+
+/**
+ * Incrementally merges the tiles of a partner maze into a target maze.
+ *
+ * <p>
+ * The merger remembers the state of every partner tile which was last applied
+ * to the target maze. Partner tiles which did not change since are skipped in
+ * constant time, and for other tiles only the parts which differ from the
+ * target tile are written. Merging a whole maze is done in a single batch on
+ * the target maze, so its listeners are notified once per changed tile.
+ * </p>
+ */
+public class MazeMerger {
+
+	private final Maze target;
+	private TileTransform transform;
+	private final Map<LongPoint, Integer> appliedStates = new HashMap<LongPoint, Integer>();
+
+	/**
+	 * Create a new merger into the given maze.
+	 *
+	 * @param target
+	 *            The maze to merge into.
+	 */
+	public MazeMerger(Maze target) {
+		this.target = checkNotNull(target);
+	}
+
+	public final Maze getTarget() {
+		return target;
+	}
+
+	/**
+	 * Get the transformation from partner tile coordinates to target tile
+	 * coordinates, or null if not merging.
+	 */
+	public synchronized TileTransform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Check whether partner tiles are being merged.
+	 */
+	public synchronized boolean isMerging() {
+		return transform != null;
+	}
+
+	/**
+	 * Start merging with the given transformation.
+	 *
+	 * @param transform
+	 *            The transformation from partner tile coordinates to target
+	 *            tile coordinates.
+	 */
+	public synchronized void start(TileTransform transform) {
+		this.transform = checkNotNull(transform);
+		appliedStates.clear();
+	}
+
+	/**
+	 * Stop merging and forget all applied tiles.
+	 */
+	public synchronized void stop() {
+		this.transform = null;
+		appliedStates.clear();
+	}
+
+	/**
+	 * Merge all given partner tiles in a single batch.
+	 *
+	 * @param partnerTiles
+	 *            The partner tiles.
+	 * @return The number of partner tiles which were applied.
+	 */
+	public synchronized int mergeAll(Iterable<Tile> partnerTiles) {
+		int count = 0;
+		target.beginBatch();
+		try {
+			for (Tile partnerTile : partnerTiles) {
+				if (merge(partnerTile)) {
+					count++;
+				}
+			}
+		} finally {
+			target.endBatch();
+		}
+		return count;
+	}
+
+	/**
+	 * Merge a single partner tile.
+	 *
+	 * @param partnerTile
+	 *            The partner tile.
+	 * @return True if the tile was applied, false if it did not change since
+	 *         it was last applied or if not merging.
+	 */
+	public synchronized boolean merge(Tile partnerTile) {
+		if (!isMerging())
+			return false;
+
+		// Skip unchanged tiles
+		int state = getState(partnerTile);
+		Integer previousState = appliedStates.put(partnerTile.getPosition(), state);
+		if (previousState != null && previousState.intValue() == state)
+			return false;
+
+		apply(partnerTile);
+		return true;
+	}
+
+	/**
+	 * Write the parts of the partner tile which differ from the target tile.
+	 */
+	private void apply(Tile partnerTile) {
+		LongPoint position = transform.transform(partnerTile.getPosition());
+		Tile targetTile = target.getExistingTileAt(position);
+
+		// Edges
+		for (Orientation orientation : Orientation.values()) {
+			EdgeType edgeType = partnerTile.getEdgeAt(orientation).getType();
+			if (edgeType == EdgeType.UNKNOWN)
+				continue;
+			Orientation targetOrientation = transform.transform(orientation);
+			if (targetTile == null || targetTile.getEdgeAt(targetOrientation).getType() != edgeType) {
+				target.setEdge(position, targetOrientation, edgeType);
+			}
+		}
+		// Barcode
+		if (partnerTile.hasBarcode()) {
+			if (targetTile == null || !targetTile.hasBarcode()
+					|| !targetTile.getBarcode().equals(partnerTile.getBarcode())) {
+				target.setBarcode(position, partnerTile.getBarcode());
+			}
+		}
+		// Explored
+		if (partnerTile.isExplored()) {
+			if (targetTile == null || !targetTile.isExplored()) {
+				target.setExplored(position);
+			}
+		}
+		// Seesaw
+		if (partnerTile.getSeesawOrientation() != null) {
+			Orientation seesawOrientation = transform.transform(partnerTile.getSeesawOrientation());
+			if (targetTile == null || targetTile.getSeesawOrientation() != seesawOrientation) {
+				target.setSeesaw(position, seesawOrientation);
+			}
+		}
+		// Make sure the tile exists
+		if (targetTile == null) {
+			target.getTileAt(position);
+		}
+	}
+
+	/**
+	 * Get the state of a tile packed in an integer.
+	 *
+	 * <p>
+	 * Two tiles at the same position have the same state if and only if they
+	 * have the same edges, barcode, explored flag and seesaw orientation.
+	 * </p>
+	 */
+	static int getState(Tile tile) {
+		int state = 0;
+		// Edges, 2 bits each
+		for (Orientation orientation : Orientation.values()) {
+			state = (state << 2) | tile.getEdgeAt(orientation).getType().ordinal();
+		}
+		// Explored, 1 bit
+		state = (state << 1) | (tile.isExplored() ? 1 : 0);
+		// Seesaw orientation, 3 bits
+		Orientation seesawOrientation = tile.getSeesawOrientation();
+		state = (state << 3) | (seesawOrientation == null ? 0 : seesawOrientation.ordinal() + 1);
+		// Barcode, 9 bits
+		state = (state << 9) | (tile.hasBarcode() ? 0x100 | (tile.getBarcode().getValue() & 0xFF) : 0);
+		return state;
+	}
+
+}
@@ -0,0 +1,132 @@
+package mazestormer.maze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mazestormer.maze.Edge.EdgeType;
+import mazestormer.util.LongPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MazeMergerTest {
+
+	private Maze partner;
+	private Maze target;
+	private MazeMerger merger;
+	private CountingListener counter;
+
+	@Before
+	public void setUp() {
+		partner = new Maze();
+		for (long x = 0; x < 4; x++) {
+			for (long y = 0; y < 4; y++) {
+				LongPoint position = new LongPoint(x, y);
+				partner.setEdge(position, Orientation.NORTH, EdgeType.WALL);
+				partner.setEdge(position, Orientation.EAST, EdgeType.OPEN);
+				partner.setExplored(position);
+			}
+		}
+
+		target = new Maze();
+		counter = new CountingListener();
+		target.addListener(counter);
+
+		merger = new MazeMerger(target);
+		merger.start(new TileTransform(new LongPoint(10, 20), 1));
+	}
+
+	@Test
+	public void mergeAllBatched() {
+		assertEquals(partner.getNumberOfTiles(), merger.mergeAll(partner.getTiles()));
+
+		// Every tile reported at most once
+		assertEquals(target.getNumberOfTiles(), counter.added);
+		for (int count : counter.changed.values()) {
+			assertEquals(1, count);
+		}
+		assertEquals(16, counter.explored);
+	}
+
+	@Test
+	public void unchangedTilesSkipped() {
+		merger.mergeAll(partner.getTiles());
+		counter.reset();
+
+		assertEquals(0, merger.mergeAll(partner.getTiles()));
+		for (Tile tile : partner.getTiles()) {
+			assertFalse(merger.merge(tile));
+		}
+		assertEquals(0, counter.total());
+	}
+
+	@Test
+	public void changedTileApplied() {
+		merger.mergeAll(partner.getTiles());
+		counter.reset();
+
+		LongPoint position = new LongPoint(1, 1);
+		partner.setEdge(position, Orientation.WEST, EdgeType.WALL);
+		assertTrue(merger.merge(partner.getTileAt(position)));
+
+		LongPoint targetPosition = merger.getTransform().transform(position);
+		Orientation targetOrientation = merger.getTransform().transform(Orientation.WEST);
+		assertEquals(EdgeType.WALL, target.getTileAt(targetPosition).getEdgeAt(targetOrientation).getType());
+		assertEquals(1, counter.edges);
+	}
+
+	@Test
+	public void stopForgetsTiles() {
+		merger.mergeAll(partner.getTiles());
+		merger.stop();
+		assertFalse(merger.isMerging());
+		assertFalse(merger.merge(partner.getTileAt(new LongPoint(0, 0))));
+
+		merger.start(new TileTransform(new LongPoint(10, 20), 1));
+		assertTrue(merger.merge(partner.getTileAt(new LongPoint(0, 0))));
+	}
+
+	private static class CountingListener extends DefaultMazeListener {
+
+		private int added = 0;
+		private int edges = 0;
+		private int explored = 0;
+		private final Map<Tile, Integer> changed = new HashMap<Tile, Integer>();
+
+		@Override
+		public void tileAdded(Tile tile) {
+			added++;
+		}
+
+		@Override
+		public void tileChanged(Tile tile) {
+			Integer count = changed.get(tile);
+			changed.put(tile, count == null ? 1 : count + 1);
+		}
+
+		@Override
+		public void tileExplored(Tile tile) {
+			explored++;
+		}
+
+		@Override
+		public void edgeChanged(Edge edge) {
+			edges++;
+		}
+
+		public int total() {
+			return added + edges + explored + changed.size();
+		}
+
+		public void reset() {
+			added = edges = explored = 0;
+			changed.clear();
+		}
+
+	}
+
+}
@@ -21,6 +21,13 @@ public class TileTransform {
 		this.nbCCWRotations = nbCCWRotations & 3;
 	}
 
+	/**
+	 * Get the number of counter-clockwise rotations, between 0 and 3.
+	 */
+	public int getNbCCWRotations() {
+		return nbCCWRotations;
+	}
+
 	/**
 	 * Transform the given relative position to absolute coordinates.
 	 * 
@@ -114,6 +121,21 @@ public class TileTransform {
 		return transform;
 	}
 
+	@Override
+	public int hashCode() {
+		return 31 * transform.hashCode() + nbCCWRotations;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TileTransform))
+			return false;
+		TileTransform other = (TileTransform) obj;
+		return nbCCWRotations == other.nbCCWRotations && transform.equals(other.transform);
+	}
+
 	/**
 	 * Get the identity tile transformation.
 	 */
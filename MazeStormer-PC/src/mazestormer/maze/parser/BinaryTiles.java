@@ -0,0 +1,228 @@
+package mazestormer.maze.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.text.ParseException;
+import java.util.Collection;
+
+import mazestormer.barcode.Barcode;
+import mazestormer.maze.Edge.EdgeType;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Maze;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.Tile;
+import mazestormer.util.LongPoint;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Compact binary encoding of a batch of tiles in a single token.
+ *
+ * <p>
+ * Tile positions are written as zigzag variable length deltas from the
+ * previous tile. Every tile then takes one byte for its four edges and one
+ * byte for its seesaw orientation and barcode flag, followed by the barcode
+ * value if present. The bytes are written as base 64 after a fixed prefix, so
+ * the token can be sent in place of a regular tile token. The prefix is not a
+ * valid regular token, so receivers can tell both formats apart.
+ * </p>
+ *
+ * <p>
+ * Partners which do not understand this encoding would fail to parse it, so it
+ * should only be sent after the partner announced its support with
+ * {@link #announcement}. The announcement itself is sent as a tile as well, so
+ * it should only be sent to partners which are known to ignore tokens they do
+ * not understand.
+ * </p>
+ */
+public final class BinaryTiles {
+
+	/**
+	 * Prefix of a binary token.
+	 */
+	public static final String prefix = "#tiles1:";
+
+	/**
+	 * Token with which a player announces that it accepts binary tokens.
+	 */
+	public static final String announcement = "#tiles1?";
+
+	private static final BaseEncoding encoding = BaseEncoding.base64();
+
+	private static final int barcodeFlag = 0x08;
+	private static final int seesawMask = 0x07;
+
+	private BinaryTiles() {
+	}
+
+	/**
+	 * Check whether the given token is a binary token.
+	 */
+	public static boolean isBinary(String token) {
+		return token.startsWith(prefix);
+	}
+
+	/**
+	 * Check whether the given token is an announcement of binary support.
+	 */
+	public static boolean isAnnouncement(String token) {
+		return token.equals(announcement);
+	}
+
+	/**
+	 * Encode the given tiles in a single token.
+	 *
+	 * @param tiles
+	 *            The tiles.
+	 */
+	public static String encode(Collection<Tile> tiles) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4 + 5 * tiles.size());
+		writeVarint(out, tiles.size());
+		long x = 0, y = 0;
+		for (Tile tile : tiles) {
+			// Position
+			writeVarint(out, zigzag(tile.getX() - x));
+			writeVarint(out, zigzag(tile.getY() - y));
+			x = tile.getX();
+			y = tile.getY();
+			// Edges
+			int edges = 0;
+			for (Orientation orientation : Orientation.values()) {
+				edges |= tile.getEdgeAt(orientation).getType().ordinal() << (2 * orientation.ordinal());
+			}
+			out.write(edges);
+			// Seesaw and barcode
+			Orientation seesawOrientation = tile.getSeesawOrientation();
+			int flags = (seesawOrientation == null) ? 0 : seesawOrientation.ordinal() + 1;
+			if (tile.hasBarcode()) {
+				out.write(flags | barcodeFlag);
+				out.write(tile.getBarcode().getValue());
+			} else {
+				out.write(flags);
+			}
+		}
+		return prefix + encoding.encode(out.toByteArray());
+	}
+
+	/**
+	 * Decode a binary token and write its tiles into the given maze.
+	 *
+	 * <p>
+	 * If the maze is a {@link Maze}, all tiles are written in a single batch.
+	 * </p>
+	 *
+	 * @param token
+	 *            The binary token.
+	 * @param maze
+	 *            The maze to write the tiles into.
+	 * @return The number of decoded tiles.
+	 * @throws ParseException
+	 *             If the token is not a valid binary token.
+	 */
+	public static int decode(String token, IMaze maze) throws ParseException {
+		if (!isBinary(token))
+			throw new ParseException("Not a binary tile token", 0);
+
+		byte[] bytes;
+		try {
+			bytes = encoding.decode(token.substring(prefix.length()));
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid binary tile token: " + e.getMessage(), prefix.length());
+		}
+
+		Maze batchMaze = (maze instanceof Maze) ? (Maze) maze : null;
+		if (batchMaze != null) {
+			batchMaze.beginBatch();
+		}
+		try {
+			return decode(new Reader(bytes), maze);
+		} finally {
+			if (batchMaze != null) {
+				batchMaze.endBatch();
+			}
+		}
+	}
+
+	private static int decode(Reader in, IMaze maze) throws ParseException {
+		EdgeType[] edgeTypes = EdgeType.values();
+		Orientation[] orientations = Orientation.values();
+
+		long count = in.readVarint();
+		long x = 0, y = 0;
+		for (long i = 0; i < count; i++) {
+			x += unzigzag(in.readVarint());
+			y += unzigzag(in.readVarint());
+			LongPoint position = new LongPoint(x, y);
+			// Edges
+			int edges = in.read();
+			for (Orientation orientation : orientations) {
+				int type = (edges >>> (2 * orientation.ordinal())) & 3;
+				if (type >= edgeTypes.length)
+					throw new ParseException("Invalid edge type: " + type, in.getPosition());
+				if (edgeTypes[type] != EdgeType.UNKNOWN) {
+					maze.setEdge(position, orientation, edgeTypes[type]);
+				}
+			}
+			// Seesaw and barcode
+			int flags = in.read();
+			if ((flags & barcodeFlag) != 0) {
+				maze.setBarcode(position, new Barcode((byte) in.read()));
+			}
+			int seesaw = flags & seesawMask;
+			if (seesaw > orientations.length)
+				throw new ParseException("Invalid seesaw orientation: " + seesaw, in.getPosition());
+			if (seesaw != 0) {
+				maze.setSeesaw(position, orientations[seesaw - 1]);
+			}
+		}
+		return (int) count;
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static class Reader {
+
+		private final byte[] bytes;
+		private int position = 0;
+
+		public Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public int getPosition() {
+			return prefix.length() + position;
+		}
+
+		public int read() throws ParseException {
+			if (position >= bytes.length)
+				throw new ParseException("Unexpected end of binary tile token", getPosition());
+			return bytes[position++] & 0xFF;
+		}
+
+		public long readVarint() throws ParseException {
+			long value = 0;
+			for (int shift = 0; shift < Long.SIZE; shift += 7) {
+				int b = read();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new ParseException("Invalid variable length number", getPosition());
+		}
+
+	}
+
+}
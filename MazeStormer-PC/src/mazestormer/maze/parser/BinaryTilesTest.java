@@ -0,0 +1,53 @@
+package mazestormer.maze.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Maze;
+import mazestormer.maze.Tile;
+import mazestormer.maze.TileTransform;
+import mazestormer.util.LongPoint;
+
+import org.junit.Test;
+
+public class BinaryTilesTest {
+
+	// @formatter:off
+	private static final String mazeString = "4 4\n"
+			+ "DeadEnd.W.V Straight.W.01 Corner.E DeadEnd.N.V\n"
+			+ "Corner.N Straight.W.S1E T.E.S2S Straight.N.02\n"
+			+ "Straight.S.00 Corner.N.S4N T.S.S3W Corner.S\n"
+			+ "DeadEnd.S.V Corner.W Straight.E.03 DeadEnd.E.V";
+	// @formatter:on
+
+	@Test
+	public void roundTrip() throws ParseException {
+		IMaze source = new Maze();
+		new Parser(source).parse(mazeString);
+		// Add a tile at negative coordinates
+		source.importTile(source.getTileAt(new LongPoint(0, 0)), new TileTransform(new LongPoint(-5, -7), 0));
+
+		String token = BinaryTiles.encode(source.getTiles());
+		assertTrue(BinaryTiles.isBinary(token));
+		assertFalse(BinaryTiles.isAnnouncement(token));
+
+		IMaze target = new Maze();
+		assertEquals(source.getNumberOfTiles(), BinaryTiles.decode(token, target));
+		for (Tile tile : source.getTiles()) {
+			assertEquals(TileTokens.encode(tile), TileTokens.encode(target, tile.getPosition()));
+		}
+	}
+
+	@Test(expected = ParseException.class)
+	public void truncated() throws ParseException {
+		IMaze source = new Maze();
+		new Parser(source).parse(mazeString);
+		String token = BinaryTiles.encode(source.getTiles());
+		BinaryTiles.decode(token.substring(0, token.length() - 8), new Maze());
+	}
+
+}
@@ -8,7 +8,6 @@ import mazestormer.maze.Edge.EdgeType;
 import mazestormer.maze.IMaze;
 import mazestormer.maze.Orientation;
 import mazestormer.maze.Tile;
-import mazestormer.maze.TileShape;
 import mazestormer.maze.TileType;
 import mazestormer.util.LongPoint;
 
@@ -128,28 +127,7 @@ public class Parser {
 	 *            The tile position to stringify.
 	 */
 	public static String stringify(IMaze maze, LongPoint position) {
-		StringBuilder token = new StringBuilder();
-		Tile tile = maze.getTileAt(position);
-
-		if (tile.getSeesawOrientation() != null) {
-			// Write seesaw token
-			token.append(TileType.SEESAW.getName());
-			token.append('.').append(tile.getSeesawOrientation().getShortName());
-		} else {
-			// Write shape
-			TileShape shape = tile.getShape();
-			token.append(shape.getType().getName());
-			if (shape.getType().hasOrientation()) {
-				token.append('.').append(shape.getOrientation().getShortName());
-			}
-		}
-		if (tile.hasBarcode()) {
-			// Write barcode
-			int barcode = tile.getBarcode().getValue();
-			String barcodeString = String.format("%02d", barcode);
-			token.append('.').append(barcodeString);
-		}
-		return token.toString();
+		return TileTokens.encode(maze, position);
 	}
 
 	/**
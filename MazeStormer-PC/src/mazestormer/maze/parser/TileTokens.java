@@ -0,0 +1,111 @@
+package mazestormer.maze.parser;
+
+import mazestormer.barcode.Barcode;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.Tile;
+import mazestormer.maze.TileShape;
+import mazestormer.maze.TileType;
+import mazestormer.util.LongPoint;
+
+/**
+ * Pre-encoded tile tokens.
+ * 
+ * <p>
+ * All tokens for every combination of tile shape, seesaw orientation and
+ * barcode are built once, so encoding a tile only looks up its token instead of
+ * building a new string.
+ * </p>
+ */
+public final class TileTokens {
+
+	private static final int nbOrientations = Orientation.values().length;
+	private static final int nbBarcodes = 1 << Barcode.getNbValueBars();
+
+	/**
+	 * Shape tokens, indexed by shape and barcode.
+	 */
+	private static final String[][] shapeTokens = new String[TileType.values().length * (nbOrientations + 1)][];
+
+	/**
+	 * Seesaw tokens, indexed by orientation.
+	 */
+	private static final String[] seesawTokens = new String[nbOrientations];
+
+	static {
+		for (TileType type : TileType.values()) {
+			if (type.hasOrientation()) {
+				for (Orientation orientation : Orientation.values()) {
+					String token = type.getName() + '.' + orientation.getShortName();
+					shapeTokens[shapeIndex(type, orientation)] = createBarcodeTokens(token);
+				}
+			} else {
+				shapeTokens[shapeIndex(type, null)] = createBarcodeTokens(type.getName());
+			}
+		}
+		for (Orientation orientation : Orientation.values()) {
+			seesawTokens[orientation.ordinal()] = TileType.SEESAW.getName() + '.' + orientation.getShortName();
+		}
+	}
+
+	private TileTokens() {
+	}
+
+	/**
+	 * Get the token of a single tile in a maze.
+	 * 
+	 * @param maze
+	 *            The maze.
+	 * @param position
+	 *            The tile position.
+	 */
+	public static String encode(IMaze maze, LongPoint position) {
+		return encode(maze.getTileAt(position));
+	}
+
+	/**
+	 * Get the token of the given tile.
+	 * 
+	 * @param tile
+	 *            The tile.
+	 */
+	public static String encode(Tile tile) {
+		if (tile.getSeesawOrientation() != null) {
+			// Seesaw token
+			String token = seesawTokens[tile.getSeesawOrientation().ordinal()];
+			return tile.hasBarcode() ? appendBarcode(token, tile.getBarcode().getValue()) : token;
+		}
+
+		// Shape token
+		TileShape shape = tile.getShape();
+		Orientation orientation = shape.hasOrientation() ? shape.getOrientation() : null;
+		String[] tokens = shapeTokens[shapeIndex(shape.getType(), orientation)];
+		if (!tile.hasBarcode()) {
+			return tokens[0];
+		}
+		int barcode = tile.getBarcode().getValue();
+		if (barcode >= 0 && barcode < nbBarcodes) {
+			return tokens[barcode + 1];
+		}
+		return appendBarcode(tokens[0], barcode);
+	}
+
+	private static int shapeIndex(TileType type, Orientation orientation) {
+		int index = type.ordinal() * (nbOrientations + 1);
+		return (orientation == null) ? index + nbOrientations : index + orientation.ordinal();
+	}
+
+	private static String[] createBarcodeTokens(String token) {
+		String[] tokens = new String[nbBarcodes + 1];
+		tokens[0] = token;
+		for (int barcode = 0; barcode < nbBarcodes; barcode++) {
+			tokens[barcode + 1] = appendBarcode(token, barcode);
+		}
+		return tokens;
+	}
+
+	private static String appendBarcode(String token, int barcode) {
+		return token + '.' + String.format("%02d", barcode);
+	}
+
+}
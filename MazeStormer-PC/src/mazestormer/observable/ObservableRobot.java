@@ -1,6 +1,5 @@
 package mazestormer.observable;
 
-import lejos.robotics.localization.PoseProvider;
 import mazestormer.infrared.Envelope;
 import mazestormer.infrared.IRRobot;
 import mazestormer.infrared.RectangularEnvelope;
@@ -8,7 +7,7 @@ import mazestormer.world.ModelType;
 
 public class ObservableRobot implements IRRobot {
 
-	private PoseProvider poseProvider;
+	private final ObservePoseProvider poseProvider;
 
 	private final Envelope envelope;
 	private final ModelType modelType;
@@ -25,10 +24,17 @@ public class ObservableRobot implements IRRobot {
 	}
 
 	@Override
-	public PoseProvider getPoseProvider() {
+	public ObservePoseProvider getPoseProvider() {
 		return poseProvider;
 	}
 
+	/**
+	 * Get the estimator of this robot's pose.
+	 */
+	public PoseEstimator getPoseEstimator() {
+		return poseProvider.getEstimator();
+	}
+
 	@Override
 	public boolean isEmitting() {
 		return true;
@@ -1,28 +1,92 @@
 package mazestormer.observable;
 
-import lejos.robotics.localization.PoseProvider;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import lejos.robotics.navigation.Pose;
+import mazestormer.robot.ObservablePoseProvider;
+import mazestormer.robot.PoseChangeDetector;
+import mazestormer.robot.PoseListener;
 
-public class ObservePoseProvider implements PoseProvider {
+/**
+ * Provides the pose of a remote robot.
+ * 
+ * <p>
+ * Set poses are reports of the remote robot, which only arrive once in a
+ * while. The returned pose is estimated from these reports at the time it is
+ * requested, so observers see the robot move smoothly in between reports.
+ * </p>
+ * 
+ * <p>
+ * Pose listeners are notified when a reported pose differs from the previous
+ * report.
+ * </p>
+ */
+public class ObservePoseProvider implements ObservablePoseProvider {
 
-	private Pose pose;
+	private final PoseEstimator estimator = new PoseEstimator();
+	private final PoseChangeDetector reportChanges = new PoseChangeDetector();
+	private final List<PoseListener> listeners = new CopyOnWriteArrayList<PoseListener>();
 
 	public ObservePoseProvider() {
-		setPose(new Pose());
 	}
 
 	@Override
-	public synchronized Pose getPose() {
-		return clone(pose);
+	public Pose getPose() {
+		return getPoseEstimate(System.currentTimeMillis()).getPose();
+	}
+
+	@Override
+	public Pose getPose(Pose pose) {
+		Pose estimate = getPoseEstimate(System.currentTimeMillis()).getPose();
+		pose.setLocation(estimate.getX(), estimate.getY());
+		pose.setHeading(estimate.getHeading());
+		return pose;
+	}
+
+	@Override
+	public void setPose(Pose pose) {
+		estimator.add(pose, System.currentTimeMillis());
+		if (reportChanges.update(pose)) {
+			firePoseChanged();
+		}
+	}
+
+	/**
+	 * Estimate the pose at the given time.
+	 * 
+	 * @param time
+	 *            The time, in milliseconds.
+	 */
+	public PoseEstimate getPoseEstimate(long time) {
+		return estimator.estimate(time);
+	}
+
+	/**
+	 * Get the most recently reported pose, or null if no pose was reported.
+	 */
+	public Pose getReportedPose() {
+		return estimator.getLastReport();
+	}
+
+	public PoseEstimator getEstimator() {
+		return estimator;
+	}
+
+	@Override
+	public void addPoseListener(PoseListener listener) {
+		listeners.add(listener);
 	}
 
 	@Override
-	public synchronized void setPose(Pose pose) {
-		this.pose = clone(pose);
+	public void removePoseListener(PoseListener listener) {
+		listeners.remove(listener);
 	}
 
-	private static Pose clone(Pose pose) {
-		return new Pose(pose.getX(), pose.getY(), pose.getHeading());
+	private void firePoseChanged() {
+		for (PoseListener listener : listeners) {
+			listener.poseChanged(this);
+		}
 	}
 
 }
@@ -0,0 +1,66 @@
+package mazestormer.observable;
+
+import lejos.robotics.navigation.Pose;
+
+/**
+ * An estimated pose with its confidence bounds.
+ */
+public class PoseEstimate {
+
+	private final Pose pose;
+	private final long time;
+	private final double positionError;
+	private final double headingError;
+	private final boolean isExtrapolated;
+
+	public PoseEstimate(Pose pose, long time, double positionError, double headingError, boolean isExtrapolated) {
+		this.pose = pose;
+		this.time = time;
+		this.positionError = positionError;
+		this.headingError = headingError;
+		this.isExtrapolated = isExtrapolated;
+	}
+
+	/**
+	 * Get the estimated pose.
+	 */
+	public Pose getPose() {
+		return new Pose(pose.getX(), pose.getY(), pose.getHeading());
+	}
+
+	/**
+	 * Get the time for which the pose was estimated, in milliseconds.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Get the maximum expected distance between the estimated and the actual
+	 * position.
+	 */
+	public double getPositionError() {
+		return positionError;
+	}
+
+	/**
+	 * Get the maximum expected difference between the estimated and the actual
+	 * heading, in degrees.
+	 */
+	public double getHeadingError() {
+		return headingError;
+	}
+
+	/**
+	 * Check whether the pose was predicted beyond the most recent report.
+	 */
+	public boolean isExtrapolated() {
+		return isExtrapolated;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s +/- %.1f, %.1f deg", pose, positionError, headingError);
+	}
+
+}
@@ -0,0 +1,389 @@
+package mazestormer.observable;
+
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Estimates the pose of a remote robot from sparse pose reports.
+ *
+ * <p>
+ * The most recent reports are kept with the time at which they were received.
+ * Poses between two reports are interpolated. Poses after the latest report
+ * are extrapolated with the velocity between the two latest reports, up to a
+ * maximum prediction horizon. When a new report does not match the prediction,
+ * the estimate converges to the new track over a short blending period instead
+ * of jumping to the reported pose. Reports which are too far off are taken as a
+ * teleport and reset the estimator.
+ * </p>
+ *
+ * <p>
+ * Every estimate carries confidence bounds which grow with the time since the
+ * nearest report and with the recent prediction errors.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class PoseEstimator {
+
+	public static final int defaultCapacity = 8;
+
+	/**
+	 * Weight of a new prediction error in the moving average.
+	 */
+	private static final double predictionErrorWeight = 0.5d;
+
+	/*
+	 * Reports, in a ring buffer sorted by time.
+	 */
+	private final long[] times;
+	private final float[] xs;
+	private final float[] ys;
+	private final float[] headings;
+	private int first = 0;
+	private int size = 0;
+
+	/*
+	 * Tracks
+	 */
+	private Track track;
+	private Track blendTrack;
+	private double predictionError = 0d;
+
+	/*
+	 * Settings
+	 */
+	private long maxExtrapolation = 3000; // ms
+	private long blendDuration = 500; // ms
+	private long minVelocityInterval = 50; // ms
+	private double snapDistance = 100d;
+	private double measurementError = 0d;
+	private double speedUncertainty = 10d; // per second
+	private double turnUncertainty = 45d; // degrees per second
+
+	public PoseEstimator(int capacity) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("Capacity must be at least 2.");
+		this.times = new long[capacity];
+		this.xs = new float[capacity];
+		this.ys = new float[capacity];
+		this.headings = new float[capacity];
+	}
+
+	public PoseEstimator() {
+		this(defaultCapacity);
+	}
+
+	/**
+	 * Get the maximum time after the latest report for which the pose is
+	 * predicted, in milliseconds. After this time, the robot is assumed to
+	 * remain at the last predicted pose.
+	 */
+	public synchronized long getMaxExtrapolation() {
+		return maxExtrapolation;
+	}
+
+	public synchronized void setMaxExtrapolation(long maxExtrapolation) {
+		this.maxExtrapolation = maxExtrapolation;
+	}
+
+	/**
+	 * Get the time over which the estimate converges to a new report, in
+	 * milliseconds.
+	 */
+	public synchronized long getBlendDuration() {
+		return blendDuration;
+	}
+
+	public synchronized void setBlendDuration(long blendDuration) {
+		this.blendDuration = blendDuration;
+	}
+
+	/**
+	 * Get the distance between a prediction and a report above which the
+	 * estimator is reset.
+	 */
+	public synchronized double getSnapDistance() {
+		return snapDistance;
+	}
+
+	public synchronized void setSnapDistance(double snapDistance) {
+		this.snapDistance = snapDistance;
+	}
+
+	/**
+	 * Get the maximum error on a reported position.
+	 *
+	 * <p>
+	 * For example, when only the tile of the robot is reported, this is half the
+	 * diagonal of a tile.
+	 * </p>
+	 */
+	public synchronized double getMeasurementError() {
+		return measurementError;
+	}
+
+	public synchronized void setMeasurementError(double measurementError) {
+		this.measurementError = measurementError;
+	}
+
+	/**
+	 * Configure this estimator for reports which only contain the tile of the
+	 * robot.
+	 *
+	 * <p>
+	 * The measurement error is set to half the diagonal of a tile, and the
+	 * estimator is only reset when a report is more than three tiles off.
+	 * </p>
+	 *
+	 * @param tileSize
+	 *            The size of a tile.
+	 */
+	public synchronized void setReportedTileSize(double tileSize) {
+		this.measurementError = tileSize * Math.sqrt(2d) / 2d;
+		this.snapDistance = 3d * tileSize;
+	}
+
+	/**
+	 * Get the rate at which the position error grows away from a report, per
+	 * second.
+	 */
+	public synchronized double getSpeedUncertainty() {
+		return speedUncertainty;
+	}
+
+	public synchronized void setSpeedUncertainty(double speedUncertainty) {
+		this.speedUncertainty = speedUncertainty;
+	}
+
+	/**
+	 * Get the rate at which the heading error grows away from a report, in
+	 * degrees per second.
+	 */
+	public synchronized double getTurnUncertainty() {
+		return turnUncertainty;
+	}
+
+	public synchronized void setTurnUncertainty(double turnUncertainty) {
+		this.turnUncertainty = turnUncertainty;
+	}
+
+	/**
+	 * Check whether any pose was reported.
+	 */
+	public synchronized boolean hasReports() {
+		return size > 0;
+	}
+
+	/**
+	 * Get the most recently reported pose, or null if no pose was reported.
+	 */
+	public synchronized Pose getLastReport() {
+		if (size == 0)
+			return null;
+		int i = index(size - 1);
+		return new Pose(xs[i], ys[i], headings[i]);
+	}
+
+	/**
+	 * Remove all reports.
+	 */
+	public synchronized void clear() {
+		first = 0;
+		size = 0;
+		track = null;
+		blendTrack = null;
+		predictionError = 0d;
+	}
+
+	/**
+	 * Add a reported pose.
+	 *
+	 * <p>
+	 * Reports older than the latest report are ignored.
+	 * </p>
+	 *
+	 * @param pose
+	 *            The reported pose.
+	 * @param time
+	 *            The time at which the pose was reported, in milliseconds.
+	 */
+	public synchronized void add(Pose pose, long time) {
+		if (size > 0 && time < times[index(size - 1)])
+			return;
+
+		float x = pose.getX(), y = pose.getY(), heading = normalize(pose.getHeading());
+
+		// Converge from the current prediction
+		Track previousTrack = null;
+		if (track != null) {
+			Pose predicted = estimatePose(time);
+			double error = Math.hypot(predicted.getX() - x, predicted.getY() - y);
+			if (error > snapDistance) {
+				// Teleported
+				clear();
+			} else {
+				predictionError = (1d - predictionErrorWeight) * predictionError + predictionErrorWeight * error;
+				previousTrack = track;
+				if (blendDuration > 0) {
+					blendTrack = new Track(time, predicted.getX(), predicted.getY(), predicted.getHeading(), track.vx,
+							track.vy, track.vh);
+				}
+			}
+		}
+
+		// Store report
+		if (size == times.length) {
+			first = index(1);
+			size--;
+		}
+		int i = index(size);
+		times[i] = time;
+		xs[i] = x;
+		ys[i] = y;
+		headings[i] = heading;
+		size++;
+
+		// Velocity between the two latest reports
+		float vx = 0f, vy = 0f, vh = 0f;
+		if (size >= 2) {
+			int j = index(size - 2);
+			long dt = time - times[j];
+			if (dt >= minVelocityInterval) {
+				vx = (x - xs[j]) / dt;
+				vy = (y - ys[j]) / dt;
+				vh = angleDifference(headings[j], heading) / dt;
+			} else if (previousTrack != null) {
+				// Too close to measure
+				vx = previousTrack.vx;
+				vy = previousTrack.vy;
+				vh = previousTrack.vh;
+			}
+		}
+		track = new Track(time, x, y, heading, vx, vy, vh);
+	}
+
+	/**
+	 * Estimate the pose at the given time.
+	 *
+	 * @param time
+	 *            The time, in milliseconds.
+	 * @return The estimated pose with its confidence bounds. If no pose was
+	 *         reported yet, the bounds are infinite.
+	 */
+	public synchronized PoseEstimate estimate(long time) {
+		if (size == 0) {
+			return new PoseEstimate(new Pose(), time, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, true);
+		}
+
+		int oldest = index(0);
+		int newest = index(size - 1);
+		if (time >= times[newest]) {
+			// Extrapolate
+			double seconds = (time - times[newest]) / 1000d;
+			double positionError = measurementError + predictionError + speedUncertainty * seconds;
+			double headingError = turnUncertainty * seconds;
+			return new PoseEstimate(estimatePose(time), time, positionError, headingError, time > times[newest]);
+		} else if (time <= times[oldest]) {
+			// Before first report
+			double seconds = (times[oldest] - time) / 1000d;
+			double positionError = measurementError + speedUncertainty * seconds;
+			double headingError = turnUncertainty * seconds;
+			Pose pose = new Pose(xs[oldest], ys[oldest], headings[oldest]);
+			return new PoseEstimate(pose, time, positionError, headingError, true);
+		} else {
+			// Interpolate between surrounding reports
+			int k = size - 2;
+			while (times[index(k)] > time) {
+				k--;
+			}
+			int a = index(k), b = index(k + 1);
+			float t = (float) (time - times[a]) / (times[b] - times[a]);
+			float x = xs[a] + t * (xs[b] - xs[a]);
+			float y = ys[a] + t * (ys[b] - ys[a]);
+			float heading = normalize(headings[a] + t * angleDifference(headings[a], headings[b]));
+
+			double seconds = Math.min(time - times[a], times[b] - time) / 1000d;
+			double positionError = measurementError + speedUncertainty * seconds;
+			double headingError = turnUncertainty * seconds;
+			return new PoseEstimate(new Pose(x, y, heading), time, positionError, headingError, false);
+		}
+	}
+
+	/**
+	 * Predict the pose at or after the latest report.
+	 */
+	private Pose estimatePose(long time) {
+		Pose pose = track.at(time, maxExtrapolation);
+		if (blendTrack != null) {
+			long elapsed = time - blendTrack.time;
+			if (elapsed < blendDuration) {
+				// Blend from previous prediction
+				float t = (float) Math.max(0, elapsed) / blendDuration;
+				Pose from = blendTrack.at(time, maxExtrapolation);
+				float x = from.getX() + t * (pose.getX() - from.getX());
+				float y = from.getY() + t * (pose.getY() - from.getY());
+				float heading = normalize(from.getHeading() + t * angleDifference(from.getHeading(), pose.getHeading()));
+				pose = new Pose(x, y, heading);
+			} else {
+				blendTrack = null;
+			}
+		}
+		return pose;
+	}
+
+	private int index(int i) {
+		return (first + i) % times.length;
+	}
+
+	/**
+	 * Get the smallest signed angle from the first to the second heading.
+	 */
+	private static float angleDifference(float from, float to) {
+		return normalize(to - from);
+	}
+
+	/**
+	 * Normalize a heading to the range (-180, 180].
+	 */
+	private static float normalize(float heading) {
+		heading %= 360f;
+		if (heading > 180f) {
+			heading -= 360f;
+		} else if (heading <= -180f) {
+			heading += 360f;
+		}
+		return heading;
+	}
+
+	/**
+	 * A pose moving at a constant velocity from a given time.
+	 */
+	private static class Track {
+
+		private final long time;
+		private final float x;
+		private final float y;
+		private final float heading;
+		private final float vx; // per ms
+		private final float vy; // per ms
+		private final float vh; // degrees per ms
+
+		public Track(long time, float x, float y, float heading, float vx, float vy, float vh) {
+			this.time = time;
+			this.x = x;
+			this.y = y;
+			this.heading = heading;
+			this.vx = vx;
+			this.vy = vy;
+			this.vh = vh;
+		}
+
+		public Pose at(long time, long maxExtrapolation) {
+			long dt = Math.max(0, Math.min(time - this.time, maxExtrapolation));
+			return new Pose(x + vx * dt, y + vy * dt, normalize(heading + vh * dt));
+		}
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package mazestormer.observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import lejos.robotics.navigation.Pose;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PoseEstimatorTest {
+
+	private static final float delta = 0.01f;
+
+	private PoseEstimator estimator;
+
+	@Before
+	public void setUp() {
+		estimator = new PoseEstimator();
+		estimator.setBlendDuration(0);
+	}
+
+	@Test
+	public void noReports() {
+		PoseEstimate estimate = estimator.estimate(1000);
+		assertTrue(Double.isInfinite(estimate.getPositionError()));
+	}
+
+	@Test
+	public void extrapolate() {
+		estimator.add(new Pose(0, 0, 0), 0);
+		estimator.add(new Pose(40, 0, 0), 2000);
+
+		PoseEstimate estimate = estimator.estimate(3000);
+		assertPose(60, 0, 0, estimate.getPose());
+		assertTrue(estimate.isExtrapolated());
+
+		// Error grows with time
+		assertTrue(estimator.estimate(4000).getPositionError() > estimate.getPositionError());
+	}
+
+	@Test
+	public void extrapolateUpToHorizon() {
+		estimator.setMaxExtrapolation(1000);
+		estimator.add(new Pose(0, 0, 90), 0);
+		estimator.add(new Pose(0, 40, 90), 2000);
+
+		assertPose(0, 60, 90, estimator.estimate(3000).getPose());
+		assertPose(0, 60, 90, estimator.estimate(10000).getPose());
+	}
+
+	@Test
+	public void interpolate() {
+		estimator.add(new Pose(0, 0, 170), 0);
+		estimator.add(new Pose(40, 20, -170), 2000);
+		estimator.add(new Pose(80, 20, -170), 4000);
+
+		PoseEstimate estimate = estimator.estimate(1000);
+		assertFalse(estimate.isExtrapolated());
+		// Turns through 180 degrees
+		assertPose(20, 10, 180, estimate.getPose());
+	}
+
+	@Test
+	public void blendToNewReport() {
+		estimator.setBlendDuration(1000);
+		estimator.add(new Pose(0, 0, 0), 0);
+		estimator.add(new Pose(40, 0, 0), 2000);
+		// Predicted at (80, 0), reported at (40, 40)
+		estimator.add(new Pose(40, 40, 0), 4000);
+
+		// Continues from previous prediction
+		assertPose(80, 0, 0, estimator.estimate(4000).getPose());
+		// Converged to new track
+		assertPose(40, 60, 0, estimator.estimate(5000).getPose());
+	}
+
+	@Test
+	public void snapOnTeleport() {
+		estimator.setBlendDuration(1000);
+		estimator.setSnapDistance(100);
+		estimator.add(new Pose(0, 0, 0), 0);
+		estimator.add(new Pose(40, 0, 0), 2000);
+		estimator.add(new Pose(500, 500, 0), 4000);
+
+		assertPose(500, 500, 0, estimator.estimate(4000).getPose());
+		// No velocity from before the teleport
+		assertPose(500, 500, 0, estimator.estimate(5000).getPose());
+	}
+
+	private static void assertPose(float x, float y, float heading, Pose pose) {
+		assertEquals(x, pose.getX(), delta);
+		assertEquals(y, pose.getY(), delta);
+		assertEquals(0f, normalize(heading - pose.getHeading()), delta);
+	}
+
+	private static float normalize(float angle) {
+		angle %= 360f;
+		if (angle > 180f)
+			angle -= 360f;
+		if (angle <= -180f)
+			angle += 360f;
+		return angle;
+	}
+
+}
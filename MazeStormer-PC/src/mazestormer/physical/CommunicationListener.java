@@ -0,0 +1,29 @@
+package mazestormer.physical;
+
+import mazestormer.command.Command;
+import mazestormer.report.Report;
+
+/**
+ * Observes the messages exchanged with a physical robot, in the order in which
+ * they are sent and received.
+ */
+public interface CommunicationListener {
+
+	/**
+	 * Invoked right before a command is sent to the robot.
+	 *
+	 * @param command
+	 *            The command.
+	 */
+	public void commandSent(Command command);
+
+	/**
+	 * Invoked when a report is received from the robot, before it is
+	 * dispatched to the message listeners.
+	 *
+	 * @param report
+	 *            The report.
+	 */
+	public void reportReceived(Report<?> report);
+
+}
@@ -20,7 +20,8 @@ public class PhysicalCommandBuilder extends ReportRequester<Void> implements Con
 	private final List<Runnable> actions = new ArrayList<Runnable>();
 
 	public PhysicalCommandBuilder(PhysicalCommunicator communicator, CommandType type, Condition condition) {
-		super(communicator);
+		// Conditions may take arbitrarily long to resolve
+		super(communicator, 0);
 		command = new ConditionalCommand(type, condition);
 		command.setRequestId(communicator.nextRequestId());
 	}
@@ -1,11 +1,10 @@
 package mazestormer.physical;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import lejos.pc.comm.NXTConnector;
@@ -15,37 +14,92 @@ import mazestormer.remote.MessageListener;
 import mazestormer.report.Report;
 import mazestormer.report.ReportReader;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 public class PhysicalCommunicator extends Communicator<Command, Report<?>> {
 
 	private NXTConnector connector;
 	private final List<MessageListener<? super Report<?>>> listeners;
+	private final List<CommunicationListener> communicationListeners;
 
 	private volatile AtomicInteger nextRequestId = new AtomicInteger();
 
-	private static ThreadFactory factory = new ThreadFactoryBuilder()
-			.setNameFormat("PhysicalCommunicator-%d").build();
-	private final ExecutorService executor = Executors
-			.newCachedThreadPool(factory);
+	private final ReportDispatcher dispatcher;
+	private final RequestTable requests;
 
 	public PhysicalCommunicator(NXTConnector connector) {
-		super(connector.getInputStream(), connector.getOutputStream(),
-				new ReportReader());
+		this(connector.getInputStream(), connector.getOutputStream());
 		this.connector = connector;
+	}
+
+	/**
+	 * Create a communicator over the given streams, without an NXT connection.
+	 * 
+	 * @param is
+	 *            The input stream receiving reports.
+	 * @param os
+	 *            The output stream sending commands.
+	 */
+	public PhysicalCommunicator(InputStream is, OutputStream os) {
+		this(is, os, false);
+	}
+
+	/**
+	 * Create a communicator over the given streams, without an NXT connection.
+	 * 
+	 * <p>
+	 * A sequential communicator delivers all reports on a single thread in the
+	 * order they were received, and never coalesces update reports. This is
+	 * slower, but the order in which listeners see reports no longer depends
+	 * on thread scheduling.
+	 * </p>
+	 * 
+	 * @param is
+	 *            The input stream receiving reports.
+	 * @param os
+	 *            The output stream sending commands.
+	 * @param isSequential
+	 *            True if reports should be delivered sequentially.
+	 */
+	public PhysicalCommunicator(InputStream is, OutputStream os, boolean isSequential) {
+		super(is, os, new ReportReader());
 		this.listeners = new CopyOnWriteArrayList<MessageListener<? super Report<?>>>();
+		this.communicationListeners = new CopyOnWriteArrayList<CommunicationListener>();
+		if (isSequential) {
+			this.dispatcher = new ReportDispatcher(new ListenerTrigger(), ReportDispatcher.defaultCapacity,
+					ReportDispatcher.UpdatePolicy.QUEUE, true);
+		} else {
+			this.dispatcher = new ReportDispatcher(new ListenerTrigger());
+		}
+		this.requests = new RequestTable(this);
+		addListener(requests);
 	}
 
 	public int nextRequestId() {
 		return nextRequestId.incrementAndGet();
 	}
 
+	/**
+	 * Get the dispatcher which delivers incoming reports to the listeners.
+	 */
+	public ReportDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Get the table of requests which are waiting for a reply.
+	 */
+	public RequestTable getRequests() {
+		return requests;
+	}
+
+	@Override
+	protected void beforeStart() {
+		dispatcher.start();
+	}
+
 	@Override
 	public void terminate() throws IOException {
 		super.terminate();
-		if (!executor.isShutdown()) {
-			executor.shutdown();
-		}
+		dispatcher.shutdown();
 		if (connector != null) {
 			connector.close();
 			connector = null;
@@ -78,6 +132,44 @@ public class PhysicalCommunicator extends Communicator<Command, Report<?>> {
 		super.removeListener(listener);
 	}
 
+	/**
+	 * Add a listener which observes all sent commands and received reports.
+	 * 
+	 * @param listener
+	 *            The new listener.
+	 */
+	public void addCommunicationListener(CommunicationListener listener) {
+		communicationListeners.add(listener);
+	}
+
+	/**
+	 * Remove a registered communication listener.
+	 * 
+	 * @param listener
+	 *            The listener to remove.
+	 */
+	public void removeCommunicationListener(CommunicationListener listener) {
+		communicationListeners.remove(listener);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * Communication listeners are informed before the command is written, so
+	 * a command is always observed before any report replying to it.
+	 * </p>
+	 */
+	@Override
+	public synchronized void send(Command command) throws IOException {
+		if (isListening()) {
+			for (CommunicationListener listener : communicationListeners) {
+				listener.commandSent(command);
+			}
+		}
+		super.send(command);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -85,15 +177,22 @@ public class PhysicalCommunicator extends Communicator<Command, Report<?>> {
 	 * Changes to the list of registered listeners are only applied after the
 	 * current message is processed by all currently registered listeners.
 	 * </p>
+	 * 
+	 * <p>
+	 * Reports are handed to the {@link ReportDispatcher dispatcher}, which
+	 * delivers them in order per dispatch group.
+	 * </p>
 	 */
 	@Override
 	public void trigger(final Report<?> report) {
-		executor.submit(new Runnable() {
-			@Override
-			public void run() {
-				PhysicalCommunicator.super.trigger(report);
-			}
-		});
+		for (CommunicationListener listener : communicationListeners) {
+			listener.reportReceived(report);
+		}
+		try {
+			dispatcher.dispatch(report);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	@Override
@@ -101,4 +200,13 @@ public class PhysicalCommunicator extends Communicator<Command, Report<?>> {
 		return listeners;
 	}
 
+	private class ListenerTrigger implements MessageListener<Report<?>> {
+
+		@Override
+		public void messageReceived(Report<?> report) {
+			PhysicalCommunicator.super.trigger(report);
+		}
+
+	}
+
 }
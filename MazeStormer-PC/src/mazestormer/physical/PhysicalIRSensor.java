@@ -4,21 +4,24 @@ import java.util.concurrent.TimeUnit;
 
 import mazestormer.command.CommandType;
 import mazestormer.command.IRReadCommand;
+import mazestormer.robot.ControllableRobot;
 import mazestormer.robot.IRSensor;
+import mazestormer.robot.RobotUpdate;
+import mazestormer.robot.RobotUpdateListener;
 import mazestormer.util.Future;
 
-public class PhysicalIRSensor extends PhysicalComponent implements IRSensor {
+public class PhysicalIRSensor extends PhysicalComponent implements IRSensor, RobotUpdateListener {
 
 	private final IRRequester irRequester;
 
+	private volatile long maxStaleness = ControllableRobot.updateReportDelay;
+	private float lastAngle = Float.NaN;
+	private long lastAngleTime;
+	private boolean hasLastAngle = false;
+
 	public PhysicalIRSensor(PhysicalCommunicator communicator) {
 		super(communicator);
 		irRequester = new IRRequester(getCommunicator());
-		setup();
-	}
-
-	private void setup() {
-		addMessageListener(irRequester);
 	}
 
 	@Override
@@ -28,9 +31,44 @@ public class PhysicalIRSensor extends PhysicalComponent implements IRSensor {
 
 	@Override
 	public float getAngle() {
+		// Use latest update if fresh enough
+		synchronized (this) {
+			long maxAge = TimeUnit.MILLISECONDS.toNanos(getMaxStaleness());
+			if (hasLastAngle && maxAge > 0 && System.nanoTime() - lastAngleTime <= maxAge) {
+				return lastAngle;
+			}
+		}
 		return getValues()[0];
 	}
 
+	/**
+	 * Get the maximum age of an angle received in an update report for it to
+	 * be used instead of requesting a new reading, in milliseconds.
+	 */
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * Set the maximum age of an angle received in an update report for it to
+	 * be used instead of requesting a new reading.
+	 * 
+	 * @param maxStaleness
+	 *            The maximum age in milliseconds, or zero to always request a
+	 *            new reading.
+	 */
+	public void setMaxStaleness(long maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+
+	@Override
+	public synchronized void updateReceived(RobotUpdate update) {
+		// Update reports always carry the angle, NaN meaning no reading
+		lastAngle = update.getInfraredAngle();
+		lastAngleTime = System.nanoTime();
+		hasLastAngle = true;
+	}
+
 	public int getSensorValue(int id) {
 		return (int) getValues()[id];
 	}
@@ -53,7 +91,7 @@ public class PhysicalIRSensor extends PhysicalComponent implements IRSensor {
 
 		public Future<float[]> request() {
 			IRReadCommand command = new IRReadCommand(CommandType.IR_READ);
-			return request(command);
+			return requestCoalesced(CommandType.IR_READ, command);
 		}
 
 	}
@@ -8,27 +8,27 @@ import mazestormer.command.CommandType;
 import mazestormer.command.LightCalibrateCommand;
 import mazestormer.robot.AbstractCalibratedLightSensor;
 import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.RobotUpdate;
+import mazestormer.robot.RobotUpdateListener;
 import mazestormer.util.Future;
 
-public class PhysicalLightSensor extends AbstractCalibratedLightSensor {
+public class PhysicalLightSensor extends AbstractCalibratedLightSensor implements RobotUpdateListener {
 
 	private boolean isFloodlight = false;
 	private final LightValueRequester lightValueRequester;
 
+	private volatile long maxStaleness = ControllableRobot.updateReportDelay;
+	private int lastValue = -1;
+	private long lastValueTime;
+
 	private final PhysicalCommunicator communicator;
 
 	public PhysicalLightSensor(PhysicalCommunicator communicator) {
 		this.communicator = communicator;
 		lightValueRequester = new LightValueRequester(communicator);
-		setup();
-	}
-
-	private void setup() {
-		communicator.addListener(lightValueRequester);
 	}
 
 	public void terminate() {
-		communicator.removeListener(lightValueRequester);
 	}
 
 	private void send(Command command) {
@@ -40,8 +40,48 @@ public class PhysicalLightSensor extends AbstractCalibratedLightSensor {
 		}
 	}
 
+	/**
+	 * Get the maximum age of a light value received in an update report for it
+	 * to be used instead of requesting a new value, in milliseconds.
+	 */
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * Set the maximum age of a light value received in an update report for it
+	 * to be used instead of requesting a new value.
+	 * 
+	 * @param maxStaleness
+	 *            The maximum age in milliseconds, or zero to always request a
+	 *            new value.
+	 */
+	public void setMaxStaleness(long maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+
+	@Override
+	public synchronized void updateReceived(RobotUpdate update) {
+		if (update.getLightValue() >= 0) {
+			lastValue = update.getLightValue();
+			lastValueTime = System.nanoTime();
+		}
+	}
+
+	private synchronized int getFreshValue() {
+		if (lastValue < 0 || getMaxStaleness() <= 0)
+			return -1;
+		long age = System.nanoTime() - lastValueTime;
+		return (age <= TimeUnit.MILLISECONDS.toNanos(getMaxStaleness())) ? lastValue : -1;
+	}
+
 	@Override
 	public int getNormalizedLightValue() {
+		// Use latest update if fresh enough
+		int value = getFreshValue();
+		if (value >= 0)
+			return value;
+
 		try {
 			return lightValueRequester.request().get(PhysicalRobot.requestTimeout, TimeUnit.MILLISECONDS);
 		} catch (Exception e) {
@@ -101,7 +141,7 @@ public class PhysicalLightSensor extends AbstractCalibratedLightSensor {
 		}
 
 		public Future<Integer> request() {
-			return request(CommandType.LIGHT_READ);
+			return requestCoalesced(CommandType.LIGHT_READ, CommandType.LIGHT_READ);
 		}
 
 	}
@@ -1,7 +1,7 @@
 package mazestormer.physical;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import lejos.robotics.navigation.Move;
 import lejos.robotics.navigation.Move.MoveType;
@@ -27,7 +27,7 @@ public class PhysicalPilot extends PhysicalComponent implements Pilot, RobotUpda
 	private double rotateSpeed;
 	private Move movement;
 
-	private List<MoveListener> moveListeners = new ArrayList<MoveListener>();
+	private List<MoveListener> moveListeners = new CopyOnWriteArrayList<MoveListener>();
 
 	public PhysicalPilot(PhysicalCommunicator communicator) {
 		super(communicator);
@@ -16,6 +16,8 @@ import mazestormer.report.Report;
 import mazestormer.robot.RangeScannerListener;
 import mazestormer.util.Future;
 
+import com.google.common.primitives.Floats;
+
 public class PhysicalRangeScanner extends PhysicalComponent implements ObservableRangeScanner {
 
 	private float[] angles;
@@ -28,7 +30,6 @@ public class PhysicalRangeScanner extends PhysicalComponent implements Observabl
 		super(communicator);
 
 		scanRequester = new ScanRequester(getCommunicator());
-		addMessageListener(scanRequester);
 
 		readingReceiver = new RangeReadingReceiver();
 		addMessageListener(readingReceiver);
@@ -87,7 +88,8 @@ public class PhysicalRangeScanner extends PhysicalComponent implements Observabl
 
 		public Future<RangeReadings> request(float[] angles) {
 			ScanCommand command = new ScanCommand(CommandType.SCAN, angles);
-			return request(command);
+			// Scans at the same angles are identical
+			return requestCoalesced(Floats.asList(angles.clone()), command);
 		}
 
 	}
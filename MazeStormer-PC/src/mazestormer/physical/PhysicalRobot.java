@@ -3,10 +3,10 @@ package mazestormer.physical;
 import java.util.ArrayList;
 import java.util.List;
 
-import lejos.robotics.localization.OdometryPoseProvider;
 import lejos.robotics.localization.PoseProvider;
 import mazestormer.command.CommandType;
 import mazestormer.condition.Condition;
+import mazestormer.condition.StrokeEdgesCondition;
 import mazestormer.detect.ObservableRangeScanner;
 import mazestormer.detect.RangeFeatureDetector;
 import mazestormer.detect.RangeScannerFeatureDetector;
@@ -20,11 +20,13 @@ import mazestormer.robot.CalibratedLightSensor;
 import mazestormer.robot.ControllablePCRobot;
 import mazestormer.robot.IRSensor;
 import mazestormer.robot.Pilot;
+import mazestormer.robot.PilotPoseProvider;
 import mazestormer.robot.RobotUpdate;
 import mazestormer.robot.RobotUpdateListener;
 import mazestormer.robot.SoundPlayer;
 import mazestormer.simulator.VirtualRobotIRSensor;
 import mazestormer.simulator.VirtualSoundPlayer;
+import mazestormer.util.Future;
 import mazestormer.world.ModelType;
 import mazestormer.world.World;
 
@@ -43,11 +45,14 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 	private final PhysicalLightSensor light;
 	private final ObservableRangeScanner rangeScanner;
 	private final RangeScannerFeatureDetector rangeDetector;
-	private final IRSensor infrared;
+	private final PhysicalIRSensor infrared;
 	private final IRSensor infraredRobot;
 
 	private final SoundPlayer soundPlayer;
 
+	private final StrokeEdgesRequester strokeEdgesRequester;
+	private final TrajectoryFetcher trajectoryFetcher;
+
 	private final UpdateReceiver updateReceiver;
 	private final List<RobotUpdateListener> updateListeners = new ArrayList<RobotUpdateListener>();
 
@@ -63,10 +68,11 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 		// Pilot
 		pilot = new PhysicalPilot(communicator);
 		addUpdateListener(pilot);
-		poseProvider = new OdometryPoseProvider(pilot);
+		poseProvider = new PilotPoseProvider(pilot);
 
 		// Light sensor
 		light = new PhysicalLightSensor(communicator);
+		addUpdateListener(light);
 
 		// Range scanner
 		rangeScanner = new PhysicalRangeScanner(communicator);
@@ -75,6 +81,7 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 
 		// Infrared sensor
 		infrared = new PhysicalIRSensor(getCommunicator());
+		addUpdateListener(infrared);
 		// TODO: sv_cheats 1
 		// infrared = new VirtualSeesawIRSensor(world);
 		infraredRobot = new VirtualRobotIRSensor(world);
@@ -82,6 +89,13 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 		// Sound player
 		soundPlayer = new VirtualSoundPlayer();
 
+		// Barcode strokes
+		strokeEdgesRequester = new StrokeEdgesRequester(communicator);
+
+		// Trajectory log
+		trajectoryFetcher = new TrajectoryFetcher(communicator);
+		pilot.addMoveListener(trajectoryFetcher);
+
 		this.envelope = new RectangularEnvelope(width, height, DETECTION_RADIUS);
 	}
 
@@ -135,6 +149,13 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 		return soundPlayer;
 	}
 
+	/**
+	 * Get the fetcher of the trajectory log recorded on the robot.
+	 */
+	public TrajectoryFetcher getTrajectoryFetcher() {
+		return trajectoryFetcher;
+	}
+
 	@Override
 	public void addUpdateListener(RobotUpdateListener listener) {
 		updateListeners.add(listener);
@@ -151,11 +172,14 @@ public class PhysicalRobot extends PhysicalComponent implements ControllablePCRo
 		}
 	}
 
+	@Override
+	public Future<float[]> recordStrokeEdges(StrokeEdgesCondition condition) {
+		return strokeEdgesRequester.request(condition);
+	}
+
 	@Override
 	public CommandBuilder when(Condition condition) {
-		PhysicalCommandBuilder builder = new PhysicalCommandBuilder(getCommunicator(), CommandType.WHEN, condition);
-		addMessageListener(builder);
-		return builder;
+		return new PhysicalCommandBuilder(getCommunicator(), CommandType.WHEN, condition);
 	}
 
 	@Override
@@ -0,0 +1,539 @@
+package mazestormer.physical;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import mazestormer.remote.MessageListener;
+import mazestormer.report.Report;
+import mazestormer.report.ReportType;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Dispatches incoming reports to a message listener in order.
+ *
+ * <p>
+ * Reports are distributed over a fixed set of dispatch groups. Every group has
+ * its own bounded ring buffer and a single consumer thread, so reports within
+ * one group are delivered in the order they were received while different
+ * groups are dispatched in parallel. When a ring buffer is full, the receiving
+ * thread blocks until the consumer has caught up.
+ * </p>
+ *
+ * <p>
+ * Listeners must never block on a report which is dispatched through their own
+ * group, since that group's consumer is the thread running the listener.
+ * </p>
+ *
+ * <p>
+ * A sequential dispatcher shares a single ring buffer and consumer between all
+ * groups, so all reports are delivered in the order they were received. This
+ * makes the order of delivery independent of thread scheduling, at the cost
+ * of parallelism.
+ * </p>
+ */
+public class ReportDispatcher {
+
+	/**
+	 * Default capacity of the ring buffer of each dispatch group.
+	 */
+	public static final int defaultCapacity = 256;
+
+	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("ReportDispatcher-%d")
+			.setDaemon(true).build();
+
+	private final MessageListener<? super Report<?>> target;
+	private final Map<DispatchGroup, Lane> lanes = new EnumMap<DispatchGroup, Lane>(DispatchGroup.class);
+	private volatile UpdatePolicy updatePolicy;
+
+	/**
+	 * Number of reports which were delivered or replaced by a newer report.
+	 */
+	private final AtomicLong handledCount = new AtomicLong();
+	private final ReentrantLock handledLock = new ReentrantLock();
+	private final Condition handled = handledLock.newCondition();
+	private volatile int handledWaiters = 0;
+
+	/**
+	 * Create a new report dispatcher.
+	 *
+	 * @param target
+	 *            The listener to dispatch reports to.
+	 * @param capacity
+	 *            The ring buffer capacity of each dispatch group.
+	 * @param updatePolicy
+	 *            The policy for pending update reports.
+	 * @param isSequential
+	 *            True if all groups should share a single consumer.
+	 */
+	public ReportDispatcher(MessageListener<? super Report<?>> target, int capacity, UpdatePolicy updatePolicy,
+			boolean isSequential) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		this.target = target;
+		this.updatePolicy = updatePolicy;
+		Lane sharedLane = isSequential ? new Lane("SEQUENTIAL", capacity) : null;
+		for (DispatchGroup group : DispatchGroup.values()) {
+			lanes.put(group, isSequential ? sharedLane : new Lane(group.name(), capacity));
+		}
+	}
+
+	/**
+	 * Create a new report dispatcher with a consumer per dispatch group.
+	 *
+	 * @param target
+	 *            The listener to dispatch reports to.
+	 * @param capacity
+	 *            The ring buffer capacity of each dispatch group.
+	 * @param updatePolicy
+	 *            The policy for pending update reports.
+	 */
+	public ReportDispatcher(MessageListener<? super Report<?>> target, int capacity, UpdatePolicy updatePolicy) {
+		this(target, capacity, updatePolicy, false);
+	}
+
+	public ReportDispatcher(MessageListener<? super Report<?>> target) {
+		this(target, defaultCapacity, UpdatePolicy.COALESCE);
+	}
+
+	public UpdatePolicy getUpdatePolicy() {
+		return updatePolicy;
+	}
+
+	public void setUpdatePolicy(UpdatePolicy updatePolicy) {
+		this.updatePolicy = updatePolicy;
+	}
+
+	/**
+	 * Start the consumer threads of all dispatch groups.
+	 */
+	public void start() {
+		for (Lane lane : lanes.values()) {
+			lane.start();
+		}
+	}
+
+	/**
+	 * Stop the consumer threads of all dispatch groups.
+	 *
+	 * <p>
+	 * Reports which are still pending are discarded.
+	 * </p>
+	 */
+	public void shutdown() {
+		for (Lane lane : lanes.values()) {
+			lane.shutdown();
+		}
+	}
+
+	/**
+	 * Queue the given report for dispatching.
+	 *
+	 * <p>
+	 * Blocks while the ring buffer of the report's dispatch group is full.
+	 * Reports are discarded when the dispatcher is not running.
+	 * </p>
+	 *
+	 * @param report
+	 *            The report to dispatch.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for free space.
+	 */
+	public void dispatch(Report<?> report) throws InterruptedException {
+		ReportType type = report.getType();
+		boolean coalesce = (type == ReportType.UPDATE && getUpdatePolicy() == UpdatePolicy.COALESCE);
+		lanes.get(DispatchGroup.of(type)).offer(report, coalesce);
+	}
+
+	/**
+	 * Get the number of reports which were delivered to the listener or
+	 * replaced by a newer report before being delivered.
+	 */
+	public long getHandledCount() {
+		return handledCount.get();
+	}
+
+	/**
+	 * Wait until the given number of reports has been handled.
+	 *
+	 * <p>
+	 * A report is handled when the listener has returned from processing it,
+	 * or when it was replaced by a newer report. Together with the number of
+	 * received reports, this can be used to wait until all reactions to those
+	 * reports on the consumer threads are done.
+	 * </p>
+	 *
+	 * @param count
+	 *            The number of handled reports to wait for.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 * @see #getHandledCount()
+	 */
+	public void awaitHandled(long count) throws InterruptedException {
+		handledLock.lock();
+		try {
+			handledWaiters++;
+			while (handledCount.get() < count) {
+				handled.await();
+			}
+		} finally {
+			handledWaiters--;
+			handledLock.unlock();
+		}
+	}
+
+	private void reportHandled() {
+		handledCount.incrementAndGet();
+		if (handledWaiters > 0) {
+			handledLock.lock();
+			try {
+				handled.signalAll();
+			} finally {
+				handledLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Get the statistics of the dispatch group handling the given report type.
+	 *
+	 * @param type
+	 *            The report type.
+	 */
+	public Statistics getStatistics(ReportType type) {
+		return getStatistics(DispatchGroup.of(type));
+	}
+
+	/**
+	 * Get the statistics of the given dispatch group.
+	 *
+	 * <p>
+	 * For a sequential dispatcher, all groups share the same statistics.
+	 * </p>
+	 *
+	 * @param group
+	 *            The dispatch group.
+	 */
+	public Statistics getStatistics(DispatchGroup group) {
+		return lanes.get(group).getStatistics();
+	}
+
+	/**
+	 * Policy for update reports which are still waiting to be dispatched when a
+	 * newer update report arrives.
+	 */
+	public enum UpdatePolicy {
+
+		/**
+		 * Queue every update report.
+		 */
+		QUEUE,
+
+		/**
+		 * Replace a pending update report by the newer one, if no other report
+		 * of the same group was received in between.
+		 */
+		COALESCE;
+
+	}
+
+	/**
+	 * Groups of report types which are delivered in order.
+	 */
+	public enum DispatchGroup {
+
+		/**
+		 * Movement and update reports.
+		 *
+		 * <p>
+		 * These share a group since the pilot needs to see update reports and
+		 * move reports in the order the robot produced them to keep its
+		 * odometry consistent.
+		 * </p>
+		 */
+		PILOT,
+
+		/**
+		 * Light sensor replies.
+		 */
+		LIGHT,
+
+		/**
+		 * Infrared sensor replies.
+		 */
+		INFRARED,
+
+		/**
+		 * Range readings and scan replies.
+		 */
+		SCANNER,
+
+		/**
+		 * Resolved conditions.
+		 */
+		CONDITION;
+
+		public static DispatchGroup of(ReportType type) {
+			switch (type) {
+			case UPDATE:
+			case MOVE_STARTED:
+			case MOVE_STOPPED:
+				return PILOT;
+			case LIGHT_VALUE:
+				return LIGHT;
+			case IR_VALUE:
+				return INFRARED;
+			case SCAN:
+			case RANGE_READING:
+				return SCANNER;
+			default:
+				return CONDITION;
+			}
+		}
+
+	}
+
+	/**
+	 * Snapshot of the metrics of a single dispatch group.
+	 */
+	public static final class Statistics {
+
+		private final int queueDepth;
+		private final int maxQueueDepth;
+		private final long dispatchedCount;
+		private final long coalescedCount;
+		private final long totalLatency;
+		private final long maxLatency;
+
+		private Statistics(int queueDepth, int maxQueueDepth, long dispatchedCount, long coalescedCount,
+				long totalLatency, long maxLatency) {
+			this.queueDepth = queueDepth;
+			this.maxQueueDepth = maxQueueDepth;
+			this.dispatchedCount = dispatchedCount;
+			this.coalescedCount = coalescedCount;
+			this.totalLatency = totalLatency;
+			this.maxLatency = maxLatency;
+		}
+
+		/**
+		 * Get the number of reports waiting to be dispatched.
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Get the highest number of reports that were waiting at once.
+		 */
+		public int getMaxQueueDepth() {
+			return maxQueueDepth;
+		}
+
+		/**
+		 * Get the number of dispatched reports.
+		 */
+		public long getDispatchedCount() {
+			return dispatchedCount;
+		}
+
+		/**
+		 * Get the number of update reports which were replaced by a newer one
+		 * before being dispatched.
+		 */
+		public long getCoalescedCount() {
+			return coalescedCount;
+		}
+
+		/**
+		 * Get the mean time between receiving and dispatching a report.
+		 *
+		 * @param unit
+		 *            The time unit of the result.
+		 */
+		public double getMeanLatency(TimeUnit unit) {
+			if (dispatchedCount == 0)
+				return 0d;
+			return (double) unit.convert(totalLatency, TimeUnit.NANOSECONDS) / dispatchedCount;
+		}
+
+		/**
+		 * Get the longest time between receiving and dispatching a report.
+		 *
+		 * @param unit
+		 *            The time unit of the result.
+		 */
+		public long getMaxLatency(TimeUnit unit) {
+			return unit.convert(maxLatency, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return "depth=" + queueDepth + " (max " + maxQueueDepth + "), dispatched=" + dispatchedCount
+					+ ", coalesced=" + coalescedCount + ", latency=" + getMeanLatency(TimeUnit.MICROSECONDS)
+					+ "us (max " + getMaxLatency(TimeUnit.MICROSECONDS) + "us)";
+		}
+
+	}
+
+	/**
+	 * Ring buffer with a single consumer thread.
+	 */
+	private class Lane implements Runnable {
+
+		private final String name;
+		private final Report<?>[] reports;
+		private final long[] timestamps;
+		private int head = 0;
+		private int size = 0;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+
+		private Thread thread;
+		private volatile boolean isRunning = false;
+
+		private int maxQueueDepth = 0;
+		private long dispatchedCount = 0;
+		private long coalescedCount = 0;
+		private long totalLatency = 0;
+		private long maxLatency = 0;
+
+		public Lane(String name, int capacity) {
+			this.name = name;
+			this.reports = new Report<?>[capacity];
+			this.timestamps = new long[capacity];
+		}
+
+		public void start() {
+			lock.lock();
+			try {
+				if (isRunning)
+					return;
+				isRunning = true;
+				thread = factory.newThread(this);
+				thread.setName(thread.getName() + "-" + name);
+				thread.start();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public void shutdown() {
+			lock.lock();
+			try {
+				if (!isRunning)
+					return;
+				isRunning = false;
+				thread.interrupt();
+				thread = null;
+				// Discard pending reports
+				while (size > 0) {
+					poll();
+				}
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public void offer(Report<?> report, boolean coalesce) throws InterruptedException {
+			lock.lock();
+			try {
+				if (!isRunning)
+					return;
+				if (coalesce && size > 0) {
+					int tail = index(size - 1);
+					if (reports[tail].getType() == report.getType()) {
+						// Replace stale report
+						reports[tail] = report;
+						timestamps[tail] = System.nanoTime();
+						coalescedCount++;
+						reportHandled();
+						return;
+					}
+				}
+				while (size == reports.length) {
+					notFull.await();
+					if (!isRunning)
+						return;
+				}
+				int tail = index(size);
+				reports[tail] = report;
+				timestamps[tail] = System.nanoTime();
+				size++;
+				maxQueueDepth = Math.max(maxQueueDepth, size);
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Report<?> take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (size == 0) {
+					notEmpty.await();
+				}
+				long latency = System.nanoTime() - timestamps[head];
+				Report<?> report = poll();
+				dispatchedCount++;
+				totalLatency += latency;
+				maxLatency = Math.max(maxLatency, latency);
+				notFull.signal();
+				return report;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Report<?> poll() {
+			Report<?> report = reports[head];
+			reports[head] = null;
+			head = index(1);
+			size--;
+			return report;
+		}
+
+		private int index(int offset) {
+			return (head + offset) % reports.length;
+		}
+
+		public Statistics getStatistics() {
+			lock.lock();
+			try {
+				return new Statistics(size, maxQueueDepth, dispatchedCount, coalescedCount, totalLatency, maxLatency);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (isRunning) {
+				Report<?> report;
+				try {
+					report = take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				try {
+					target.messageReceived(report);
+				} catch (RuntimeException e) {
+					// Keep dispatching
+					e.printStackTrace();
+				} finally {
+					reportHandled();
+				}
+			}
+		}
+
+	}
+
+}
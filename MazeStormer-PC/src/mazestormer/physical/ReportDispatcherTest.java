@@ -0,0 +1,144 @@
+package mazestormer.physical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import mazestormer.physical.ReportDispatcher.UpdatePolicy;
+import mazestormer.remote.MessageListener;
+import mazestormer.report.Report;
+import mazestormer.report.ReportType;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ReportDispatcherTest {
+
+	private static final long timeout = 1000; // ms
+
+	private ReportDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void ordered() throws InterruptedException {
+		int count = 100;
+		Recorder recorder = new Recorder(count);
+		dispatcher = new ReportDispatcher(recorder, 8, UpdatePolicy.QUEUE);
+		dispatcher.start();
+
+		List<Report<?>> expected = new ArrayList<Report<?>>();
+		for (int i = 0; i < count; i++) {
+			Report<?> report = (i % 3 == 0) ? ReportType.MOVE_STARTED.build() : ReportType.UPDATE.build();
+			expected.add(report);
+			dispatcher.dispatch(report);
+		}
+
+		recorder.await();
+		assertEquals(expected, recorder.getReports());
+	}
+
+	@Test
+	public void coalesceUpdates() throws InterruptedException {
+		Blocker blocker = new Blocker();
+		dispatcher = new ReportDispatcher(blocker, 8, UpdatePolicy.COALESCE);
+		dispatcher.start();
+
+		// Occupy the consumer
+		dispatcher.dispatch(ReportType.MOVE_STARTED.build());
+		blocker.awaitBlocked();
+
+		Report<?> move = ReportType.MOVE_STOPPED.build();
+		Report<?> update = ReportType.UPDATE.build();
+		dispatcher.dispatch(ReportType.UPDATE.build());
+		dispatcher.dispatch(move);
+		dispatcher.dispatch(ReportType.UPDATE.build());
+		dispatcher.dispatch(ReportType.UPDATE.build());
+		dispatcher.dispatch(update);
+
+		ReportDispatcher.Statistics statistics = dispatcher.getStatistics(ReportType.UPDATE);
+		assertEquals(3, statistics.getQueueDepth());
+		assertEquals(2, statistics.getCoalescedCount());
+
+		blocker.release(3);
+		blocker.await();
+		List<Report<?>> reports = blocker.getReports();
+		assertEquals(4, reports.size());
+		assertSame(move, reports.get(2));
+		assertSame(update, reports.get(3));
+	}
+
+	private static class Recorder implements MessageListener<Report<?>> {
+
+		private final List<Report<?>> reports = new ArrayList<Report<?>>();
+		private volatile CountDownLatch latch;
+
+		public Recorder(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		public synchronized List<Report<?>> getReports() {
+			return new ArrayList<Report<?>>(reports);
+		}
+
+		public void await() throws InterruptedException {
+			latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		protected void release(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		@Override
+		public void messageReceived(Report<?> report) {
+			synchronized (this) {
+				reports.add(report);
+			}
+			latch.countDown();
+		}
+
+	}
+
+	private static class Blocker extends Recorder {
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final CountDownLatch unblocked = new CountDownLatch(1);
+
+		public Blocker() {
+			super(1);
+		}
+
+		public void awaitBlocked() throws InterruptedException {
+			blocked.await(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void release(int count) {
+			super.release(count);
+			unblocked.countDown();
+		}
+
+		@Override
+		public void messageReceived(Report<?> report) {
+			super.messageReceived(report);
+			if (blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					unblocked.await(timeout, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+
+	}
+
+}
@@ -1,24 +1,43 @@
 package mazestormer.physical;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mazestormer.command.Command;
 import mazestormer.command.RequestCommand;
-import mazestormer.remote.MessageListener;
 import mazestormer.remote.MessageSender;
 import mazestormer.remote.MessageType;
-import mazestormer.report.Report;
-import mazestormer.report.RequestReport;
+import mazestormer.util.AbstractFuture;
 import mazestormer.util.Future;
+import mazestormer.util.FutureListener;
 
-public class ReportRequester<V> extends MessageSender<RequestCommand<V>>
-		implements MessageListener<Report<?>> {
+public class ReportRequester<V> extends MessageSender<RequestCommand<V>> {
 
-	private Map<Integer, RequestFuture<V>> futures = new HashMap<Integer, RequestFuture<V>>();
+	private volatile long timeout;
 
-	public ReportRequester(PhysicalCommunicator communicator) {
+	private final Map<Object, SharedRequest> sharedRequests = new HashMap<Object, SharedRequest>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Create a new report requester.
+	 * 
+	 * @param communicator
+	 *            The communicator.
+	 * @param timeout
+	 *            The default request timeout in milliseconds, or zero if
+	 *            requests have no deadline.
+	 */
+	public ReportRequester(PhysicalCommunicator communicator, long timeout) {
 		super(communicator);
+		setTimeout(timeout);
+	}
+
+	public ReportRequester(PhysicalCommunicator communicator) {
+		this(communicator, PhysicalRobot.requestTimeout);
 	}
 
 	@Override
@@ -26,6 +45,32 @@ public class ReportRequester<V> extends MessageSender<RequestCommand<V>>
 		return (PhysicalCommunicator) super.getCommunicator();
 	}
 
+	/**
+	 * Get the default request timeout, in milliseconds.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set the default request timeout.
+	 * 
+	 * @param timeout
+	 *            The timeout in milliseconds, or zero if requests have no
+	 *            deadline.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Get the number of requests which were answered by joining an identical
+	 * request that was already waiting for its reply.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
 	protected Future<V> request(MessageType<Command> requestType) {
 		// Create request
 		@SuppressWarnings("unchecked")
@@ -35,34 +80,210 @@ public class ReportRequester<V> extends MessageSender<RequestCommand<V>>
 	}
 
 	protected Future<V> request(RequestCommand<V> request) {
+		return request(request, getTimeout());
+	}
+
+	protected Future<V> request(RequestCommand<V> request, long timeout) {
 		// Set request identifier
 		int requestId = getCommunicator().nextRequestId();
 		request.setRequestId(requestId);
 
-		// Create future
+		// Create and register future
 		RequestFuture<V> future = new RequestFuture<V>(request);
-		futures.put(requestId, future);
+		getCommunicator().getRequests().register(future, timeout, TimeUnit.MILLISECONDS);
 
 		// Send request
 		send(request);
 		return future;
 	}
 
-	@Override
-	public void messageReceived(Report<?> report) {
-		if (!(report instanceof RequestReport<?>))
-			return;
-
-		// Get request report and associated future
+	/**
+	 * Send a request, or join an identical request which is still waiting for
+	 * its reply.
+	 * 
+	 * <p>
+	 * Every caller receives its own future. The request is only cancelled on
+	 * the robot once all callers which joined it have cancelled their future.
+	 * </p>
+	 * 
+	 * @param key
+	 *            The key identifying identical requests.
+	 * @param requestType
+	 *            The request type, used when a new request needs to be sent.
+	 */
+	protected Future<V> requestCoalesced(Object key, MessageType<Command> requestType) {
 		@SuppressWarnings("unchecked")
-		RequestReport<V> requestReport = (RequestReport<V>) report;
-		int requestId = requestReport.getRequestId();
-		RequestFuture<V> future = futures.get(requestId);
+		RequestCommand<V> request = (RequestCommand<V>) requestType.build();
+
+		return requestCoalesced(key, request);
+	}
 
-		// Remove future if report resolves it
-		if (future != null && future.tryResolve(requestReport)) {
-			futures.remove(requestId);
+	/**
+	 * Send a request, or join an identical request which is still waiting for
+	 * its reply.
+	 * 
+	 * @param key
+	 *            The key identifying identical requests.
+	 * @param request
+	 *            The request, used when a new request needs to be sent.
+	 * @see #requestCoalesced(Object, MessageType)
+	 */
+	protected Future<V> requestCoalesced(Object key, RequestCommand<V> request) {
+		SharedRequest shared;
+		SharedFuture future;
+		boolean isNew = false;
+		synchronized (sharedRequests) {
+			shared = sharedRequests.get(key);
+			future = (shared == null) ? null : shared.join();
+			if (future == null) {
+				shared = new SharedRequest(key);
+				sharedRequests.put(key, shared);
+				future = shared.join();
+				isNew = true;
+			}
 		}
+
+		if (isNew) {
+			shared.attach(request(request));
+		} else {
+			coalescedCount.incrementAndGet();
+		}
+		return future;
+	}
+
+	/**
+	 * A request on the robot which is shared by multiple callers.
+	 */
+	private class SharedRequest implements FutureListener<V> {
+
+		private final Object key;
+		private final List<SharedFuture> futures = new ArrayList<SharedFuture>();
+		private int waitingCount = 0;
+		private boolean isDone = false;
+		private Future<V> request;
+
+		public SharedRequest(Object key) {
+			this.key = key;
+		}
+
+		/**
+		 * Join this request.
+		 * 
+		 * @return A new future for the caller, or null if this request is
+		 *         already done.
+		 */
+		public synchronized SharedFuture join() {
+			if (isDone)
+				return null;
+			SharedFuture future = new SharedFuture(this);
+			futures.add(future);
+			waitingCount++;
+			return future;
+		}
+
+		/**
+		 * Attach the sent request.
+		 */
+		public void attach(Future<V> request) {
+			boolean isAbandoned;
+			synchronized (this) {
+				this.request = request;
+				isAbandoned = isDone;
+			}
+			if (isAbandoned) {
+				request.cancel();
+			} else {
+				request.addFutureListener(this);
+			}
+		}
+
+		/**
+		 * Leave this request after the given future was cancelled.
+		 */
+		public void leave(SharedFuture future) {
+			Future<V> abandoned = null;
+			synchronized (this) {
+				futures.remove(future);
+				waitingCount--;
+				if (waitingCount == 0 && !isDone) {
+					isDone = true;
+					abandoned = request;
+				}
+			}
+			if (isDone()) {
+				remove();
+			}
+			if (abandoned != null) {
+				abandoned.cancel();
+			}
+		}
+
+		private synchronized boolean isDone() {
+			return isDone;
+		}
+
+		private List<SharedFuture> finish() {
+			List<SharedFuture> waiting;
+			synchronized (this) {
+				isDone = true;
+				waiting = new ArrayList<SharedFuture>(futures);
+				futures.clear();
+			}
+			remove();
+			return waiting;
+		}
+
+		private void remove() {
+			synchronized (sharedRequests) {
+				if (sharedRequests.get(key) == this) {
+					sharedRequests.remove(key);
+				}
+			}
+		}
+
+		@Override
+		public void futureResolved(Future<? extends V> future, V result) {
+			for (SharedFuture waiting : finish()) {
+				waiting.resolve(result);
+			}
+		}
+
+		@Override
+		public void futureCancelled(Future<? extends V> future) {
+			for (SharedFuture waiting : finish()) {
+				waiting.cancel();
+			}
+		}
+
+	}
+
+	/**
+	 * The future of a single caller of a shared request.
+	 */
+	private class SharedFuture extends AbstractFuture<V> {
+
+		private final SharedRequest shared;
+
+		public SharedFuture(SharedRequest shared) {
+			this.shared = shared;
+		}
+
+		@Override
+		protected boolean resolve(V result) {
+			return super.resolve(result);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (this) {
+				if (isDone() || !super.cancel(mayInterruptIfRunning))
+					return false;
+			}
+			// Leave outside of lock
+			shared.leave(this);
+			return true;
+		}
+
 	}
 
 }
@@ -12,6 +12,10 @@ public class RequestFuture<V> extends AbstractFuture<V> {
 		this.requestId = request.getRequestId();
 	}
 
+	public int getRequestId() {
+		return requestId;
+	}
+
 	public boolean tryResolve(RequestReport<V> message) {
 		if (message.getRequestId() == requestId) {
 			return resolve(message.getValue());
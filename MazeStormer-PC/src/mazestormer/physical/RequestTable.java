@@ -0,0 +1,267 @@
+package mazestormer.physical;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mazestormer.command.CancelRequestCommand;
+import mazestormer.command.CommandType;
+import mazestormer.remote.MessageListener;
+import mazestormer.report.Report;
+import mazestormer.report.RequestReport;
+import mazestormer.util.Future;
+import mazestormer.util.FutureListener;
+import mazestormer.util.HashedWheelTimer;
+import mazestormer.util.HashedWheelTimer.Timeout;
+
+/**
+ * Table of pending requests, keyed by request identifier.
+ *
+ * <p>
+ * Incoming request reports resolve the future of the matching request. Every
+ * request can have a deadline, after which it is cancelled on the robot and
+ * its future is cancelled. Cancelling a future before its reply arrives also
+ * cancels the request on the robot.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class RequestTable implements MessageListener<Report<?>> {
+
+	private static final int initialCapacity = 16;
+
+	private final PhysicalCommunicator communicator;
+	private final HashedWheelTimer timer;
+
+	/*
+	 * Open addressing with linear probing.
+	 */
+	private int[] keys = new int[initialCapacity];
+	private Pending<?>[] values = new Pending<?>[initialCapacity];
+	private int size = 0;
+
+	private final AtomicLong timedOutCount = new AtomicLong();
+	private final AtomicLong lateCount = new AtomicLong();
+
+	public RequestTable(PhysicalCommunicator communicator, HashedWheelTimer timer) {
+		this.communicator = communicator;
+		this.timer = timer;
+	}
+
+	public RequestTable(PhysicalCommunicator communicator) {
+		this(communicator, HashedWheelTimer.getShared());
+	}
+
+	/**
+	 * Register the future of a sent request.
+	 *
+	 * @param future
+	 *            The request future.
+	 * @param timeout
+	 *            The time after which the request is cancelled, or zero if the
+	 *            request has no deadline.
+	 * @param unit
+	 *            The time unit of the timeout.
+	 */
+	public <V> void register(RequestFuture<V> future, long timeout, TimeUnit unit) {
+		Pending<V> pending = new Pending<V>(future);
+		put(future.getRequestId(), pending);
+		future.addFutureListener(pending);
+		if (timeout > 0 && !future.isDone()) {
+			pending.setTimeout(timer.schedule(pending, timeout, unit));
+		}
+	}
+
+	/**
+	 * Get the number of requests which are still waiting for a reply.
+	 */
+	public synchronized int getOutstandingCount() {
+		return size;
+	}
+
+	/**
+	 * Get the number of requests which were cancelled because their deadline
+	 * passed.
+	 */
+	public long getTimedOutCount() {
+		return timedOutCount.get();
+	}
+
+	/**
+	 * Get the number of replies which arrived after their request timed out or
+	 * was cancelled.
+	 */
+	public long getLateCount() {
+		return lateCount.get();
+	}
+
+	@Override
+	public void messageReceived(Report<?> report) {
+		if (!(report instanceof RequestReport<?>))
+			return;
+
+		RequestReport<?> requestReport = (RequestReport<?>) report;
+		Pending<?> pending = remove(requestReport.getRequestId());
+		if (pending == null) {
+			// Request no longer pending
+			lateCount.incrementAndGet();
+		} else {
+			pending.resolve(requestReport);
+		}
+	}
+
+	private void cancelRequest(int requestId) {
+		CancelRequestCommand command = new CancelRequestCommand(CommandType.CANCEL);
+		command.setRequestId(requestId);
+		try {
+			communicator.send(command);
+		} catch (IOException e) {
+			// Connection lost, nothing left to cancel
+		}
+	}
+
+	/*
+	 * Table operations
+	 */
+
+	private synchronized void put(int key, Pending<?> value) {
+		if (2 * (size + 1) > keys.length) {
+			resize(2 * keys.length);
+		}
+		int i = indexOf(key);
+		if (values[i] == null) {
+			size++;
+		}
+		keys[i] = key;
+		values[i] = value;
+	}
+
+	private synchronized Pending<?> remove(int key) {
+		int i = indexOf(key);
+		Pending<?> value = values[i];
+		if (value == null)
+			return null;
+
+		values[i] = null;
+		size--;
+		// Shift back following entries in the same run
+		int mask = keys.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (values[j] == null)
+				break;
+			int home = hash(keys[j]) & mask;
+			// Move if its home slot is not in (i, j]
+			if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Remove the given entry, if it is still registered.
+	 */
+	private synchronized boolean remove(int key, Pending<?> value) {
+		int i = indexOf(key);
+		if (values[i] != value)
+			return false;
+		remove(key);
+		return true;
+	}
+
+	private int indexOf(int key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Pending<?>[] oldValues = values;
+		keys = new int[capacity];
+		values = new Pending<?>[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int j = indexOf(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		// Spread sequential identifiers
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A registered request.
+	 */
+	private class Pending<V> implements FutureListener<V>, Runnable {
+
+		private final RequestFuture<V> future;
+		private volatile Timeout timeout;
+
+		public Pending(RequestFuture<V> future) {
+			this.future = future;
+		}
+
+		public void setTimeout(Timeout timeout) {
+			this.timeout = timeout;
+			if (future.isDone()) {
+				timeout.cancel();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public void resolve(RequestReport<?> report) {
+			future.tryResolve((RequestReport<V>) report);
+		}
+
+		/**
+		 * Deadline passed.
+		 */
+		@Override
+		public void run() {
+			if (remove(future.getRequestId(), this)) {
+				timedOutCount.incrementAndGet();
+				cancelRequest(future.getRequestId());
+				future.cancel();
+			}
+		}
+
+		@Override
+		public void futureResolved(Future<? extends V> future, V result) {
+			stopTimeout();
+		}
+
+		@Override
+		public void futureCancelled(Future<? extends V> future) {
+			stopTimeout();
+			// Cancelled by caller
+			if (remove(this.future.getRequestId(), this)) {
+				cancelRequest(this.future.getRequestId());
+			}
+		}
+
+		private void stopTimeout() {
+			Timeout timeout = this.timeout;
+			if (timeout != null) {
+				timeout.cancel();
+			}
+		}
+
+	}
+
+}
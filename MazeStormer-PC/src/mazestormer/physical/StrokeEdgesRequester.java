@@ -0,0 +1,31 @@
+package mazestormer.physical;
+
+import mazestormer.command.CommandType;
+import mazestormer.command.ConditionalCommand;
+import mazestormer.command.RequestCommand;
+import mazestormer.condition.StrokeEdgesCondition;
+import mazestormer.util.Future;
+
+/**
+ * Requests the robot to record barcode stroke edges.
+ * 
+ * <p>
+ * The stroke edges condition is sent as a conditional command, which the robot
+ * answers with a single stroke edges report when resolved.
+ * </p>
+ */
+public class StrokeEdgesRequester extends ReportRequester<float[]> {
+
+	public StrokeEdgesRequester(PhysicalCommunicator communicator) {
+		// Recording lasts until the barcode is crossed
+		super(communicator, 0);
+	}
+
+	public Future<float[]> request(StrokeEdgesCondition condition) {
+		// Answered with edges instead of a plain condition report
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		RequestCommand<float[]> command = (RequestCommand) new ConditionalCommand(CommandType.WHEN, condition);
+		return request(command);
+	}
+
+}
@@ -0,0 +1,71 @@
+package mazestormer.physical;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.MoveListener;
+import lejos.robotics.navigation.MoveProvider;
+import mazestormer.command.CommandType;
+import mazestormer.report.Trajectory;
+import mazestormer.util.Future;
+import mazestormer.util.FutureListener;
+
+/**
+ * Fetches the trajectory log recorded on the robot.
+ * 
+ * <p>
+ * The robot samples its trajectory at a much higher rate than it reports
+ * updates. When registered as move listener, the fetcher downloads all samples
+ * in bulk after every move and passes them to its trajectory listeners. No
+ * requests are sent while there are no listeners.
+ * </p>
+ */
+public class TrajectoryFetcher extends ReportRequester<Trajectory> implements MoveListener,
+		FutureListener<Trajectory> {
+
+	private final List<TrajectoryListener> listeners = new CopyOnWriteArrayList<TrajectoryListener>();
+
+	public TrajectoryFetcher(PhysicalCommunicator communicator) {
+		super(communicator);
+	}
+
+	public void addTrajectoryListener(TrajectoryListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeTrajectoryListener(TrajectoryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Fetch all samples recorded since the previous fetch.
+	 */
+	public Future<Trajectory> fetch() {
+		return request(CommandType.TRAJECTORY_READ);
+	}
+
+	@Override
+	public void moveStarted(Move event, MoveProvider mp) {
+	}
+
+	@Override
+	public void moveStopped(Move event, MoveProvider mp) {
+		if (!listeners.isEmpty()) {
+			fetch().addFutureListener(this);
+		}
+	}
+
+	@Override
+	public void futureResolved(Future<? extends Trajectory> future, Trajectory trajectory) {
+		for (TrajectoryListener listener : listeners) {
+			listener.trajectoryReceived(trajectory);
+		}
+	}
+
+	@Override
+	public void futureCancelled(Future<? extends Trajectory> future) {
+		// Samples remain on the robot until the next fetch
+	}
+
+}
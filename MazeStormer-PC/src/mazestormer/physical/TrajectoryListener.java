@@ -0,0 +1,15 @@
+package mazestormer.physical;
+
+import mazestormer.report.Trajectory;
+
+public interface TrajectoryListener {
+
+	/**
+	 * Called when a trajectory was fetched from the robot.
+	 * 
+	 * @param trajectory
+	 *            The samples recorded since the previous fetch.
+	 */
+	public void trajectoryReceived(Trajectory trajectory);
+
+}
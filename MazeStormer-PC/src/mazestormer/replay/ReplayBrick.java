@@ -0,0 +1,372 @@
+package mazestormer.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.Move.MoveType;
+import mazestormer.command.CancelRequestCommand;
+import mazestormer.command.Command;
+import mazestormer.command.CommandType;
+import mazestormer.command.PilotParameterCommand;
+import mazestormer.command.RequestCommand;
+import mazestormer.command.RotateCommand;
+import mazestormer.command.TravelCommand;
+import mazestormer.loopback.BrickCommunicator;
+import mazestormer.remote.Message;
+import mazestormer.remote.MessageListener;
+import mazestormer.report.MoveReport;
+import mazestormer.report.Report;
+import mazestormer.report.ReportType;
+import mazestormer.report.RequestReport;
+import mazestormer.replay.RunLog.Direction;
+
+/**
+ * A brick which replays a recorded run.
+ *
+ * <p>
+ * Like a {@link mazestormer.loopback.SimulatedBrick}, the brick speaks the wire
+ * protocol of the NXT so it can be connected to a physical robot over a
+ * loopback link. Instead of simulating the robot, every received command is
+ * matched against the next command in the recording. When it matches, the
+ * reports which were received after that command in the recording are sent
+ * back right away, without the recorded delays. The first command which does
+ * not match ends the replay.
+ * </p>
+ *
+ * <p>
+ * Commands are only matched while the brick is armed, so the robot can be set
+ * up before the replay starts. The replay ends when all recorded messages have
+ * been replayed, when a command diverges or when the brick is disarmed. As the
+ * commands are read on a separate thread, the host can wait until the brick
+ * has {@linkplain #awaitReceived(int) received} its commands before arming it,
+ * and can {@linkplain #endAfter(int) end} the replay after its last command.
+ * </p>
+ *
+ * <p>
+ * Outside the replay, the brick acts as a robot standing still: a stop command
+ * is answered with a stopped move, so the host can stop its pilot afterwards.
+ * </p>
+ */
+public class ReplayBrick implements MessageListener<Command> {
+
+	/**
+	 * Maximum difference between recorded and replayed distances, angles and
+	 * parameters.
+	 */
+	public static final double tolerance = 1e-3;
+
+	private final BrickCommunicator communicator;
+	private final List<RunLog.Entry> entries;
+
+	private boolean isArmed = false;
+	private int nextEntry = 0;
+	private int matchedCount = 0;
+	private int extraCount = 0;
+	private int sentCount = 0;
+	private int receivedCount = 0;
+	private int endCount = -1;
+	private String divergence;
+
+	private final Map<Integer, Integer> recordedToReplayed = new HashMap<Integer, Integer>();
+	private final Map<Integer, Integer> replayedToRecorded = new HashMap<Integer, Integer>();
+
+	/**
+	 * Create a new replay brick.
+	 *
+	 * @param is
+	 *            The input stream receiving commands.
+	 * @param os
+	 *            The output stream sending reports.
+	 * @param log
+	 *            The recorded run.
+	 */
+	public ReplayBrick(InputStream is, OutputStream os, RunLog log) {
+		this.communicator = new BrickCommunicator(is, os);
+		this.entries = log.getEntries();
+		communicator.addListener(this);
+	}
+
+	public BrickCommunicator getCommunicator() {
+		return communicator;
+	}
+
+	/**
+	 * Start handling commands.
+	 */
+	public void start() {
+		communicator.start();
+	}
+
+	/**
+	 * Stop handling commands.
+	 */
+	public void terminate() {
+		disarm();
+		try {
+			communicator.terminate();
+		} catch (IOException e) {
+			// Link already closed
+		}
+	}
+
+	/**
+	 * Start matching commands, and send the reports recorded before the first
+	 * command.
+	 */
+	public synchronized void arm() {
+		isArmed = true;
+		sendReports();
+		notifyAll();
+	}
+
+	/**
+	 * Stop matching commands. Commands received afterwards are ignored.
+	 */
+	public synchronized void disarm() {
+		isArmed = false;
+		notifyAll();
+	}
+
+	/**
+	 * End the replay once the given number of commands has been received,
+	 * counting all commands since this brick was started.
+	 *
+	 * @param count
+	 *            The number of commands sent by the host.
+	 */
+	public synchronized void endAfter(int count) {
+		endCount = count;
+		if (receivedCount >= endCount) {
+			disarm();
+		}
+	}
+
+	/**
+	 * Wait until the given number of commands has been received, counting all
+	 * commands since this brick was started.
+	 *
+	 * @param count
+	 *            The number of commands sent by the host.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public synchronized void awaitReceived(int count) throws InterruptedException {
+		while (receivedCount < count) {
+			wait();
+		}
+	}
+
+	/**
+	 * Wait until the replay ends.
+	 *
+	 * <p>
+	 * The replay ends when all recorded messages have been replayed, when a
+	 * command does not match the recording or when this brick is disarmed.
+	 * </p>
+	 *
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public synchronized void awaitEnd() throws InterruptedException {
+		while (isArmed && !isComplete()) {
+			wait();
+		}
+	}
+
+	/**
+	 * Check whether all recorded messages have been replayed.
+	 */
+	public synchronized boolean isComplete() {
+		return nextEntry >= entries.size();
+	}
+
+	/**
+	 * Get the number of commands which matched the recording.
+	 */
+	public synchronized int getMatchedCount() {
+		return matchedCount;
+	}
+
+	/**
+	 * Get the number of commands received after all recorded messages were
+	 * replayed.
+	 */
+	public synchronized int getExtraCount() {
+		return extraCount;
+	}
+
+	/**
+	 * Get the number of reports sent by this brick.
+	 */
+	public synchronized int getSentCount() {
+		return sentCount;
+	}
+
+	/**
+	 * Get a description of the first command which did not match the
+	 * recording, or null if all commands matched so far.
+	 */
+	public synchronized String getDivergence() {
+		return divergence;
+	}
+
+	/**
+	 * Get the next command expected by this brick, or null if none.
+	 */
+	public synchronized Command getExpectedCommand() {
+		if (isComplete())
+			return null;
+		return (Command) entries.get(nextEntry).getMessage();
+	}
+
+	@Override
+	public synchronized void messageReceived(Command command) {
+		receivedCount++;
+		if (isArmed) {
+			replay(command);
+			if (endCount >= 0 && receivedCount >= endCount) {
+				disarm();
+			}
+		} else if (command.getType() == CommandType.STOP) {
+			// Stand still
+			send(new MoveReport(ReportType.MOVE_STOPPED, new Move(MoveType.STOP, 0, 0, false)));
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Match a command against the recording and send the next reports.
+	 */
+	private void replay(Command command) {
+		if (isComplete()) {
+			extraCount++;
+			return;
+		}
+
+		Command expected = (Command) entries.get(nextEntry).getMessage();
+		if (!matches(expected, command)) {
+			divergence = String.format(Locale.US, "Expected %s as command %d, but received %s.", describe(expected),
+					matchedCount + 1, describe(command));
+			disarm();
+			return;
+		}
+
+		matchedCount++;
+		nextEntry++;
+		sendReports();
+	}
+
+	/**
+	 * Send the recorded reports up to the next recorded command.
+	 */
+	private void sendReports() {
+		while (nextEntry < entries.size()) {
+			RunLog.Entry entry = entries.get(nextEntry);
+			if (entry.getDirection() != Direction.REPORT)
+				break;
+			send((Report<?>) entry.getMessage());
+			nextEntry++;
+		}
+	}
+
+	private void send(Report<?> report) {
+		// Reply to the replayed request instead of the recorded one
+		RequestReport<?> requestReport = null;
+		int recordedId = 0;
+		if (report instanceof RequestReport) {
+			requestReport = (RequestReport<?>) report;
+			recordedId = requestReport.getRequestId();
+			Integer replayedId = recordedToReplayed.get(recordedId);
+			if (replayedId != null) {
+				requestReport.setRequestId(replayedId);
+			}
+		}
+		try {
+			communicator.send(report);
+			sentCount++;
+		} catch (IOException e) {
+			// Link closed
+		} finally {
+			if (requestReport != null) {
+				requestReport.setRequestId(recordedId);
+			}
+		}
+	}
+
+	private boolean matches(Command expected, Command actual) {
+		if (expected.getType() != actual.getType())
+			return false;
+
+		if (actual instanceof TravelCommand) {
+			return equal(((TravelCommand) expected).getDistance(), ((TravelCommand) actual).getDistance());
+		} else if (actual instanceof RotateCommand) {
+			return equal(((RotateCommand) expected).getAngle(), ((RotateCommand) actual).getAngle());
+		} else if (actual instanceof PilotParameterCommand) {
+			return equal(((PilotParameterCommand) expected).getValue(), ((PilotParameterCommand) actual).getValue());
+		} else if (actual instanceof CancelRequestCommand) {
+			// Cancels refer to an earlier request
+			Integer recordedId = replayedToRecorded.get(((CancelRequestCommand) actual).getRequestId());
+			return recordedId != null && recordedId == ((CancelRequestCommand) expected).getRequestId();
+		} else if (actual instanceof RequestCommand) {
+			// Compare with the recorded request identifier
+			RequestCommand<?> actualRequest = (RequestCommand<?>) actual;
+			int expectedId = ((RequestCommand<?>) expected).getRequestId();
+			int actualId = actualRequest.getRequestId();
+			actualRequest.setRequestId(expectedId);
+			boolean matches = Arrays.equals(toBytes(expected), toBytes(actual));
+			actualRequest.setRequestId(actualId);
+			if (matches) {
+				recordedToReplayed.put(expectedId, actualId);
+				replayedToRecorded.put(actualId, expectedId);
+			}
+			return matches;
+		} else {
+			return Arrays.equals(toBytes(expected), toBytes(actual));
+		}
+	}
+
+	private static boolean equal(double expected, double actual) {
+		if (Double.isInfinite(expected) || Double.isNaN(expected))
+			return Double.compare(expected, actual) == 0;
+		return Math.abs(expected - actual) <= tolerance;
+	}
+
+	private static byte[] toBytes(Message message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			message.write(new DataOutputStream(bytes));
+		} catch (IOException cannotHappen) {
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Describe a command in a human-readable form.
+	 */
+	public static String describe(Command command) {
+		if (command == null) {
+			return "nothing";
+		} else if (command instanceof TravelCommand) {
+			return String.format(Locale.US, "%s %.3f", command.getType(), ((TravelCommand) command).getDistance());
+		} else if (command instanceof RotateCommand) {
+			return String.format(Locale.US, "%s %.3f", command.getType(), ((RotateCommand) command).getAngle());
+		} else if (command instanceof PilotParameterCommand) {
+			return String.format(Locale.US, "%s %.3f", command.getType(),
+					((PilotParameterCommand) command).getValue());
+		} else if (command instanceof RequestCommand) {
+			return command.getType() + " #" + ((RequestCommand<?>) command).getRequestId();
+		} else {
+			return command.getType().toString();
+		}
+	}
+
+}
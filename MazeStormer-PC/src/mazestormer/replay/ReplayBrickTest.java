@@ -0,0 +1,138 @@
+package mazestormer.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import lejos.robotics.RangeReadings;
+import lejos.robotics.navigation.Pose;
+import mazestormer.command.Command;
+import mazestormer.connect.ConnectionContext;
+import mazestormer.connect.LoopbackConnector;
+import mazestormer.loopback.LoopbackLink;
+import mazestormer.maze.Maze;
+import mazestormer.physical.CommunicationListener;
+import mazestormer.physical.PhysicalCommunicator;
+import mazestormer.physical.PhysicalRobot;
+import mazestormer.player.RelativePlayer;
+import mazestormer.report.Report;
+import mazestormer.robot.ControllablePCRobot;
+import mazestormer.world.World;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayBrickTest {
+
+	private static final float delta = 0.01f;
+
+	private RunLog log;
+	private Pose recordedPose;
+	private int recordedReadings;
+
+	private LoopbackLink link;
+	private ReplayBrick brick;
+	private PhysicalCommunicator communicator;
+	private PhysicalRobot robot;
+
+	/**
+	 * Record a short session on a simulated brick.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		RelativePlayer player = new RelativePlayer("test", null, new Maze());
+		World world = new World(player);
+		LoopbackConnector connector = new LoopbackConnector();
+		ConnectionContext context = new ConnectionContext();
+		context.setDeviceName("loopback");
+		context.setWorld(world);
+		connector.connect(context);
+
+		final RunLog recording = new RunLog();
+		connector.getCommunicator().addCommunicationListener(new CommunicationListener() {
+			@Override
+			public void commandSent(Command command) {
+				recording.addEntry(0, command);
+			}
+
+			@Override
+			public void reportReceived(Report<?> report) {
+				recording.addEntry(0, report);
+			}
+		});
+		try {
+			ControllablePCRobot recordedRobot = connector.getRobot();
+			recordedReadings = script(recordedRobot);
+			recordedPose = recordedRobot.getPoseProvider().getPose();
+		} finally {
+			connector.disconnect();
+		}
+
+		// Write and read back
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		recording.write(out);
+		log = RunLog.read(new ByteArrayInputStream(out.toByteArray()));
+
+		// Connect to replay
+		link = new LoopbackLink();
+		brick = new ReplayBrick(link.getBrickInputStream(), link.getBrickOutputStream(), log);
+		brick.start();
+		communicator = new PhysicalCommunicator(link.getHostInputStream(), link.getHostOutputStream());
+		robot = new PhysicalRobot(communicator, new World(new RelativePlayer("replay", null, new Maze())));
+		communicator.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		robot.terminate();
+		communicator.terminate();
+		brick.terminate();
+		link.close();
+	}
+
+	private static int script(ControllablePCRobot robot) throws Exception {
+		robot.getPilot().travelComplete(5d).get(5, TimeUnit.SECONDS);
+		robot.getPilot().rotateComplete(90d).get(5, TimeUnit.SECONDS);
+		robot.getRangeScanner().setAngles(new float[] { -90f, 0f, 90f });
+		RangeReadings readings = robot.getRangeScanner().getRangeValues();
+		return readings.size();
+	}
+
+	@Test
+	public void replay() throws Exception {
+		assertEquals(5f, recordedPose.getX(), 0.5f);
+
+		// Request identifiers differ from the recording
+		communicator.nextRequestId();
+
+		brick.arm();
+		assertEquals(recordedReadings, script(robot));
+
+		Pose pose = robot.getPoseProvider().getPose();
+		assertEquals(recordedPose.getX(), pose.getX(), delta);
+		assertEquals(recordedPose.getY(), pose.getY(), delta);
+		assertEquals(recordedPose.getHeading(), pose.getHeading(), delta);
+
+		assertNull(brick.getDivergence());
+		assertTrue(brick.isComplete());
+		assertEquals(log.getCommandCount(), brick.getMatchedCount());
+	}
+
+	@Test(timeout = 5000)
+	public void diverge() throws Exception {
+		brick.arm();
+		robot.getPilot().travel(6d, true);
+
+		brick.awaitEnd();
+		assertNotNull(brick.getDivergence());
+		assertEquals(0, brick.getMatchedCount());
+	}
+
+}
@@ -0,0 +1,126 @@
+package mazestormer.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The outcome of replaying a recorded run.
+ *
+ * <p>
+ * A replay is successful when all recorded commands were sent again, the
+ * driver made the same decisions and the resulting maze is identical.
+ * </p>
+ */
+public class ReplayResult {
+
+	private final int recordedCommands;
+	private final int matchedCommands;
+	private final int extraCommands;
+	private final String commandDivergence;
+	private final String decisionDivergence;
+	private final List<String> mazeDifferences;
+	private final long recordedTime;
+	private final long replayTime;
+
+	public ReplayResult(int recordedCommands, int matchedCommands, int extraCommands, String commandDivergence,
+			String decisionDivergence, List<String> mazeDifferences, long recordedTime, long replayTime) {
+		this.recordedCommands = recordedCommands;
+		this.matchedCommands = matchedCommands;
+		this.extraCommands = extraCommands;
+		this.commandDivergence = commandDivergence;
+		this.decisionDivergence = decisionDivergence;
+		this.mazeDifferences = Collections.unmodifiableList(new ArrayList<String>(mazeDifferences));
+		this.recordedTime = recordedTime;
+		this.replayTime = replayTime;
+	}
+
+	/**
+	 * Check whether the replay reproduced the recorded run.
+	 */
+	public boolean isSuccessful() {
+		return commandDivergence == null && matchedCommands == recordedCommands && decisionDivergence == null
+				&& mazeDifferences.isEmpty();
+	}
+
+	/**
+	 * Get the number of commands in the recording.
+	 */
+	public int getRecordedCommands() {
+		return recordedCommands;
+	}
+
+	/**
+	 * Get the number of commands which matched the recording.
+	 */
+	public int getMatchedCommands() {
+		return matchedCommands;
+	}
+
+	/**
+	 * Get the number of commands sent after the end of the recording.
+	 */
+	public int getExtraCommands() {
+		return extraCommands;
+	}
+
+	/**
+	 * Get a description of the first command which differed from the
+	 * recording, or null if none.
+	 */
+	public String getCommandDivergence() {
+		return commandDivergence;
+	}
+
+	/**
+	 * Get a description of the first decision which differed from the
+	 * recording, or null if none.
+	 */
+	public String getDecisionDivergence() {
+		return decisionDivergence;
+	}
+
+	/**
+	 * Get the differences between the recorded and the replayed maze.
+	 */
+	public List<String> getMazeDifferences() {
+		return mazeDifferences;
+	}
+
+	/**
+	 * Get the duration of the recorded run, in nanoseconds.
+	 */
+	public long getRecordedTime() {
+		return recordedTime;
+	}
+
+	/**
+	 * Get the duration of the replay, in nanoseconds.
+	 */
+	public long getReplayTime() {
+		return replayTime;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(isSuccessful() ? "Replay matches the recording." : "Replay differs from the recording.")
+				.append('\n');
+		sb.append(String.format(Locale.US, "Commands: %d of %d matched, %d after the end of the recording%n",
+				matchedCommands, recordedCommands, extraCommands));
+		sb.append(String.format(Locale.US, "Time: %.1f s recorded, %.1f s replayed%n", recordedTime / 1e9d,
+				replayTime / 1e9d));
+		if (commandDivergence != null) {
+			sb.append("Commands: ").append(commandDivergence).append('\n');
+		}
+		if (decisionDivergence != null) {
+			sb.append("Decisions: ").append(decisionDivergence).append('\n');
+		}
+		for (String difference : mazeDifferences) {
+			sb.append("Maze: ").append(difference).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,388 @@
+package mazestormer.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lejos.robotics.navigation.Pose;
+import mazestormer.command.Command;
+import mazestormer.command.CommandReader;
+import mazestormer.maze.Tile;
+import mazestormer.maze.parser.BinaryTiles;
+import mazestormer.remote.Message;
+import mazestormer.report.Report;
+import mazestormer.report.ReportReader;
+
+/**
+ * A recorded run of a physical robot.
+ *
+ * <p>
+ * The log holds the commands sent to the robot and the reports received from
+ * it in the order in which they went over the wire, along with the parameters
+ * and the maze at the start of the run, the decisions made by the driver and
+ * the resulting maze. It can be replayed with {@link RunReplayer}.
+ * </p>
+ */
+public class RunLog {
+
+	private static final int magic = 0x4D535252; // MSRR
+	private static final int version = 1;
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	public static enum Direction {
+		COMMAND, REPORT
+	}
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final List<String> decisions = new ArrayList<String>();
+
+	private Pose startPose = new Pose();
+	private Pose mazeOrigin = new Pose();
+	private String startMaze = BinaryTiles.encode(Collections.<Tile> emptyList());
+	private String endMaze = startMaze;
+
+	private double travelSpeed;
+	private double rotateSpeed;
+	private int lightLow;
+	private int lightHigh;
+	private boolean lineAdjustEnabled;
+	private int lineAdjustInterval;
+	private double scanSpeed;
+
+	/*
+	 * Entries
+	 */
+
+	/**
+	 * Get the exchanged messages, in order.
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Add an exchanged message.
+	 *
+	 * @param time
+	 *            The time since the start of the run, in nanoseconds.
+	 * @param message
+	 *            The command or report.
+	 */
+	public synchronized void addEntry(long time, Message message) {
+		entries.add(new Entry(time, message));
+	}
+
+	/**
+	 * Get the number of commands in this log.
+	 */
+	public int getCommandCount() {
+		int count = 0;
+		for (Entry entry : entries) {
+			if (entry.getDirection() == Direction.COMMAND) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the decisions made by the driver, in order.
+	 */
+	public List<String> getDecisions() {
+		return Collections.unmodifiableList(decisions);
+	}
+
+	/**
+	 * Add a decision made by the driver.
+	 */
+	public synchronized void addDecision(String decision) {
+		decisions.add(decision);
+	}
+
+	/*
+	 * Run parameters
+	 */
+
+	public Pose getStartPose() {
+		return startPose;
+	}
+
+	public void setStartPose(Pose startPose) {
+		this.startPose = startPose;
+	}
+
+	/**
+	 * Get the origin of the maze.
+	 */
+	public Pose getMazeOrigin() {
+		return mazeOrigin;
+	}
+
+	public void setMazeOrigin(Pose mazeOrigin) {
+		this.mazeOrigin = mazeOrigin;
+	}
+
+	/**
+	 * Get the tiles of the maze at the start of the run, encoded with
+	 * {@link BinaryTiles}.
+	 */
+	public String getStartMaze() {
+		return startMaze;
+	}
+
+	public void setStartMaze(String startMaze) {
+		this.startMaze = startMaze;
+	}
+
+	/**
+	 * Get the tiles of the maze at the end of the run, encoded with
+	 * {@link BinaryTiles}.
+	 */
+	public String getEndMaze() {
+		return endMaze;
+	}
+
+	public void setEndMaze(String endMaze) {
+		this.endMaze = endMaze;
+	}
+
+	public double getTravelSpeed() {
+		return travelSpeed;
+	}
+
+	public void setTravelSpeed(double travelSpeed) {
+		this.travelSpeed = travelSpeed;
+	}
+
+	public double getRotateSpeed() {
+		return rotateSpeed;
+	}
+
+	public void setRotateSpeed(double rotateSpeed) {
+		this.rotateSpeed = rotateSpeed;
+	}
+
+	public int getLightLow() {
+		return lightLow;
+	}
+
+	public void setLightLow(int lightLow) {
+		this.lightLow = lightLow;
+	}
+
+	public int getLightHigh() {
+		return lightHigh;
+	}
+
+	public void setLightHigh(int lightHigh) {
+		this.lightHigh = lightHigh;
+	}
+
+	public boolean isLineAdjustEnabled() {
+		return lineAdjustEnabled;
+	}
+
+	public void setLineAdjustEnabled(boolean lineAdjustEnabled) {
+		this.lineAdjustEnabled = lineAdjustEnabled;
+	}
+
+	public int getLineAdjustInterval() {
+		return lineAdjustInterval;
+	}
+
+	public void setLineAdjustInterval(int lineAdjustInterval) {
+		this.lineAdjustInterval = lineAdjustInterval;
+	}
+
+	public double getScanSpeed() {
+		return scanSpeed;
+	}
+
+	public void setScanSpeed(double scanSpeed) {
+		this.scanSpeed = scanSpeed;
+	}
+
+	/*
+	 * Reading and writing
+	 */
+
+	/**
+	 * Write this log to a stream.
+	 *
+	 * @param out
+	 *            The stream to write to. It is not closed by this method.
+	 */
+	public synchronized void write(OutputStream out) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(gzip));
+
+		dos.writeInt(magic);
+		dos.writeShort(version);
+
+		// Parameters
+		dos.writeFloat(startPose.getX());
+		dos.writeFloat(startPose.getY());
+		dos.writeFloat(startPose.getHeading());
+		dos.writeFloat(mazeOrigin.getX());
+		dos.writeFloat(mazeOrigin.getY());
+		dos.writeFloat(mazeOrigin.getHeading());
+		writeString(dos, startMaze);
+		dos.writeDouble(travelSpeed);
+		dos.writeDouble(rotateSpeed);
+		dos.writeInt(lightLow);
+		dos.writeInt(lightHigh);
+		dos.writeBoolean(lineAdjustEnabled);
+		dos.writeInt(lineAdjustInterval);
+		dos.writeDouble(scanSpeed);
+
+		// Messages
+		dos.writeInt(entries.size());
+		for (Entry entry : entries) {
+			dos.writeByte(entry.getDirection().ordinal());
+			dos.writeLong(entry.getTime());
+			entry.getMessage().write(dos);
+		}
+
+		// Outcome
+		dos.writeInt(decisions.size());
+		for (String decision : decisions) {
+			writeString(dos, decision);
+		}
+		writeString(dos, endMaze);
+
+		dos.flush();
+		gzip.finish();
+	}
+
+	/**
+	 * Write this log to a file.
+	 */
+	public void write(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read a log from a stream.
+	 *
+	 * @param in
+	 *            The stream to read from. It is not closed by this method.
+	 */
+	public static RunLog read(InputStream in) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+		if (dis.readInt() != magic)
+			throw new IOException("Not a run log.");
+		int logVersion = dis.readShort();
+		if (logVersion != version)
+			throw new IOException("Unsupported run log version: " + logVersion);
+
+		RunLog log = new RunLog();
+
+		// Parameters
+		log.setStartPose(new Pose(dis.readFloat(), dis.readFloat(), dis.readFloat()));
+		log.setMazeOrigin(new Pose(dis.readFloat(), dis.readFloat(), dis.readFloat()));
+		log.setStartMaze(readString(dis));
+		log.setTravelSpeed(dis.readDouble());
+		log.setRotateSpeed(dis.readDouble());
+		log.setLightLow(dis.readInt());
+		log.setLightHigh(dis.readInt());
+		log.setLineAdjustEnabled(dis.readBoolean());
+		log.setLineAdjustInterval(dis.readInt());
+		log.setScanSpeed(dis.readDouble());
+
+		// Messages
+		CommandReader commandReader = new CommandReader();
+		ReportReader reportReader = new ReportReader();
+		int nbEntries = dis.readInt();
+		for (int i = 0; i < nbEntries; i++) {
+			Direction direction = Direction.values()[dis.readByte()];
+			long time = dis.readLong();
+			Message message = (direction == Direction.COMMAND) ? commandReader.read(dis) : reportReader.read(dis);
+			log.addEntry(time, message);
+		}
+
+		// Outcome
+		int nbDecisions = dis.readInt();
+		for (int i = 0; i < nbDecisions; i++) {
+			log.addDecision(readString(dis));
+		}
+		log.setEndMaze(readString(dis));
+
+		return log;
+	}
+
+	/**
+	 * Read a log from a file.
+	 */
+	public static RunLog read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream dos, String string) throws IOException {
+		// Mazes may exceed the limits of modified UTF-8
+		byte[] bytes = string.getBytes(utf8);
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+
+	private static String readString(DataInputStream dis) throws IOException {
+		byte[] bytes = new byte[dis.readInt()];
+		dis.readFully(bytes);
+		return new String(bytes, utf8);
+	}
+
+	/**
+	 * A message exchanged during the run.
+	 */
+	public static class Entry {
+
+		private final long time;
+		private final Message message;
+
+		public Entry(long time, Message message) {
+			if (!(message instanceof Command || message instanceof Report))
+				throw new IllegalArgumentException("Message must be a command or a report.");
+			this.time = time;
+			this.message = message;
+		}
+
+		/**
+		 * Get the time since the start of the run, in nanoseconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public Direction getDirection() {
+			return (message instanceof Command) ? Direction.COMMAND : Direction.REPORT;
+		}
+
+		public Message getMessage() {
+			return message;
+		}
+
+	}
+
+}
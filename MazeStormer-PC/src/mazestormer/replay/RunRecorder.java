@@ -0,0 +1,127 @@
+package mazestormer.replay;
+
+import mazestormer.command.Command;
+import mazestormer.command.Driver;
+import mazestormer.maze.parser.BinaryTiles;
+import mazestormer.physical.CommunicationListener;
+import mazestormer.physical.PhysicalCommunicator;
+import mazestormer.player.Player;
+import mazestormer.report.Report;
+import mazestormer.robot.ControllableRobot;
+import mazestormer.state.DefaultStateListener;
+
+/**
+ * Records a run of a driver on a physical robot for later replay.
+ *
+ * <p>
+ * All commands and reports exchanged over the communicator are recorded from
+ * the moment the recorder is started, along with the transitions of the
+ * driver.
+ * </p>
+ */
+public class RunRecorder implements CommunicationListener {
+
+	private final PhysicalCommunicator communicator;
+	private final DecisionListener decisionListener = new DecisionListener();
+
+	private RunLog log;
+	private Driver driver;
+	private long startTime;
+
+	public RunRecorder(PhysicalCommunicator communicator) {
+		this.communicator = communicator;
+	}
+
+	/**
+	 * Check whether this recorder is currently recording.
+	 */
+	public synchronized boolean isRecording() {
+		return log != null;
+	}
+
+	/**
+	 * Start recording a run of the given driver.
+	 *
+	 * <p>
+	 * This should be called before the driver is started.
+	 * </p>
+	 *
+	 * @param driver
+	 *            The driver.
+	 */
+	public synchronized void start(Driver driver) {
+		if (isRecording())
+			throw new IllegalStateException("Already recording.");
+
+		this.log = new RunLog();
+		this.driver = driver;
+
+		// Parameters
+		Player player = driver.getPlayer();
+		ControllableRobot robot = driver.getRobot();
+		log.setStartPose(robot.getPoseProvider().getPose());
+		log.setMazeOrigin(player.getMaze().getOrigin());
+		log.setStartMaze(BinaryTiles.encode(player.getMaze().getTiles()));
+		log.setTravelSpeed(robot.getPilot().getTravelSpeed());
+		log.setRotateSpeed(robot.getPilot().getRotateSpeed());
+		log.setLightLow(robot.getLightSensor().getLow());
+		log.setLightHigh(robot.getLightSensor().getHigh());
+		log.setLineAdjustEnabled(driver.isLineAdjustEnabled());
+		log.setLineAdjustInterval(driver.getLineAdjustInterval());
+		log.setScanSpeed(driver.getScanSpeed());
+
+		// Listen
+		startTime = System.nanoTime();
+		driver.addStateListener(decisionListener);
+		communicator.addCommunicationListener(this);
+	}
+
+	/**
+	 * Stop recording.
+	 *
+	 * @return The recorded run.
+	 */
+	public synchronized RunLog stop() {
+		if (!isRecording())
+			throw new IllegalStateException("Not recording.");
+
+		communicator.removeCommunicationListener(this);
+		driver.removeStateListener(decisionListener);
+		log.setEndMaze(BinaryTiles.encode(driver.getPlayer().getMaze().getTiles()));
+
+		RunLog result = log;
+		log = null;
+		driver = null;
+		return result;
+	}
+
+	@Override
+	public synchronized void commandSent(Command command) {
+		if (log != null) {
+			log.addEntry(System.nanoTime() - startTime, command);
+		}
+	}
+
+	@Override
+	public synchronized void reportReceived(Report<?> report) {
+		if (log != null) {
+			log.addEntry(System.nanoTime() - startTime, report);
+		}
+	}
+
+	private synchronized void decisionMade(String decision) {
+		if (log != null) {
+			log.addDecision(decision);
+		}
+	}
+
+	private class DecisionListener extends DefaultStateListener<Driver.ExplorerState> {
+
+		@Override
+		public void stateTransitioned(Driver.ExplorerState nextState) {
+			decisionMade(nextState.name());
+		}
+
+	}
+
+}
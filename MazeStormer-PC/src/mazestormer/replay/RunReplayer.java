@@ -0,0 +1,290 @@
+package mazestormer.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mazestormer.command.Command;
+import mazestormer.command.Driver;
+import mazestormer.command.explore.Explorer;
+import mazestormer.loopback.LoopbackLink;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Maze;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.Tile;
+import mazestormer.maze.parser.BinaryTiles;
+import mazestormer.physical.CommunicationListener;
+import mazestormer.physical.PhysicalCommunicator;
+import mazestormer.physical.PhysicalRobot;
+import mazestormer.player.RelativePlayer;
+import mazestormer.report.Report;
+import mazestormer.robot.Pilot;
+import mazestormer.state.DefaultStateListener;
+import mazestormer.world.World;
+
+/**
+ * Replays a recorded run through the real driver.
+ *
+ * <p>
+ * The driver runs on a {@link PhysicalRobot} which is connected to a
+ * {@link ReplayBrick} over a loopback link, so the same pilot, sensors and
+ * range scanner are used as in the recorded run. The brick answers every
+ * command with the recorded reports as soon as it is sent, so the replay runs
+ * as fast as the driver can make its decisions. Afterwards, the sent commands,
+ * the transitions of the driver and the resulting maze are compared with the
+ * recording.
+ * </p>
+ *
+ * <p>
+ * The robot uses a sequential communicator, which delivers the replayed
+ * reports one by one in recorded order. The replay ends when the driver
+ * finishes, when a command differs from the recording, or when the whole
+ * recording has been replayed. When the driver finishes, the brick still
+ * matches the commands which the driver sent before finishing. Afterwards, the
+ * replayer waits until the driver has handled all replayed reports, so
+ * decisions made on the last reports are still compared. No timeouts are
+ * involved, so a driver which stops sending commands before the end of the
+ * recording blocks the replay until it is interrupted.
+ * </p>
+ */
+public class RunReplayer {
+
+	private final RunLog log;
+
+	public RunReplayer(RunLog log) {
+		this.log = log;
+	}
+
+	public RunLog getLog() {
+		return log;
+	}
+
+	/**
+	 * Replay the run.
+	 */
+	public ReplayResult replay() throws InterruptedException, ParseException {
+		LoopbackLink link = new LoopbackLink();
+		ReplayBrick brick = new ReplayBrick(link.getBrickInputStream(), link.getBrickOutputStream(), log);
+		brick.start();
+
+		// Player and robot
+		Maze maze = new Maze();
+		maze.setOrigin(log.getMazeOrigin());
+		BinaryTiles.decode(log.getStartMaze(), maze);
+		RelativePlayer player = new RelativePlayer("replay", null, maze);
+		PhysicalCommunicator communicator = new PhysicalCommunicator(link.getHostInputStream(),
+				link.getHostOutputStream(), true);
+		PhysicalRobot robot = new PhysicalRobot(communicator, new World(player));
+		player.setRobot(robot);
+		communicator.start();
+		CommandCounter commands = new CommandCounter();
+		communicator.addCommunicationListener(commands);
+
+		try {
+			// Set up as recorded
+			Pilot pilot = robot.getPilot();
+			pilot.setTravelSpeed(log.getTravelSpeed());
+			pilot.setRotateSpeed(log.getRotateSpeed());
+			robot.getLightSensor().setLow(log.getLightLow());
+			robot.getLightSensor().setHigh(log.getLightHigh());
+			robot.getPoseProvider().setPose(log.getStartPose());
+			Explorer explorer = createExplorer(player);
+			DecisionListener decisions = new DecisionListener(brick, commands);
+			explorer.getDriver().addStateListener(decisions);
+			brick.awaitReceived(commands.getCount());
+
+			// Replay
+			long startTime = System.nanoTime();
+			brick.arm();
+			explorer.start();
+			brick.awaitEnd();
+			communicator.getDispatcher().awaitHandled(brick.getSentCount());
+			long replayTime = System.nanoTime() - startTime;
+			brick.disarm();
+			explorer.stop();
+
+			// Compare
+			List<RunLog.Entry> entries = log.getEntries();
+			long recordedTime = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getTime();
+			return new ReplayResult(log.getCommandCount(), brick.getMatchedCount(), brick.getExtraCount(),
+					brick.getDivergence(), compareDecisions(log.getDecisions(), decisions.getDecisions()),
+					compareMazes(log.getEndMaze(), maze), recordedTime, replayTime);
+		} finally {
+			robot.terminate();
+			try {
+				communicator.terminate();
+			} catch (IOException e) {
+				// Link already closed
+			}
+			brick.terminate();
+			link.close();
+		}
+	}
+
+	/**
+	 * Create the explorer to replay, with the recorded parameters.
+	 */
+	protected Explorer createExplorer(RelativePlayer player) {
+		Explorer explorer = new Explorer(player);
+		Driver driver = explorer.getDriver();
+		driver.setLineAdjustEnabled(log.isLineAdjustEnabled());
+		driver.setLineAdjustInterval(log.getLineAdjustInterval());
+		driver.setScanSpeed(log.getScanSpeed());
+		return explorer;
+	}
+
+	/**
+	 * Compare the recorded and replayed decisions.
+	 *
+	 * @return A description of the first difference, or null if equal.
+	 */
+	private static String compareDecisions(List<String> recorded, List<String> replayed) {
+		int size = Math.min(recorded.size(), replayed.size());
+		for (int i = 0; i < size; i++) {
+			if (!recorded.get(i).equals(replayed.get(i))) {
+				return String.format(Locale.US, "Expected %s as decision %d, but made %s.", recorded.get(i), i + 1,
+						replayed.get(i));
+			}
+		}
+		if (recorded.size() != replayed.size()) {
+			return String.format(Locale.US, "Expected %d decisions, but made %d.", recorded.size(),
+					replayed.size());
+		}
+		return null;
+	}
+
+	/**
+	 * Compare the recorded and replayed mazes tile by tile.
+	 *
+	 * @return The differences between both mazes.
+	 */
+	private static List<String> compareMazes(String recorded, IMaze replayed) throws ParseException {
+		Maze recordedMaze = new Maze();
+		BinaryTiles.decode(recorded, recordedMaze);
+
+		Map<String, String> recordedTiles = describeTiles(recordedMaze);
+		Map<String, String> replayedTiles = describeTiles(replayed);
+
+		List<String> differences = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : recordedTiles.entrySet()) {
+			String replayedTile = replayedTiles.get(entry.getKey());
+			if (!entry.getValue().equals(replayedTile)) {
+				differences.add(String.format("Tile %s: expected %s, but found %s", entry.getKey(), entry.getValue(),
+						replayedTile == null ? "nothing" : replayedTile));
+			}
+		}
+		for (Map.Entry<String, String> entry : replayedTiles.entrySet()) {
+			if (!recordedTiles.containsKey(entry.getKey())) {
+				differences.add(String.format("Tile %s: expected nothing, but found %s", entry.getKey(),
+						entry.getValue()));
+			}
+		}
+		return differences;
+	}
+
+	private static Map<String, String> describeTiles(IMaze maze) {
+		Map<String, String> tiles = new TreeMap<String, String>();
+		for (Tile tile : maze.getTiles()) {
+			StringBuilder sb = new StringBuilder();
+			for (Orientation orientation : Orientation.values()) {
+				sb.append(orientation.getShortName()).append('=').append(tile.getEdgeAt(orientation).getType())
+						.append(' ');
+			}
+			if (tile.getSeesawOrientation() != null) {
+				sb.append("seesaw=").append(tile.getSeesawOrientation()).append(' ');
+			}
+			if (tile.hasBarcode()) {
+				sb.append("barcode=").append(tile.getBarcode()).append(' ');
+			}
+			tiles.put("(" + tile.getX() + ", " + tile.getY() + ")", sb.toString().trim());
+		}
+		return tiles;
+	}
+
+	/**
+	 * Counts the commands sent to the brick.
+	 */
+	private static class CommandCounter implements CommunicationListener {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public int getCount() {
+			return count.get();
+		}
+
+		@Override
+		public void commandSent(Command command) {
+			count.incrementAndGet();
+		}
+
+		@Override
+		public void reportReceived(Report<?> report) {
+		}
+
+	}
+
+	/**
+	 * Collects the decisions of the driver, and ends the replay after the last
+	 * command sent before the driver stops or finishes.
+	 */
+	private static class DecisionListener extends DefaultStateListener<Driver.ExplorerState> {
+
+		private final ReplayBrick brick;
+		private final CommandCounter commands;
+		private final List<String> decisions = Collections.synchronizedList(new ArrayList<String>());
+
+		public DecisionListener(ReplayBrick brick, CommandCounter commands) {
+			this.brick = brick;
+			this.commands = commands;
+		}
+
+		public List<String> getDecisions() {
+			synchronized (decisions) {
+				return new ArrayList<String>(decisions);
+			}
+		}
+
+		@Override
+		public void stateTransitioned(Driver.ExplorerState nextState) {
+			decisions.add(nextState.name());
+		}
+
+		@Override
+		public void stateStopped() {
+			brick.endAfter(commands.getCount());
+		}
+
+		@Override
+		public void stateFinished() {
+			brick.endAfter(commands.getCount());
+		}
+
+	}
+
+	/**
+	 * Replay a recorded run and compare it with the recording.
+	 *
+	 * <p>
+	 * Arguments: the run log. The exit code is zero if the replay matches the
+	 * recording, so this can be used as a regression check.
+	 * </p>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: RunReplayer <run log>");
+			System.exit(2);
+		}
+		RunLog log = RunLog.read(new File(args[0]));
+		ReplayResult result = new RunReplayer(log).replay();
+		System.out.print(result);
+		System.exit(result.isSuccessful() ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,92 @@
+package mazestormer.replay;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import mazestormer.command.Driver;
+import mazestormer.command.explore.Explorer;
+import mazestormer.connect.ConnectionContext;
+import mazestormer.connect.LoopbackConnector;
+import mazestormer.maze.Maze;
+import mazestormer.maze.parser.Parser;
+import mazestormer.player.RelativePlayer;
+import mazestormer.state.StateMachine.StateFuture;
+import mazestormer.world.World;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RunReplayerTest {
+
+	private static final String maze = "3 1\nDeadEnd.W Straight.E DeadEnd.E";
+
+	private static RunLog log;
+
+	/**
+	 * Record an exploration on a simulated brick.
+	 */
+	@BeforeClass
+	public static void record() throws Exception {
+		RelativePlayer player = new RelativePlayer("test", null, new Maze());
+		World world = new World(player);
+		new Parser(world.getMaze()).parse(maze);
+		LoopbackConnector connector = new LoopbackConnector();
+		ConnectionContext context = new ConnectionContext();
+		context.setDeviceName("loopback");
+		context.setWorld(world);
+		connector.connect(context);
+
+		RunLog recording;
+		try {
+			player.setRobot(connector.getRobot());
+			Explorer explorer = new Explorer(player);
+			StateFuture<Driver.ExplorerState> finished = new StateFuture<Driver.ExplorerState>(null);
+			explorer.getDriver().addStateListener(finished);
+
+			RunRecorder recorder = new RunRecorder(connector.getCommunicator());
+			recorder.start(explorer.getDriver());
+			explorer.start();
+			finished.get(60, TimeUnit.SECONDS);
+			recording = recorder.stop();
+			explorer.stop();
+		} finally {
+			connector.disconnect();
+		}
+
+		// Write and read back
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		recording.write(out);
+		log = RunLog.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test(timeout = 60000)
+	public void replay() throws Exception {
+		assertFalse(log.getDecisions().isEmpty());
+
+		ReplayResult result = new RunReplayer(log).replay();
+		assertTrue(result.toString(), result.isSuccessful());
+	}
+
+	@Test(timeout = 60000)
+	public void divergeOnChangedParameter() throws Exception {
+		RunReplayer replayer = new RunReplayer(log) {
+			@Override
+			protected Explorer createExplorer(RelativePlayer player) {
+				Explorer explorer = super.createExplorer(player);
+				// Adjust on the line before every travel
+				explorer.getDriver().setLineAdjustEnabled(true);
+				explorer.getDriver().setLineAdjustInterval(1);
+				return explorer;
+			}
+		};
+
+		ReplayResult result = replayer.replay();
+		assertFalse(result.isSuccessful());
+		assertTrue(result.getDecisionDivergence() != null || !result.getMazeDifferences().isEmpty());
+	}
+
+}
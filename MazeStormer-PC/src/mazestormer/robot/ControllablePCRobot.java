@@ -1,7 +1,9 @@
 package mazestormer.robot;
 
+import mazestormer.condition.StrokeEdgesCondition;
 import mazestormer.detect.ObservableRangeScanner;
 import mazestormer.infrared.IRRobot;
+import mazestormer.util.Future;
 
 public interface ControllablePCRobot extends ControllableRobot, IRRobot {
 
@@ -21,4 +23,18 @@ public interface ControllablePCRobot extends ControllableRobot, IRRobot {
 	 */
 	public SoundPlayer getSoundPlayer();
 
+	/**
+	 * Record the edges between barcode strokes next to the light sensor.
+	 * 
+	 * <p>
+	 * The strokes are recorded while the robot travels, and all edges are
+	 * returned at once when the condition is resolved.
+	 * </p>
+	 * 
+	 * @param condition
+	 *            The stroke edges condition.
+	 * @return A future resolved with the positions of the recorded edges.
+	 */
+	public Future<float[]> recordStrokeEdges(StrokeEdgesCondition condition);
+
 }
@@ -0,0 +1,31 @@
+package mazestormer.robot;
+
+import lejos.robotics.localization.PoseProvider;
+import lejos.robotics.navigation.Pose;
+
+/**
+ * A pose provider which notifies listeners when its pose changes.
+ * 
+ * <p>
+ * Listeners are notified when the pose is set and when the robot starts or
+ * stops moving. While the robot is moving, its pose changes continuously
+ * without further notifications, so listeners should keep polling the pose
+ * until it no longer changes.
+ * </p>
+ */
+public interface ObservablePoseProvider extends PoseProvider {
+
+	/**
+	 * Get the current pose without allocating a new pose.
+	 * 
+	 * @param pose
+	 *            The pose to update with the current pose.
+	 * @return The given pose.
+	 */
+	public Pose getPose(Pose pose);
+
+	public void addPoseListener(PoseListener listener);
+
+	public void removePoseListener(PoseListener listener);
+
+}
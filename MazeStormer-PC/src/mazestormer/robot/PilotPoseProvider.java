@@ -0,0 +1,127 @@
+package mazestormer.robot;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.MoveListener;
+import lejos.robotics.navigation.MoveProvider;
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Odometry pose provider of a pilot, which notifies listeners when the pilot
+ * starts or stops a move.
+ * 
+ * <p>
+ * The odometry follows that of the leJOS {@code OdometryPoseProvider}, but
+ * keeps its own state so the pose can be {@linkplain #getPose(Pose) read}
+ * without allocating.
+ * </p>
+ */
+public class PilotPoseProvider implements ObservablePoseProvider, MoveListener {
+
+	private final List<PoseListener> listeners = new CopyOnWriteArrayList<PoseListener>();
+
+	private float x, y, heading;
+	private float angle0, distance0;
+	private MoveProvider mp;
+	private boolean current = true;
+
+	public PilotPoseProvider(Pilot pilot) {
+		pilot.addMoveListener(this);
+	}
+
+	@Override
+	public Pose getPose() {
+		return getPose(new Pose());
+	}
+
+	@Override
+	public synchronized Pose getPose(Pose pose) {
+		if (!current) {
+			updatePose(mp.getMovement());
+		}
+		pose.setLocation(x, y);
+		pose.setHeading(heading);
+		return pose;
+	}
+
+	@Override
+	public void setPose(Pose pose) {
+		synchronized (this) {
+			x = pose.getX();
+			y = pose.getY();
+			heading = pose.getHeading();
+		}
+		firePoseChanged();
+	}
+
+	@Override
+	public void moveStarted(Move event, MoveProvider mp) {
+		synchronized (this) {
+			angle0 = 0;
+			distance0 = 0;
+			this.mp = mp;
+		}
+		// Nothing moved yet, so listeners can still read the stored pose
+		firePoseChanged();
+		synchronized (this) {
+			current = false;
+		}
+	}
+
+	@Override
+	public void moveStopped(Move event, MoveProvider mp) {
+		synchronized (this) {
+			updatePose(event);
+			current = true;
+		}
+		firePoseChanged();
+	}
+
+	private void updatePose(Move event) {
+		float angle = event.getAngleTurned() - angle0;
+		float distance = event.getDistanceTraveled() - distance0;
+		double headingRad = Math.toRadians(heading);
+		double dx = 0, dy = 0;
+		if (event.getMoveType() == Move.MoveType.TRAVEL || Math.abs(angle) < 0.2f) {
+			dx = distance * Math.cos(headingRad);
+			dy = distance * Math.sin(headingRad);
+		} else if (event.getMoveType() == Move.MoveType.ARC) {
+			double turnRad = Math.toRadians(angle);
+			double radius = distance / turnRad;
+			dy = radius * (Math.cos(headingRad) - Math.cos(headingRad + turnRad));
+			dx = radius * (Math.sin(headingRad + turnRad) - Math.sin(headingRad));
+		}
+		x += dx;
+		y += dy;
+		heading = normalize(heading + angle);
+		angle0 = event.getAngleTurned();
+		distance0 = event.getDistanceTraveled();
+	}
+
+	private static float normalize(float angle) {
+		while (angle > 180)
+			angle -= 360;
+		while (angle < -180)
+			angle += 360;
+		return angle;
+	}
+
+	@Override
+	public void addPoseListener(PoseListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removePoseListener(PoseListener listener) {
+		listeners.remove(listener);
+	}
+
+	private void firePoseChanged() {
+		for (PoseListener listener : listeners) {
+			listener.poseChanged(this);
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package mazestormer.robot;
+
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Detects significant changes in a sequence of poses.
+ * 
+ * <p>
+ * A pose is considered changed when its position or heading differs more than
+ * the configured tolerances from the last changed pose. Small changes
+ * therefore accumulate until they become significant.
+ * </p>
+ */
+public class PoseChangeDetector {
+
+	/**
+	 * Default position tolerance, in centimeters.
+	 */
+	public static final float defaultPositionTolerance = 0.01f;
+
+	/**
+	 * Default heading tolerance, in degrees.
+	 */
+	public static final float defaultHeadingTolerance = 0.1f;
+
+	private final float positionTolerance;
+	private final float headingTolerance;
+	private Pose lastPose;
+
+	public PoseChangeDetector(float positionTolerance, float headingTolerance) {
+		this.positionTolerance = positionTolerance;
+		this.headingTolerance = headingTolerance;
+	}
+
+	public PoseChangeDetector() {
+		this(defaultPositionTolerance, defaultHeadingTolerance);
+	}
+
+	/**
+	 * Check whether the given pose differs significantly from the last changed
+	 * pose, and if so, remember it as the last changed pose.
+	 * 
+	 * @param pose
+	 *            The new pose.
+	 * @return True if the pose changed.
+	 */
+	public synchronized boolean update(Pose pose) {
+		if (lastPose != null && !isChanged(lastPose, pose))
+			return false;
+		lastPose = new Pose(pose.getX(), pose.getY(), pose.getHeading());
+		return true;
+	}
+
+	/**
+	 * Forget the last changed pose, so the next pose is always changed.
+	 */
+	public synchronized void reset() {
+		lastPose = null;
+	}
+
+	private boolean isChanged(Pose previous, Pose current) {
+		if (Math.abs(current.getX() - previous.getX()) > positionTolerance)
+			return true;
+		if (Math.abs(current.getY() - previous.getY()) > positionTolerance)
+			return true;
+		return Math.abs(normalizeHeading(current.getHeading() - previous.getHeading())) > headingTolerance;
+	}
+
+	private static float normalizeHeading(float heading) {
+		heading %= 360f;
+		if (heading > 180f)
+			heading -= 360f;
+		else if (heading < -180f)
+			heading += 360f;
+		return heading;
+	}
+
+}
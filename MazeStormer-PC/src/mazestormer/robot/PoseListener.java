@@ -0,0 +1,16 @@
+package mazestormer.robot;
+
+import lejos.robotics.localization.PoseProvider;
+
+public interface PoseListener {
+
+	/**
+	 * Invoked when the pose of a pose provider was set or starts or stops
+	 * changing.
+	 * 
+	 * @param provider
+	 *            The pose provider.
+	 */
+	public void poseChanged(PoseProvider provider);
+
+}
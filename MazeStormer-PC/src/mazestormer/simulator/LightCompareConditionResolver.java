@@ -1,6 +1,10 @@
 package mazestormer.simulator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import mazestormer.condition.LightCompareCondition;
+import mazestormer.condition.ThresholdIndex;
 import mazestormer.robot.CalibratedLightSensor;
 import mazestormer.robot.ControllableRobot;
 
@@ -8,10 +12,34 @@ public class LightCompareConditionResolver extends VirtualConditionResolver<Ligh
 
 	private final CalibratedLightSensor light;
 
+	private final ThresholdIndex<Future> index = new ThresholdIndex<Future>();
+	private final List<Future> matches = new ArrayList<Future>();
+
 	public LightCompareConditionResolver(ControllableRobot robot) {
 		this.light = robot.getLightSensor();
 	}
 
+	@Override
+	protected void futureAdded(Future future) {
+		index.add(future.getCondition(), future);
+	}
+
+	@Override
+	protected void removeFuture(Future future) {
+		index.remove(future.getCondition(), future);
+		super.removeFuture(future);
+	}
+
+	@Override
+	protected void update(Integer normalizedLightValue) {
+		// Only check futures whose threshold was crossed
+		index.removeMatches(normalizedLightValue, matches);
+		for (Future future : matches) {
+			future.check(normalizedLightValue);
+		}
+		matches.clear();
+	}
+
 	@Override
 	protected Integer getValue() {
 		return light.getNormalizedLightValue();
@@ -0,0 +1,145 @@
+package mazestormer.simulator;
+
+import lejos.robotics.navigation.Move;
+import mazestormer.barcode.StrokeRecorder;
+import mazestormer.condition.StrokeEdgesCondition;
+import mazestormer.report.ReportType;
+import mazestormer.report.RequestReport;
+import mazestormer.report.StrokeEdgesReport;
+import mazestormer.robot.CalibratedLightSensor;
+import mazestormer.robot.ControllableRobot;
+import mazestormer.robot.Pilot;
+import mazestormer.util.AbstractFuture;
+import mazestormer.util.FutureListener;
+
+public class StrokeEdgesConditionResolver extends
+		VirtualConditionResolver<StrokeEdgesCondition, StrokeEdgesConditionResolver.Sample> {
+
+	private final static long updateFrequency = 10; // ms
+
+	private final Pilot pilot;
+	private final CalibratedLightSensor light;
+
+	public StrokeEdgesConditionResolver(ControllableRobot robot) {
+		super(updateFrequency);
+		this.pilot = robot.getPilot();
+		this.light = robot.getLightSensor();
+	}
+
+	/**
+	 * Record the stroke edges for the given condition.
+	 * 
+	 * @param condition
+	 *            The stroke edges condition.
+	 * @return A future resolved with the positions of the recorded edges.
+	 */
+	public mazestormer.util.Future<float[]> record(StrokeEdgesCondition condition) {
+		RecordingFuture future = (RecordingFuture) add(condition);
+		EdgesFuture edges = new EdgesFuture(future);
+		future.addFutureListener(edges);
+		return edges;
+	}
+
+	@Override
+	protected Future createFuture(StrokeEdgesCondition condition) {
+		return new RecordingFuture(condition);
+	}
+
+	@Override
+	protected Sample getValue() {
+		// Sample light value and travelled distance at once
+		if (!pilot.isMoving())
+			return null;
+		Move movement = pilot.getMovement();
+		return new Sample(light.getNormalizedLightValue(), movement.getDistanceTraveled());
+	}
+
+	/**
+	 * Not used, every future records its own strokes.
+	 */
+	@Override
+	protected boolean matches(StrokeEdgesCondition condition, Sample value) {
+		return false;
+	}
+
+	public static final class Sample {
+
+		private final int lightValue;
+		private final float position;
+
+		public Sample(int lightValue, float position) {
+			this.lightValue = lightValue;
+			this.position = position;
+		}
+
+		public int getLightValue() {
+			return lightValue;
+		}
+
+		public float getPosition() {
+			return position;
+		}
+
+	}
+
+	private class RecordingFuture extends Future {
+
+		private final StrokeRecorder recorder;
+
+		public RecordingFuture(StrokeEdgesCondition condition) {
+			super(condition);
+			this.recorder = new StrokeRecorder(condition);
+		}
+
+		public float[] getEdges() {
+			return recorder.getEdges();
+		}
+
+		@Override
+		protected void check(Sample value) {
+			if (value != null && recorder.addSample(value.getLightValue(), value.getPosition())) {
+				resolve();
+			}
+		}
+
+		@Override
+		public RequestReport<?> createReport() {
+			return new StrokeEdgesReport(ReportType.STROKE_EDGES, getEdges());
+		}
+
+	}
+
+	/**
+	 * Resolved with the recorded edges when the recording future is resolved.
+	 */
+	private static class EdgesFuture extends AbstractFuture<float[]> implements FutureListener<Void> {
+
+		private final RecordingFuture recording;
+
+		public EdgesFuture(RecordingFuture recording) {
+			this.recording = recording;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (this) {
+				if (isDone() || !super.cancel(mayInterruptIfRunning))
+					return false;
+			}
+			recording.cancel();
+			return true;
+		}
+
+		@Override
+		public void futureResolved(mazestormer.util.Future<? extends Void> future, Void result) {
+			resolve(recording.getEdges());
+		}
+
+		@Override
+		public void futureCancelled(mazestormer.util.Future<? extends Void> future) {
+			cancel();
+		}
+
+	}
+
+}
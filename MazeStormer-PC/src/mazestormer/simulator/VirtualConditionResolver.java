@@ -24,22 +24,29 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 
 	private final ScheduledExecutorService executor;
 	private ScheduledFuture<?> task;
-	private final static long updateFrequency = 50; // ms
+	private final long updateFrequency; // ms
+	private final static long defaultUpdateFrequency = 50; // ms
 
 	private static final ThreadFactory factory = new ThreadFactoryBuilder()
 			.setNameFormat("VirtualConditionResolver-%d").build();
 
-	public VirtualConditionResolver() {
+	public VirtualConditionResolver(long updateFrequency) {
+		this.updateFrequency = updateFrequency;
 		executor = Executors.newSingleThreadScheduledExecutor(factory);
 	}
 
+	public VirtualConditionResolver() {
+		this(defaultUpdateFrequency);
+	}
+
 	public ConditionFuture add(C condition) {
 		if (isTerminated())
 			throw new IllegalStateException();
 
 		// Create future
-		Future future = new Future(condition);
+		Future future = createFuture(condition);
 		futures.add(future);
+		futureAdded(future);
 
 		// Start if not already running
 		if (!isRunning())
@@ -48,6 +55,16 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 		return future;
 	}
 
+	/**
+	 * Called after a future was added.
+	 * 
+	 * <p>
+	 * Subclasses can override this to index their futures.
+	 * </p>
+	 */
+	protected void futureAdded(Future future) {
+	}
+
 	protected void removeFuture(Future future) {
 		if (!isTerminated())
 			futures.remove(future);
@@ -92,6 +109,33 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 		}
 	}
 
+	/**
+	 * Create a future for the given condition.
+	 * 
+	 * <p>
+	 * Subclasses can override this to keep state per condition.
+	 * </p>
+	 */
+	protected Future createFuture(C condition) {
+		return new Future(condition);
+	}
+
+	/**
+	 * Check the futures against the given value.
+	 * 
+	 * <p>
+	 * The default implementation checks every future. Subclasses can override
+	 * this to only check the futures which can match the value.
+	 * </p>
+	 */
+	protected void update(V value) {
+		Iterator<Future> it = futures.iterator();
+		while (it.hasNext()) {
+			Future future = it.next();
+			future.check(value);
+		}
+	}
+
 	protected abstract V getValue();
 
 	protected abstract boolean matches(C condition, V value);
@@ -103,14 +147,8 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 			if (!isRunning())
 				return;
 
-			V value = getValue();
-
-			// Update all futures
-			Iterator<Future> it = futures.iterator();
-			while (it.hasNext()) {
-				Future future = it.next();
-				future.check(value);
-			}
+			// Update futures
+			update(getValue());
 
 			// Stop if no more futures to check
 			if (futures.isEmpty()) {
@@ -120,7 +158,7 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 
 	}
 
-	private class Future extends ConditionFuture {
+	protected class Future extends ConditionFuture {
 
 		public Future(C condition) {
 			super(condition);
@@ -146,7 +184,7 @@ public abstract class VirtualConditionResolver<C extends Condition, V> {
 			return super.cancel(mayInterruptIfRunning);
 		}
 
-		private void check(V value) {
+		protected void check(V value) {
 			if (matches(getCondition(), value)) {
 				resolve();
 			}
@@ -8,11 +8,14 @@ import java.util.Map;
 import mazestormer.condition.Condition;
 import mazestormer.condition.ConditionFuture;
 import mazestormer.condition.ConditionType;
+import mazestormer.condition.StrokeEdgesCondition;
 import mazestormer.robot.ControllableRobot;
+import mazestormer.util.Future;
 
 public class VirtualConditionResolvers {
 
 	private Map<ConditionType, VirtualConditionResolver<?, ?>> resolvers = new EnumMap<>(ConditionType.class);
+	private final StrokeEdgesConditionResolver strokeResolver;
 
 	public VirtualConditionResolvers(ControllableRobot robot) {
 		// Light value comparing
@@ -20,6 +23,21 @@ public class VirtualConditionResolvers {
 		resolvers.put(ConditionType.LIGHT_BETWEEN, lightResolver);
 		resolvers.put(ConditionType.LIGHT_GREATER_THAN, lightResolver);
 		resolvers.put(ConditionType.LIGHT_SMALLER_THAN, lightResolver);
+
+		// Barcode stroke recording
+		strokeResolver = new StrokeEdgesConditionResolver(robot);
+		resolvers.put(ConditionType.RECORD_STROKE_EDGES, strokeResolver);
+	}
+
+	/**
+	 * Record the stroke edges for the given condition.
+	 * 
+	 * @param condition
+	 *            The stroke edges condition.
+	 * @return A future resolved with the positions of the recorded edges.
+	 */
+	public Future<float[]> recordStrokeEdges(StrokeEdgesCondition condition) {
+		return strokeResolver.record(checkNotNull(condition));
 	}
 
 	public <C extends Condition> ConditionFuture resolve(C condition) {
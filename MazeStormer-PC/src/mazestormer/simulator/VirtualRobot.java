@@ -1,10 +1,10 @@
 package mazestormer.simulator;
 
 import lejos.geom.Point;
-import lejos.robotics.localization.OdometryPoseProvider;
 import lejos.robotics.localization.PoseProvider;
 import mazestormer.condition.Condition;
 import mazestormer.condition.ConditionFuture;
+import mazestormer.condition.StrokeEdgesCondition;
 import mazestormer.detect.ObservableRangeScanner;
 import mazestormer.detect.RangeFeatureDetector;
 import mazestormer.detect.RangeScannerFeatureDetector;
@@ -16,10 +16,12 @@ import mazestormer.robot.ControllablePCRobot;
 import mazestormer.robot.ControllableRobot;
 import mazestormer.robot.IRSensor;
 import mazestormer.robot.Pilot;
+import mazestormer.robot.PilotPoseProvider;
 import mazestormer.robot.RobotUpdateListener;
 import mazestormer.robot.SoundPlayer;
 import mazestormer.simulator.collision.CollisionObserver;
 import mazestormer.simulator.collision.VirtualCollisionDetector;
+import mazestormer.util.Future;
 import mazestormer.world.ModelType;
 import mazestormer.world.World;
 
@@ -54,7 +56,7 @@ public class VirtualRobot implements ControllablePCRobot, IRRobot {
 
 		// Pilot
 		pilot = new VirtualPilot(ControllableRobot.trackWidth);
-		poseProvider = new OdometryPoseProvider(pilot);
+		poseProvider = new PilotPoseProvider(pilot);
 
 		// Light sensor
 		light = new VirtualLightSensor(world);
@@ -157,6 +159,15 @@ public class VirtualRobot implements ControllablePCRobot, IRRobot {
 		updateProducer.removeUpdateListener(listener);
 	}
 
+	public VirtualConditionResolvers getConditionResolvers() {
+		return conditionResolvers;
+	}
+
+	@Override
+	public Future<float[]> recordStrokeEdges(StrokeEdgesCondition condition) {
+		return conditionResolvers.recordStrokeEdges(condition);
+	}
+
 	@Override
 	public CommandBuilder when(Condition condition) {
 		ConditionFuture future = conditionResolvers.resolve(condition);
@@ -168,6 +179,7 @@ public class VirtualRobot implements ControllablePCRobot, IRRobot {
 		pilot.terminate();
 		collisionObserver.terminate();
 		conditionResolvers.terminate();
+		updateProducer.terminate();
 	}
 
 	@Override
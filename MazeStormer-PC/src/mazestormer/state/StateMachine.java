@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import mazestormer.telemetry.TelemetryRecord.StateEvent;
+import mazestormer.telemetry.TelemetryRecorder;
 import mazestormer.util.AbstractFuture;
 import mazestormer.util.Future;
 import mazestormer.util.FutureListener;
@@ -19,6 +21,9 @@ public abstract class StateMachine<M extends StateMachine<M, S>, S extends State
 
 	private List<StateListener<S>> listeners = new ArrayList<StateListener<S>>();
 
+	private final TelemetryRecorder telemetry = TelemetryRecorder.getShared();
+	private final int telemetrySource = telemetry.registerInstanceSource(getClass().getName());
+
 	/**
 	 * Get the current state of this state machine.
 	 */
@@ -302,12 +307,14 @@ public abstract class StateMachine<M extends StateMachine<M, S>, S extends State
 	}
 
 	private void reportStarted() {
+		telemetry.recordState(telemetrySource, StateEvent.STARTED, null, false);
 		for (StateListener<S> l : listeners) {
 			l.stateStarted();
 		}
 	}
 
 	private void reportStopped() {
+		telemetry.recordState(telemetrySource, StateEvent.STOPPED, getState(), false);
 		for (StateListener<S> l : listeners) {
 			l.stateStopped();
 		}
@@ -315,6 +322,7 @@ public abstract class StateMachine<M extends StateMachine<M, S>, S extends State
 
 	private void reportPaused(boolean onTransition) {
 		S state = getState();
+		telemetry.recordState(telemetrySource, StateEvent.PAUSED, state, onTransition);
 		for (StateListener<S> l : listeners) {
 			l.statePaused(state, onTransition);
 		}
@@ -322,6 +330,7 @@ public abstract class StateMachine<M extends StateMachine<M, S>, S extends State
 
 	private void reportResumed() {
 		S state = getState();
+		telemetry.recordState(telemetrySource, StateEvent.RESUMED, state, false);
 		for (StateListener<S> l : listeners) {
 			l.stateResumed(state);
 		}
@@ -329,12 +338,14 @@ public abstract class StateMachine<M extends StateMachine<M, S>, S extends State
 
 	private void reportTransition() {
 		S state = getState();
+		telemetry.recordState(telemetrySource, StateEvent.TRANSITIONED, state, false);
 		for (StateListener<S> l : listeners) {
 			l.stateTransitioned(state);
 		}
 	}
 
 	private void reportFinished() {
+		telemetry.recordState(telemetrySource, StateEvent.FINISHED, getState(), false);
 		for (StateListener<S> l : listeners) {
 			l.stateFinished();
 		}
@@ -0,0 +1,217 @@
+package mazestormer.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import lejos.robotics.navigation.Move.MoveType;
+import mazestormer.telemetry.TelemetryRecord.GameEvent;
+import mazestormer.telemetry.TelemetryRecord.StateEvent;
+import mazestormer.telemetry.TelemetryRecord.Type;
+
+/**
+ * Reads a telemetry dump written by {@link TelemetryRecorder}.
+ */
+public class TelemetryReader {
+
+	private final long dumpTimeMillis;
+	private final long dumpTimeNanos;
+	private final List<TelemetryRecord> records = new ArrayList<TelemetryRecord>();
+	private final List<String> sourceNames = new ArrayList<String>();
+	private final List<String[]> stateNames = new ArrayList<String[]>();
+	private final List<String> strings = new ArrayList<String>();
+
+	/**
+	 * Read a dump from a stream.
+	 *
+	 * @param in
+	 *            The stream to read from. It is not closed by this reader.
+	 */
+	public TelemetryReader(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+
+		// Header
+		if (data.readInt() != TelemetryRecorder.magic)
+			throw new IOException("Not a telemetry dump.");
+		int version = data.readShort();
+		if (version != TelemetryRecorder.version)
+			throw new IOException("Unsupported telemetry version: " + version);
+		dumpTimeMillis = data.readLong();
+		dumpTimeNanos = data.readLong();
+
+		// Records
+		Type[] types = Type.values();
+		int type;
+		while ((type = data.readByte()) >= 0) {
+			records.add(new TelemetryRecord(data.readLong(), data.readLong(), types[type], data.readShort(), data
+					.readInt(), data.readInt(), data.readInt(), data.readFloat(), data.readFloat(), data.readFloat(),
+					data.readFloat()));
+		}
+
+		// Sources
+		int nbSources = data.readInt();
+		for (int i = 0; i < nbSources; i++) {
+			sourceNames.add(data.readUTF());
+			String[] states = new String[data.readInt()];
+			for (int j = 0; j < states.length; j++) {
+				states[j] = data.readUTF();
+			}
+			stateNames.add(states);
+		}
+
+		// Strings
+		int nbStrings = data.readInt();
+		for (int i = 0; i < nbStrings; i++) {
+			strings.add(data.readUTF());
+		}
+	}
+
+	/**
+	 * Read a dump from a file.
+	 */
+	public static TelemetryReader read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return new TelemetryReader(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Get the wall clock time at which the dump was written, in milliseconds.
+	 */
+	public long getDumpTimeMillis() {
+		return dumpTimeMillis;
+	}
+
+	/**
+	 * Get the wall clock time of a record, in milliseconds.
+	 */
+	public long getTimeMillis(TelemetryRecord record) {
+		return dumpTimeMillis - (dumpTimeNanos - record.getTime()) / 1000000L;
+	}
+
+	/**
+	 * Get the records in the dump, oldest first.
+	 */
+	public List<TelemetryRecord> getRecords() {
+		return Collections.unmodifiableList(records);
+	}
+
+	/**
+	 * Get the name of the source with the given index.
+	 */
+	public String getSourceName(int source) {
+		return sourceNames.get(source);
+	}
+
+	/**
+	 * Get the name of a state of the given source, or null if unknown.
+	 */
+	public String getStateName(int source, int state) {
+		String[] states = stateNames.get(source);
+		if (state < 0 || state >= states.length)
+			return null;
+		return states[state];
+	}
+
+	/**
+	 * Get the string with the given index in the string table, or null if
+	 * unknown.
+	 */
+	public String getString(int index) {
+		if (index < 0 || index >= strings.size())
+			return null;
+		return strings.get(index);
+	}
+
+	/**
+	 * Describe a record in a human-readable form.
+	 */
+	public String format(TelemetryRecord record) {
+		StringBuilder sb = new StringBuilder();
+		long start = records.isEmpty() ? record.getTime() : records.get(0).getTime();
+		sb.append(String.format(Locale.US, "%12.3f ms  %-16s ", (record.getTime() - start) / 1e6d,
+				getSourceName(record.getSource())));
+
+		switch (record.getType()) {
+		case ROBOT_UPDATE:
+			sb.append("UPDATE light=").append(record.getA());
+			if (record.getB() > 0) {
+				sb.append(String.format(Locale.US, " move=%s%s distance=%.2f angle=%.2f speed=%.2f",
+						MoveType.values()[record.getB() - 1],
+						record.getC() != 0 ? "" : " (stopped)", record.getX(), record.getY(), record.getW()));
+			}
+			if (!Float.isNaN(record.getZ())) {
+				sb.append(String.format(Locale.US, " infrared=%.1f", record.getZ()));
+			}
+			break;
+		case POSE:
+			sb.append(String.format(Locale.US, "POSE x=%.2f y=%.2f heading=%.2f", record.getX(), record.getY(),
+					record.getZ()));
+			break;
+		case STATE:
+			StateEvent stateEvent = StateEvent.values()[record.getA()];
+			sb.append("STATE ").append(stateEvent);
+			String state = getStateName(record.getSource(), record.getB());
+			if (state != null) {
+				sb.append(' ').append(state);
+			}
+			if (record.getC() != 0) {
+				sb.append(" (on transition)");
+			}
+			break;
+		case GAME:
+			GameEvent gameEvent = GameEvent.values()[record.getA()];
+			sb.append("GAME ").append(gameEvent);
+			switch (gameEvent) {
+			case ROLLED:
+				sb.append(" player=").append(record.getB()).append(" object=").append(record.getC());
+				break;
+			case WON:
+				sb.append(" team=").append(record.getB());
+				break;
+			case PLAYER_READY:
+				sb.append(' ').append(getString(record.getB())).append(" ready=").append(record.getC() != 0);
+				break;
+			case OBJECT_FOUND:
+			case PARTNER_CONNECTED:
+			case PARTNER_DISCONNECTED:
+				sb.append(' ').append(getString(record.getB()));
+				break;
+			default:
+				break;
+			}
+			break;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Print the records of a telemetry dump.
+	 *
+	 * <p>
+	 * Arguments: the dump file.
+	 * </p>
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TelemetryReader <dump file>");
+			System.exit(1);
+		}
+		TelemetryReader reader = read(new File(args[0]));
+		for (TelemetryRecord record : reader.getRecords()) {
+			System.out.println(reader.format(record));
+		}
+	}
+
+}
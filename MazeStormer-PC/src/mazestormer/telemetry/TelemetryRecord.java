@@ -0,0 +1,123 @@
+package mazestormer.telemetry;
+
+import java.util.Locale;
+
+/**
+ * A single record read back from a telemetry dump.
+ *
+ * <p>
+ * Every record has the same primitive fields. Their meaning depends on the
+ * {@link Type} of the record:
+ * </p>
+ * <ul>
+ * <li>{@link Type#ROBOT_UPDATE}: <code>a</code> is the light value,
+ * <code>b</code> is the move type ordinal plus one (zero when not moving),
+ * <code>c</code> is one when the robot is moving, <code>x</code> is the
+ * distance travelled, <code>y</code> is the angle turned, <code>z</code> is the
+ * infrared angle and <code>w</code> is the travel speed.</li>
+ * <li>{@link Type#POSE}: <code>x</code>, <code>y</code> and <code>z</code> are
+ * the position and the heading.</li>
+ * <li>{@link Type#STATE}: <code>a</code> is the {@link StateEvent} ordinal,
+ * <code>b</code> is the state ordinal (negative if unknown) and <code>c</code>
+ * is one when paused on a transition.</li>
+ * <li>{@link Type#GAME}: <code>a</code> is the {@link GameEvent} ordinal,
+ * <code>b</code> and <code>c</code> are the arguments. Player identifiers are
+ * stored in <code>b</code> as an index in the string table.</li>
+ * </ul>
+ */
+public class TelemetryRecord {
+
+	public static enum Type {
+		ROBOT_UPDATE, POSE, STATE, GAME
+	}
+
+	public static enum StateEvent {
+		STARTED, STOPPED, PAUSED, RESUMED, TRANSITIONED, FINISHED
+	}
+
+	public static enum GameEvent {
+		JOINED, LEFT, ROLLED, STARTED, STOPPED, WON, PLAYER_READY, OBJECT_FOUND, PARTNER_CONNECTED, PARTNER_DISCONNECTED, MAZES_MERGED
+	}
+
+	private final long sequence;
+	private final long time;
+	private final Type type;
+	private final int source;
+	private final int a, b, c;
+	private final float x, y, z, w;
+
+	public TelemetryRecord(long sequence, long time, Type type, int source, int a, int b, int c, float x, float y,
+			float z, float w) {
+		this.sequence = sequence;
+		this.time = time;
+		this.type = type;
+		this.source = source;
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.w = w;
+	}
+
+	/**
+	 * Get the sequence number of this record in the recording.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the time of this record, as given by {@link System#nanoTime()}.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Get the index of the source of this record in the source table.
+	 */
+	public int getSource() {
+		return source;
+	}
+
+	public int getA() {
+		return a;
+	}
+
+	public int getB() {
+		return b;
+	}
+
+	public int getC() {
+		return c;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getW() {
+		return w;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "#%d %s src=%d a=%d b=%d c=%d x=%.3f y=%.3f z=%.3f w=%.3f", sequence, type,
+				source, a, b, c, x, y, z, w);
+	}
+
+}
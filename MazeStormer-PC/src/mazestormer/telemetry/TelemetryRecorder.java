@@ -0,0 +1,608 @@
+package mazestormer.telemetry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.GZIPOutputStream;
+
+import lejos.robotics.localization.PoseProvider;
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.Pose;
+import mazestormer.game.GameListener;
+import mazestormer.player.Player;
+import mazestormer.robot.ObservablePoseProvider;
+import mazestormer.robot.PoseListener;
+import mazestormer.robot.RobotUpdate;
+import mazestormer.robot.RobotUpdateListener;
+import mazestormer.telemetry.TelemetryRecord.GameEvent;
+import mazestormer.telemetry.TelemetryRecord.StateEvent;
+import mazestormer.telemetry.TelemetryRecord.Type;
+
+/**
+ * Records robot updates, poses, state machine events and game events in a ring
+ * buffer.
+ *
+ * <p>
+ * The buffer is allocated up front as an array of packed words, so recording
+ * an event does not allocate. When the buffer is full, the oldest records are
+ * overwritten. The recorded events can be dumped to a compact binary file at
+ * any time, which can be read back with {@link TelemetryReader}.
+ * </p>
+ *
+ * <p>
+ * Events are recorded against a <em>source</em>, such as a state machine or a
+ * robot. Sources are registered once by name and referred to by their index
+ * afterwards. Objects of which there may be several instances, such as state
+ * machines, should {@linkplain #registerInstanceSource(String) register a
+ * source per instance}.
+ * </p>
+ */
+public class TelemetryRecorder {
+
+	/**
+	 * Default number of records in the ring buffer.
+	 */
+	public static final int defaultCapacity = 1 << 16;
+
+	/**
+	 * System property with the directory in which dumps are written on
+	 * failure.
+	 */
+	public static final String directoryProperty = "mazestormer.telemetry.dir";
+
+	static final int magic = 0x4D53544C; // MSTL
+	static final int version = 1;
+
+	/**
+	 * Minimum time between two dumps on failure, in milliseconds.
+	 */
+	private static final long failureDumpInterval = 10000;
+
+	private static final TelemetryRecorder shared = new TelemetryRecorder(defaultCapacity);
+
+	private final int capacity;
+	private final int mask;
+
+	/**
+	 * Number of words per record.
+	 */
+	private static final int recordWords = 5;
+
+	/**
+	 * The fields of the records, packed in {@link #recordWords} words per slot:
+	 * the time; the type, source and first argument; the second and third
+	 * arguments; the first and second value; the third and fourth value.
+	 *
+	 * <p>
+	 * The words are only accessed atomically, so a dump cannot read them out of
+	 * order with the sequence checks of the slot.
+	 * </p>
+	 */
+	private final AtomicLongArray words;
+
+	/**
+	 * The sequence number plus one of the record in each slot, or zero if the
+	 * slot is empty. While a slot is being written, it is marked with -1.
+	 */
+	private final AtomicLongArray published;
+	private final AtomicLong cursor = new AtomicLong();
+
+	private final ConcurrentMap<String, Integer> sourceIndices = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentMap<String, AtomicInteger> instanceCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	private final List<Source> sourceList = new CopyOnWriteArrayList<Source>();
+	private final ConcurrentMap<String, Integer> stringIndices = new ConcurrentHashMap<String, Integer>();
+	private final List<String> stringList = new CopyOnWriteArrayList<String>();
+
+	private final AtomicLong lastFailureDump = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * Create a new recorder.
+	 *
+	 * @param capacity
+	 *            The number of records to keep, which must be a power of two.
+	 */
+	public TelemetryRecorder(int capacity) {
+		checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a power of two.");
+		checkArgument(capacity <= Integer.MAX_VALUE / recordWords, "Capacity is too large.");
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.words = new AtomicLongArray(capacity * recordWords);
+		this.published = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * Get the recorder shared by the whole application.
+	 */
+	public static TelemetryRecorder getShared() {
+		return shared;
+	}
+
+	/**
+	 * Get the number of records kept by this recorder.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the total number of records recorded so far, including those which
+	 * have been overwritten.
+	 */
+	public long getRecordCount() {
+		return cursor.get();
+	}
+
+	/*
+	 * Sources and strings
+	 */
+
+	/**
+	 * Register a source of events.
+	 *
+	 * <p>
+	 * Registering the same name twice returns the same index.
+	 * </p>
+	 *
+	 * @param name
+	 *            The name of the source.
+	 * @return The index of the source.
+	 */
+	public int registerSource(String name) {
+		Integer index = sourceIndices.get(name);
+		if (index != null)
+			return index;
+		synchronized (sourceList) {
+			index = sourceIndices.get(name);
+			if (index == null) {
+				checkArgument(sourceList.size() <= Short.MAX_VALUE, "Too many sources.");
+				index = sourceList.size();
+				sourceList.add(new Source(name));
+				sourceIndices.put(name, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Register a source for an instance of a type of which there may be
+	 * several instances.
+	 *
+	 * <p>
+	 * Every call registers a new source, named after the given name and the
+	 * number of instances registered with that name so far.
+	 * </p>
+	 *
+	 * @param name
+	 *            The name of the type of source.
+	 * @return The index of the source.
+	 */
+	public int registerInstanceSource(String name) {
+		AtomicInteger count = instanceCounts.get(name);
+		if (count == null) {
+			AtomicInteger newCount = new AtomicInteger();
+			count = instanceCounts.putIfAbsent(name, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		return registerSource(name + "#" + count.incrementAndGet());
+	}
+
+	/**
+	 * Get the index of a string in the string table, adding it if needed.
+	 */
+	public int intern(String string) {
+		if (string == null)
+			return -1;
+		Integer index = stringIndices.get(string);
+		if (index != null)
+			return index;
+		synchronized (stringList) {
+			index = stringIndices.get(string);
+			if (index == null) {
+				index = stringList.size();
+				stringList.add(string);
+				stringIndices.put(string, index);
+			}
+			return index;
+		}
+	}
+
+	/*
+	 * Recording
+	 */
+
+	private void record(Type type, int source, int a, int b, int c, float x, float y, float z, float w) {
+		long sequence = cursor.getAndIncrement();
+		int i = (int) (sequence & mask);
+		int offset = i * recordWords;
+		published.set(i, -1L);
+		words.lazySet(offset, System.nanoTime());
+		words.lazySet(offset + 1, ((long) (type.ordinal() & 0xFF) << 48) | ((long) (source & 0xFFFF) << 32)
+				| (a & 0xFFFFFFFFL));
+		words.lazySet(offset + 2, pack(b, c));
+		words.lazySet(offset + 3, pack(Float.floatToRawIntBits(x), Float.floatToRawIntBits(y)));
+		words.lazySet(offset + 4, pack(Float.floatToRawIntBits(z), Float.floatToRawIntBits(w)));
+		published.lazySet(i, sequence + 1);
+	}
+
+	private static long pack(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Record an update received from a robot.
+	 */
+	public void recordUpdate(int source, RobotUpdate update) {
+		int moveType = 0;
+		int isMoving = 0;
+		float distance = 0f, angle = 0f, speed = 0f;
+		if (update.hasMovement()) {
+			Move move = update.getMovement();
+			moveType = (move.getMoveType() == null) ? 0 : move.getMoveType().ordinal() + 1;
+			isMoving = move.isMoving() ? 1 : 0;
+			distance = move.getDistanceTraveled();
+			angle = move.getAngleTurned();
+			speed = move.getTravelSpeed();
+		}
+		record(Type.ROBOT_UPDATE, source, update.getLightValue(), moveType, isMoving, distance, angle,
+				update.getInfraredAngle(), speed);
+	}
+
+	/**
+	 * Record a robot pose.
+	 */
+	public void recordPose(int source, Pose pose) {
+		record(Type.POSE, source, 0, 0, 0, pose.getX(), pose.getY(), pose.getHeading(), 0f);
+	}
+
+	/**
+	 * Record an event of a state machine.
+	 *
+	 * @param source
+	 *            The source index of the state machine.
+	 * @param event
+	 *            The event.
+	 * @param state
+	 *            The current state, or null if not applicable. Only the
+	 *            constants of enumerations are recorded.
+	 * @param onTransition
+	 *            Whether the machine paused on a transition.
+	 */
+	public void recordState(int source, StateEvent event, Object state, boolean onTransition) {
+		int ordinal = -1;
+		if (state instanceof Enum) {
+			Enum<?> constant = (Enum<?>) state;
+			ordinal = constant.ordinal();
+			Source s = sourceList.get(source);
+			if (s.stateType == null) {
+				s.stateType = constant.getDeclaringClass();
+			}
+		}
+		record(Type.STATE, source, event.ordinal(), ordinal, onTransition ? 1 : 0, 0f, 0f, 0f, 0f);
+	}
+
+	/**
+	 * Record a game event.
+	 *
+	 * @param source
+	 *            The source index of the game.
+	 * @param event
+	 *            The event.
+	 * @param b
+	 *            The first argument.
+	 * @param c
+	 *            The second argument.
+	 */
+	public void recordGame(int source, GameEvent event, int b, int c) {
+		record(Type.GAME, source, event.ordinal(), b, c, 0f, 0f, 0f, 0f);
+	}
+
+	/*
+	 * Listeners
+	 */
+
+	/**
+	 * Create a listener recording the updates of a robot.
+	 *
+	 * @param sourceName
+	 *            The name of the source.
+	 */
+	public RobotUpdateListener createUpdateListener(String sourceName) {
+		final int source = registerSource(sourceName);
+		return new RobotUpdateListener() {
+			@Override
+			public void updateReceived(RobotUpdate update) {
+				recordUpdate(source, update);
+			}
+		};
+	}
+
+	/**
+	 * Create a listener recording the poses of a robot.
+	 *
+	 * <p>
+	 * Poses of {@linkplain ObservablePoseProvider observable providers} are
+	 * read into a pose owned by the listener, so recording does not allocate.
+	 * </p>
+	 *
+	 * @param sourceName
+	 *            The name of the source.
+	 */
+	public PoseListener createPoseListener(String sourceName) {
+		final int source = registerSource(sourceName);
+		return new PoseListener() {
+			private final Pose pose = new Pose();
+
+			@Override
+			public void poseChanged(PoseProvider provider) {
+				if (provider instanceof ObservablePoseProvider) {
+					synchronized (pose) {
+						recordPose(source, ((ObservablePoseProvider) provider).getPose(pose));
+					}
+				} else {
+					recordPose(source, provider.getPose());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Create a listener recording the events of a game.
+	 *
+	 * @param sourceName
+	 *            The name of the source.
+	 */
+	public GameListener createGameListener(String sourceName) {
+		return new GameRecorder(registerSource(sourceName));
+	}
+
+	/*
+	 * Dumping
+	 */
+
+	/**
+	 * Write the records currently in the buffer to a stream.
+	 *
+	 * <p>
+	 * Recording continues while dumping. Records which are overwritten while
+	 * they are being dumped are skipped.
+	 * </p>
+	 *
+	 * @param out
+	 *            The stream to write to. It is not closed by this method.
+	 */
+	public synchronized void dump(OutputStream out) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+
+		long end = cursor.get();
+		long start = Math.max(0, end - capacity);
+
+		// Header
+		data.writeInt(magic);
+		data.writeShort(version);
+		data.writeLong(System.currentTimeMillis());
+		data.writeLong(System.nanoTime());
+
+		// Records, oldest first
+		for (long sequence = start; sequence < end; sequence++) {
+			int i = (int) (sequence & mask);
+			int offset = i * recordWords;
+			if (published.get(i) != sequence + 1)
+				continue;
+			long time = words.get(offset);
+			long word1 = words.get(offset + 1);
+			long word2 = words.get(offset + 2);
+			long word3 = words.get(offset + 3);
+			long word4 = words.get(offset + 4);
+			if (published.get(i) != sequence + 1)
+				continue;
+			byte type = (byte) (word1 >>> 48);
+			short source = (short) (word1 >>> 32);
+			int a = (int) word1;
+			int b = (int) (word2 >>> 32), c = (int) word2;
+			float x = Float.intBitsToFloat((int) (word3 >>> 32)), y = Float.intBitsToFloat((int) word3);
+			float z = Float.intBitsToFloat((int) (word4 >>> 32)), w = Float.intBitsToFloat((int) word4);
+			data.writeByte(type);
+			data.writeLong(sequence);
+			data.writeLong(time);
+			data.writeShort(source);
+			data.writeInt(a);
+			data.writeInt(b);
+			data.writeInt(c);
+			data.writeFloat(x);
+			data.writeFloat(y);
+			data.writeFloat(z);
+			data.writeFloat(w);
+		}
+		data.writeByte(-1);
+
+		// Sources and strings, after the records so they are complete
+		List<Source> sources = sourceList;
+		data.writeInt(sources.size());
+		for (Source source : sources) {
+			data.writeUTF(source.name);
+			Class<?> stateType = source.stateType;
+			Object[] states = (stateType == null) ? new Object[0] : stateType.getEnumConstants();
+			data.writeInt(states.length);
+			for (Object state : states) {
+				data.writeUTF(((Enum<?>) state).name());
+			}
+		}
+		List<String> strings = stringList;
+		data.writeInt(strings.size());
+		for (String string : strings) {
+			data.writeUTF(string);
+		}
+
+		data.flush();
+		gzip.finish();
+	}
+
+	/**
+	 * Write the records currently in the buffer to a new file.
+	 *
+	 * @param directory
+	 *            The directory in which to create the file.
+	 * @return The written file.
+	 */
+	public File dump(File directory) throws IOException {
+		File file = new File(directory, "telemetry-" + System.currentTimeMillis() + ".bin");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Get the directory in which dumps are written on failure.
+	 *
+	 * <p>
+	 * This is set by the {@value #directoryProperty} system property, and
+	 * defaults to the temporary directory.
+	 * </p>
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty(directoryProperty, System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * Dump the records to the given directory whenever a thread terminates
+	 * with an uncaught exception.
+	 *
+	 * <p>
+	 * The previous default uncaught exception handler is still invoked
+	 * afterwards.
+	 * </p>
+	 *
+	 * @param directory
+	 *            The directory in which to write the dumps.
+	 */
+	public void dumpOnFailure(final File directory) {
+		final UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread t, Throwable e) {
+				dumpOnFailure(directory, t);
+				if (previous != null) {
+					previous.uncaughtException(t, e);
+				} else {
+					System.err.print("Exception in thread \"" + t.getName() + "\" ");
+					e.printStackTrace(System.err);
+				}
+			}
+		});
+	}
+
+	private void dumpOnFailure(File directory, Thread thread) {
+		// Limit the number of dumps when failures repeat
+		long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+		long last = lastFailureDump.get();
+		if (last != Long.MIN_VALUE && now - last < failureDumpInterval)
+			return;
+		if (!lastFailureDump.compareAndSet(last, now))
+			return;
+
+		try {
+			File file = dump(directory);
+			System.err.println("Telemetry of failure in thread \"" + thread.getName() + "\" written to " + file);
+		} catch (IOException e) {
+			System.err.println("Could not write telemetry: " + e.getMessage());
+		}
+	}
+
+	private static class Source {
+
+		private final String name;
+		private volatile Class<?> stateType;
+
+		public Source(String name) {
+			this.name = name;
+		}
+
+	}
+
+	private class GameRecorder implements GameListener {
+
+		private final int source;
+
+		public GameRecorder(int source) {
+			this.source = source;
+		}
+
+		@Override
+		public void onGameJoined() {
+			recordGame(source, GameEvent.JOINED, 0, 0);
+		}
+
+		@Override
+		public void onGameLeft() {
+			recordGame(source, GameEvent.LEFT, 0, 0);
+		}
+
+		@Override
+		public void onGameRolled(int playerNumber, int objectNumber) {
+			recordGame(source, GameEvent.ROLLED, playerNumber, objectNumber);
+		}
+
+		@Override
+		public void onGameStarted() {
+			recordGame(source, GameEvent.STARTED, 0, 0);
+		}
+
+		@Override
+		public void onGameStopped() {
+			recordGame(source, GameEvent.STOPPED, 0, 0);
+		}
+
+		@Override
+		public void onGameWon(int teamNumber) {
+			recordGame(source, GameEvent.WON, teamNumber, 0);
+		}
+
+		@Override
+		public void onPlayerReady(String playerID, boolean isReady) {
+			recordGame(source, GameEvent.PLAYER_READY, intern(playerID), isReady ? 1 : 0);
+		}
+
+		@Override
+		public void onObjectFound(String playerID) {
+			recordGame(source, GameEvent.OBJECT_FOUND, intern(playerID), 0);
+		}
+
+		@Override
+		public void onPartnerConnected(Player partner) {
+			recordGame(source, GameEvent.PARTNER_CONNECTED, intern(partner.getPlayerID()), 0);
+		}
+
+		@Override
+		public void onPartnerDisconnected(Player partner) {
+			recordGame(source, GameEvent.PARTNER_DISCONNECTED, intern(partner.getPlayerID()), 0);
+		}
+
+		@Override
+		public void onMazesMerged() {
+			recordGame(source, GameEvent.MAZES_MERGED, 0, 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package mazestormer.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.Pose;
+import mazestormer.robot.RobotUpdate;
+import mazestormer.telemetry.TelemetryRecord.GameEvent;
+import mazestormer.telemetry.TelemetryRecord.StateEvent;
+import mazestormer.telemetry.TelemetryRecord.Type;
+
+import org.junit.Test;
+
+public class TelemetryRecorderTest {
+
+	private static enum TestState {
+		FIRST, SECOND
+	}
+
+	private static TelemetryReader dumpAndRead(TelemetryRecorder recorder) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		recorder.dump(out);
+		return new TelemetryReader(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(16);
+		int robot = recorder.registerSource("robot");
+		int machine = recorder.registerSource("machine");
+		int game = recorder.registerSource("game");
+
+		recorder.recordUpdate(robot, new RobotUpdate(new Move(Move.MoveType.TRAVEL, 12f, 0f, true), 480, 45f));
+		recorder.recordPose(robot, new Pose(1f, 2f, 90f));
+		recorder.recordState(machine, StateEvent.TRANSITIONED, TestState.SECOND, false);
+		recorder.recordState(machine, StateEvent.STARTED, null, false);
+		recorder.recordGame(game, GameEvent.OBJECT_FOUND, recorder.intern("brons"), 0);
+
+		TelemetryReader reader = dumpAndRead(recorder);
+		List<TelemetryRecord> records = reader.getRecords();
+		assertEquals(5, records.size());
+
+		TelemetryRecord update = records.get(0);
+		assertEquals(Type.ROBOT_UPDATE, update.getType());
+		assertEquals("robot", reader.getSourceName(update.getSource()));
+		assertEquals(480, update.getA());
+		assertEquals(Move.MoveType.TRAVEL.ordinal() + 1, update.getB());
+		assertEquals(12f, update.getX(), 0f);
+		assertEquals(45f, update.getZ(), 0f);
+
+		TelemetryRecord pose = records.get(1);
+		assertEquals(Type.POSE, pose.getType());
+		assertEquals(90f, pose.getZ(), 0f);
+
+		TelemetryRecord transition = records.get(2);
+		assertEquals(Type.STATE, transition.getType());
+		assertEquals("machine", reader.getSourceName(transition.getSource()));
+		assertEquals("SECOND", reader.getStateName(transition.getSource(), transition.getB()));
+		assertNull(reader.getStateName(machine, records.get(3).getB()));
+
+		TelemetryRecord found = records.get(4);
+		assertEquals(GameEvent.OBJECT_FOUND.ordinal(), found.getA());
+		assertEquals("brons", reader.getString(found.getB()));
+	}
+
+	@Test
+	public void instanceSources() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(8);
+		int first = recorder.registerInstanceSource("machine");
+		int second = recorder.registerInstanceSource("machine");
+		assertTrue(first != second);
+
+		recorder.recordState(first, StateEvent.STARTED, null, false);
+		recorder.recordState(second, StateEvent.STOPPED, null, false);
+
+		TelemetryReader reader = dumpAndRead(recorder);
+		List<TelemetryRecord> records = reader.getRecords();
+		assertEquals("machine#1", reader.getSourceName(records.get(0).getSource()));
+		assertEquals("machine#2", reader.getSourceName(records.get(1).getSource()));
+		assertEquals(-1, records.get(1).getB());
+	}
+
+	@Test
+	public void overwriteOldest() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(8);
+		int source = recorder.registerSource("robot");
+		for (int i = 0; i < 20; i++) {
+			recorder.recordPose(source, new Pose(i, 0f, 0f));
+		}
+
+		List<TelemetryRecord> records = dumpAndRead(recorder).getRecords();
+		assertEquals(8, records.size());
+		for (int i = 0; i < 8; i++) {
+			assertEquals(12 + i, records.get(i).getSequence());
+			assertEquals(12f + i, records.get(i).getX(), 0f);
+		}
+	}
+
+}
@@ -2,7 +2,8 @@ package mazestormer.ui;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
-import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ItemEvent;
@@ -10,6 +11,8 @@ import java.awt.event.ItemListener;
 import java.beans.Beans;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -21,6 +24,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JToolBar;
 import javax.swing.RowFilter;
+import javax.swing.Timer;
 import javax.swing.border.TitledBorder;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableColumn;
@@ -38,6 +42,25 @@ public class LogPanel extends ViewPanel {
 	private LogTableModel tableModel;
 	private LogTableRowFilter tableFilter;
 
+	/**
+	 * Maximum number of records kept in the table.
+	 */
+	private static final int maxRecords = 10000;
+
+	/**
+	 * Delay between flushes of published records to the table, in
+	 * milliseconds.
+	 */
+	private static final int flushDelay = 100;
+
+	private final Queue<LogRecord> pendingRecords = new ConcurrentLinkedQueue<LogRecord>();
+	private final Timer flushTimer = new Timer(flushDelay, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			flush();
+		}
+	});
+
 	private ButtonGroup groupFilters;
 	private JPopupMenu menuFilters;
 
@@ -58,6 +81,22 @@ public class LogPanel extends ViewPanel {
 		registerEventBus(controller.getEventBus());
 
 		controller.addLogHandler(new LogHandler());
+		flushTimer.start();
+	}
+
+	/**
+	 * Move all published records to the table in a single batch.
+	 */
+	private void flush() {
+		if (pendingRecords.isEmpty())
+			return;
+
+		List<LogRecord> batch = new ArrayList<LogRecord>();
+		LogRecord record;
+		while ((record = pendingRecords.poll()) != null) {
+			batch.add(record);
+		}
+		tableModel.addAll(batch);
 	}
 
 	private void createToolbar() {
@@ -179,9 +218,8 @@ public class LogPanel extends ViewPanel {
 
 		@Override
 		public boolean include(RowFilter.Entry<? extends LogTableModel, ? extends Integer> entry) {
-			int levelIndex = entry.getModel().getColumnIndex(LogTableColumn.Level);
-			Level entryLevel = Level.parse(entry.getStringValue(levelIndex));
-			return filterLevel.intValue() <= entryLevel.intValue();
+			int entryLevel = entry.getModel().getLevelValue(entry.getIdentifier());
+			return filterLevel.intValue() <= entryLevel;
 		}
 
 	}
@@ -193,12 +231,8 @@ public class LogPanel extends ViewPanel {
 			if (!isLoggable(record))
 				return;
 
-			EventQueue.invokeLater(new Runnable() {
-				@Override
-				public void run() {
-					tableModel.add(record);
-				}
-			});
+			// Collected and added in batches by the flush timer
+			pendingRecords.add(record);
 		}
 
 		@Override
@@ -212,16 +246,60 @@ public class LogPanel extends ViewPanel {
 		}
 	}
 
+	/**
+	 * Table model backed by a ring buffer of log records. Only accessed from
+	 * the event dispatch thread.
+	 */
 	private class LogTableModel extends AbstractTableModel {
 
 		private static final long serialVersionUID = 1L;
 
-		private List<LogRecord> records = new ArrayList<LogRecord>();
+		private final LogRecord[] records = new LogRecord[maxRecords];
+		private final int[] levels = new int[maxRecords];
+		private int start = 0;
+		private int size = 0;
+
+		/**
+		 * Append a batch of records, dropping the oldest records when the
+		 * buffer is full.
+		 */
+		public void addAll(List<LogRecord> batch) {
+			// Only the last records of a very large batch fit
+			int skip = Math.max(0, batch.size() - maxRecords);
+			int count = batch.size() - skip;
+
+			// Drop oldest records
+			int dropped = Math.max(0, size + count - maxRecords);
+			if (dropped > 0) {
+				for (int i = 0; i < dropped; i++) {
+					records[(start + i) % maxRecords] = null;
+				}
+				start = (start + dropped) % maxRecords;
+				size -= dropped;
+				fireTableRowsDeleted(0, dropped - 1);
+			}
+
+			// Append new records
+			int first = size;
+			for (int i = skip; i < batch.size(); i++) {
+				LogRecord record = batch.get(i);
+				int index = (start + size) % maxRecords;
+				records[index] = record;
+				levels[index] = record.getLevel().intValue();
+				size++;
+			}
+			fireTableRowsInserted(first, size - 1);
+		}
+
+		private LogRecord getRecord(int row) {
+			return records[(start + row) % maxRecords];
+		}
 
-		public synchronized void add(LogRecord record) {
-			int index = getRowCount();
-			records.add(record);
-			fireTableRowsInserted(index, index);
+		/**
+		 * Get the numeric level of the record in the given row.
+		 */
+		public int getLevelValue(int row) {
+			return levels[(start + row) % maxRecords];
 		}
 
 		@Override
@@ -231,7 +309,7 @@ public class LogPanel extends ViewPanel {
 
 		@Override
 		public int getRowCount() {
-			return records.size();
+			return size;
 		}
 
 		private LogTableColumn getColumn(int col) {
@@ -251,7 +329,7 @@ public class LogPanel extends ViewPanel {
 		public Object getValueAt(int row, int col) {
 			if (row >= getRowCount())
 				return "";
-			return getColumn(col).getValue(records.get(row));
+			return getColumn(col).getValue(getRecord(row));
 		}
 
 		@Override
@@ -6,14 +6,16 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 
 import org.apache.batik.bridge.UserAgent;
 import org.apache.batik.swing.JSVGCanvas;
 import org.apache.batik.swing.gvt.AbstractPanInteractor;
 import org.apache.batik.swing.gvt.Interactor;
 
-public class MapCanvas extends JSVGCanvas {
+public class MapCanvas extends JSVGCanvas implements MapView {
 
 	private static final long serialVersionUID = 1L;
 
@@ -127,6 +129,28 @@ public class MapCanvas extends JSVGCanvas {
 		return at;
 	}
 
+	/**
+	 * Get the bounds of the visible part of the document, in document
+	 * coordinates.
+	 * 
+	 * @return The visible bounds, or null if the current transformation cannot
+	 *         be inverted.
+	 * @category zoom transform
+	 */
+	public Rectangle2D getViewport() {
+		AffineTransform at = new AffineTransform(getRenderingTransform());
+		AffineTransform viewingTransform = getViewingTransform();
+		if (viewingTransform != null) {
+			at.concatenate(viewingTransform);
+		}
+		try {
+			Rectangle2D bounds = new Rectangle2D.Double(0, 0, getWidth(), getHeight());
+			return at.createInverse().createTransformedShape(bounds).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * @category interactor
 	 */
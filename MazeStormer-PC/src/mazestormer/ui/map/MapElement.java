@@ -20,4 +20,46 @@ public abstract class MapElement {
 		}
 	}
 
+	/**
+	 * Invoke a DOM change which replaces any pending change of this element
+	 * with the same key.
+	 * 
+	 * @param key
+	 *            The key identifying the changed part of this element.
+	 * @param request
+	 *            The change.
+	 */
+	protected void invokeDOMChange(Object key, Runnable request) {
+		if (getMapHandler() == null) {
+			request.run();
+		} else {
+			getMapHandler().requestDOMChange(new ChangeKey(this, key), request);
+		}
+	}
+
+	private static final class ChangeKey {
+
+		private final MapElement element;
+		private final Object key;
+
+		public ChangeKey(MapElement element, Object key) {
+			this.element = element;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(element) + key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ChangeKey))
+				return false;
+			ChangeKey other = (ChangeKey) obj;
+			return element == other.element && key.equals(other.key);
+		}
+
+	}
+
 }
\ No newline at end of file
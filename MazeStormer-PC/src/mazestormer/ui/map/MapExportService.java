@@ -0,0 +1,230 @@
+package mazestormer.ui.map;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import mazestormer.barcode.Barcode;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Maze;
+import mazestormer.maze.Seesaw;
+import mazestormer.maze.Tile;
+import mazestormer.maze.parser.FileUtils;
+import mazestormer.maze.parser.Parser;
+import mazestormer.player.Player;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Exports maps to image files on a background thread.
+ *
+ * <p>
+ * The maze and the poses of the players are taken when an export is requested.
+ * The tiles of the maze are copied into a snapshot, which is drawn on the
+ * export thread while the original maze keeps changing.
+ * </p>
+ */
+public class MapExportService {
+
+	private static final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("MapExportService-%d")
+			.build();
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private final ListeningExecutorService executor;
+	private int tileResolution = 16;
+
+	public MapExportService(ExecutorService executor) {
+		this.executor = MoreExecutors.listeningDecorator(executor);
+	}
+
+	public MapExportService() {
+		this(Executors.newSingleThreadExecutor(factory));
+	}
+
+	/**
+	 * Get the number of pixels along each side of a maze tile in exported
+	 * images.
+	 */
+	public int getTileResolution() {
+		return tileResolution;
+	}
+
+	/**
+	 * Set the number of pixels along each side of a maze tile in exported
+	 * images.
+	 */
+	public void setTileResolution(int tileResolution) {
+		if (tileResolution <= 0)
+			throw new IllegalArgumentException("Tile resolution must be positive.");
+		this.tileResolution = tileResolution;
+	}
+
+	/**
+	 * Create an exporter for a snapshot of a maze with the current poses of the
+	 * given players.
+	 *
+	 * @param maze
+	 *            The maze.
+	 * @param players
+	 *            The players to draw. Players without a robot are skipped.
+	 */
+	public MapExporter createExporter(IMaze maze, Collection<? extends Player> players) {
+		MapExporter exporter = new MapExporter(snapshot(maze));
+		exporter.setTileResolution(getTileResolution());
+		for (Player player : players) {
+			if (player.getRobot() != null) {
+				exporter.addPlayer(player.getPlayerID(), player.getRobot().getPoseProvider().getPose());
+			}
+		}
+		return exporter;
+	}
+
+	/**
+	 * Export a map as an SVG file.
+	 *
+	 * @param maze
+	 *            The maze.
+	 * @param players
+	 *            The players to draw.
+	 * @param file
+	 *            The file to write.
+	 * @return A future resolving to the written file.
+	 */
+	public ListenableFuture<File> exportSVG(IMaze maze, Collection<? extends Player> players, final File file) {
+		final MapExporter exporter = createExporter(maze, players);
+		return executor.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				writeSVG(exporter, file);
+				return file;
+			}
+		});
+	}
+
+	/**
+	 * Export a map as a PNG file.
+	 *
+	 * @param maze
+	 *            The maze.
+	 * @param players
+	 *            The players to draw.
+	 * @param file
+	 *            The file to write.
+	 * @return A future resolving to the written file.
+	 */
+	public ListenableFuture<File> exportPNG(IMaze maze, Collection<? extends Player> players, final File file) {
+		final MapExporter exporter = createExporter(maze, players);
+		return executor.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				writePNG(exporter, file);
+				return file;
+			}
+		});
+	}
+
+	/**
+	 * Copy the tiles of a maze into a new maze.
+	 *
+	 * <p>
+	 * Edges, barcodes, explored flags and seesaws are copied with a single
+	 * {@linkplain IMaze#importTiles(Iterable) batch import}. Tiles without
+	 * known edges are kept as well, so the snapshot covers the same area.
+	 * </p>
+	 *
+	 * @param maze
+	 *            The maze to copy.
+	 * @return A new maze with the same tiles as the given maze.
+	 */
+	public static Maze snapshot(IMaze maze) {
+		Maze snapshot = new Maze(maze.getTileSize(), maze.getEdgeSize(), maze.getBarLength());
+		snapshot.setOrigin(maze.getOrigin());
+
+		List<Tile> tiles = new ArrayList<Tile>(maze.getTiles());
+		for (Tile tile : tiles) {
+			snapshot.getTileAt(tile.getPosition());
+		}
+		snapshot.importTiles(tiles);
+
+		// Seesaw states
+		for (Tile tile : tiles) {
+			Seesaw seesaw = tile.getSeesaw();
+			Barcode barcode = tile.getSeesawBarcode();
+			if (seesaw != null && seesaw.isOpen(barcode)) {
+				Seesaw copy = snapshot.getSeesaw(barcode);
+				if (copy != null) {
+					copy.setOpen(barcode);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private static void writeSVG(MapExporter exporter, File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), utf8);
+		try {
+			exporter.writeSVG(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writePNG(MapExporter exporter, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			exporter.writePNG(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public void terminate() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Export a maze file without starting the user interface.
+	 *
+	 * <p>
+	 * Arguments: the maze file, the output file ending in <code>.svg</code> or
+	 * <code>.png</code>, and optionally the number of pixels per tile.
+	 * </p>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: MapExportService <maze file> <output.svg|output.png> [pixels per tile]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+
+		IMaze maze = new Maze();
+		new Parser(maze).parse(FileUtils.load(args[0]));
+
+		MapExporter exporter = new MapExporter(maze);
+		if (args.length > 2) {
+			exporter.setTileResolution(Integer.parseInt(args[2]));
+		}
+		File file = new File(args[1]);
+		if (file.getName().toLowerCase().endsWith(".svg")) {
+			writeSVG(exporter, file);
+		} else {
+			writePNG(exporter, file);
+		}
+	}
+
+}
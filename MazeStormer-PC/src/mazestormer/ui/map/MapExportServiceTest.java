@@ -0,0 +1,38 @@
+package mazestormer.ui.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import mazestormer.maze.Edge.EdgeType;
+import mazestormer.maze.Maze;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.Tile;
+import mazestormer.util.LongPoint;
+
+import org.junit.Test;
+
+public class MapExportServiceTest {
+
+	@Test
+	public void snapshotIsIndependent() {
+		Maze maze = new Maze();
+		maze.setEdge(new LongPoint(0, 0), Orientation.NORTH, EdgeType.WALL);
+		maze.setExplored(new LongPoint(0, 0));
+		maze.getTileAt(new LongPoint(2, 0));
+
+		Maze snapshot = MapExportService.snapshot(maze);
+		maze.setEdge(new LongPoint(0, 0), Orientation.EAST, EdgeType.WALL);
+		maze.setExplored(new LongPoint(2, 0));
+		maze.getTileAt(new LongPoint(5, 5));
+
+		assertNull(snapshot.getExistingTileAt(new LongPoint(5, 5)));
+		Tile tile = snapshot.getTileAt(new LongPoint(0, 0));
+		assertTrue(tile.isExplored());
+		assertEquals(EdgeType.WALL, tile.getEdgeAt(Orientation.NORTH).getType());
+		assertEquals(EdgeType.UNKNOWN, tile.getEdgeAt(Orientation.EAST).getType());
+		assertFalse(snapshot.getTileAt(new LongPoint(2, 0)).isExplored());
+	}
+
+}
@@ -0,0 +1,541 @@
+package mazestormer.ui.map;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import lejos.robotics.navigation.Pose;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Tile;
+import mazestormer.robot.ControllableRobot;
+import mazestormer.util.CoordUtils;
+import mazestormer.util.PngStreamWriter;
+
+/**
+ * Exports a maze and the poses of players as an SVG or PNG image.
+ *
+ * <p>
+ * The image is drawn directly from the maze, with the same styling as a
+ * {@link MazeLayer}, so no map document or canvas is needed and exports can run
+ * on any thread, including on headless machines. SVG output is written
+ * element by element as text. PNG output is drawn and compressed in horizontal
+ * strips. Neither keeps more than a strip of the image in memory, so very
+ * large mazes can be exported.
+ * </p>
+ *
+ * <p>
+ * The maze should not change while it is being exported.
+ * </p>
+ */
+public class MapExporter {
+
+	private static final String svgNamespace = "http://www.w3.org/2000/svg";
+	private static final Color backgroundColor = Color.WHITE;
+	private static final Color robotColor = Color.BLACK;
+	private static final float robotStrokeWidth = 1f;
+	private static final float robotFontSize = 4f;
+
+	/**
+	 * Number of rows in a strip of a PNG image.
+	 */
+	private static final int stripHeight = 256;
+
+	private final IMaze maze;
+	private final MazePainter painter;
+	private final Map<String, Pose> players = new LinkedHashMap<String, Pose>();
+	private int tileResolution = 16;
+
+	public MapExporter(IMaze maze) {
+		this.maze = maze;
+		this.painter = new MazePainter(maze);
+	}
+
+	public IMaze getMaze() {
+		return maze;
+	}
+
+	/**
+	 * Add a player to draw on the map.
+	 *
+	 * @param playerID
+	 *            The player identifier, shown as label.
+	 * @param pose
+	 *            The pose of the player, in absolute robot coordinates.
+	 */
+	public void addPlayer(String playerID, Pose pose) {
+		players.put(playerID, pose);
+	}
+
+	/**
+	 * Get the number of pixels along each side of a maze tile.
+	 */
+	public int getTileResolution() {
+		return tileResolution;
+	}
+
+	/**
+	 * Set the number of pixels along each side of a maze tile.
+	 */
+	public void setTileResolution(int tileResolution) {
+		if (tileResolution <= 0)
+			throw new IllegalArgumentException("Tile resolution must be positive.");
+		this.tileResolution = tileResolution;
+	}
+
+	/*
+	 * Geometry
+	 */
+
+	/**
+	 * Get the transformation from maze element coordinates to map coordinates,
+	 * as applied by a maze layer.
+	 */
+	private AffineTransform getMazeTransform() {
+		Pose origin = maze.getOrigin();
+		Point2D position = CoordUtils.toMapCoordinates(origin.getLocation());
+		AffineTransform at = new AffineTransform();
+		at.translate(position.getX(), position.getY());
+		at.scale(maze.getTileSize(), maze.getTileSize());
+		at.rotate(Math.toRadians(-origin.getHeading()));
+		return at;
+	}
+
+	/**
+	 * Get the bounds of the exported map, in map coordinates.
+	 */
+	private Rectangle2D getBounds() {
+		Rectangle2D bounds = null;
+		if (maze.getNumberOfTiles() > 0) {
+			Rectangle2D mazeBounds = new Rectangle2D.Double(maze.getMinX(), -(maze.getMaxY() + 1), maze.getMaxX()
+					- maze.getMinX() + 1, maze.getMaxY() - maze.getMinY() + 1);
+			bounds = getMazeTransform().createTransformedShape(mazeBounds).getBounds2D();
+		}
+		for (Pose pose : players.values()) {
+			Rectangle2D robotBounds = getRobotShape(pose).getBounds2D();
+			if (bounds == null) {
+				bounds = robotBounds;
+			} else {
+				bounds.add(robotBounds);
+			}
+		}
+		if (bounds == null) {
+			bounds = new Rectangle2D.Double();
+		}
+
+		// Margin for edges
+		double margin = maze.getTileSize() / 2d;
+		bounds.setRect(bounds.getX() - margin, bounds.getY() - margin, bounds.getWidth() + 2 * margin,
+				bounds.getHeight() + 2 * margin);
+		return bounds;
+	}
+
+	private double getPixelScale() {
+		return tileResolution / (double) maze.getTileSize();
+	}
+
+	private static Point2D getRobotPosition(Pose pose) {
+		return CoordUtils.toMapCoordinates(pose.getLocation());
+	}
+
+	private static Shape getRobotShape(Pose pose) {
+		Point2D position = getRobotPosition(pose);
+		double radius = ControllableRobot.robotHeight / 2d;
+		return new Ellipse2D.Double(position.getX() - radius, position.getY() - radius, 2 * radius, 2 * radius);
+	}
+
+	private static Line2D getRobotHeading(Pose pose) {
+		Point2D position = getRobotPosition(pose);
+		Point2D front = CoordUtils.toMapCoordinates(pose.pointAt((float) ControllableRobot.robotHeight / 2f,
+				pose.getHeading()));
+		return new Line2D.Double(position, front);
+	}
+
+	/**
+	 * Get the tiles of the maze, sorted by the vertical position of their
+	 * center in map coordinates.
+	 */
+	private List<Tile> getSortedTiles(final AffineTransform mazeTransform) {
+		List<Tile> tiles = new ArrayList<Tile>(maze.getTiles());
+		Collections.sort(tiles, new Comparator<Tile>() {
+			@Override
+			public int compare(Tile left, Tile right) {
+				return Double.compare(getCenterY(mazeTransform, left), getCenterY(mazeTransform, right));
+			}
+		});
+		return tiles;
+	}
+
+	private static double getCenterY(AffineTransform mazeTransform, Tile tile) {
+		Point2D center = new Point2D.Double(tile.getX() + 0.5d, -(tile.getY() + 0.5d));
+		return mazeTransform.transform(center, center).getY();
+	}
+
+	/*
+	 * PNG
+	 */
+
+	/**
+	 * Write the map as a PNG image.
+	 *
+	 * @param out
+	 *            The stream to write to. It is not closed.
+	 */
+	public void writePNG(OutputStream out) throws IOException {
+		Rectangle2D bounds = getBounds();
+		double scale = getPixelScale();
+		int width = Math.max(1, (int) Math.ceil(bounds.getWidth() * scale));
+		int height = Math.max(1, (int) Math.ceil(bounds.getHeight() * scale));
+
+		AffineTransform mazeTransform = getMazeTransform();
+		List<Tile> tiles = getSortedTiles(mazeTransform);
+		double[] centerYs = new double[tiles.size()];
+		for (int i = 0; i < centerYs.length; i++) {
+			centerYs[i] = getCenterY(mazeTransform, tiles.get(i));
+		}
+		// Furthest distance from the center of a tile which it draws on
+		double reach = maze.getTileSize() * (Math.sqrt(2) / 2d + painter.getEdgeStrokeWidth());
+
+		PngStreamWriter writer = new PngStreamWriter(out, width, height);
+		try {
+			BufferedImage strip = new BufferedImage(width, Math.min(stripHeight, height),
+					BufferedImage.TYPE_INT_ARGB);
+			for (int row = 0; row < height; row += strip.getHeight()) {
+				int rows = Math.min(strip.getHeight(), height - row);
+				Graphics2D g = strip.createGraphics();
+				g.setColor(backgroundColor);
+				g.fillRect(0, 0, width, strip.getHeight());
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+				// Map to strip coordinates
+				g.translate(0, -row);
+				g.scale(scale, scale);
+				g.translate(-bounds.getX(), -bounds.getY());
+
+				// Tiles touching this strip
+				double minY = bounds.getY() + row / scale - reach;
+				double maxY = bounds.getY() + (row + rows) / scale + reach;
+				List<Tile> stripTiles = tiles.subList(lowerBound(centerYs, minY), lowerBound(centerYs, maxY));
+				paintMaze(g, mazeTransform, stripTiles);
+				for (Map.Entry<String, Pose> entry : players.entrySet()) {
+					paintRobot(g, entry.getKey(), entry.getValue());
+				}
+
+				g.dispose();
+				writer.writeRows(strip, rows);
+			}
+			writer.finish();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Find the first index of a sorted array at which the value is not less
+	 * than the given key.
+	 */
+	private static int lowerBound(double[] values, double key) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void paintMaze(Graphics2D g, AffineTransform mazeTransform, List<Tile> tiles) {
+		Graphics2D mazeGraphics = (Graphics2D) g.create();
+		mazeGraphics.transform(mazeTransform);
+		MazePainter.Canvas canvas = new MazePainter.GraphicsCanvas(mazeGraphics, painter.getEdgeStrokeWidth());
+		for (Tile tile : tiles) {
+			painter.paintTile(canvas, tile);
+		}
+		for (Tile tile : tiles) {
+			painter.paintEdges(canvas, tile, false);
+		}
+		for (Tile tile : tiles) {
+			painter.paintEdges(canvas, tile, true);
+		}
+		mazeGraphics.dispose();
+	}
+
+	private void paintRobot(Graphics2D g, String playerID, Pose pose) {
+		g.setColor(robotColor);
+		g.setStroke(new BasicStroke(robotStrokeWidth));
+		g.draw(getRobotShape(pose));
+		g.draw(getRobotHeading(pose));
+
+		Rectangle2D shape = getRobotShape(pose).getBounds2D();
+		g.setFont(g.getFont().deriveFont(Font.PLAIN, robotFontSize));
+		g.drawString(playerID, (float) shape.getMinX(), (float) (shape.getMinY() - robotStrokeWidth));
+	}
+
+	/*
+	 * SVG
+	 */
+
+	/**
+	 * Write the map as an SVG document.
+	 *
+	 * @param out
+	 *            The writer to write to. It is flushed, but not closed.
+	 */
+	public void writeSVG(Writer out) throws IOException {
+		SVGWriter svg = new SVGWriter(new BufferedWriter(out), MazePainter.edgeDashSize * painter.getEdgeStrokeWidth());
+		try {
+			writeSVG(svg);
+		} catch (ExportException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeSVG(SVGWriter svg) throws IOException {
+		Rectangle2D bounds = getBounds();
+		double scale = getPixelScale();
+
+		svg.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		svg.write("<svg xmlns=\"").write(svgNamespace).write("\"");
+		svg.attribute("width", Math.ceil(bounds.getWidth() * scale));
+		svg.attribute("height", Math.ceil(bounds.getHeight() * scale));
+		svg.write(" viewBox=\"").number(bounds.getX()).write(" ").number(bounds.getY()).write(" ")
+				.number(bounds.getWidth()).write(" ").number(bounds.getHeight()).write("\">\n");
+
+		// Background
+		svg.write("<rect");
+		svg.attribute("x", bounds.getX()).attribute("y", bounds.getY());
+		svg.attribute("width", bounds.getWidth()).attribute("height", bounds.getHeight());
+		svg.color("fill", backgroundColor).write("/>\n");
+
+		// Maze
+		double[] matrix = new double[6];
+		getMazeTransform().getMatrix(matrix);
+		svg.write("<g transform=\"matrix(");
+		for (int i = 0; i < matrix.length; i++) {
+			svg.write(i == 0 ? "" : " ").number(matrix[i]);
+		}
+		svg.write(")\">\n");
+
+		svg.write("<g id=\"tiles\">\n");
+		for (Tile tile : maze.getTiles()) {
+			painter.paintTile(svg, tile);
+		}
+		svg.write("</g>\n");
+
+		svg.write("<g id=\"edges\"");
+		svg.attribute("stroke-width", painter.getEdgeStrokeWidth());
+		svg.write(">\n");
+		for (Tile tile : maze.getTiles()) {
+			painter.paintEdges(svg, tile, false);
+		}
+		for (Tile tile : maze.getTiles()) {
+			painter.paintEdges(svg, tile, true);
+		}
+		svg.write("</g>\n");
+		svg.write("</g>\n");
+
+		// Robots
+		svg.write("<g id=\"robots\" fill=\"none\"");
+		svg.color("stroke", robotColor).attribute("stroke-width", robotStrokeWidth);
+		svg.write(">\n");
+		for (Map.Entry<String, Pose> entry : players.entrySet()) {
+			writeRobot(svg, entry.getKey(), entry.getValue());
+		}
+		svg.write("</g>\n");
+
+		svg.write("</svg>\n");
+		svg.flush();
+	}
+
+	private void writeRobot(SVGWriter svg, String playerID, Pose pose) throws IOException {
+		Point2D position = getRobotPosition(pose);
+		Line2D heading = getRobotHeading(pose);
+		Rectangle2D shape = getRobotShape(pose).getBounds2D();
+
+		svg.write("<g>");
+		svg.write("<circle").attribute("cx", position.getX()).attribute("cy", position.getY())
+				.attribute("r", shape.getWidth() / 2d).write("/>");
+		svg.write("<line").attribute("x1", heading.getX1()).attribute("y1", heading.getY1())
+				.attribute("x2", heading.getX2()).attribute("y2", heading.getY2()).write("/>");
+		svg.write("<text stroke=\"none\"").color("fill", robotColor).attribute("font-size", robotFontSize)
+				.attribute("x", shape.getMinX()).attribute("y", shape.getMinY() - robotStrokeWidth).write(">")
+				.text(playerID).write("</text>");
+		svg.write("</g>\n");
+	}
+
+	/**
+	 * Writes maze shapes as SVG elements.
+	 */
+	private static class SVGWriter implements MazePainter.Canvas {
+
+		private final Writer out;
+		private final double dashLength;
+		private final DecimalFormat format = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+		private final double[] coords = new double[6];
+
+		public SVGWriter(Writer out, double dashLength) {
+			this.out = out;
+			this.dashLength = dashLength;
+		}
+
+		public SVGWriter write(String string) throws IOException {
+			out.write(string);
+			return this;
+		}
+
+		public SVGWriter number(double number) throws IOException {
+			out.write(format.format(number));
+			return this;
+		}
+
+		public SVGWriter attribute(String name, double value) throws IOException {
+			out.write(' ');
+			out.write(name);
+			out.write("=\"");
+			number(value);
+			out.write('"');
+			return this;
+		}
+
+		public SVGWriter color(String name, Color color) throws IOException {
+			out.write(' ');
+			out.write(name);
+			out.write("=\"rgb(");
+			out.write(color.getRed() + "," + color.getGreen() + "," + color.getBlue());
+			out.write(")\"");
+			if (color.getAlpha() < 255) {
+				attribute(name + "-opacity", color.getAlpha() / 255d);
+			}
+			return this;
+		}
+
+		public SVGWriter text(String text) throws IOException {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				switch (c) {
+				case '<':
+					out.write("&lt;");
+					break;
+				case '>':
+					out.write("&gt;");
+					break;
+				case '&':
+					out.write("&amp;");
+					break;
+				default:
+					out.write(c);
+				}
+			}
+			return this;
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void fill(Shape shape, Color color) {
+			try {
+				if (shape instanceof Rectangle2D) {
+					Rectangle2D rect = (Rectangle2D) shape;
+					write("<rect").attribute("x", rect.getX()).attribute("y", rect.getY())
+							.attribute("width", rect.getWidth()).attribute("height", rect.getHeight());
+				} else {
+					write("<path d=\"");
+					path(shape);
+					write("\"");
+				}
+				color("fill", color).write("/>\n");
+			} catch (IOException e) {
+				throw new ExportException(e);
+			}
+		}
+
+		private void path(Shape shape) throws IOException {
+			for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+				switch (it.currentSegment(coords)) {
+				case PathIterator.SEG_MOVETO:
+					write("M").number(coords[0]).write(" ").number(coords[1]);
+					break;
+				case PathIterator.SEG_LINETO:
+					write("L").number(coords[0]).write(" ").number(coords[1]);
+					break;
+				case PathIterator.SEG_QUADTO:
+					write("Q").number(coords[0]).write(" ").number(coords[1]).write(" ").number(coords[2])
+							.write(" ").number(coords[3]);
+					break;
+				case PathIterator.SEG_CUBICTO:
+					write("C").number(coords[0]).write(" ").number(coords[1]).write(" ").number(coords[2])
+							.write(" ").number(coords[3]).write(" ").number(coords[4]).write(" ")
+							.number(coords[5]);
+					break;
+				case PathIterator.SEG_CLOSE:
+					write("Z");
+					break;
+				}
+			}
+		}
+
+		@Override
+		public void draw(Line2D line, Color color, boolean isDashed) {
+			try {
+				write("<line").attribute("x1", line.getX1()).attribute("y1", line.getY1())
+						.attribute("x2", line.getX2()).attribute("y2", line.getY2());
+				color("stroke", color);
+				if (isDashed) {
+					attribute("stroke-dasharray", dashLength);
+				}
+				write("/>\n");
+			} catch (IOException e) {
+				throw new ExportException(e);
+			}
+		}
+
+	}
+
+	/**
+	 * Wraps an I/O error thrown while drawing shapes.
+	 */
+	private static class ExportException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public ExportException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+
+	}
+
+}
@@ -4,4 +4,20 @@ public interface MapHandler {
 
 	public abstract void requestDOMChange(Runnable request);
 
-}
\ No newline at end of file
+	/**
+	 * Request a DOM change which replaces any pending change with the same
+	 * key.
+	 * 
+	 * <p>
+	 * Use this for changes which bring an element up to date with its current
+	 * state, so only the latest request needs to run.
+	 * </p>
+	 * 
+	 * @param key
+	 *            The key identifying the changed element.
+	 * @param request
+	 *            The change.
+	 */
+	public abstract void requestDOMChange(Object key, Runnable request);
+
+}
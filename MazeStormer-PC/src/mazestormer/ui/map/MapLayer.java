@@ -98,7 +98,7 @@ public abstract class MapLayer extends MapElement implements SVGConstants, CSSCo
 			final String displayValue = isVisible() ? CSS_INLINE_VALUE : CSS_NONE_VALUE;
 			final SVGStylableElement styleElement = (SVGStylableElement) element;
 
-			invokeDOMChange(new Runnable() {
+			invokeDOMChange("visibility", new Runnable() {
 				@Override
 				public void run() {
 					CSSStyleDeclaration css = styleElement.getOverrideStyle();
@@ -113,7 +113,7 @@ public abstract class MapLayer extends MapElement implements SVGConstants, CSSCo
 		if (element == null)
 			return;
 
-		invokeDOMChange(new Runnable() {
+		invokeDOMChange("tooltip", new Runnable() {
 			@Override
 			public void run() {
 				// Create tooltip if needed
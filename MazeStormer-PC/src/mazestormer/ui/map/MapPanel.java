@@ -3,9 +3,14 @@ package mazestormer.ui.map;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.geom.Rectangle2D;
 import java.beans.Beans;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,6 +30,9 @@ import mazestormer.ui.map.event.MapLayerRemoveEvent;
 import mazestormer.ui.map.event.MapLayerRenameEvent;
 import net.miginfocom.swing.MigLayout;
 
+import org.apache.batik.swing.gvt.GVTTreeRendererAdapter;
+import org.apache.batik.swing.gvt.GVTTreeRendererEvent;
+import org.apache.batik.swing.gvt.JGVTComponentListener;
 import org.w3c.dom.svg.SVGDocument;
 
 import com.google.common.eventbus.Subscribe;
@@ -38,8 +46,11 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 	private JPanel actionBar;
 	protected JToolBar leftActionBar;
 	protected JToolBar rightActionBar;
+	protected MapView view;
 	protected MapCanvas canvas;
+	protected RasterMapCanvas rasterCanvas;
 	protected QueuedMapHandler queuedMapHandler;
+	private final Object documentLock = new Object();
 
 	private final Action zoomInAction = new ZoomInAction();
 	private final Action zoomOutAction = new ZoomOutAction();
@@ -53,13 +64,36 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 	 */
 	public static final double zoomFactor = 1.5d;
 
+	/**
+	 * System property which selects the raster backend by default.
+	 */
+	public static final String rasterProperty = "mazestormer.map.raster";
+
 	public MapPanel(IMapController controller) {
+		this(controller, Boolean.getBoolean(rasterProperty));
+	}
+
+	/**
+	 * Create a map panel.
+	 * 
+	 * @param controller
+	 *            The map controller.
+	 * @param isRaster
+	 *            True to paint the map with a {@link RasterMapCanvas}, false to
+	 *            render the map document with a {@link MapCanvas}.
+	 */
+	public MapPanel(IMapController controller, boolean isRaster) {
 		this.controller = controller;
 
 		setLayout(new BorderLayout(0, 0));
 
-		createCanvas();
-		add(canvas, BorderLayout.CENTER);
+		if (isRaster) {
+			createRasterCanvas();
+			add(rasterCanvas, BorderLayout.CENTER);
+		} else {
+			createCanvas();
+			add(canvas, BorderLayout.CENTER);
+		}
 
 		createActionBar();
 		add(actionBar, BorderLayout.NORTH);
@@ -81,10 +115,84 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 		}
 	}
 
+	/**
+	 * Get the handler which queues DOM changes on the map, for example to
+	 * inspect its frame metrics.
+	 * 
+	 * @return The handler, or null if this panel uses the raster backend.
+	 */
+	public QueuedMapHandler getQueuedMapHandler() {
+		return queuedMapHandler;
+	}
+
 	private void createCanvas() {
 		canvas = new MapCanvas();
 		canvas.setDocumentState(MapCanvas.ALWAYS_DYNAMIC);
 		queuedMapHandler = new QueuedMapHandler(canvas);
+		view = canvas;
+
+		// Track viewport
+		canvas.addJGVTComponentListener(new JGVTComponentListener() {
+			@Override
+			public void componentTransformChanged(ComponentEvent e) {
+				updateViewport();
+			}
+		});
+		canvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				updateViewport();
+			}
+		});
+		canvas.addGVTTreeRendererListener(new GVTTreeRendererAdapter() {
+			@Override
+			public void gvtRenderingCompleted(GVTTreeRendererEvent e) {
+				updateViewport();
+			}
+		});
+	}
+
+	private void createRasterCanvas() {
+		rasterCanvas = new RasterMapCanvas(controller);
+		view = rasterCanvas;
+
+		// Track viewport
+		rasterCanvas.addPropertyChangeListener(RasterMapCanvas.renderingTransformProperty,
+				new PropertyChangeListener() {
+					@Override
+					public void propertyChange(PropertyChangeEvent evt) {
+						updateViewport();
+					}
+				});
+		rasterCanvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				updateViewport();
+			}
+		});
+	}
+
+	/**
+	 * Check whether this panel paints the map with the raster backend.
+	 */
+	public boolean isRaster() {
+		return rasterCanvas != null;
+	}
+
+	/**
+	 * Notify the layers which track the viewport of the visible part of the
+	 * map.
+	 */
+	protected void updateViewport() {
+		Rectangle2D viewport = view.getViewport();
+		if (viewport == null)
+			return;
+
+		for (MapLayer layer : controller.getLayers()) {
+			if (layer instanceof ViewportListener) {
+				((ViewportListener) layer).viewportChanged(viewport);
+			}
+		}
 	}
 
 	private void createActionBar() {
@@ -139,7 +247,9 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 	}
 
 	private void setMap(SVGDocument document) {
-		canvas.setDocument(document);
+		if (canvas != null) {
+			canvas.setDocument(document);
+		}
 	}
 
 	private void addLayerMenuItem(final MapLayer layer) {
@@ -176,6 +286,7 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 	public void onMapLayerAdded(MapLayerAddEvent event) {
 		if (event.getOwner().equals(controller)) {
 			addLayerMenuItem(event.getLayer());
+			updateViewport();
 		}
 	}
 
@@ -207,7 +318,7 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 		}
 
 		public void actionPerformed(ActionEvent e) {
-			canvas.zoom(zoomFactor);
+			view.zoom(zoomFactor);
 		}
 	}
 
@@ -220,7 +331,7 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 		}
 
 		public void actionPerformed(ActionEvent e) {
-			canvas.zoom(1d / zoomFactor);
+			view.zoom(1d / zoomFactor);
 		}
 	}
 
@@ -233,7 +344,7 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 		}
 
 		public void actionPerformed(ActionEvent e) {
-			canvas.resetZoom();
+			view.resetZoom();
 		}
 	}
 
@@ -242,8 +353,30 @@ public class MapPanel extends ViewPanel implements MapLayerHandler {
 		if (queuedMapHandler != null) {
 			queuedMapHandler.requestDOMChange(request);
 		} else {
+			runDOMChange(request);
+		}
+	}
+
+	@Override
+	public void requestDOMChange(Object key, Runnable request) {
+		if (queuedMapHandler != null) {
+			queuedMapHandler.requestDOMChange(key, request);
+		} else {
+			runDOMChange(request);
+		}
+	}
+
+	/**
+	 * Run a DOM change immediately. The raster backend does not render the
+	 * document, so it only needs to be repainted.
+	 */
+	private void runDOMChange(Runnable request) {
+		synchronized (documentLock) {
 			request.run();
 		}
+		if (rasterCanvas != null) {
+			rasterCanvas.repaint();
+		}
 	}
 
 	@Override
@@ -0,0 +1,60 @@
+package mazestormer.ui.map;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A component which displays a map and can be zoomed and panned.
+ */
+public interface MapView {
+
+	/**
+	 * Get the current zoom scale.
+	 */
+	public double getZoomScale();
+
+	/**
+	 * Zoom in or out around the center of the view.
+	 *
+	 * @param zoomFactor
+	 *            The factor to multiply the zoom scale with.
+	 */
+	public void zoom(double zoomFactor);
+
+	/**
+	 * Reset the zoom scale.
+	 */
+	public void resetZoom();
+
+	/**
+	 * Center the view on the given point and rotate the view so the given
+	 * angle points up.
+	 *
+	 * @param x
+	 *            The X-coordinate, in document coordinates.
+	 * @param y
+	 *            The Y-coordinate, in document coordinates.
+	 * @param angle
+	 *            The angle, in degrees.
+	 */
+	public void centerOn(double x, double y, double angle);
+
+	/**
+	 * Check whether the view can be panned with the mouse.
+	 */
+	public boolean getEnablePanInteractor();
+
+	/**
+	 * Set whether the view can be panned with the mouse.
+	 */
+	public void setEnablePanInteractor(boolean b);
+
+	/**
+	 * Get the bounds of the visible part of the document, in document
+	 * coordinates.
+	 *
+	 * @return The visible bounds, or null if the current transformation cannot
+	 *         be inverted.
+	 */
+	public Rectangle2D getViewport();
+
+}
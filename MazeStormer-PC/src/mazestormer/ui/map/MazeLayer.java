@@ -1,11 +1,20 @@
 package mazestormer.ui.map;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lejos.geom.Line;
 import lejos.robotics.navigation.Pose;
@@ -32,7 +41,18 @@ import org.w3c.dom.svg.SVGTransform;
 import org.w3c.dom.svg.SVGTransformList;
 import org.w3c.dom.svg.SVGTransformable;
 
-public class MazeLayer extends TransformLayer implements MazeListener {
+/**
+ * Map layer which draws a maze.
+ * 
+ * <p>
+ * In culling mode, only tiles inside the current viewport plus a margin get
+ * their own SVG elements. Elements of tiles which leave the viewport are
+ * recycled for tiles which enter it. Tiles about which nothing is known yet are
+ * drawn as a few merged rectangles instead. The number of elements then
+ * depends on the size of the viewport rather than the size of the maze.
+ * </p>
+ */
+public class MazeLayer extends TransformLayer implements MazeListener, ViewportListener {
 
 	private static final String tileColor = CSS_SANDYBROWN_VALUE;
 	private static final String wallColor = CSS_PERU_VALUE;
@@ -57,11 +77,23 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 	private int zIndex = 0;
 
 	private SVGGElement mazeElement;
+	private SVGGElement unknownGroup;
 	private SVGGElement tilesGroup;
 	private SVGGElement edgesGroup;
 	private SVGGElement overlayGroup;
 	private Map<LongPoint, TileElement> tiles = new HashMap<LongPoint, TileElement>();
 
+	/*
+	 * Culling
+	 */
+	private volatile boolean isCulling = false;
+	private volatile int cullingMargin = 2;
+	private volatile Rectangle2D viewport;
+	private TileWindow window;
+	private final Map<LongPoint, Tile> mazeTiles = new ConcurrentHashMap<LongPoint, Tile>();
+	private final Deque<TileElement> tilePool = new ArrayDeque<TileElement>();
+	private final List<Element> unknownRects = new ArrayList<Element>();
+
 	public MazeLayer(String name, IMaze maze) {
 		super(name);
 		this.maze = maze;
@@ -80,14 +112,17 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 			return mazeElement;
 
 		mazeElement = (SVGGElement) createElement(SVG_G_TAG);
+		unknownGroup = (SVGGElement) createElement(SVG_G_TAG);
 		tilesGroup = (SVGGElement) createElement(SVG_G_TAG);
 		edgesGroup = (SVGGElement) createElement(SVG_G_TAG);
 		overlayGroup = (SVGGElement) createElement(SVG_G_TAG);
+		unknownGroup.setAttribute(SVG_ID_ATTRIBUTE, "unknown");
 		tilesGroup.setAttribute(SVG_ID_ATTRIBUTE, "tiles");
 		edgesGroup.setAttribute(SVG_ID_ATTRIBUTE, "edges");
 		overlayGroup.setAttribute(SVG_ID_ATTRIBUTE, "overlay");
 
 		mazeElement.appendChild(defineGradients());
+		mazeElement.appendChild(unknownGroup);
 		mazeElement.appendChild(tilesGroup);
 		mazeElement.appendChild(edgesGroup);
 		mazeElement.appendChild(overlayGroup);
@@ -121,24 +156,74 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 		return maze;
 	}
 
+	/**
+	 * Check whether this layer only draws the tiles inside the viewport.
+	 */
+	public boolean isCulling() {
+		return isCulling;
+	}
+
+	/**
+	 * Set whether this layer only draws the tiles inside the viewport.
+	 * 
+	 * @param isCulling
+	 *            True to draw only the tiles inside the viewport, false to draw
+	 *            all tiles.
+	 */
+	public void setCulling(boolean isCulling) {
+		this.isCulling = isCulling;
+		updateWindow();
+	}
+
+	/**
+	 * Get the number of tiles around the viewport which are drawn as well in
+	 * culling mode.
+	 */
+	public int getCullingMargin() {
+		return cullingMargin;
+	}
+
+	/**
+	 * Set the number of tiles around the viewport which are drawn as well in
+	 * culling mode.
+	 * 
+	 * @param cullingMargin
+	 *            The margin, in tiles.
+	 */
+	public void setCullingMargin(int cullingMargin) {
+		checkArgument(cullingMargin >= 0, "Culling margin must be non-negative.");
+		this.cullingMargin = cullingMargin;
+		updateWindow();
+	}
+
+	/**
+	 * Get the bounds of the visible part of the map, in document coordinates.
+	 * 
+	 * @return The viewport, or null if not known yet.
+	 */
+	public Rectangle2D getViewport() {
+		return viewport;
+	}
+
+	@Override
+	public void viewportChanged(Rectangle2D viewport) {
+		this.viewport = viewport;
+		if (isCulling()) {
+			updateWindow();
+		}
+	}
+
 	private void updateTile(final Tile tile) {
-		invokeDOMChange(new Runnable() {
+		invokeDOMChange(tile.getPosition(), new Runnable() {
 			@Override
 			public void run() {
-				if (tiles.containsKey(tile.getPosition())) {
-					TileElement tileElement = tiles.get(tile.getPosition());
-					tileElement.update();
-				} else {
-					TileElement tileElement = new TileElement(tile);
-					tiles.put(tile.getPosition(), tileElement);
-					tilesGroup.appendChild(tileElement.get());
-				}
+				refreshTile(tile);
 			}
 		});
 	}
 
 	private void setEdge(final Edge edge) {
-		invokeDOMChange(new Runnable() {
+		invokeDOMChange(edge, new Runnable() {
 			@Override
 			public void run() {
 				for (LongPoint tilePosition : edge.getTouching()) {
@@ -151,10 +236,280 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 		});
 	}
 
+	private void updateWindow() {
+		invokeDOMChange("window", new Runnable() {
+			@Override
+			public void run() {
+				refreshWindow();
+			}
+		});
+	}
+
+	private void updateUnknownRegions() {
+		invokeDOMChange("unknown", new Runnable() {
+			@Override
+			public void run() {
+				refreshUnknownRegions();
+			}
+		});
+	}
+
+	/**
+	 * Bring the element of a single tile up to date.
+	 */
+	private void refreshTile(Tile tile) {
+		if (mazeElement == null)
+			return;
+
+		LongPoint position = tile.getPosition();
+		TileElement tileElement = tiles.get(position);
+		if (isDrawn(tile)) {
+			if (tileElement != null) {
+				tileElement.update();
+			} else {
+				materialize(tile);
+				if (isCulling()) {
+					// Tile may have been part of an unknown region
+					updateUnknownRegions();
+				}
+			}
+		} else {
+			if (tileElement != null) {
+				tiles.remove(position);
+				release(tileElement);
+			}
+			if (isCulling() && isInWindow(position)) {
+				updateUnknownRegions();
+			}
+		}
+	}
+
+	/**
+	 * Recompute the window of drawn tiles and bring the drawn tiles up to date.
+	 */
+	private void refreshWindow() {
+		if (mazeElement == null)
+			return;
+
+		TileWindow newWindow = isCulling() ? computeWindow() : null;
+		if (window != null && window.equals(newWindow))
+			return;
+		window = newWindow;
+
+		// Release tiles which are no longer drawn
+		Iterator<TileElement> it = tiles.values().iterator();
+		while (it.hasNext()) {
+			TileElement tileElement = it.next();
+			if (!isDrawn(tileElement.getTile())) {
+				it.remove();
+				release(tileElement);
+			}
+		}
+
+		// Materialize tiles which are now drawn
+		TileWindow area = getScanArea();
+		if (area == null) {
+			for (Tile tile : mazeTiles.values()) {
+				if (!tiles.containsKey(tile.getPosition()) && isDrawn(tile)) {
+					materialize(tile);
+				}
+			}
+		} else {
+			for (long y = area.minY; y <= area.maxY; y++) {
+				for (long x = area.minX; x <= area.maxX; x++) {
+					Tile tile = mazeTiles.get(new LongPoint(x, y));
+					if (tile != null && !tiles.containsKey(tile.getPosition()) && isDrawn(tile)) {
+						materialize(tile);
+					}
+				}
+			}
+		}
+
+		refreshUnknownRegions();
+	}
+
+	/**
+	 * Redraw the unknown tiles inside the window as merged rectangles.
+	 * 
+	 * <p>
+	 * Every row is split in runs of unknown tiles. A run which spans the same
+	 * columns as a run on the previous row extends that run's rectangle.
+	 * </p>
+	 */
+	private void refreshUnknownRegions() {
+		if (mazeElement == null)
+			return;
+
+		int count = 0;
+		TileWindow area = isCulling() ? getScanArea() : null;
+		if (area != null) {
+			// Open rectangles by first column: { minX, maxX, minY }
+			Map<Long, long[]> open = new HashMap<Long, long[]>();
+			for (long y = area.minY; y <= area.maxY; y++) {
+				Map<Long, long[]> next = new HashMap<Long, long[]>();
+				long x = area.minX;
+				while (x <= area.maxX) {
+					if (!isUnknownAt(x, y)) {
+						x++;
+						continue;
+					}
+					// Find run
+					long minX = x;
+					while (x + 1 <= area.maxX && isUnknownAt(x + 1, y)) {
+						x++;
+					}
+					long maxX = x;
+					x++;
+					// Extend or start rectangle
+					long[] rect = open.remove(minX);
+					if (rect == null || rect[1] != maxX) {
+						if (rect != null) {
+							setUnknownRect(count++, rect, y - 1);
+						}
+						rect = new long[] { minX, maxX, y };
+					}
+					next.put(minX, rect);
+				}
+				// Close rectangles which were not extended
+				for (long[] rect : open.values()) {
+					setUnknownRect(count++, rect, y - 1);
+				}
+				open = next;
+			}
+			for (long[] rect : open.values()) {
+				setUnknownRect(count++, rect, area.maxY);
+			}
+		}
+
+		// Detach unused rectangles
+		for (int i = count; i < unknownRects.size(); i++) {
+			Element rect = unknownRects.get(i);
+			if (rect.getParentNode() != null) {
+				rect.getParentNode().removeChild(rect);
+			}
+		}
+	}
+
+	private void setUnknownRect(int index, long[] run, long maxY) {
+		Element rect;
+		if (index < unknownRects.size()) {
+			rect = unknownRects.get(index);
+		} else {
+			rect = createElement(SVG_RECT_TAG);
+			rect.setAttribute(SVG_FILL_ATTRIBUTE, tileColor);
+			rect.setAttribute(SVG_STROKE_ATTRIBUTE, unknownColor);
+			rect.setAttribute(SVG_STROKE_WIDTH_ATTRIBUTE, SVGUtils.doubleString(edgeStrokeWidth));
+			rect.setAttribute(SVG_STROKE_DASHARRAY_ATTRIBUTE, SVGUtils.doubleString(edgeDashSize * edgeStrokeWidth));
+			unknownRects.add(rect);
+		}
+
+		// Convert Y-coordinates to top-to-bottom
+		rect.setAttribute(SVG_X_ATTRIBUTE, run[0] + "");
+		rect.setAttribute(SVG_Y_ATTRIBUTE, (-(maxY + 1)) + "");
+		rect.setAttribute(SVG_WIDTH_ATTRIBUTE, (run[1] - run[0] + 1) + "");
+		rect.setAttribute(SVG_HEIGHT_ATTRIBUTE, (maxY - run[2] + 1) + "");
+
+		if (rect.getParentNode() == null) {
+			unknownGroup.appendChild(rect);
+		}
+	}
+
+	private void materialize(Tile tile) {
+		TileElement tileElement = tilePool.poll();
+		if (tileElement == null) {
+			tileElement = new TileElement(tile);
+		} else {
+			tileElement.setTile(tile);
+		}
+		tiles.put(tile.getPosition(), tileElement);
+		tilesGroup.appendChild(tileElement.get());
+	}
+
+	private void release(TileElement tileElement) {
+		tileElement.detach();
+		if (isCulling()) {
+			tilePool.push(tileElement);
+		}
+	}
+
+	/**
+	 * Check whether the given tile gets its own element.
+	 */
+	private boolean isDrawn(Tile tile) {
+		if (!isCulling() || window == null)
+			return true;
+		return window.contains(tile.getPosition()) && !isUnknown(tile);
+	}
+
+	private boolean isInWindow(LongPoint position) {
+		return window == null || window.contains(position);
+	}
+
+	/**
+	 * Check whether nothing is known about the given tile, so it can be drawn
+	 * as part of a merged rectangle.
+	 */
+	private boolean isUnknown(Tile tile) {
+		if (tile.isExplored() || tile.hasBarcode() || tile.isSeesaw())
+			return false;
+		for (Edge edge : tile.getEdges()) {
+			if (edge.getType() != Edge.EdgeType.UNKNOWN)
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isUnknownAt(long x, long y) {
+		Tile tile = mazeTiles.get(new LongPoint(x, y));
+		return tile != null && isUnknown(tile);
+	}
+
+	/**
+	 * Compute the window of tiles inside the viewport plus the margin.
+	 * 
+	 * @return The window, or null if all tiles should be drawn.
+	 */
+	private TileWindow computeWindow() {
+		Rectangle2D viewport = getViewport();
+		if (viewport == null)
+			return null;
+
+		// Transform viewport to maze element coordinates
+		Rectangle2D bounds;
+		try {
+			bounds = getTransform().createInverse().createTransformedShape(viewport).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return null;
+		}
+
+		// Tile (x, y) covers [x, x+1] horizontally and [-(y+1), -y] vertically
+		int margin = getCullingMargin();
+		long minX = (long) Math.floor(bounds.getMinX()) - margin;
+		long maxX = (long) Math.floor(bounds.getMaxX()) + margin;
+		long minY = (long) Math.floor(-bounds.getMaxY()) - margin;
+		long maxY = (long) Math.floor(-bounds.getMinY()) + margin;
+		return new TileWindow(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Get the part of the window which overlaps the maze.
+	 * 
+	 * @return The area to scan, or null if there is no window.
+	 */
+	private TileWindow getScanArea() {
+		if (window == null)
+			return null;
+		return new TileWindow(Math.max(window.minX, maze.getMinX()), Math.max(window.minY, maze.getMinY()), Math.min(
+				window.maxX, maze.getMaxX()), Math.min(window.maxY, maze.getMaxY()));
+	}
+
 	private void setOrigin(Pose origin) {
 		setPosition(CoordUtils.toMapCoordinates(origin.getLocation()));
 		setRotationAngle(-origin.getHeading());
 		update();
+		if (isCulling()) {
+			updateWindow();
+		}
 	}
 
 	private boolean isTileClosed(Tile tile) {
@@ -194,6 +549,7 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	@Override
 	public void tileAdded(Tile tile) {
+		mazeTiles.put(tile.getPosition(), tile);
 		updateTile(tile);
 	}
 
@@ -204,6 +560,9 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	@Override
 	public void tileExplored(Tile tile) {
+		if (isCulling()) {
+			updateTile(tile);
+		}
 	}
 
 	@Override
@@ -218,12 +577,16 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	@Override
 	public void mazeCleared() {
-		// Clear map
-		tiles.clear();
+		mazeTiles.clear();
 		// Remove all child nodes
 		invokeDOMChange(new Runnable() {
 			@Override
 			public void run() {
+				// Clear map
+				tiles.clear();
+				tilePool.clear();
+				unknownRects.clear();
+				SVGUtils.removeChildNodes(unknownGroup);
 				SVGUtils.removeChildNodes(tilesGroup);
 				SVGUtils.removeChildNodes(edgesGroup);
 				SVGUtils.removeChildNodes(overlayGroup);
@@ -266,9 +629,53 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 		tilePosition(element, tilePosition.getX(), tilePosition.getY());
 	}
 
+	private static void detach(Element element) {
+		if (element.getParentNode() != null) {
+			element.getParentNode().removeChild(element);
+		}
+	}
+
+	/**
+	 * A rectangular window of tile positions, bounds included.
+	 */
+	private static class TileWindow {
+
+		private final long minX;
+		private final long minY;
+		private final long maxX;
+		private final long maxY;
+
+		public TileWindow(long minX, long minY, long maxX, long maxY) {
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		public boolean contains(LongPoint position) {
+			long x = (long) position.getX();
+			long y = (long) position.getY();
+			return minX <= x && x <= maxX && minY <= y && y <= maxY;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileWindow))
+				return false;
+			TileWindow other = (TileWindow) obj;
+			return minX == other.minX && minY == other.minY && maxX == other.maxX && maxY == other.maxY;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new long[] { minX, minY, maxX, maxY });
+		}
+
+	}
+
 	private class TileElement {
 
-		private final Tile tile;
+		private Tile tile;
 		private final EnumMap<Orientation, EdgeElement> edges = new EnumMap<Orientation, EdgeElement>(Orientation.class);
 
 		private final SVGGElement tileGroup;
@@ -282,40 +689,67 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 			// Tile: rectangle
 			tileGroup = (SVGGElement) createElement(SVG_G_TAG);
-			tilePosition(tileGroup, tile.getPosition());
-
 			rect = (SVGRectElement) createElement(SVG_RECT_TAG);
 			rect.setAttribute(SVG_WIDTH_ATTRIBUTE, SVGUtils.doubleString(tileSize));
 			rect.setAttribute(SVG_HEIGHT_ATTRIBUTE, SVGUtils.doubleString(tileSize));
 			tileGroup.appendChild(rect);
-			updateTile();
 
 			// Tile: barcode
 			barcode = new BarcodeElement(tile);
 
-			// Edges
-			for (Orientation orientation : Orientation.values()) {
-				setEdge(orientation, tile.getEdgeAt(orientation).getType());
-			}
-
 			// Seesaw
 			seesaw = new SeesawElement(tile);
-			tilePosition(seesaw.get(), tile.getPosition());
 
 			// Tooltip
 			tooltip = (SVGDescElement) createElement(SVG_DESC_TAG);
 			tileGroup.appendChild(tooltip);
-			updateTooltip();
+
+			setTile(tile);
 		}
 
 		public Element get() {
 			return tileGroup;
 		}
 
+		public Tile getTile() {
+			return tile;
+		}
+
 		public LongPoint getPosition() {
 			return tile.getPosition();
 		}
 
+		/**
+		 * Show the given tile with this element.
+		 */
+		public void setTile(Tile tile) {
+			this.tile = tile;
+			barcode.setTile(tile);
+			seesaw.setTile(tile);
+
+			// Position
+			tilePosition(tileGroup, getPosition());
+			tilePosition(seesaw.get(), getPosition());
+
+			// Edges
+			for (Orientation orientation : Orientation.values()) {
+				setEdge(orientation, tile.getEdgeAt(orientation).getType());
+			}
+
+			update();
+		}
+
+		/**
+		 * Remove this element and its edges and overlay from the map.
+		 */
+		public void detach() {
+			MazeLayer.detach(tileGroup);
+			MazeLayer.detach(seesaw.get());
+			for (EdgeElement edgeElement : edges.values()) {
+				MazeLayer.detach(edgeElement.get());
+			}
+		}
+
 		public void update() {
 			updateTile();
 			updateBarcode();
@@ -331,6 +765,8 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 			if (edgeElement == null) {
 				edgeElement = new EdgeElement(getPosition(), orientation);
 				edges.put(orientation, edgeElement);
+			} else {
+				edgeElement.setPosition(getPosition());
 			}
 
 			// Set type
@@ -403,7 +839,7 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	private class BarcodeElement {
 
-		private final Tile tile;
+		private Tile tile;
 		private final SVGGElement barGroup;
 
 		public BarcodeElement(final Tile tile) {
@@ -417,6 +853,10 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 			return barGroup;
 		}
 
+		public void setTile(Tile tile) {
+			this.tile = tile;
+		}
+
 		public void update() {
 			// Remove previous bars
 			SVGUtils.removeChildNodes(barGroup);
@@ -439,7 +879,7 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	private class SeesawElement {
 
-		private final Tile tile;
+		private Tile tile;
 		private final SVGGElement seesawGroup;
 		private final Element openSide;
 		private final Element closedSide;
@@ -491,6 +931,10 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 			return seesawGroup;
 		}
 
+		public void setTile(Tile tile) {
+			this.tile = tile;
+		}
+
 		public void update() {
 			if (!tile.isSeesaw())
 				return;
@@ -525,7 +969,7 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 
 	private class EdgeElement {
 
-		private final LongPoint position;
+		private LongPoint position;
 		private final Orientation orientation;
 		private Edge.EdgeType type;
 
@@ -552,6 +996,13 @@ public class MazeLayer extends TransformLayer implements MazeListener {
 			return position;
 		}
 
+		public void setPosition(LongPoint position) {
+			if (!position.equals(this.position)) {
+				this.position = position;
+				tilePosition(line, position);
+			}
+		}
+
 		public Orientation getOrientation() {
 			return orientation;
 		}
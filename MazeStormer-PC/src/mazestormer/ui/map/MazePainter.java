@@ -0,0 +1,202 @@
+package mazestormer.ui.map;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+
+import lejos.geom.Line;
+import mazestormer.maze.Edge;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.Orientation;
+import mazestormer.maze.Tile;
+
+/**
+ * Draws the tiles of a maze in the style of a {@link MazeLayer}, without a map
+ * document.
+ *
+ * <p>
+ * Shapes are drawn in the coordinates of the maze element of a maze layer:
+ * tile (x, y) covers [x, x+1] horizontally and [-(y+1), -y] vertically. Edges
+ * of neighbouring tiles overlap, so all tiles should be drawn before their
+ * edges, and open edges before walls.
+ * </p>
+ */
+public class MazePainter {
+
+	static final Color tileColor = new Color(244, 164, 96); // sandybrown
+	static final Color wallColor = new Color(205, 133, 63); // peru
+	static final Color lineColor = Color.WHITE;
+	static final Color unknownColor = new Color(211, 211, 211); // lightgray
+	static final Color seesawOpenColor = new Color(245, 173, 110);
+	static final Color seesawClosedColor = new Color(246, 181, 125);
+	static final Color infraredColor = new Color(255, 0, 0, 191);
+
+	/**
+	 * Length of the dashes of unknown edges, in edge widths.
+	 */
+	static final int edgeDashSize = 4;
+
+	private final IMaze maze;
+	private final float edgeStrokeWidth;
+
+	public MazePainter(IMaze maze) {
+		this.maze = maze;
+		this.edgeStrokeWidth = maze.getEdgeSize() / maze.getTileSize();
+	}
+
+	public IMaze getMaze() {
+		return maze;
+	}
+
+	/**
+	 * Get the width of the edges, in tiles.
+	 */
+	public float getEdgeStrokeWidth() {
+		return edgeStrokeWidth;
+	}
+
+	/**
+	 * Draw the surface of a tile, including its barcode or seesaw.
+	 */
+	public void paintTile(Canvas canvas, Tile tile) {
+		double x = tile.getX();
+		double y = -(tile.getY() + 1);
+
+		// Tile
+		boolean isClosed = tile.getClosedSides().size() == tile.getEdges().size();
+		canvas.fill(new Rectangle2D.Double(x, y, 1d, 1d), isClosed ? wallColor : tileColor);
+
+		// Barcode
+		if (tile.hasBarcode()) {
+			boolean isBlack = true;
+			for (Rectangle2D bar : maze.getBarcodeBars(tile)) {
+				canvas.fill(new Rectangle2D.Double(x + bar.getX(), y + 1d - bar.getY() - bar.getHeight(),
+						bar.getWidth(), bar.getHeight()), isBlack ? Color.BLACK : Color.WHITE);
+				isBlack = !isBlack;
+			}
+		}
+
+		// Seesaw
+		if (tile.isSeesaw()) {
+			double inset = edgeStrokeWidth / 2d;
+			canvas.fill(new Rectangle2D.Double(x + inset, y + inset, 1d - 2 * inset, 1d - 2 * inset),
+					tile.isSeesawOpen() ? seesawOpenColor : seesawClosedColor);
+			if (!tile.isSeesawOpen()) {
+				// Infrared on the facing side
+				canvas.fill(getSideStrip(x, y, tile.getSeesawOrientation(), 0.25d), infraredColor);
+			}
+		}
+	}
+
+	private Shape getSideStrip(double x, double y, Orientation orientation, double width) {
+		switch (orientation) {
+		case NORTH:
+			return new Rectangle2D.Double(x, y, 1d, width);
+		case EAST:
+			return new Rectangle2D.Double(x + 1d - width, y, width, 1d);
+		case SOUTH:
+			return new Rectangle2D.Double(x, y + 1d - width, 1d, width);
+		case WEST:
+		default:
+			return new Rectangle2D.Double(x, y, width, 1d);
+		}
+	}
+
+	/**
+	 * Draw either the walls or the other edges of a tile.
+	 *
+	 * @param walls
+	 *            True to draw only walls, false to draw only open and unknown
+	 *            edges.
+	 */
+	public void paintEdges(Canvas canvas, Tile tile, boolean walls) {
+		for (Orientation orientation : Orientation.values()) {
+			Edge.EdgeType type = tile.getEdgeAt(orientation).getType();
+			if ((type == Edge.EdgeType.WALL) != walls)
+				continue;
+
+			// Convert Y-coordinates to top-to-bottom
+			Line line = orientation.getLine();
+			double x = tile.getX();
+			double y = -(tile.getY() + 1);
+			Line2D shape = new Line2D.Double(x + line.getX1(), y + 1d - line.getY1(), x + line.getX2(), y + 1d
+					- line.getY2());
+
+			switch (type) {
+			case WALL:
+				canvas.draw(shape, wallColor, false);
+				break;
+			case OPEN:
+				canvas.draw(shape, lineColor, false);
+				break;
+			case UNKNOWN:
+			default:
+				canvas.draw(shape, unknownColor, true);
+			}
+		}
+	}
+
+	/**
+	 * A target for the shapes of a maze.
+	 */
+	public static interface Canvas {
+
+		/**
+		 * Fill a shape.
+		 */
+		public void fill(Shape shape, Color color);
+
+		/**
+		 * Stroke an edge with the edge width.
+		 *
+		 * @param isDashed
+		 *            Whether the edge should be dashed.
+		 */
+		public void draw(Line2D line, Color color, boolean isDashed);
+
+	}
+
+	/**
+	 * Canvas which draws on a graphics object.
+	 */
+	public static class GraphicsCanvas implements Canvas {
+
+		private final Graphics2D g;
+		private final Stroke solidStroke;
+		private final Stroke dashedStroke;
+
+		/**
+		 * Create a canvas drawing on the given graphics.
+		 *
+		 * @param g
+		 *            The graphics, transformed to maze element coordinates.
+		 * @param edgeStrokeWidth
+		 *            The width of the edges.
+		 */
+		public GraphicsCanvas(Graphics2D g, float edgeStrokeWidth) {
+			this.g = g;
+			this.solidStroke = new BasicStroke(edgeStrokeWidth);
+			this.dashedStroke = new BasicStroke(edgeStrokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f,
+					new float[] { edgeDashSize * edgeStrokeWidth }, 0f);
+		}
+
+		@Override
+		public void fill(Shape shape, Color color) {
+			g.setColor(color);
+			g.fill(shape);
+		}
+
+		@Override
+		public void draw(Line2D line, Color color, boolean isDashed) {
+			g.setColor(color);
+			g.setStroke(isDashed ? dashedStroke : solidStroke);
+			g.draw(line);
+		}
+
+	}
+
+}
@@ -0,0 +1,324 @@
+package mazestormer.ui.map;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lejos.robotics.navigation.Pose;
+import mazestormer.maze.Edge;
+import mazestormer.maze.IMaze;
+import mazestormer.maze.MazeListener;
+import mazestormer.maze.Seesaw;
+import mazestormer.maze.Tile;
+import mazestormer.util.LongPoint;
+
+/**
+ * Raster cache of a maze, split in square chunks of tiles.
+ *
+ * <p>
+ * Every chunk is drawn once into an image. Maze changes only mark the chunks
+ * containing the changed tiles as dirty, and dirty chunks are redrawn the next
+ * time they are painted. Chunks are drawn in the same coordinates as the
+ * element of a {@link MazeLayer}, so they can be painted with that layer's
+ * transformation.
+ * </p>
+ *
+ * <p>
+ * Chunks are drawn and painted on the event dispatch thread. Maze events may
+ * arrive on any thread.
+ * </p>
+ */
+public class MazeRaster implements MazeListener {
+
+	/**
+	 * Number of tiles along each side of a chunk.
+	 */
+	public static final int chunkSize = 16;
+
+	private final IMaze maze;
+	private final MazePainter painter;
+	private final Runnable repaint;
+	private final int tileResolution;
+	private final int padding;
+
+	private final Map<LongPoint, Tile> mazeTiles = new ConcurrentHashMap<LongPoint, Tile>();
+	private final Set<LongPoint> dirtyChunks = Collections
+			.newSetFromMap(new ConcurrentHashMap<LongPoint, Boolean>());
+	private volatile boolean isCleared = false;
+
+	/**
+	 * Drawn chunks in least recently painted order. Empty chunks map to null.
+	 */
+	private final LinkedHashMap<LongPoint, BufferedImage> chunks = new LinkedHashMap<LongPoint, BufferedImage>(16,
+			0.75f, true);
+	private int maxCachedChunks = 64;
+
+	/**
+	 * Create a raster cache for the given maze.
+	 *
+	 * @param maze
+	 *            The maze.
+	 * @param tileResolution
+	 *            The number of pixels along each side of a tile.
+	 * @param repaint
+	 *            Invoked when the maze has changed and needs to be repainted.
+	 */
+	public MazeRaster(IMaze maze, int tileResolution, Runnable repaint) {
+		this.maze = maze;
+		this.painter = new MazePainter(maze);
+		this.tileResolution = tileResolution;
+		this.repaint = repaint;
+		// Room for edges on the border of a chunk
+		this.padding = (int) Math.ceil(painter.getEdgeStrokeWidth() * tileResolution / 2f) + 1;
+
+		maze.addListener(this);
+		for (Tile tile : maze.getTiles()) {
+			mazeTiles.put(tile.getPosition(), tile);
+		}
+	}
+
+	public IMaze getMaze() {
+		return maze;
+	}
+
+	/**
+	 * Get the maximum number of drawn chunks which are kept while they are not
+	 * visible.
+	 */
+	public int getMaxCachedChunks() {
+		return maxCachedChunks;
+	}
+
+	/**
+	 * Set the maximum number of drawn chunks which are kept while they are not
+	 * visible.
+	 */
+	public void setMaxCachedChunks(int maxCachedChunks) {
+		this.maxCachedChunks = maxCachedChunks;
+	}
+
+	/**
+	 * Stop listening to the maze and drop all drawn chunks.
+	 */
+	public void dispose() {
+		maze.removeListener(this);
+		mazeTiles.clear();
+		dirtyChunks.clear();
+		chunks.clear();
+	}
+
+	/**
+	 * Paint the visible chunks of this maze.
+	 *
+	 * @param g
+	 *            The graphics to paint on.
+	 * @param transform
+	 *            The transformation from maze element coordinates to device
+	 *            coordinates.
+	 * @param bounds
+	 *            The bounds to paint, in device coordinates.
+	 */
+	public void paint(Graphics2D g, AffineTransform transform, Rectangle2D bounds) {
+		if (isCleared) {
+			isCleared = false;
+			chunks.clear();
+		}
+
+		// Find visible chunks
+		Rectangle2D local;
+		try {
+			local = transform.createInverse().createTransformedShape(bounds).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return;
+		}
+		// Tile (x, y) covers [x, x+1] horizontally and [-(y+1), -y] vertically
+		long minX = Math.max((long) Math.floor(local.getMinX()), maze.getMinX());
+		long maxX = Math.min((long) Math.floor(local.getMaxX()), maze.getMaxX());
+		long minY = Math.max((long) Math.floor(-local.getMaxY()), maze.getMinY());
+		long maxY = Math.min((long) Math.floor(-local.getMinY()), maze.getMaxY());
+		if (minX > maxX || minY > maxY)
+			return;
+
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+		Set<LongPoint> visible = new HashSet<LongPoint>();
+		for (long chunkY = chunkOf(minY); chunkY <= chunkOf(maxY); chunkY++) {
+			for (long chunkX = chunkOf(minX); chunkX <= chunkOf(maxX); chunkX++) {
+				LongPoint chunk = new LongPoint(chunkX, chunkY);
+				visible.add(chunk);
+				BufferedImage image = getChunk(chunk);
+				if (image != null) {
+					paintChunk(g2, transform, chunk, image);
+				}
+			}
+		}
+
+		g2.dispose();
+		evict(visible);
+	}
+
+	private BufferedImage getChunk(LongPoint chunk) {
+		if (dirtyChunks.remove(chunk) || !chunks.containsKey(chunk)) {
+			chunks.put(chunk, drawChunk(chunk));
+		}
+		return chunks.get(chunk);
+	}
+
+	private void paintChunk(Graphics2D g, AffineTransform transform, LongPoint chunk, BufferedImage image) {
+		// Image to maze element coordinates
+		AffineTransform at = new AffineTransform(transform);
+		at.translate(getChunkMinX(chunk), -(getChunkMinY(chunk) + chunkSize));
+		at.scale(1d / tileResolution, 1d / tileResolution);
+		at.translate(-padding, -padding);
+		g.drawImage(image, at, null);
+	}
+
+	/**
+	 * Drop the least recently painted chunks which are not visible, until at
+	 * most the maximum number of chunks is cached.
+	 */
+	private void evict(Set<LongPoint> visible) {
+		int excess = chunks.size() - Math.max(maxCachedChunks, visible.size());
+		Iterator<LongPoint> it = chunks.keySet().iterator();
+		while (excess > 0 && it.hasNext()) {
+			if (!visible.contains(it.next())) {
+				it.remove();
+				excess--;
+			}
+		}
+	}
+
+	/**
+	 * Draw the tiles of a chunk into a new image.
+	 *
+	 * @return The image, or null if the chunk does not contain any tiles.
+	 */
+	private BufferedImage drawChunk(LongPoint chunk) {
+		long chunkMinX = getChunkMinX(chunk);
+		long chunkMinY = getChunkMinY(chunk);
+
+		BufferedImage image = null;
+		Graphics2D g = null;
+		MazePainter.Canvas canvas = null;
+		for (long y = chunkMinY; y < chunkMinY + chunkSize; y++) {
+			for (long x = chunkMinX; x < chunkMinX + chunkSize; x++) {
+				Tile tile = mazeTiles.get(new LongPoint(x, y));
+				if (tile == null)
+					continue;
+				if (image == null) {
+					int size = chunkSize * tileResolution + 2 * padding;
+					image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+					g = createChunkGraphics(image, chunkMinX, chunkMinY);
+					canvas = new MazePainter.GraphicsCanvas(g, painter.getEdgeStrokeWidth());
+				}
+				painter.paintTile(canvas, tile);
+			}
+		}
+		if (g == null)
+			return null;
+
+		// Draw edges above tiles, walls above lines
+		for (long y = chunkMinY; y < chunkMinY + chunkSize; y++) {
+			for (long x = chunkMinX; x < chunkMinX + chunkSize; x++) {
+				Tile tile = mazeTiles.get(new LongPoint(x, y));
+				if (tile != null) {
+					painter.paintEdges(canvas, tile, false);
+				}
+			}
+		}
+		for (long y = chunkMinY; y < chunkMinY + chunkSize; y++) {
+			for (long x = chunkMinX; x < chunkMinX + chunkSize; x++) {
+				Tile tile = mazeTiles.get(new LongPoint(x, y));
+				if (tile != null) {
+					painter.paintEdges(canvas, tile, true);
+				}
+			}
+		}
+
+		g.dispose();
+		return image;
+	}
+
+	private Graphics2D createChunkGraphics(BufferedImage image, long chunkMinX, long chunkMinY) {
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		// Maze element to image coordinates
+		g.translate(padding, padding);
+		g.scale(tileResolution, tileResolution);
+		g.translate(-chunkMinX, chunkMinY + chunkSize);
+		return g;
+	}
+
+	private static long getChunkMinX(LongPoint chunk) {
+		return (long) chunk.getX() * chunkSize;
+	}
+
+	private static long getChunkMinY(LongPoint chunk) {
+		return (long) chunk.getY() * chunkSize;
+	}
+
+	private static long chunkOf(long tileCoordinate) {
+		return (tileCoordinate >= 0) ? tileCoordinate / chunkSize : -((-tileCoordinate - 1) / chunkSize) - 1;
+	}
+
+	private static LongPoint chunkOf(LongPoint tilePosition) {
+		return new LongPoint(chunkOf((long) tilePosition.getX()), chunkOf((long) tilePosition.getY()));
+	}
+
+	private void invalidate(LongPoint tilePosition) {
+		dirtyChunks.add(chunkOf(tilePosition));
+		repaint.run();
+	}
+
+	@Override
+	public void tileAdded(Tile tile) {
+		mazeTiles.put(tile.getPosition(), tile);
+		invalidate(tile.getPosition());
+	}
+
+	@Override
+	public void tileChanged(Tile tile) {
+		invalidate(tile.getPosition());
+	}
+
+	@Override
+	public void tileExplored(Tile tile) {
+	}
+
+	@Override
+	public void edgeChanged(Edge edge) {
+		for (LongPoint tilePosition : edge.getTouching()) {
+			invalidate(tilePosition);
+		}
+	}
+
+	@Override
+	public void seesawFlipped(Seesaw seesaw) {
+		// tileChanged is used instead
+	}
+
+	@Override
+	public void mazeOriginChanged(Pose origin) {
+		repaint.run();
+	}
+
+	@Override
+	public void mazeCleared() {
+		mazeTiles.clear();
+		dirtyChunks.clear();
+		isCleared = true;
+		repaint.run();
+	}
+
+}
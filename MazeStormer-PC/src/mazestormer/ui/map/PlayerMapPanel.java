@@ -104,9 +104,9 @@ public class PlayerMapPanel extends MapPanel {
 	}
 
 	private void updateRobotPose(Pose pose) {
-		canvas.setEnablePanInteractor(!isFollowing());
+		view.setEnablePanInteractor(!isFollowing());
 		if (isFollowing() && pose != null) {
-			canvas.centerOn(pose.getX(), pose.getY(), pose.getHeading());
+			view.centerOn(pose.getX(), pose.getY(), pose.getHeading());
 		}
 	}
 
@@ -133,7 +133,7 @@ public class PlayerMapPanel extends MapPanel {
 		public void actionPerformed(ActionEvent e) {
 			Pose pose = controller.getRobotPose();
 			if (pose != null) {
-				canvas.centerOn(pose.getX(), pose.getY(), 0);
+				view.centerOn(pose.getX(), pose.getY(), 0);
 			}
 		}
 	}
@@ -147,7 +147,7 @@ public class PlayerMapPanel extends MapPanel {
 		}
 
 		public void actionPerformed(ActionEvent e) {
-			canvas.centerOn(0, 0, 0);
+			view.centerOn(0, 0, 0);
 		}
 	}
 
@@ -1,25 +1,60 @@
 package mazestormer.ui.map;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.batik.bridge.UpdateManager;
 import org.apache.batik.swing.gvt.GVTTreeRendererEvent;
 import org.apache.batik.swing.gvt.GVTTreeRendererListener;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Queues DOM changes and applies them in frames on the update thread of the
+ * canvas.
+ *
+ * <p>
+ * Keyed changes replace any pending change with the same key, so an element
+ * which changes many times between two frames is only updated once, with its
+ * latest state. A replaced change moves to the back of the queue, so it still
+ * runs after every change requested before it.
+ * </p>
+ *
+ * <p>
+ * Every frame runs queued changes until its time budget is spent. Remaining
+ * changes are carried over to the next frame, ahead of newly requested
+ * changes. No frame is submitted while nothing is queued or while the previous
+ * frame is still running.
+ * </p>
+ *
+ * <p>
+ * A change which fails is logged and dropped. It is not carried over, so it
+ * does not fail again in every following frame.
+ * </p>
+ */
 public class QueuedMapHandler implements MapHandler, GVTTreeRendererListener {
 
+	private static final Logger logger = Logger.getLogger(QueuedMapHandler.class.getName());
+
 	private final MapCanvas canvas;
-	private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+
+	/**
+	 * Pending changes, in request order. Unkeyed changes are keyed by
+	 * themselves.
+	 */
+	private LinkedHashMap<Object, Runnable> queue = new LinkedHashMap<Object, Runnable>();
+	private final Object queueLock = new Object();
+	private final AtomicBoolean isFrameRunning = new AtomicBoolean(false);
 
 	private ScheduledFuture<?> task;
 	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(factory);
@@ -32,6 +67,26 @@ public class QueuedMapHandler implements MapHandler, GVTTreeRendererListener {
 	 */
 	private static final long delay = 40; // 25 fps
 
+	/**
+	 * Time budget of a single frame, in milliseconds.
+	 */
+	private static final long frameBudget = 25;
+
+	/**
+	 * Weight of a new frame time in the moving average.
+	 */
+	private static final double frameTimeWeight = 0.1d;
+
+	/*
+	 * Metrics
+	 */
+	private volatile double lastFrameTime = 0d; // ms
+	private volatile double averageFrameTime = 0d; // ms
+	private final AtomicLong frameCount = new AtomicLong();
+	private final AtomicLong overBudgetCount = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
 	public QueuedMapHandler(MapCanvas canvas) {
 		this.canvas = canvas;
 		canvas.addGVTTreeRendererListener(this);
@@ -52,7 +107,73 @@ public class QueuedMapHandler implements MapHandler, GVTTreeRendererListener {
 
 	@Override
 	public void requestDOMChange(Runnable request) {
-		queue.add(request);
+		requestDOMChange(request, request);
+	}
+
+	@Override
+	public void requestDOMChange(Object key, Runnable request) {
+		requestCount.incrementAndGet();
+		synchronized (queueLock) {
+			// Move to back of queue
+			if (queue.remove(key) != null) {
+				coalescedCount.incrementAndGet();
+			}
+			queue.put(key, request);
+		}
+	}
+
+	/**
+	 * Get the number of queued changes.
+	 */
+	public int getBacklog() {
+		synchronized (queueLock) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * Get the time spent running changes in the last frame, in milliseconds.
+	 */
+	public double getLastFrameTime() {
+		return lastFrameTime;
+	}
+
+	/**
+	 * Get the moving average of the time spent running changes per frame, in
+	 * milliseconds.
+	 */
+	public double getAverageFrameTime() {
+		return averageFrameTime;
+	}
+
+	/**
+	 * Get the number of submitted frames.
+	 */
+	public long getFrameCount() {
+		return frameCount.get();
+	}
+
+	/**
+	 * Get the number of frames which ran out of time and carried changes over
+	 * to the next frame.
+	 */
+	public long getOverBudgetCount() {
+		return overBudgetCount.get();
+	}
+
+	/**
+	 * Get the number of requested changes.
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Get the number of requested changes which were replaced by a later
+	 * change with the same key before they ran.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
 	}
 
 	@Override
@@ -76,37 +197,100 @@ public class QueuedMapHandler implements MapHandler, GVTTreeRendererListener {
 	public void gvtRenderingFailed(GVTTreeRendererEvent e) {
 	}
 
+	/**
+	 * Take all queued changes.
+	 */
+	private LinkedHashMap<Object, Runnable> takeQueue() {
+		synchronized (queueLock) {
+			LinkedHashMap<Object, Runnable> work = queue;
+			queue = new LinkedHashMap<Object, Runnable>();
+			return work;
+		}
+	}
+
+	/**
+	 * Put changes which did not run back in front of the queue, unless they
+	 * were requested again in the meantime.
+	 */
+	private void requeue(Iterator<Map.Entry<Object, Runnable>> remaining) {
+		synchronized (queueLock) {
+			LinkedHashMap<Object, Runnable> merged = new LinkedHashMap<Object, Runnable>();
+			while (remaining.hasNext()) {
+				Map.Entry<Object, Runnable> entry = remaining.next();
+				if (!queue.containsKey(entry.getKey())) {
+					merged.put(entry.getKey(), entry.getValue());
+				} else {
+					coalescedCount.incrementAndGet();
+				}
+			}
+			merged.putAll(queue);
+			queue = merged;
+		}
+	}
+
+	private void recordFrame(long nanos) {
+		double time = TimeUnit.NANOSECONDS.toMicros(nanos) / 1000d;
+		lastFrameTime = time;
+		averageFrameTime = (1d - frameTimeWeight) * averageFrameTime + frameTimeWeight * time;
+		frameCount.incrementAndGet();
+	}
+
 	private class Invoker implements Runnable {
 
 		@Override
 		public void run() {
-			// Collect work
-			List<Runnable> work = new ArrayList<Runnable>();
-			queue.drainTo(work);
-			// Invoke and wait
-			try {
-				canvas.getUpdateManager().getUpdateRunnableQueue().invokeAndWait(new Worker(work));
-			} catch (InterruptedException e) {
+			// Skip if nothing to do
+			if (getBacklog() == 0)
+				return;
+			// Skip if previous frame still running
+			if (!isFrameRunning.compareAndSet(false, true))
+				return;
+
+			UpdateManager updateManager = canvas.getUpdateManager();
+			if (updateManager == null) {
+				isFrameRunning.set(false);
+				return;
 			}
+			updateManager.getUpdateRunnableQueue().invokeLater(new Worker());
 		}
 
 	}
 
 	private class Worker implements Runnable {
 
-		private final Collection<Runnable> tasks;
-
-		public Worker(Collection<Runnable> tasks) {
-			this.tasks = tasks;
-		}
-
 		@Override
 		public void run() {
-			for (Runnable task : tasks) {
-				task.run();
+			try {
+				runFrame();
+			} finally {
+				isFrameRunning.set(false);
+			}
+		}
+
+		private void runFrame() {
+			long start = System.nanoTime();
+			long deadline = start + TimeUnit.MILLISECONDS.toNanos(frameBudget);
+
+			Iterator<Map.Entry<Object, Runnable>> it = takeQueue().entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Object, Runnable> entry = it.next();
+				try {
+					entry.getValue().run();
+				} catch (RuntimeException e) {
+					// Drop the change and keep processing other changes
+					logger.log(Level.SEVERE, "Could not apply map change: " + entry.getKey(), e);
+				}
+				if (it.hasNext() && System.nanoTime() >= deadline) {
+					// Carry over to next frame
+					overBudgetCount.incrementAndGet();
+					requeue(it);
+					break;
+				}
 			}
+
+			recordFrame(System.nanoTime() - start);
 		}
 
 	}
 
-}
\ No newline at end of file
+}
@@ -1,21 +1,40 @@
 package mazestormer.ui.map;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import lejos.robotics.RangeReading;
 import lejos.robotics.navigation.Pose;
 import lejos.robotics.objectdetection.RangeFeature;
 import mazestormer.util.CoordUtils;
+import mazestormer.util.LongPoint;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.svg.SVGCircleElement;
 
+/**
+ * Map layer which shows the points detected by range scans.
+ *
+ * <p>
+ * Points are decimated into square occupancy cells, so repeated hits on the
+ * same spot share a single element. A cell is colored by the number of scans
+ * since it was last hit. After every scan, only the cells whose color changes
+ * are updated. Cells which were not hit within the configured number of scans
+ * or time are removed.
+ * </p>
+ */
 public class RangesLayer extends MapLayer {
 
 	private static final float pointRadius = 1f;
@@ -23,7 +42,33 @@ public class RangesLayer extends MapLayer {
 	private static final Color pointEndColor = Color.RED;
 	private static final int pointColorThreshold = 5;
 
-	private List<Set<Element>> points = new CopyOnWriteArrayList<Set<Element>>();
+	private static final Color[] bucketColors = new Color[pointColorThreshold + 1];
+	private static final String[] bucketColorStrings = new String[pointColorThreshold + 1];
+	static {
+		for (int bucket = 0; bucket <= pointColorThreshold; bucket++) {
+			float colorPosition = (float) bucket / (float) pointColorThreshold;
+			Color color = interpolateColor(pointStartColor, pointEndColor, colorPosition);
+			bucketColors[bucket] = color;
+			bucketColorStrings[bucket] = String.format("rgb(%d,%d,%d)", color.getRed(), color.getGreen(),
+					color.getBlue());
+		}
+	}
+
+	private volatile double cellSize = 2d * pointRadius;
+	private volatile int maxScans = 1000;
+	private volatile long maxAge = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * Cells in order of their last hit, oldest first.
+	 */
+	private final LinkedHashMap<LongPoint, Cell> cells = new LinkedHashMap<LongPoint, Cell>();
+	/**
+	 * Cells whose color still changes, by the scan in which they were last
+	 * hit.
+	 */
+	private final LinkedHashMap<Long, Set<Cell>> recentScans = new LinkedHashMap<Long, Set<Cell>>();
+	private long scanCount = 0;
+	private final Object cellsLock = new Object();
 
 	public RangesLayer(String name) {
 		super(name);
@@ -34,8 +79,76 @@ public class RangesLayer extends MapLayer {
 		return createElement(SVG_G_TAG);
 	}
 
+	/**
+	 * Get the size of the occupancy cells into which points are merged, in map
+	 * coordinates.
+	 */
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Set the size of the occupancy cells into which points are merged. Only
+	 * applies to cells created after this call.
+	 *
+	 * @param cellSize
+	 *            The new cell size, in map coordinates.
+	 */
+	public void setCellSize(double cellSize) {
+		checkArgument(cellSize > 0, "Cell size must be positive.");
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Get the number of scans after which a cell which was not hit again is
+	 * removed.
+	 */
+	public int getMaxScans() {
+		return maxScans;
+	}
+
+	/**
+	 * Set the number of scans after which a cell which was not hit again is
+	 * removed.
+	 *
+	 * @param maxScans
+	 *            The new number of scans.
+	 */
+	public void setMaxScans(int maxScans) {
+		checkArgument(maxScans > 0, "Maximum number of scans must be positive.");
+		this.maxScans = maxScans;
+	}
+
+	/**
+	 * Get the time after which a cell which was not hit again is removed, in
+	 * milliseconds.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Set the time after which a cell which was not hit again is removed.
+	 *
+	 * @param maxAge
+	 *            The new time, in milliseconds.
+	 */
+	public void setMaxAge(long maxAge) {
+		checkArgument(maxAge > 0, "Maximum age must be positive.");
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Get the number of occupied cells.
+	 */
+	public int getCellCount() {
+		synchronized (cellsLock) {
+			return cells.size();
+		}
+	}
+
 	public void addRangeFeature(RangeFeature feature) {
-		final Set<Element> newPoints = new HashSet<Element>();
+		final List<Point2D> newPoints = new ArrayList<Point2D>();
 
 		// Get robot pose at time of reading
 		Pose robotPose = feature.getPose();
@@ -48,59 +161,93 @@ public class RangesLayer extends MapLayer {
 			Point2D robotPoint = robotPose.pointAt(reading.getRange(), reading.getAngle() + robotPose.getHeading());
 			// Convert to map coordinates
 			Point2D mapPoint = CoordUtils.toMapCoordinates(robotPoint);
-			// Create point element and store
-			Element pointElement = createPoint(mapPoint.getX(), mapPoint.getY());
-			newPoints.add(pointElement);
+			newPoints.add(mapPoint);
 		}
 
-		// Store newly added points
-		points.add(newPoints);
+		final long time = System.currentTimeMillis();
 
-		// Append points
+		// Add points
 		invokeDOMChange(new Runnable() {
 			@Override
 			public void run() {
-				Element container = getElement();
-				for (Element newPoint : newPoints) {
-					container.appendChild(newPoint);
+				synchronized (cellsLock) {
+					addScan(newPoints, time);
 				}
-				updatePoints();
 			}
 		});
 	}
 
-	private Element createPoint(double x, double y) {
-		SVGCircleElement circle = (SVGCircleElement) createElement(SVG_CIRCLE_TAG);
-		circle.setAttribute(SVG_CX_ATTRIBUTE, x + "");
-		circle.setAttribute(SVG_CY_ATTRIBUTE, y + "");
-		circle.setAttribute(SVG_R_ATTRIBUTE, pointRadius + "");
-		return circle;
-	}
-
-	private void updatePoints() {
-		int length = points.size();
-		// Loop backwards
-		ListIterator<Set<Element>> it = points.listIterator(length);
-		while (it.hasPrevious()) {
-			int index = it.previousIndex();
-			Set<Element> set = it.previous();
-			// Get color position
-			int colorIndex = Math.min(pointColorThreshold, Math.max(0, length - index));
-			float colorPosition = (float) colorIndex / (float) pointColorThreshold;
-			// Set color
-			Color color = interpolateColor(pointStartColor, pointEndColor, colorPosition);
-			setFillColor(set, color);
+	private void addScan(List<Point2D> points, long time) {
+		long scan = scanCount++;
+		Set<Cell> scanCells = new HashSet<Cell>();
+
+		// Hit cells
+		for (Point2D point : points) {
+			Cell cell = getOrCreateCell(point);
+			// Move to current scan
+			Set<Cell> previousCells = recentScans.get(cell.lastScan);
+			if (previousCells != null) {
+				previousCells.remove(cell);
+			}
+			scanCells.add(cell);
+			cell.hit(point, scan, time);
+			// Move to back of hit order
+			cells.remove(cell.key);
+			cells.put(cell.key, cell);
+		}
+		recentScans.put(scan, scanCells);
+
+		// Recolor aging cells
+		Iterator<Map.Entry<Long, Set<Cell>>> it = recentScans.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Set<Cell>> entry = it.next();
+			int bucket = getColorBucket(scan - entry.getKey());
+			for (Cell cell : entry.getValue()) {
+				cell.setBucket(bucket);
+			}
+			// Remove when color no longer changes
+			if (bucket == pointColorThreshold) {
+				it.remove();
+			}
+		}
+
+		// Remove expired cells
+		long minScan = scan - maxScans;
+		long minTime = time - maxAge;
+		Iterator<Cell> cellIt = cells.values().iterator();
+		while (cellIt.hasNext()) {
+			Cell cell = cellIt.next();
+			if (cell.lastScan > minScan && cell.lastTime >= minTime)
+				break;
+			cellIt.remove();
+			Set<Cell> recentCells = recentScans.get(cell.lastScan);
+			if (recentCells != null) {
+				recentCells.remove(cell);
+			}
+			cell.remove();
 		}
 	}
 
-	private void setFillColor(Iterable<Element> points, Color color) {
-		String colorString = String.format("rgb(%d,%d,%d)", color.getRed(), color.getGreen(), color.getBlue());
-		for (Element element : points) {
-			element.setAttribute(SVG_FILL_ATTRIBUTE, colorString);
+	private Cell getOrCreateCell(Point2D point) {
+		double size = cellSize;
+		LongPoint key = new LongPoint((long) Math.floor(point.getX() / size), (long) Math.floor(point.getY() / size));
+		Cell cell = cells.get(key);
+		if (cell == null) {
+			cell = new Cell(key, point);
+			cells.put(key, cell);
 		}
+		return cell;
 	}
 
-	private Color interpolateColor(Color start, Color end, float position) {
+	/**
+	 * Get the color bucket of a cell which was last hit the given number of
+	 * scans ago.
+	 */
+	private static int getColorBucket(long age) {
+		return (int) Math.min(pointColorThreshold, age + 1);
+	}
+
+	private static Color interpolateColor(Color start, Color end, float position) {
 		int red = interpolateComponent(start.getRed(), end.getRed(), position);
 		int green = interpolateComponent(start.getGreen(), end.getGreen(), position);
 		int blue = interpolateComponent(start.getBlue(), end.getBlue(), position);
@@ -108,16 +255,40 @@ public class RangesLayer extends MapLayer {
 		return new Color(red, green, blue, alpha);
 	}
 
-	private int interpolateComponent(int start, int end, float position) {
+	private static int interpolateComponent(int start, int end, float position) {
 		return start + (int) ((end - start) * position);
 	}
 
+	/**
+	 * Paint the detected points directly, for rendering without the map
+	 * document.
+	 *
+	 * @param g
+	 *            The graphics to paint on, in document coordinates.
+	 */
+	public void paint(Graphics2D g) {
+		Ellipse2D circle = new Ellipse2D.Double();
+		synchronized (cellsLock) {
+			for (Cell cell : cells.values()) {
+				g.setColor(bucketColors[cell.bucket]);
+				circle.setFrame(cell.x - pointRadius, cell.y - pointRadius, 2 * pointRadius, 2 * pointRadius);
+				g.fill(circle);
+			}
+		}
+	}
+
 	public void clear() {
 		// Remove all child nodes
 		invokeDOMChange(new Runnable() {
 			@Override
 			public void run() {
-				SVGUtils.removeChildNodes(getElement());
+				synchronized (cellsLock) {
+					cells.clear();
+					recentScans.clear();
+				}
+				if (getElement() != null) {
+					SVGUtils.removeChildNodes(getElement());
+				}
 			}
 		});
 	}
@@ -126,4 +297,81 @@ public class RangesLayer extends MapLayer {
 	public int getZIndex() {
 		return 10;
 	}
+
+	/**
+	 * An occupancy cell, shown at the average position of its hits.
+	 */
+	private class Cell {
+
+		private final LongPoint key;
+		private double x;
+		private double y;
+		private int hits = 0;
+		private long lastScan = -1;
+		private long lastTime;
+		private int bucket = -1;
+
+		private SVGCircleElement element;
+
+		public Cell(LongPoint key, Point2D point) {
+			this.key = key;
+			this.x = point.getX();
+			this.y = point.getY();
+		}
+
+		public void hit(Point2D point, long scan, long time) {
+			// Move to average position
+			hits++;
+			x += (point.getX() - x) / hits;
+			y += (point.getY() - y) / hits;
+			lastScan = scan;
+			lastTime = time;
+
+			SVGCircleElement element = getElement();
+			if (element != null) {
+				element.setAttribute(SVG_CX_ATTRIBUTE, x + "");
+				element.setAttribute(SVG_CY_ATTRIBUTE, y + "");
+			}
+		}
+
+		public void setBucket(int bucket) {
+			if (this.bucket == bucket)
+				return;
+			this.bucket = bucket;
+
+			SVGCircleElement element = getElement();
+			if (element != null) {
+				element.setAttribute(SVG_FILL_ATTRIBUTE, bucketColorStrings[bucket]);
+			}
+		}
+
+		public void remove() {
+			if (element != null && element.getParentNode() != null) {
+				element.getParentNode().removeChild(element);
+			}
+			element = null;
+		}
+
+		/**
+		 * Get the element of this cell, creating it if the layer is shown.
+		 */
+		private SVGCircleElement getElement() {
+			if (element == null) {
+				Element container = RangesLayer.this.getElement();
+				if (container == null)
+					return null;
+				element = (SVGCircleElement) createElement(SVG_CIRCLE_TAG);
+				element.setAttribute(SVG_CX_ATTRIBUTE, x + "");
+				element.setAttribute(SVG_CY_ATTRIBUTE, y + "");
+				element.setAttribute(SVG_R_ATTRIBUTE, pointRadius + "");
+				if (bucket >= 0) {
+					element.setAttribute(SVG_FILL_ATTRIBUTE, bucketColorStrings[bucket]);
+				}
+				container.appendChild(element);
+			}
+			return element;
+		}
+
+	}
+
 }
@@ -0,0 +1,393 @@
+package mazestormer.ui.map;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JComponent;
+
+import mazestormer.controller.IMapController;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.BridgeException;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Element;
+import org.w3c.dom.svg.SVGDocument;
+
+/**
+ * Map view which paints the layers of a map directly, without rendering the
+ * map document.
+ *
+ * <p>
+ * Maze layers are painted from a {@link MazeRaster} per maze, so only the
+ * chunks touched by maze changes are redrawn. Detected ranges and robots are
+ * painted on top in every frame. Layer changes which would otherwise update
+ * the map document only need to {@link #repaint()} this canvas.
+ * </p>
+ */
+public class RasterMapCanvas extends JComponent implements MapView {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of the bound property for the rendering transformation.
+	 */
+	public static final String renderingTransformProperty = "renderingTransform";
+
+	private final IMapController controller;
+
+	private AffineTransform renderingTransform = new AffineTransform();
+	private double zoomScale = 1d;
+	private static final int zoomScaleLimit = 1 << 10;
+	private static final double zoomFactor = 1.25d;
+
+	private boolean isPanInteractorEnabled = true;
+	private final Interactor interactor = new Interactor();
+
+	/**
+	 * Number of pixels along each side of a maze tile in the raster cache.
+	 */
+	private static final int tileResolution = 16;
+
+	private final Map<MazeLayer, MazeRaster> mazeRasters = new HashMap<MazeLayer, MazeRaster>();
+	private final Map<String, RobotImage> robotImages = new HashMap<String, RobotImage>();
+
+	private final Runnable repaintRequest = new Runnable() {
+		@Override
+		public void run() {
+			repaint();
+		}
+	};
+
+	public RasterMapCanvas(IMapController controller) {
+		this.controller = controller;
+
+		setOpaque(true);
+		setBackground(Color.WHITE);
+
+		addMouseListener(interactor);
+		addMouseMotionListener(interactor);
+		addMouseWheelListener(interactor);
+	}
+
+	/*
+	 * Transformation
+	 */
+
+	/**
+	 * Get the transformation from document coordinates to the view box of the
+	 * map, fitted and centered in this canvas.
+	 */
+	public AffineTransform getViewingTransform() {
+		Element root = controller.getDocument().getDocumentElement();
+		String attr = root.getAttributeNS(null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE);
+		if (attr.isEmpty())
+			return new AffineTransform();
+
+		float[] viewBox;
+		try {
+			viewBox = ViewBox.parseViewBoxAttribute(root, attr, null);
+		} catch (BridgeException e) {
+			return new AffineTransform();
+		}
+
+		// Fit view box, preserving aspect ratio
+		double scale = Math.min(getWidth() / viewBox[2], getHeight() / viewBox[3]);
+		AffineTransform at = new AffineTransform();
+		at.translate((getWidth() - viewBox[2] * scale) / 2d, (getHeight() - viewBox[3] * scale) / 2d);
+		at.scale(scale, scale);
+		at.translate(-viewBox[0], -viewBox[1]);
+		return at;
+	}
+
+	/**
+	 * Get the transformation applied on top of the viewing transformation by
+	 * zooming and panning.
+	 */
+	public AffineTransform getRenderingTransform() {
+		return new AffineTransform(renderingTransform);
+	}
+
+	/**
+	 * Set the transformation applied on top of the viewing transformation.
+	 */
+	public void setRenderingTransform(AffineTransform at) {
+		AffineTransform oldValue = renderingTransform;
+		renderingTransform = new AffineTransform(at);
+		firePropertyChange(renderingTransformProperty, oldValue, getRenderingTransform());
+		repaint();
+	}
+
+	/**
+	 * Get the transformation from document coordinates to canvas coordinates.
+	 */
+	public AffineTransform getDocumentTransform() {
+		AffineTransform at = getRenderingTransform();
+		at.concatenate(getViewingTransform());
+		return at;
+	}
+
+	@Override
+	public Rectangle2D getViewport() {
+		try {
+			Rectangle2D bounds = new Rectangle2D.Double(0, 0, getWidth(), getHeight());
+			return getDocumentTransform().createInverse().createTransformedShape(bounds).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public double getZoomScale() {
+		return zoomScale;
+	}
+
+	@Override
+	public void zoom(double zoomFactor) {
+		zoomOn(getCenter(), zoomFactor);
+	}
+
+	@Override
+	public void resetZoom() {
+		zoom(1d / getZoomScale());
+		zoomScale = 1d;
+	}
+
+	@Override
+	public void centerOn(double x, double y, double angle) {
+		AffineTransform at = new AffineTransform();
+
+		// Transform point to view coordinates
+		Point2D point = new Point2D.Double(x, y);
+		getViewingTransform().transform(point, point);
+
+		// Place point at center and rotate around it
+		Point2D center = getCenter();
+		at.translate(center.getX(), center.getY());
+		at.rotate(Math.toRadians(-angle));
+		at.translate(-point.getX(), -point.getY());
+
+		// Apply zoom
+		at.concatenate(getZoomTransform(point, getZoomScale()));
+
+		setRenderingTransform(at);
+	}
+
+	private Point2D getCenter() {
+		Dimension size = getSize();
+		return new Point2D.Double(size.getWidth() / 2d, size.getHeight() / 2d);
+	}
+
+	private void zoomOn(Point2D center, double zoomFactor) {
+		double newZoomScale = zoomScale * zoomFactor;
+		if (newZoomScale <= zoomScaleLimit && 1 <= newZoomScale * zoomScaleLimit) {
+			zoomScale = newZoomScale;
+			AffineTransform at = getZoomTransform(center, zoomFactor);
+			at.concatenate(renderingTransform);
+			setRenderingTransform(at);
+		}
+	}
+
+	private AffineTransform getZoomTransform(Point2D center, double scale) {
+		double dx = -center.getX() * (scale - 1.0);
+		double dy = -center.getY() * (scale - 1.0);
+
+		AffineTransform at = new AffineTransform();
+		at.translate(dx, dy);
+		at.scale(scale, scale);
+		return at;
+	}
+
+	@Override
+	public boolean getEnablePanInteractor() {
+		return isPanInteractorEnabled;
+	}
+
+	@Override
+	public void setEnablePanInteractor(boolean b) {
+		boolean oldValue = isPanInteractorEnabled;
+		isPanInteractorEnabled = b;
+		firePropertyChange("enablePanInteractor", oldValue, b);
+	}
+
+	/*
+	 * Painting
+	 */
+
+	@Override
+	protected void paintComponent(Graphics graphics) {
+		Graphics2D g = (Graphics2D) graphics.create();
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		AffineTransform documentTransform = getDocumentTransform();
+		Rectangle2D bounds = new Rectangle2D.Double(0, 0, getWidth(), getHeight());
+
+		MapLayer[] layers = controller.getLayers().toArray(new MapLayer[0]);
+		Arrays.sort(layers, new MapLayer.ZIndexComparator());
+		Set<MazeLayer> mazeLayers = new HashSet<MazeLayer>();
+
+		for (MapLayer layer : layers) {
+			if (layer instanceof MazeLayer) {
+				mazeLayers.add((MazeLayer) layer);
+			}
+			if (!layer.isVisible())
+				continue;
+
+			if (layer instanceof MazeLayer) {
+				MazeLayer mazeLayer = (MazeLayer) layer;
+				AffineTransform at = new AffineTransform(documentTransform);
+				at.concatenate(mazeLayer.getTransform());
+				getMazeRaster(mazeLayer).paint(g, at, bounds);
+			} else if (layer instanceof RangesLayer) {
+				Graphics2D layerGraphics = (Graphics2D) g.create();
+				layerGraphics.transform(documentTransform);
+				((RangesLayer) layer).paint(layerGraphics);
+				layerGraphics.dispose();
+			} else if (layer instanceof RobotLayer) {
+				RobotLayer robotLayer = (RobotLayer) layer;
+				RobotImage robot = getRobotImage(robotLayer);
+				if (robot != null) {
+					Graphics2D layerGraphics = (Graphics2D) g.create();
+					layerGraphics.transform(documentTransform);
+					layerGraphics.transform(robotLayer.getTransform());
+					robot.paint(layerGraphics);
+					layerGraphics.dispose();
+				}
+			}
+		}
+
+		// Drop rasters of removed layers
+		Iterator<Map.Entry<MazeLayer, MazeRaster>> it = mazeRasters.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<MazeLayer, MazeRaster> entry = it.next();
+			if (!mazeLayers.contains(entry.getKey())) {
+				entry.getValue().dispose();
+				it.remove();
+			}
+		}
+
+		g.dispose();
+	}
+
+	private MazeRaster getMazeRaster(MazeLayer layer) {
+		MazeRaster raster = mazeRasters.get(layer);
+		if (raster == null) {
+			raster = new MazeRaster(layer.getMaze(), tileResolution, repaintRequest);
+			mazeRasters.put(layer, raster);
+		}
+		return raster;
+	}
+
+	private RobotImage getRobotImage(RobotLayer layer) {
+		String color = layer.getColor();
+		RobotImage robot = robotImages.get(color);
+		if (robot == null) {
+			try {
+				robot = new RobotImage(layer.createRobotDocument());
+			} catch (BridgeException e) {
+				return null;
+			}
+			robotImages.put(color, robot);
+		}
+		return robot;
+	}
+
+	/**
+	 * Robot image, rendered from its SVG document.
+	 */
+	private static class RobotImage {
+
+		private final GraphicsNode node;
+		private final AffineTransform position;
+
+		public RobotImage(SVGDocument document) {
+			UserAgent userAgent = new UserAgentAdapter();
+			BridgeContext context = new BridgeContext(userAgent, new DocumentLoader(userAgent));
+			context.setDynamicState(BridgeContext.STATIC);
+			node = new GVTBuilder().build(context, document);
+
+			// The root element is positioned like a nested element in the map
+			Element root = document.getDocumentElement();
+			position = AffineTransform.getTranslateInstance(parseLength(root, SVGConstants.SVG_X_ATTRIBUTE),
+					parseLength(root, SVGConstants.SVG_Y_ATTRIBUTE));
+		}
+
+		private static float parseLength(Element element, String attribute) {
+			String value = element.getAttributeNS(null, attribute).replace("px", "").trim();
+			return value.isEmpty() ? 0f : Float.parseFloat(value);
+		}
+
+		public void paint(Graphics2D g) {
+			g.transform(position);
+			node.paint(g);
+		}
+
+	}
+
+	/*
+	 * Interaction
+	 */
+
+	private class Interactor extends MouseAdapter {
+
+		private Point panStart;
+
+		@Override
+		public void mousePressed(MouseEvent e) {
+			if (getEnablePanInteractor() && (e.getModifiers() & InputEvent.BUTTON1_MASK) != 0) {
+				panStart = e.getPoint();
+			}
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			if (panStart == null || !getEnablePanInteractor())
+				return;
+
+			Point point = e.getPoint();
+			AffineTransform at = AffineTransform.getTranslateInstance(point.getX() - panStart.getX(), point.getY()
+					- panStart.getY());
+			at.concatenate(renderingTransform);
+			setRenderingTransform(at);
+			panStart = point;
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			panStart = null;
+		}
+
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			double factor = (e.getWheelRotation() < 0) ? zoomFactor : 1d / zoomFactor;
+			zoomOn(e.getPoint(), factor);
+		}
+
+	}
+
+}
@@ -7,6 +7,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.apache.batik.dom.svg.SVGStylableElement;
+import org.apache.batik.dom.util.DOMUtilities;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -47,7 +48,7 @@ public class RobotLayer extends TransformLayer {
 		}
 
 		// Update color
-		invokeDOMChange(new Runnable() {
+		invokeDOMChange("color", new Runnable() {
 			@Override
 			public void run() {
 				Element element = getTransformElement();
@@ -72,6 +73,24 @@ public class RobotLayer extends TransformLayer {
 		}
 	}
 
+	/**
+	 * Get the outline color of this robot, as a CSS color value.
+	 */
+	public String getColor() {
+		return color;
+	}
+
+	/**
+	 * Create a standalone copy of the robot image with this robot's outline
+	 * color, for rendering outside the map document.
+	 */
+	public SVGDocument createRobotDocument() {
+		SVGDocument robot = getRobot();
+		SVGDocument copy = (SVGDocument) DOMUtilities.deepCloneDocument(robot, robot.getImplementation());
+		applyOutlines(copy.getDocumentElement());
+		return copy;
+	}
+
 	@Override
 	public int getZIndex() {
 		return 1000;
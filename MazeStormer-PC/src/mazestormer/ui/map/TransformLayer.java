@@ -1,5 +1,6 @@
 package mazestormer.ui.map;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 
 import lejos.geom.Rectangle;
@@ -306,6 +307,33 @@ public abstract class TransformLayer extends MapLayer {
 		update();
 	}
 
+	/**
+	 * Get the rotation center in the coordinates of the transformed element.
+	 */
+	private Point2D getAbsoluteRotationCenter() {
+		float rotateX = getRotationCenterX();
+		float rotateY = getRotationCenterY();
+		Rectangle viewBox = getViewBox(getTransformElement());
+		if (viewBox != null) {
+			rotateX *= viewBox.getWidth();
+			rotateY *= viewBox.getWidth();
+		}
+		return new Point2D.Float(rotateX, rotateY);
+	}
+
+	/**
+	 * Get the transformation from the coordinates of the transformed element
+	 * to document coordinates.
+	 */
+	public AffineTransform getTransform() {
+		Point2D rotationCenter = getAbsoluteRotationCenter();
+		AffineTransform at = new AffineTransform();
+		at.translate(getX(), getY());
+		at.scale(getScaleX(), getScaleY());
+		at.rotate(Math.toRadians(getRotationAngle()), rotationCenter.getX(), rotationCenter.getY());
+		return at;
+	}
+
 	@Override
 	protected Element create() {
 		SVGGElement group = (SVGGElement) createElement(SVG_G_TAG);
@@ -332,20 +360,13 @@ public abstract class TransformLayer extends MapLayer {
 		scale.setScale(getScaleX(), getScaleY());
 		// Rotate
 		final SVGTransform rotate = new SVGOMTransform();
-		float rotateX = getRotationCenterX();
-		float rotateY = getRotationCenterY();
-		// Calculate absolute rotation center
-		Rectangle viewBox = getViewBox(getTransformElement());
-		if (viewBox != null) {
-			rotateX *= viewBox.getWidth();
-			rotateY *= viewBox.getWidth();
-		}
-		rotate.setRotate(getRotationAngle(), rotateX, rotateY);
+		Point2D rotationCenter = getAbsoluteRotationCenter();
+		rotate.setRotate(getRotationAngle(), (float) rotationCenter.getX(), (float) rotationCenter.getY());
 		// Translate
 		final SVGTransform translate = new SVGOMTransform();
 		translate.setTranslate(getX(), getY());
 
-		invokeDOMChange(new Runnable() {
+		invokeDOMChange("transform", new Runnable() {
 			@Override
 			public void run() {
 				// Set opacity
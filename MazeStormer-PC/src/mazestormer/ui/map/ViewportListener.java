@@ -0,0 +1,20 @@
+package mazestormer.ui.map;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A map layer which wants to know which part of the map is visible on the
+ * canvas.
+ */
+public interface ViewportListener {
+
+	/**
+	 * Invoked when the visible part of the map has changed.
+	 *
+	 * @param viewport
+	 *            The bounds of the visible part of the map, in document
+	 *            coordinates.
+	 */
+	public void viewportChanged(Rectangle2D viewport);
+
+}
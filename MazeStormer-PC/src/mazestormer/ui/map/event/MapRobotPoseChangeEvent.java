@@ -1,10 +1,13 @@
 package mazestormer.ui.map.event;
 
+import java.util.Arrays;
+
 import lejos.robotics.navigation.Pose;
 import mazestormer.controller.IMapController;
 import mazestormer.player.PlayerIdentifier;
+import mazestormer.util.CoalescingEvent;
 
-public class MapRobotPoseChangeEvent extends MapEvent {
+public class MapRobotPoseChangeEvent extends MapEvent implements CoalescingEvent {
 
 	private final PlayerIdentifier player;
 	private final Pose pose;
@@ -23,4 +26,12 @@ public class MapRobotPoseChangeEvent extends MapEvent {
 		return pose;
 	}
 
+	/**
+	 * Only the latest pose of a player on a map needs to be delivered.
+	 */
+	@Override
+	public Object getCoalescingKey() {
+		return Arrays.asList(getOwner(), getPlayer());
+	}
+
 }
@@ -0,0 +1,150 @@
+package mazestormer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class AbstractFutureTest {
+
+	@Test
+	public void getBlocksUntilResolved() throws Exception {
+		final TestFuture<String> future = new TestFuture<String>();
+		resolveLater(future, "done", 50);
+
+		assertEquals("done", future.get());
+		assertTrue(future.isDone());
+		assertFalse(future.isCancelled());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void getTimesOut() throws Exception {
+		new TestFuture<String>().get(50, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void getWithTimeoutResolves() throws Exception {
+		TestFuture<String> future = new TestFuture<String>();
+		resolveLater(future, "done", 50);
+
+		assertEquals("done", future.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void getKeepsInterruptStatus() throws Exception {
+		TestFuture<String> future = new TestFuture<String>();
+		resolveLater(future, "done", 50);
+
+		Thread.currentThread().interrupt();
+		try {
+			assertEquals("done", future.get());
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test(expected = CancellationException.class)
+	public void cancelOnce() throws Exception {
+		TestFuture<String> future = new TestFuture<String>();
+		RecordingListener listener = new RecordingListener();
+		future.addFutureListener(listener);
+
+		assertTrue(future.cancel());
+		assertFalse(future.cancel());
+		assertFalse(future.resolve("done"));
+		assertTrue(future.isCancelled());
+		assertEquals(1, listener.events.size());
+		assertEquals("cancelled", listener.events.get(0));
+
+		future.get();
+	}
+
+	@Test
+	public void resolveOnce() throws Exception {
+		TestFuture<String> future = new TestFuture<String>();
+		assertTrue(future.resolve("first"));
+		assertTrue(future.resolve("second"));
+		assertFalse(future.cancel());
+
+		assertEquals("first", future.get());
+		assertFalse(future.isCancelled());
+	}
+
+	@Test
+	public void listenersInOrder() throws Exception {
+		TestFuture<String> future = new TestFuture<String>();
+		RecordingListener listener = new RecordingListener();
+		future.addFutureListener(listener.named("a"));
+		future.addFutureListener(listener.named("b"));
+		future.resolve("done");
+
+		// Late listener
+		future.addFutureListener(listener.named("c"));
+
+		assertEquals(3, listener.events.size());
+		assertEquals("a:done", listener.events.get(0));
+		assertEquals("b:done", listener.events.get(1));
+		assertEquals("c:done", listener.events.get(2));
+	}
+
+	private static <V> void resolveLater(final TestFuture<V> future, final V value, final long delay) {
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+				}
+				future.resolve(value);
+			}
+		}.start();
+	}
+
+	private static class TestFuture<V> extends AbstractFuture<V> {
+
+		@Override
+		public boolean resolve(V result) {
+			return super.resolve(result);
+		}
+
+	}
+
+	private static class RecordingListener implements FutureListener<Object> {
+
+		private final List<String> events;
+		private final String name;
+
+		public RecordingListener() {
+			this(new ArrayList<String>(), null);
+		}
+
+		private RecordingListener(List<String> events, String name) {
+			this.events = events;
+			this.name = name;
+		}
+
+		public RecordingListener named(String name) {
+			return new RecordingListener(events, name);
+		}
+
+		@Override
+		public void futureResolved(Future<? extends Object> future, Object result) {
+			events.add(name == null ? "resolved" : name + ":" + result);
+		}
+
+		@Override
+		public void futureCancelled(Future<? extends Object> future) {
+			events.add(name == null ? "cancelled" : name + ":cancelled");
+		}
+
+	}
+
+}
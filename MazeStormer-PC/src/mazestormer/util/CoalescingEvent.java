@@ -0,0 +1,19 @@
+package mazestormer.util;
+
+/**
+ * An event which only needs to be delivered in its latest state.
+ *
+ * <p>
+ * When a {@link ConcurrentEventBus} still has an undelivered event with an
+ * equal coalescing key for a subscriber, the pending event is replaced by the
+ * newly posted event.
+ * </p>
+ */
+public interface CoalescingEvent {
+
+	/**
+	 * Get the key which identifies events superseding each other.
+	 */
+	public Object getCoalescingKey();
+
+}
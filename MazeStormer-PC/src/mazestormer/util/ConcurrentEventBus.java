@@ -0,0 +1,433 @@
+package mazestormer.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * Event bus which dispatches events to different subscribers in parallel.
+ *
+ * <p>
+ * Every registered object has its own mailbox, which is drained by at most one
+ * thread of the executor at a time. Events are therefore delivered to a single
+ * subscriber in the order in which they were posted, while slow subscribers
+ * do not hold up the others. A mailbox delivers a limited batch of events
+ * before it yields its thread to other mailboxes.
+ * </p>
+ *
+ * <p>
+ * A {@link CoalescingEvent} replaces an undelivered event with an equal
+ * coalescing key in the mailbox of a subscriber, so subscribers which cannot
+ * keep up only receive the latest state. The replacing event takes the place
+ * of the last posted event in the delivery order.
+ * </p>
+ *
+ * <p>
+ * The number of delivered and coalesced events and the latency between
+ * posting and delivery are recorded for every event type, see
+ * {@link #getDispatchStats()}.
+ * </p>
+ */
+public class ConcurrentEventBus extends EventBus {
+
+	private static final Logger logger = Logger.getLogger(ConcurrentEventBus.class.getName());
+
+	/**
+	 * Maximum number of events delivered by a mailbox before it yields.
+	 */
+	private static final int batchSize = 64;
+
+	private final String identifier;
+	private final Executor executor;
+
+	private final ConcurrentMap<Class<?>, Set<Handler>> handlersByType = new ConcurrentHashMap<Class<?>, Set<Handler>>();
+	private final Map<Object, Subscriber> subscribers = new IdentityHashMap<Object, Subscriber>();
+	private final ConcurrentMap<Class<?>, DispatchStats> stats = new ConcurrentHashMap<Class<?>, DispatchStats>();
+
+	private static final LoadingCache<Class<?>, Set<Class<?>>> flattenHierarchyCache = CacheBuilder.newBuilder()
+			.weakKeys().build(new CacheLoader<Class<?>, Set<Class<?>>>() {
+				@Override
+				public Set<Class<?>> load(Class<?> concreteClass) {
+					Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+					types.addAll(TypeToken.of(concreteClass).getTypes().rawTypes());
+					return Collections.unmodifiableSet(types);
+				}
+			});
+
+	public ConcurrentEventBus(String identifier, Executor executor) {
+		super(identifier);
+		this.identifier = checkNotNull(identifier);
+		this.executor = checkNotNull(executor);
+	}
+
+	public ConcurrentEventBus(Executor executor) {
+		this("default", executor);
+	}
+
+	@Override
+	public void register(Object object) {
+		List<Handler> handlers = new ArrayList<Handler>();
+		synchronized (subscribers) {
+			Subscriber subscriber = subscribers.get(object);
+			if (subscriber != null)
+				return;
+			subscriber = new Subscriber();
+			Set<Class<?>> supertypes = flattenHierarchy(object.getClass());
+			for (Method method : object.getClass().getMethods()) {
+				Class<?>[] parameterTypes = method.getParameterTypes();
+				if (parameterTypes.length == 1 && isSubscribeMethod(method, supertypes)) {
+					method.setAccessible(true);
+					handlers.add(new Handler(object, method, parameterTypes[0], subscriber));
+				}
+			}
+			subscribers.put(object, subscriber);
+		}
+		for (Handler handler : handlers) {
+			Set<Handler> typeHandlers = handlersByType.get(handler.eventType);
+			if (typeHandlers == null) {
+				Set<Handler> newHandlers = new CopyOnWriteArraySet<Handler>();
+				typeHandlers = handlersByType.putIfAbsent(handler.eventType, newHandlers);
+				if (typeHandlers == null) {
+					typeHandlers = newHandlers;
+				}
+			}
+			typeHandlers.add(handler);
+		}
+	}
+
+	/**
+	 * Check whether the given method, or a method it overrides in any of the
+	 * given supertypes, is annotated with {@link Subscribe}, as in
+	 * {@link EventBus}.
+	 */
+	private static boolean isSubscribeMethod(Method method, Set<Class<?>> supertypes) {
+		for (Class<?> supertype : supertypes) {
+			try {
+				Method superMethod = supertype.getMethod(method.getName(), method.getParameterTypes());
+				if (superMethod.isAnnotationPresent(Subscribe.class))
+					return true;
+			} catch (NoSuchMethodException e) {
+				// Not declared in this supertype
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void unregister(Object object) {
+		synchronized (subscribers) {
+			if (subscribers.remove(object) == null)
+				throw new IllegalArgumentException("Missing event subscriber for an annotated method. Is " + object
+						+ " registered?");
+		}
+		for (Set<Handler> typeHandlers : handlersByType.values()) {
+			Iterator<Handler> it = typeHandlers.iterator();
+			while (it.hasNext()) {
+				Handler handler = it.next();
+				if (handler.target == object) {
+					typeHandlers.remove(handler);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void post(Object event) {
+		long postTime = System.nanoTime();
+		boolean isDispatched = false;
+		for (Class<?> eventType : flattenHierarchy(event.getClass())) {
+			Set<Handler> typeHandlers = handlersByType.get(eventType);
+			if (typeHandlers == null)
+				continue;
+			for (Handler handler : typeHandlers) {
+				handler.subscriber.enqueue(new Delivery(handler, event, postTime));
+				isDispatched = true;
+			}
+		}
+		if (!isDispatched && !(event instanceof DeadEvent)) {
+			post(new DeadEvent(this, event));
+		}
+	}
+
+	private Set<Class<?>> flattenHierarchy(Class<?> concreteClass) {
+		return flattenHierarchyCache.getUnchecked(concreteClass);
+	}
+
+	/**
+	 * Get the dispatch statistics of all event types posted on this bus.
+	 *
+	 * @return An unmodifiable live view on the statistics, by concrete event
+	 *         type.
+	 */
+	public Map<Class<?>, DispatchStats> getDispatchStats() {
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Get the dispatch statistics of a single event type.
+	 *
+	 * @param eventType
+	 *            The concrete event type.
+	 * @return The statistics, or null if no such events were posted.
+	 */
+	public DispatchStats getDispatchStats(Class<?> eventType) {
+		return stats.get(eventType);
+	}
+
+	private DispatchStats getOrCreateStats(Class<?> eventType) {
+		DispatchStats typeStats = stats.get(eventType);
+		if (typeStats == null) {
+			DispatchStats newStats = new DispatchStats();
+			typeStats = stats.putIfAbsent(eventType, newStats);
+			if (typeStats == null) {
+				typeStats = newStats;
+			}
+		}
+		return typeStats;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + identifier + ")";
+	}
+
+	/**
+	 * Dispatch statistics of a single event type.
+	 */
+	public static class DispatchStats {
+
+		private final AtomicLong deliveredCount = new AtomicLong();
+		private final AtomicLong coalescedCount = new AtomicLong();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		/**
+		 * Get the number of deliveries to subscribers.
+		 */
+		public long getDeliveredCount() {
+			return deliveredCount.get();
+		}
+
+		/**
+		 * Get the number of deliveries which were replaced by a later event
+		 * before they were delivered.
+		 */
+		public long getCoalescedCount() {
+			return coalescedCount.get();
+		}
+
+		/**
+		 * Get the histogram of the time between posting and delivering an
+		 * event, in microseconds.
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("delivered=%d, coalesced=%d, mean=%.0fus, p99=%dus, max=%dus", getDeliveredCount(),
+					getCoalescedCount(), latency.getMean(), latency.getValueAtPercentile(99), latency.getMax());
+		}
+
+	}
+
+	/**
+	 * A subscriber method.
+	 */
+	private static class Handler {
+
+		private final Object target;
+		private final Method method;
+		private final Class<?> eventType;
+		private final Subscriber subscriber;
+
+		public Handler(Object target, Method method, Class<?> eventType, Subscriber subscriber) {
+			this.target = target;
+			this.method = method;
+			this.eventType = eventType;
+			this.subscriber = subscriber;
+		}
+
+		public void handleEvent(Object event) throws InvocationTargetException {
+			try {
+				method.invoke(target, event);
+			} catch (IllegalAccessException e) {
+				throw new Error("Method became inaccessible: " + event, e);
+			}
+		}
+
+	}
+
+	/**
+	 * A pending delivery of an event to a handler.
+	 */
+	private class Delivery {
+
+		private final Handler handler;
+		private final Object event;
+		private final long postTime;
+
+		public Delivery(Handler handler, Object event, long postTime) {
+			this.handler = handler;
+			this.event = event;
+			this.postTime = postTime;
+		}
+
+		/**
+		 * Get the key of this delivery in the mailbox of its subscriber.
+		 */
+		public Object getKey() {
+			if (event instanceof CoalescingEvent) {
+				return new CoalescingKey(handler, ((CoalescingEvent) event).getCoalescingKey());
+			}
+			return this;
+		}
+
+		public void deliver() {
+			DispatchStats typeStats = getOrCreateStats(event.getClass());
+			typeStats.deliveredCount.incrementAndGet();
+			typeStats.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - postTime));
+			try {
+				handler.handleEvent(event);
+			} catch (InvocationTargetException e) {
+				logger.log(Level.SEVERE, "Could not dispatch event: " + event + " to handler " + handler.method,
+						e.getCause());
+			}
+		}
+
+		public void coalesce() {
+			getOrCreateStats(event.getClass()).coalescedCount.incrementAndGet();
+		}
+
+	}
+
+	/**
+	 * Key of a coalescing event for a single handler.
+	 */
+	private static class CoalescingKey {
+
+		private final Handler handler;
+		private final Object key;
+
+		public CoalescingKey(Handler handler, Object key) {
+			this.handler = handler;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * handler.hashCode() + ((key == null) ? 0 : key.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CoalescingKey))
+				return false;
+			CoalescingKey other = (CoalescingKey) obj;
+			return handler == other.handler && (key == null ? other.key == null : key.equals(other.key));
+		}
+
+	}
+
+	/**
+	 * The mailbox of a registered object.
+	 */
+	private class Subscriber implements Runnable {
+
+		private final LinkedHashMap<Object, Delivery> mailbox = new LinkedHashMap<Object, Delivery>();
+		private boolean isScheduled = false;
+
+		public void enqueue(Delivery delivery) {
+			Object key = delivery.getKey();
+			Delivery replaced;
+			boolean shouldSchedule;
+			synchronized (this) {
+				// Move to back of delivery order
+				replaced = mailbox.remove(key);
+				mailbox.put(key, delivery);
+				shouldSchedule = !isScheduled;
+				isScheduled = true;
+			}
+			if (replaced != null) {
+				replaced.coalesce();
+			}
+			if (shouldSchedule) {
+				schedule();
+			}
+		}
+
+		private void schedule() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				synchronized (this) {
+					isScheduled = false;
+				}
+				logger.log(Level.SEVERE, "Could not schedule event delivery on " + identifier, e);
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < batchSize; i++) {
+				Delivery delivery = poll();
+				if (delivery == null)
+					return;
+				delivery.deliver();
+			}
+			// Yield to other subscribers
+			synchronized (this) {
+				if (mailbox.isEmpty()) {
+					isScheduled = false;
+					return;
+				}
+			}
+			schedule();
+		}
+
+		/**
+		 * Take the next delivery, or unschedule this mailbox when it is empty.
+		 */
+		private synchronized Delivery poll() {
+			Iterator<Delivery> it = mailbox.values().iterator();
+			if (!it.hasNext()) {
+				isScheduled = false;
+				return null;
+			}
+			Delivery delivery = it.next();
+			it.remove();
+			return delivery;
+		}
+
+	}
+
+}
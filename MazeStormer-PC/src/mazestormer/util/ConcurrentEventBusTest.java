@@ -0,0 +1,165 @@
+package mazestormer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+public class ConcurrentEventBusTest {
+
+	private ExecutorService executor;
+	private ConcurrentEventBus bus;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+		bus = new ConcurrentEventBus(executor);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void orderPerSubscriber() throws InterruptedException {
+		Recorder first = new Recorder(1000);
+		Recorder second = new Recorder(1000);
+		bus.register(first);
+		bus.register(second);
+		for (int i = 0; i < 1000; i++) {
+			bus.post(i);
+		}
+		first.await();
+		second.await();
+
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, first.values.get(i).intValue());
+			assertEquals(i, second.values.get(i).intValue());
+		}
+		assertEquals(2000, bus.getDispatchStats(Integer.class).getDeliveredCount());
+	}
+
+	@Test
+	public void slowSubscriberDoesNotBlock() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		bus.register(new Object() {
+			@Subscribe
+			public void block(Integer value) throws InterruptedException {
+				release.await();
+			}
+		});
+		Recorder recorder = new Recorder(1);
+		bus.register(recorder);
+		bus.post(1);
+		recorder.await();
+		release.countDown();
+	}
+
+	@Test
+	public void coalesceLatest() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+		final CountDownLatch done = new CountDownLatch(1);
+		bus.register(new Object() {
+			@Subscribe
+			public void block(String value) throws InterruptedException {
+				release.await();
+				received.add(value);
+			}
+
+			@Subscribe
+			public void update(Update update) {
+				received.add(update);
+				if (update.value == 9) {
+					done.countDown();
+				}
+			}
+		});
+
+		// Block subscriber while updates are posted
+		bus.post("start");
+		for (int i = 0; i <= 9; i++) {
+			bus.post(new Update("key", i));
+		}
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		assertEquals(2, received.size());
+		assertEquals("start", received.get(0));
+		assertEquals(9, ((Update) received.get(1)).value);
+		assertEquals(9, bus.getDispatchStats(Update.class).getCoalescedCount());
+	}
+
+	@Test
+	public void inheritedSubscribeAnnotation() throws InterruptedException {
+		final List<Integer> overridden = Collections.synchronizedList(new ArrayList<Integer>());
+		Recorder recorder = new Recorder(10) {
+			@Override
+			public void record(Integer value) {
+				overridden.add(value);
+				super.record(value);
+			}
+		};
+		bus.register(recorder);
+		for (int i = 0; i < 10; i++) {
+			bus.post(i);
+		}
+		recorder.await();
+
+		assertEquals(10, overridden.size());
+		assertEquals(10, recorder.values.size());
+	}
+
+	private static class Recorder {
+
+		private final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+		private final CountDownLatch latch;
+
+		public Recorder(int count) {
+			this.latch = new CountDownLatch(count);
+		}
+
+		@Subscribe
+		public void record(Integer value) {
+			values.add(value);
+			latch.countDown();
+		}
+
+		public void await() throws InterruptedException {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+
+	}
+
+	private static class Update implements CoalescingEvent {
+
+		private final Object key;
+		private final int value;
+
+		public Update(Object key, int value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Object getCoalescingKey() {
+			return key;
+		}
+
+	}
+
+}
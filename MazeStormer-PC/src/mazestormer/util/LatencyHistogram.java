@@ -0,0 +1,161 @@
+package mazestormer.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latency measurements with a fixed relative precision.
+ *
+ * <p>
+ * Values below 128 are counted exactly. Larger values are counted in buckets
+ * whose width doubles with every power of two, so every value is recorded
+ * with a relative error below one percent. Recording takes constant time and
+ * never allocates, so it can be done on time critical threads.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final int subBucketBits = 7;
+	private static final int subBucketCount = 1 << subBucketBits;
+	private static final int subBucketHalfCount = subBucketCount >> 1;
+	private static final int maxShift = Long.SIZE - 1 - subBucketBits;
+
+	private final AtomicLongArray counts = new AtomicLongArray(subBucketCount + maxShift * subBucketHalfCount);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Record a single value.
+	 *
+	 * @param value
+	 *            The value. Negative values are recorded as zero.
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		sum.addAndGet(value);
+		updateMin(value);
+		updateMax(value);
+	}
+
+	private void updateMin(long value) {
+		long current;
+		while (value < (current = min.get())) {
+			if (min.compareAndSet(current, value))
+				return;
+		}
+	}
+
+	private void updateMax(long value) {
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value))
+				return;
+		}
+	}
+
+	/**
+	 * Get the number of recorded values.
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Get the smallest recorded value, or zero if nothing was recorded.
+	 */
+	public long getMin() {
+		return (getCount() == 0) ? 0 : min.get();
+	}
+
+	/**
+	 * Get the largest recorded value.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the mean of all recorded values.
+	 */
+	public double getMean() {
+		long count = getCount();
+		return (count == 0) ? 0d : sum.get() / (double) count;
+	}
+
+	/**
+	 * Get the value below which the given percentage of recorded values fall.
+	 *
+	 * @param percentile
+	 *            The percentile, between 0 and 100.
+	 * @return The largest value equivalent to the value at the given
+	 *         percentile, or zero if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0)
+			return 0;
+
+		double fraction = Math.max(0d, Math.min(100d, percentile)) / 100d;
+		long target = Math.max(1, (long) Math.ceil(fraction * count));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= target) {
+				return Math.min(highestEquivalentValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Remove all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		sum.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(0);
+	}
+
+	/**
+	 * Get the index of the bucket counting the given value.
+	 */
+	private static int indexOf(long value) {
+		if (value < subBucketCount)
+			return (int) value;
+		// Shift such that the value falls in the upper half of the sub buckets
+		int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - subBucketBits;
+		int subBucket = (int) (value >>> shift) - subBucketHalfCount;
+		return subBucketCount + (shift - 1) * subBucketHalfCount + subBucket;
+	}
+
+	/**
+	 * Get the largest value counted by the given bucket.
+	 */
+	private static long highestEquivalentValue(int index) {
+		if (index < subBucketCount)
+			return index;
+		int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+		long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+		return (subBucket << shift) + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d min=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d", getCount(), getMin(),
+				getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+				getValueAtPercentile(99.9), getMax());
+	}
+
+}
@@ -0,0 +1,225 @@
+package mazestormer.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image row by row.
+ *
+ * <p>
+ * Unlike {@link javax.imageio.ImageIO}, the image does not need to be kept in
+ * memory as a whole. The rows are passed in strips of any height, from top to
+ * bottom, and compressed as they arrive. The image is written in 8-bit RGBA.
+ * </p>
+ *
+ * <p>
+ * The writer holds native compression resources, so it must always be
+ * {@linkplain #close() closed}, even when writing fails.
+ * </p>
+ */
+public class PngStreamWriter implements Closeable {
+
+	private static final byte[] signature = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final Charset ascii = Charset.forName("US-ASCII");
+
+	private static final int bytesPerPixel = 4;
+
+	/**
+	 * Maximum size of the data in a single IDAT chunk.
+	 */
+	private static final int maxChunkSize = 1 << 16;
+
+	private final DataOutputStream out;
+	private final int width;
+	private final int height;
+	private int nextRow = 0;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+	private final DeflaterOutputStream imageData;
+	private final byte[] scanline;
+	private final byte[] filtered;
+	private final int[] pixels;
+
+	/**
+	 * Start writing an image.
+	 *
+	 * @param out
+	 *            The stream to write to. It is not closed by this writer.
+	 * @param width
+	 *            The width of the image, in pixels.
+	 * @param height
+	 *            The height of the image, in pixels.
+	 */
+	public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+		checkArgument(width > 0 && height > 0, "Image must not be empty.");
+		this.out = new DataOutputStream(out);
+		this.width = width;
+		this.height = height;
+		this.scanline = new byte[width * bytesPerPixel];
+		this.filtered = new byte[1 + width * bytesPerPixel];
+		this.pixels = new int[width];
+		this.imageData = new DeflaterOutputStream(new ChunkOutputStream("IDAT"), deflater, maxChunkSize);
+
+		try {
+			this.out.write(signature);
+			writeHeader();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the number of rows written so far.
+	 */
+	public int getRowCount() {
+		return nextRow;
+	}
+
+	private void writeHeader() throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		DataOutputStream data = new DataOutputStream(header);
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeByte(8); // bit depth
+		data.writeByte(6); // truecolor with alpha
+		data.writeByte(0); // deflate
+		data.writeByte(0); // adaptive filtering
+		data.writeByte(0); // no interlace
+		writeChunk("IHDR", header.toByteArray(), header.size());
+	}
+
+	/**
+	 * Write the next rows of the image.
+	 *
+	 * @param strip
+	 *            The image containing the rows, starting at its top row. It
+	 *            must be exactly as wide as this image.
+	 * @param rows
+	 *            The number of rows to write.
+	 */
+	public void writeRows(BufferedImage strip, int rows) throws IOException {
+		checkArgument(strip.getWidth() == width, "Strip width does not match image width.");
+		checkArgument(rows <= strip.getHeight(), "Strip does not contain enough rows.");
+		checkState(nextRow + rows <= height, "Too many rows.");
+
+		for (int y = 0; y < rows; y++) {
+			strip.getRGB(0, y, width, 1, pixels, 0, width);
+			for (int x = 0, i = 0; x < width; x++) {
+				int argb = pixels[x];
+				scanline[i++] = (byte) (argb >> 16);
+				scanline[i++] = (byte) (argb >> 8);
+				scanline[i++] = (byte) argb;
+				scanline[i++] = (byte) (argb >> 24);
+			}
+			// Sub filter: difference with the pixel to the left
+			filtered[0] = 1;
+			for (int i = 0; i < scanline.length; i++) {
+				int left = (i < bytesPerPixel) ? 0 : scanline[i - bytesPerPixel];
+				filtered[1 + i] = (byte) (scanline[i] - left);
+			}
+			imageData.write(filtered);
+		}
+		nextRow += rows;
+	}
+
+	/**
+	 * Finish the image after all rows have been written.
+	 */
+	public void finish() throws IOException {
+		checkState(nextRow == height, "Not all rows were written.");
+		imageData.finish();
+		imageData.flush();
+		writeChunk("IEND", new byte[0], 0);
+		out.flush();
+	}
+
+	/**
+	 * Release the compression resources of this writer.
+	 *
+	 * <p>
+	 * The underlying stream is not closed.
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		deflater.end();
+	}
+
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(ascii);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+
+		out.writeInt(length);
+		out.write(typeBytes);
+		out.write(data, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Stream which writes its data in chunks of limited size.
+	 */
+	private class ChunkOutputStream extends OutputStream {
+
+		private final String type;
+		private final byte[] buffer = new byte[maxChunkSize];
+		private int size = 0;
+
+		public ChunkOutputStream(String type) {
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (size == buffer.length) {
+				flush();
+			}
+			buffer[size++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (size == buffer.length) {
+					flush();
+				}
+				int n = Math.min(len, buffer.length - size);
+				System.arraycopy(b, off, buffer, size, n);
+				size += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (size > 0) {
+				writeChunk(type, buffer, size);
+				size = 0;
+			}
+		}
+
+	}
+
+}
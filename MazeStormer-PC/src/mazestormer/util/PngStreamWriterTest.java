@@ -0,0 +1,64 @@
+package mazestormer.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PngStreamWriterTest {
+
+	@Test
+	public void readBack() throws IOException {
+		int width = 300;
+		int height = 200;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.ORANGE);
+		g.fillOval(10, 10, 250, 150);
+		g.setColor(new Color(0, 0, 255, 128));
+		g.fillRect(100, 50, 150, 120);
+		g.dispose();
+
+		// Write in uneven strips
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PngStreamWriter writer = new PngStreamWriter(out, width, height);
+		int stripHeight = 64;
+		BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y += stripHeight) {
+			int rows = Math.min(stripHeight, height - y);
+			strip.setRGB(0, 0, width, rows, image.getRGB(0, y, width, rows, null, 0, width), 0, width);
+			writer.writeRows(strip, rows);
+		}
+		writer.finish();
+		writer.close();
+
+		BufferedImage read = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(width, read.getWidth());
+		assertEquals(height, read.getHeight());
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				assertEquals(image.getRGB(x, y), read.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void incomplete() throws IOException {
+		PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 10, 10);
+		try {
+			writer.writeRows(new BufferedImage(10, 5, BufferedImage.TYPE_INT_ARGB), 5);
+			writer.finish();
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -1,37 +1,37 @@
 package mazestormer.util;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 public class WaitFuture<V> extends AbstractFuture<V> implements
 		FutureListener<V> {
 
-	private Timer timer;
+	private volatile HashedWheelTimer.Timeout timeout;
 
 	public void resolveAfter(final V value, long timeout) {
-		timer = new Timer();
-		timer.schedule(new TimerTask() {
+		this.timeout = HashedWheelTimer.getShared().schedule(new Runnable() {
 			@Override
 			public void run() {
 				resolve(value);
 			}
-		}, timeout);
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	private void cancelTimeout() {
+		HashedWheelTimer.Timeout timeout = this.timeout;
+		if (timeout != null) {
+			timeout.cancel();
+			this.timeout = null;
+		}
 	}
 
 	@Override
 	public void futureResolved(Future<? extends V> future, V result) {
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
-		}
+		cancelTimeout();
 	}
 
 	@Override
 	public void futureCancelled(Future<? extends V> future) {
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
-		}
+		cancelTimeout();
 	}
 
-}
\ No newline at end of file
+}
@@ -6,7 +6,6 @@ import java.util.Set;
 
 import lejos.geom.Point;
 import lejos.robotics.navigation.Pose;
-import mazestormer.infrared.IRRobot;
 import mazestormer.maze.IMaze;
 import mazestormer.maze.PoseTransform;
 import mazestormer.observable.ObservableRobot;
@@ -69,8 +68,10 @@ public class WorldSimulator {
 		AbsolutePlayer player = getWorld().getPlayer(playerID);
 		if (player == null) {
 			// Create observable player
-			IRRobot robot = new ObservableRobot(ModelType.fromPlayerType(playerDetails.getType()),
+			ObservableRobot robot = new ObservableRobot(ModelType.fromPlayerType(playerDetails.getType()),
 					playerDetails.getWidth(), playerDetails.getHeight());
+			// Players only report their tile
+			robot.getPoseEstimator().setReportedTileSize(getMaze().getTileSize());
 			RelativePlayer relativePlayer = new RelativePlayer(playerID, robot, null);
 			player = new AbsolutePlayer(relativePlayer);
 			getWorld().addPlayer(player);
@@ -0,0 +1,92 @@
+package java.util.concurrent.atomic;
+
+/**
+ * An object reference that may be updated atomically.
+ *
+ * <p>
+ * Substitute for the NXT, whose runtime has no atomic variables. Updates are
+ * guarded by the monitor of this reference, which is atomic on the single
+ * processor of the brick. On the PC, the class of the platform is used
+ * instead.
+ * </p>
+ *
+ * @param <V>
+ *            The type of object referred to by this reference.
+ */
+public class AtomicReference<V> {
+
+	private volatile V value;
+
+	/**
+	 * Creates a new AtomicReference with the given initial value.
+	 *
+	 * @param initialValue
+	 *            the initial value
+	 */
+	public AtomicReference(V initialValue) {
+		value = initialValue;
+	}
+
+	/**
+	 * Creates a new AtomicReference with null initial value.
+	 */
+	public AtomicReference() {
+	}
+
+	/**
+	 * Gets the current value.
+	 *
+	 * @return the current value
+	 */
+	public final V get() {
+		return value;
+	}
+
+	/**
+	 * Sets to the given value.
+	 *
+	 * @param newValue
+	 *            the new value
+	 */
+	public final synchronized void set(V newValue) {
+		value = newValue;
+	}
+
+	/**
+	 * Atomically sets the value to the given updated value if the current
+	 * value {@code ==} the expected value.
+	 *
+	 * @param expect
+	 *            the expected value
+	 * @param update
+	 *            the new value
+	 * @return true if successful. False return indicates that the actual value
+	 *         was not equal to the expected value.
+	 */
+	public final synchronized boolean compareAndSet(V expect, V update) {
+		if (value != expect) {
+			return false;
+		}
+		value = update;
+		return true;
+	}
+
+	/**
+	 * Atomically sets to the given value and returns the old value.
+	 *
+	 * @param newValue
+	 *            the new value
+	 * @return the previous value
+	 */
+	public final synchronized V getAndSet(V newValue) {
+		V previous = value;
+		value = newValue;
+		return previous;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(get());
+	}
+
+}
@@ -0,0 +1,77 @@
+package java.util.concurrent.locks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Basic thread blocking primitives.
+ *
+ * <p>
+ * Substitute for the NXT, whose runtime cannot park threads. As with the
+ * platform class, every thread has a permit which is made available by
+ * {@link #unpark(Thread)} and consumed by {@link #park(Object)}. Parked threads
+ * wait on a single shared monitor, which is sufficient for the few threads
+ * running on the brick. On the PC, the class of the platform is used instead.
+ * </p>
+ */
+public class LockSupport {
+
+	/**
+	 * Threads whose permit is available. Also guards the permits.
+	 */
+	private static final List<Thread> permits = new ArrayList<Thread>();
+
+	private LockSupport() {
+	}
+
+	/**
+	 * Makes available the permit for the given thread, if it was not already
+	 * available. If the thread was blocked on {@code park} then it will
+	 * unblock. Otherwise, its next call to {@code park} is guaranteed not to
+	 * block.
+	 *
+	 * @param thread
+	 *            the thread to unpark, or {@code null}, in which case this
+	 *            operation has no effect
+	 */
+	public static void unpark(Thread thread) {
+		if (thread == null)
+			return;
+
+		synchronized (permits) {
+			if (!permits.contains(thread)) {
+				permits.add(thread);
+			}
+			permits.notifyAll();
+		}
+	}
+
+	/**
+	 * Disables the current thread for thread scheduling purposes unless the
+	 * permit is available.
+	 *
+	 * <p>
+	 * Like the platform class, this method may return spuriously, so callers
+	 * should re-check the condition for which they parked. When interrupted,
+	 * it returns with the interrupt status of the thread set.
+	 * </p>
+	 *
+	 * @param blocker
+	 *            the synchronization object responsible for this thread
+	 *            parking
+	 */
+	public static void park(Object blocker) {
+		Thread current = Thread.currentThread();
+		synchronized (permits) {
+			if (permits.remove(current))
+				return;
+			try {
+				permits.wait();
+			} catch (InterruptedException e) {
+				current.interrupt();
+			}
+			permits.remove(current);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package mazestormer.barcode;
+
+/**
+ * Decodes barcodes from recorded stroke edges.
+ */
+public class BarcodeDecoder {
+
+	private BarcodeDecoder() {
+	}
+
+	/**
+	 * Get the widths of the strokes between the given edges.
+	 * 
+	 * @param edges
+	 *            The positions of the stroke edges.
+	 */
+	public static float[] getStrokeWidths(float[] edges) {
+		float[] widths = new float[Math.max(edges.length - 1, 0)];
+		for (int i = 0; i < widths.length; i++) {
+			widths[i] = Math.abs(edges[i + 1] - edges[i]);
+		}
+		return widths;
+	}
+
+	/**
+	 * Decode the barcode value from the given stroke widths.
+	 * 
+	 * <p>
+	 * Strokes alternate between black and white, starting with the leading
+	 * black bar. The leading black bar is cut off from the first stroke, after
+	 * which every stroke is split into bars. The most significant bit is read
+	 * first.
+	 * </p>
+	 * 
+	 * @param widths
+	 *            The stroke widths.
+	 * @param barLength
+	 *            The width of a single bar.
+	 * @param nbValueBars
+	 *            The number of bars encoding the value.
+	 * @return The barcode value.
+	 */
+	public static int decode(float[] widths, double barLength, int nbValueBars) {
+		int result = 0;
+		int index = nbValueBars - 1;
+
+		// Iterate over strokes until barcode complete
+		for (int i = 0; i < widths.length && index >= 0; i++) {
+			double at;
+			if (i == 0) {
+				// First bar
+				// Cut off first black stroke
+				at = Math.max((widths[i] - barLength) / barLength, 0);
+			} else {
+				at = Math.max(widths[i] / barLength, 1);
+			}
+			int limit = roundHalfDown(at);
+			// Odd indices are white, even indices are black
+			int barBit = i & 1; // == i % 2
+			// Set bit from index to index-a
+			for (int j = 0; j < limit && index >= 0; j++) {
+				result |= barBit << index;
+				index--;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Round a positive number to the nearest integer, rounding halves down.
+	 */
+	private static int roundHalfDown(double value) {
+		return (int) Math.ceil(value - 0.5d);
+	}
+
+}
@@ -0,0 +1,110 @@
+package mazestormer.barcode;
+
+import mazestormer.condition.StrokeEdgesCondition;
+
+/**
+ * Records the edges between barcode strokes from a stream of light samples.
+ * 
+ * <p>
+ * Samples are taken while the robot travels over a barcode. Recording starts
+ * at the first black sample, after which the recorder alternately looks for
+ * the end of a black and a white stroke. Strokes shorter than the noise length
+ * of the condition are not recorded.
+ * </p>
+ * 
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class StrokeRecorder {
+
+	private final StrokeEdgesCondition condition;
+
+	private final float[] edges;
+	private int nbEdges = 0;
+	private boolean isWhiteExpected = false;
+	private float strokeStart;
+	private float totalLength = 0f;
+
+	public StrokeRecorder(StrokeEdgesCondition condition) {
+		this.condition = condition;
+		this.edges = new float[Math.max(condition.getMaxStrokes(), 0) + 1];
+	}
+
+	public StrokeEdgesCondition getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Add a light sample.
+	 * 
+	 * @param normalizedLightValue
+	 *            The normalized light value.
+	 * @param position
+	 *            The distance travelled when the sample was taken.
+	 * @return True if recording is complete.
+	 */
+	public synchronized boolean addSample(int normalizedLightValue, float position) {
+		if (isComplete())
+			return true;
+
+		if (nbEdges == 0) {
+			// Wait for first black stroke
+			if (normalizedLightValue < condition.getBlackWhiteThreshold()) {
+				strokeStart = position;
+				addEdge(position);
+				isWhiteExpected = true;
+			}
+			return isComplete();
+		}
+
+		boolean isCrossed;
+		if (isWhiteExpected) {
+			isCrossed = normalizedLightValue > condition.getBlackWhiteThreshold();
+		} else {
+			isCrossed = normalizedLightValue < condition.getWhiteBlackThreshold();
+		}
+		if (!isCrossed)
+			return false;
+
+		float strokeWidth = Math.abs(position - strokeStart);
+		if (strokeWidth >= condition.getNoiseLength()) {
+			// Record stroke
+			addEdge(position);
+			totalLength += strokeWidth;
+			strokeStart = position;
+			isWhiteExpected = !isWhiteExpected;
+		}
+		// Noise is ignored, retry same stroke
+		return isComplete();
+	}
+
+	private void addEdge(float position) {
+		edges[nbEdges++] = position;
+	}
+
+	/**
+	 * Check whether the first black stroke was found.
+	 */
+	public synchronized boolean isStarted() {
+		return nbEdges > 0;
+	}
+
+	/**
+	 * Check whether all strokes are recorded.
+	 */
+	public synchronized boolean isComplete() {
+		return nbEdges == edges.length || (nbEdges > 0 && totalLength >= condition.getMinLength());
+	}
+
+	/**
+	 * Get the positions of the recorded edges, starting with the start of the
+	 * first black stroke.
+	 */
+	public synchronized float[] getEdges() {
+		float[] result = new float[nbEdges];
+		System.arraycopy(edges, 0, result, 0, nbEdges);
+		return result;
+	}
+
+}
@@ -96,6 +96,17 @@ public enum CommandType implements MessageType<Command> {
 		}
 	},
 
+	/*
+	 * Trajectory log
+	 */
+
+	TRAJECTORY_READ {
+		@Override
+		public Command build() {
+			return new TrajectoryReadCommand(this);
+		}
+	},
+
 	/*
 	 * Conditional
 	 */
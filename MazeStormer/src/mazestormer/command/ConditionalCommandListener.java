@@ -1,32 +1,40 @@
 package mazestormer.command;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.HashMap;
+import java.util.Map;
 
 import mazestormer.condition.Condition;
 import mazestormer.condition.ConditionFuture;
+import mazestormer.remote.Communicator;
 import mazestormer.remote.MessageListener;
 import mazestormer.remote.MessageSender;
-import mazestormer.remote.NXTCommunicator;
 import mazestormer.report.Report;
-import mazestormer.report.ReportType;
 import mazestormer.report.RequestReport;
 import mazestormer.util.Future;
 import mazestormer.util.FutureListener;
 
-public abstract class ConditionalCommandListener extends MessageSender<Report<?>> implements MessageListener<Command>,
-		FutureListener<Void> {
-
-	private final List<Entry> entries = new ArrayList<Entry>();
-
-	public ConditionalCommandListener(NXTCommunicator communicator) {
+/**
+ * Registers conditional commands and resolves them when their condition is
+ * fulfilled.
+ * 
+ * <p>
+ * Registered commands are indexed by their request identifier. Every entry
+ * listens to its own condition future, so resolving and cancelling never needs
+ * to search the registered commands.
+ * </p>
+ */
+public abstract class ConditionalCommandListener extends MessageSender<Report<?>> implements MessageListener<Command> {
+
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+	public ConditionalCommandListener(Communicator<Report<?>, Command> communicator) {
 		super(communicator);
 	}
 
 	@Override
-	public NXTCommunicator getCommunicator() {
-		return (NXTCommunicator) super.getCommunicator();
+	@SuppressWarnings("unchecked")
+	public Communicator<Report<?>, Command> getCommunicator() {
+		return (Communicator<Report<?>, Command>) super.getCommunicator();
 	}
 
 	/**
@@ -59,18 +67,17 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 	 * the conditional command.
 	 * </p>
 	 * 
-	 * @param index
-	 *            The entry index of the command to execute.
+	 * @param entry
+	 *            The entry of the command to execute.
 	 */
-	protected void resolve(int index) {
-		if (index < 0 || index >= entries.size())
+	private void resolve(Entry entry) {
+		// Unregister
+		if (!unregisterInternal(entry))
 			return;
 
-		Entry entry = entries.get(index);
 		ConditionalCommand command = entry.getCommand();
-
 		// Send report
-		send(createReport(command));
+		send(createReport(command, entry.getFuture()));
 		// Execute linked commands
 		switch (command.getType()) {
 		case WHEN:
@@ -81,12 +88,10 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 		default:
 			break;
 		}
-		// Unregister
-		unregisterInternal(index);
 	}
 
-	private Report<?> createReport(ConditionalCommand command) {
-		RequestReport<?> report = (RequestReport<?>) ReportType.CONDITION_RESOLVED.build();
+	private Report<?> createReport(ConditionalCommand command, ConditionFuture future) {
+		RequestReport<?> report = future.createReport();
 		report.setRequestId(command.getRequestId());
 		return report;
 	}
@@ -98,24 +103,25 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 	 *            The conditional command request identifier.
 	 */
 	private void cancel(int requestId) {
-		cancelInternal(findById(requestId));
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(requestId);
+		}
+		if (entry != null) {
+			cancelInternal(entry);
+		}
 	}
 
 	/**
 	 * Cancels the given conditional command.
 	 * 
-	 * @param index
-	 *            The entry index of the conditional command.
+	 * @param entry
+	 *            The entry of the conditional command.
 	 */
-	private void cancelInternal(int index) {
-		if (index < 0 || index >= entries.size())
-			return;
-
-		Entry entry = entries.get(index);
-		ConditionFuture future = entry.getFuture();
-		if (future != null)
-			future.cancel();
-		unregisterInternal(index);
+	private void cancelInternal(Entry entry) {
+		if (unregisterInternal(entry)) {
+			entry.getFuture().cancel();
+		}
 	}
 
 	/**
@@ -132,11 +138,13 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 		ConditionFuture future = createFuture(command.getCondition());
 		if (future == null)
 			return;
-		future.addFutureListener(this);
 
 		// Add
 		Entry entry = new Entry(future, command);
-		entries.add(entry);
+		synchronized (entries) {
+			entries.put(command.getRequestId(), entry);
+		}
+		future.addFutureListener(entry);
 	}
 
 	/**
@@ -146,63 +154,39 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 	 *            The conditional command.
 	 */
 	protected void unregister(ConditionalCommand command) {
-		unregisterInternal(findByCommand(command));
-	}
-
-	protected void unregisterInternal(int index) {
-		if (index < 0 || index >= entries.size())
-			return;
-
-		entries.remove(index);
-	}
-
-	@Override
-	public void futureResolved(Future<? extends Void> future, Void result) {
-		resolve(findByFuture(future));
-	}
-
-	@Override
-	public void futureCancelled(Future<? extends Void> future) {
-		cancelInternal(findByFuture(future));
-	}
-
-	private int findById(int requestId) {
-		ListIterator<Entry> it = entries.listIterator();
-		while (it.hasNext()) {
-			int i = it.nextIndex();
-			Entry entry = it.next();
-			if (entry.getCommand().getRequestId() == requestId) {
-				return i;
+		synchronized (entries) {
+			Entry entry = entries.get(command.getRequestId());
+			if (entry != null && entry.getCommand().equals(command)) {
+				entries.remove(command.getRequestId());
 			}
 		}
-		return -1;
 	}
 
-	private int findByCommand(ConditionalCommand command) {
-		ListIterator<Entry> it = entries.listIterator();
-		while (it.hasNext()) {
-			int i = it.nextIndex();
-			Entry entry = it.next();
-			if (entry.getCommand().equals(command)) {
-				return i;
-			}
+	/**
+	 * Unregisters the given entry, if it is still registered.
+	 * 
+	 * @return True if the entry was unregistered.
+	 */
+	private boolean unregisterInternal(Entry entry) {
+		int requestId = entry.getCommand().getRequestId();
+		synchronized (entries) {
+			if (entries.get(requestId) != entry)
+				return false;
+			entries.remove(requestId);
+			return true;
 		}
-		return -1;
 	}
 
-	private int findByFuture(Future<?> future) {
-		ListIterator<Entry> it = entries.listIterator();
-		while (it.hasNext()) {
-			int i = it.nextIndex();
-			Entry entry = it.next();
-			if (entry.getFuture().equals(future)) {
-				return i;
-			}
+	/**
+	 * Get the number of registered conditional commands.
+	 */
+	public int getRegisteredCount() {
+		synchronized (entries) {
+			return entries.size();
 		}
-		return -1;
 	}
 
-	private static class Entry {
+	private class Entry implements FutureListener<Void> {
 
 		private final ConditionFuture future;
 		private final ConditionalCommand command;
@@ -220,6 +204,16 @@ public abstract class ConditionalCommandListener extends MessageSender<Report<?>
 			return command;
 		}
 
+		@Override
+		public void futureResolved(Future<? extends Void> future, Void result) {
+			resolve(this);
+		}
+
+		@Override
+		public void futureCancelled(Future<? extends Void> future) {
+			cancelInternal(this);
+		}
+
 	}
 
 }
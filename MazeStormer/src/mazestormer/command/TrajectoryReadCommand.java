@@ -0,0 +1,11 @@
+package mazestormer.command;
+
+import mazestormer.report.Trajectory;
+
+public class TrajectoryReadCommand extends RequestCommand<Trajectory> {
+
+	public TrajectoryReadCommand(CommandType type) {
+		super(type);
+	}
+
+}
@@ -1,5 +1,7 @@
 package mazestormer.condition;
 
+import mazestormer.report.ReportType;
+import mazestormer.report.RequestReport;
 import mazestormer.util.AbstractFuture;
 
 public abstract class ConditionFuture extends AbstractFuture<Void> {
@@ -18,4 +20,16 @@ public abstract class ConditionFuture extends AbstractFuture<Void> {
 		resolve(null);
 	}
 
+	/**
+	 * Create the report which is sent when this future is resolved.
+	 * 
+	 * <p>
+	 * The default implementation creates a condition resolved report.
+	 * Subclasses can override this to report a result.
+	 * </p>
+	 */
+	public RequestReport<?> createReport() {
+		return (RequestReport<?>) ReportType.CONDITION_RESOLVED.build();
+	}
+
 }
@@ -27,6 +27,17 @@ public enum ConditionType implements MessageType<Condition> {
 		public Condition build() {
 			return new LightCompareCondition(this);
 		}
+	},
+
+	/*
+	 * Barcodes
+	 */
+
+	RECORD_STROKE_EDGES {
+		@Override
+		public Condition build() {
+			return new StrokeEdgesCondition(this);
+		}
 	};
 
 }
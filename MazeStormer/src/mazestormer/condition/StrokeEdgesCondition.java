@@ -0,0 +1,118 @@
+package mazestormer.condition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Records the edges between the black and white strokes of a barcode.
+ * 
+ * <p>
+ * The condition starts recording at the first black stroke and resolves once
+ * the recorded strokes are at least as long as the minimum barcode length, or
+ * when the maximum number of strokes is reached. Strokes shorter than the
+ * noise length are ignored.
+ * </p>
+ * 
+ * <p>
+ * Resolving this condition results in a single report with the positions of
+ * all recorded edges.
+ * </p>
+ */
+public class StrokeEdgesCondition extends Condition {
+
+	private int whiteBlackThreshold;
+	private int blackWhiteThreshold;
+	private float noiseLength;
+	private float minLength;
+	private int maxStrokes;
+
+	public StrokeEdgesCondition(ConditionType type) {
+		super(type);
+	}
+
+	/**
+	 * Create a new stroke edges condition.
+	 * 
+	 * @param whiteBlackThreshold
+	 *            The light value below which a white stroke ends.
+	 * @param blackWhiteThreshold
+	 *            The light value above which a black stroke ends.
+	 * @param noiseLength
+	 *            The minimum length of a stroke.
+	 * @param minLength
+	 *            The total length of the strokes to record.
+	 * @param maxStrokes
+	 *            The maximum number of strokes to record.
+	 */
+	public StrokeEdgesCondition(int whiteBlackThreshold, int blackWhiteThreshold, float noiseLength,
+			float minLength, int maxStrokes) {
+		this(ConditionType.RECORD_STROKE_EDGES);
+		setWhiteBlackThreshold(whiteBlackThreshold);
+		setBlackWhiteThreshold(blackWhiteThreshold);
+		setNoiseLength(noiseLength);
+		setMinLength(minLength);
+		setMaxStrokes(maxStrokes);
+	}
+
+	public int getWhiteBlackThreshold() {
+		return whiteBlackThreshold;
+	}
+
+	public void setWhiteBlackThreshold(int whiteBlackThreshold) {
+		this.whiteBlackThreshold = whiteBlackThreshold;
+	}
+
+	public int getBlackWhiteThreshold() {
+		return blackWhiteThreshold;
+	}
+
+	public void setBlackWhiteThreshold(int blackWhiteThreshold) {
+		this.blackWhiteThreshold = blackWhiteThreshold;
+	}
+
+	public float getNoiseLength() {
+		return noiseLength;
+	}
+
+	public void setNoiseLength(float noiseLength) {
+		this.noiseLength = noiseLength;
+	}
+
+	public float getMinLength() {
+		return minLength;
+	}
+
+	public void setMinLength(float minLength) {
+		this.minLength = minLength;
+	}
+
+	public int getMaxStrokes() {
+		return maxStrokes;
+	}
+
+	public void setMaxStrokes(int maxStrokes) {
+		this.maxStrokes = maxStrokes;
+	}
+
+	@Override
+	public void read(DataInputStream dis) throws IOException {
+		super.read(dis);
+		setWhiteBlackThreshold(dis.readInt());
+		setBlackWhiteThreshold(dis.readInt());
+		setNoiseLength(dis.readFloat());
+		setMinLength(dis.readFloat());
+		setMaxStrokes(dis.readInt());
+	}
+
+	@Override
+	public void write(DataOutputStream dos) throws IOException {
+		super.write(dos);
+		dos.writeInt(getWhiteBlackThreshold());
+		dos.writeInt(getBlackWhiteThreshold());
+		dos.writeFloat(getNoiseLength());
+		dos.writeFloat(getMinLength());
+		dos.writeInt(getMaxStrokes());
+	}
+
+}
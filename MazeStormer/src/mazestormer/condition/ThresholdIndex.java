@@ -0,0 +1,264 @@
+package mazestormer.condition;
+
+import java.util.List;
+
+/**
+ * Index of light compare conditions, sorted by threshold.
+ *
+ * <p>
+ * Smaller than conditions are kept sorted by their maximum threshold, all other
+ * conditions are kept sorted by their minimum threshold. When a new light value
+ * is available, only the conditions whose threshold was crossed by that value
+ * are visited, instead of checking every registered condition.
+ * </p>
+ *
+ * <p>
+ * Conditions are removed from the index as soon as they match, so every
+ * element is returned at most once.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ *
+ * @param <E>
+ *            The type of the elements associated with the conditions.
+ */
+public class ThresholdIndex<E> {
+
+	/**
+	 * Conditions with a lower bound, sorted by minimum threshold.
+	 */
+	private final Group atLeast = new Group(false);
+
+	/**
+	 * Conditions without a lower bound, sorted by maximum threshold.
+	 */
+	private final Group atMost = new Group(true);
+
+	/**
+	 * Add an element for the given condition.
+	 *
+	 * @param condition
+	 *            The light compare condition.
+	 * @param element
+	 *            The element to return when the condition matches.
+	 */
+	public synchronized void add(LightCompareCondition condition, E element) {
+		if (isAtMost(condition)) {
+			atMost.insert(condition.getMaxThreshold(), condition.getMinThreshold(), element);
+		} else {
+			atLeast.insert(condition.getMinThreshold(), condition.getMaxThreshold(), element);
+		}
+	}
+
+	/**
+	 * Remove the element for the given condition.
+	 *
+	 * @param condition
+	 *            The light compare condition with which the element was added.
+	 * @param element
+	 *            The element to remove.
+	 * @return True if the element was removed.
+	 */
+	public synchronized boolean remove(LightCompareCondition condition, E element) {
+		if (isAtMost(condition)) {
+			return atMost.remove(condition.getMaxThreshold(), element);
+		} else {
+			return atLeast.remove(condition.getMinThreshold(), element);
+		}
+	}
+
+	/**
+	 * Remove the elements of all conditions matching the given light value.
+	 *
+	 * @param normalizedLightValue
+	 *            The normalized light value.
+	 * @param matches
+	 *            The list to which the removed elements are added.
+	 * @return The number of removed elements.
+	 */
+	public synchronized int removeMatches(int normalizedLightValue, List<? super E> matches) {
+		int count = 0;
+
+		// Lower bounds at or below the value
+		int end = atLeast.upperBound(normalizedLightValue);
+		count += atLeast.removeMatches(0, end, normalizedLightValue, matches);
+
+		// Upper bounds at or above the value
+		int start = atMost.lowerBound(normalizedLightValue);
+		count += atMost.removeMatches(start, atMost.size, normalizedLightValue, matches);
+
+		return count;
+	}
+
+	/**
+	 * Get the number of elements in this index.
+	 */
+	public synchronized int size() {
+		return atLeast.size + atMost.size;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Remove all elements from this index.
+	 */
+	public synchronized void clear() {
+		atLeast.clear();
+		atMost.clear();
+	}
+
+	private static boolean isAtMost(LightCompareCondition condition) {
+		return condition.getType() == ConditionType.LIGHT_SMALLER_THAN;
+	}
+
+	/**
+	 * Elements sorted by a key threshold, each with an opposite bound.
+	 */
+	private class Group {
+
+		private static final int initialCapacity = 8;
+
+		private final boolean isKeyMax;
+		private int[] keys = new int[initialCapacity];
+		private int[] bounds = new int[initialCapacity];
+		private Object[] elements = new Object[initialCapacity];
+		private int size = 0;
+
+		public Group(boolean isKeyMax) {
+			this.isKeyMax = isKeyMax;
+		}
+
+		public void insert(int key, int bound, E element) {
+			if (size == keys.length) {
+				grow();
+			}
+			// Insert after equal keys
+			int i = upperBound(key);
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(bounds, i, bounds, i + 1, size - i);
+			System.arraycopy(elements, i, elements, i + 1, size - i);
+			keys[i] = key;
+			bounds[i] = bound;
+			elements[i] = element;
+			size++;
+		}
+
+		public boolean remove(int key, E element) {
+			for (int i = lowerBound(key); i < size && keys[i] == key; i++) {
+				if (elements[i] == element) {
+					removeAt(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Remove the matching elements between the given indices.
+		 */
+		@SuppressWarnings("unchecked")
+		public int removeMatches(int start, int end, int value, List<? super E> matches) {
+			int count = 0;
+			int j = start;
+			for (int i = start; i < end; i++) {
+				if (matches(keys[i], bounds[i], value)) {
+					matches.add((E) elements[i]);
+					count++;
+				} else {
+					// Keep
+					keys[j] = keys[i];
+					bounds[j] = bounds[i];
+					elements[j] = elements[i];
+					j++;
+				}
+			}
+			if (count > 0) {
+				// Close gap
+				System.arraycopy(keys, end, keys, j, size - end);
+				System.arraycopy(bounds, end, bounds, j, size - end);
+				System.arraycopy(elements, end, elements, j, size - end);
+				for (int i = size - count; i < size; i++) {
+					elements[i] = null;
+				}
+				size -= count;
+			}
+			return count;
+		}
+
+		private boolean matches(int key, int bound, int value) {
+			if (isKeyMax) {
+				return value >= bound && value <= key;
+			} else {
+				return value >= key && value <= bound;
+			}
+		}
+
+		/**
+		 * Get the index of the first key greater than or equal to the given
+		 * key.
+		 */
+		public int lowerBound(int key) {
+			int low = 0, high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid] < key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Get the index of the first key greater than the given key.
+		 */
+		public int upperBound(int key) {
+			int low = 0, high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid] <= key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private void removeAt(int i) {
+			int moved = size - i - 1;
+			System.arraycopy(keys, i + 1, keys, i, moved);
+			System.arraycopy(bounds, i + 1, bounds, i, moved);
+			System.arraycopy(elements, i + 1, elements, i, moved);
+			size--;
+			elements[size] = null;
+		}
+
+		private void grow() {
+			int capacity = 2 * keys.length;
+			int[] newKeys = new int[capacity];
+			int[] newBounds = new int[capacity];
+			Object[] newElements = new Object[capacity];
+			System.arraycopy(keys, 0, newKeys, 0, size);
+			System.arraycopy(bounds, 0, newBounds, 0, size);
+			System.arraycopy(elements, 0, newElements, 0, size);
+			keys = newKeys;
+			bounds = newBounds;
+			elements = newElements;
+		}
+
+		public void clear() {
+			for (int i = 0; i < size; i++) {
+				elements[i] = null;
+			}
+			size = 0;
+		}
+
+	}
+
+}
@@ -76,6 +76,17 @@ public enum ReportType implements MessageType<Report<?>> {
 		}
 	},
 
+	/*
+	 * Trajectory log
+	 */
+
+	TRAJECTORY {
+		@Override
+		public Report<Trajectory> build() {
+			return new TrajectoryReport(this);
+		}
+	},
+
 	/*
 	 * Conditions
 	 */
@@ -85,6 +96,13 @@ public enum ReportType implements MessageType<Report<?>> {
 		public Report<Void> build() {
 			return new ConditionReport(this);
 		}
+	},
+
+	STROKE_EDGES {
+		@Override
+		public Report<float[]> build() {
+			return new StrokeEdgesReport(this);
+		}
 	};
 
 }
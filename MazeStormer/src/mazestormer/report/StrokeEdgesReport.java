@@ -0,0 +1,46 @@
+package mazestormer.report;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Report of a resolved stroke edges condition, carrying the positions of the
+ * recorded edges.
+ */
+public class StrokeEdgesReport extends RequestReport<float[]> {
+
+	private float[] edges;
+
+	public StrokeEdgesReport(ReportType type) {
+		this(type, new float[0]);
+	}
+
+	public StrokeEdgesReport(ReportType type, float[] edges) {
+		super(type);
+		setValue(edges);
+	}
+
+	@Override
+	public float[] getValue() {
+		return edges;
+	}
+
+	@Override
+	public void setValue(float[] edges) {
+		this.edges = edges;
+	}
+
+	@Override
+	public void read(DataInputStream dis) throws IOException {
+		super.read(dis);
+		setValue(IRReadReport.readArray(dis));
+	}
+
+	@Override
+	public void write(DataOutputStream dos) throws IOException {
+		super.write(dos);
+		IRReadReport.writeArray(dos, getValue());
+	}
+
+}
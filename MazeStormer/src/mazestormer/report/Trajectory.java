@@ -0,0 +1,142 @@
+package mazestormer.report;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import lejos.robotics.Transmittable;
+
+/**
+ * A sequence of trajectory samples recorded by the robot.
+ * 
+ * <p>
+ * Every sample holds the time at which it was taken, the distance travelled
+ * in the current move as measured by the tachometers, the heading of the robot
+ * and the normalized light value. Sample times are encoded relative to the
+ * first sample.
+ * </p>
+ */
+public class Trajectory implements Transmittable {
+
+	private int firstSequence;
+	private int droppedCount;
+	private long[] times;
+	private float[] distances;
+	private float[] headings;
+	private int[] lightValues;
+
+	public Trajectory() {
+		this(0, 0, new long[0], new float[0], new float[0], new int[0]);
+	}
+
+	public Trajectory(int firstSequence, int droppedCount, long[] times, float[] distances, float[] headings,
+			int[] lightValues) {
+		if (times.length != distances.length || times.length != headings.length
+				|| times.length != lightValues.length) {
+			throw new IllegalArgumentException("Sample arrays must have the same length.");
+		}
+		this.firstSequence = firstSequence;
+		this.droppedCount = droppedCount;
+		this.times = times;
+		this.distances = distances;
+		this.headings = headings;
+		this.lightValues = lightValues;
+	}
+
+	/**
+	 * Get the number of samples.
+	 */
+	public int getSize() {
+		return times.length;
+	}
+
+	/**
+	 * Get the sequence number of the first sample.
+	 * 
+	 * <p>
+	 * Sequence numbers increase by one for every recorded sample, so
+	 * consecutive trajectories can be joined.
+	 * </p>
+	 */
+	public int getFirstSequence() {
+		return firstSequence;
+	}
+
+	/**
+	 * Get the number of samples which were overwritten on the robot before
+	 * they could be fetched.
+	 */
+	public int getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Get the time at which the given sample was taken, in milliseconds on the
+	 * robot's clock.
+	 */
+	public long getTime(int index) {
+		return times[index];
+	}
+
+	/**
+	 * Get the distance travelled in the current move at the given sample.
+	 */
+	public float getDistance(int index) {
+		return distances[index];
+	}
+
+	/**
+	 * Get the heading of the robot at the given sample, in degrees.
+	 */
+	public float getHeading(int index) {
+		return headings[index];
+	}
+
+	/**
+	 * Get the normalized light value at the given sample.
+	 */
+	public int getLightValue(int index) {
+		return lightValues[index];
+	}
+
+	@Override
+	public void dumpObject(DataOutputStream dos) throws IOException {
+		int size = getSize();
+		dos.writeInt(firstSequence);
+		dos.writeInt(droppedCount);
+		dos.writeInt(size);
+		if (size == 0)
+			return;
+
+		long startTime = times[0];
+		dos.writeLong(startTime);
+		for (int i = 0; i < size; i++) {
+			dos.writeInt((int) (times[i] - startTime));
+			dos.writeFloat(distances[i]);
+			dos.writeFloat(headings[i]);
+			dos.writeShort(lightValues[i]);
+		}
+	}
+
+	@Override
+	public void loadObject(DataInputStream dis) throws IOException {
+		firstSequence = dis.readInt();
+		droppedCount = dis.readInt();
+		int size = dis.readInt();
+		times = new long[size];
+		distances = new float[size];
+		headings = new float[size];
+		lightValues = new int[size];
+		if (size == 0)
+			return;
+
+		long startTime = dis.readLong();
+		for (int i = 0; i < size; i++) {
+			times[i] = startTime + dis.readInt();
+			distances[i] = dis.readFloat();
+			headings[i] = dis.readFloat();
+			lightValues[i] = dis.readShort();
+		}
+	}
+
+}
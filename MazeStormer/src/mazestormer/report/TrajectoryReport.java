@@ -0,0 +1,44 @@
+package mazestormer.report;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class TrajectoryReport extends RequestReport<Trajectory> {
+
+	private Trajectory trajectory;
+
+	public TrajectoryReport(ReportType type) {
+		this(type, new Trajectory());
+	}
+
+	public TrajectoryReport(ReportType type, Trajectory trajectory) {
+		super(type);
+		setValue(trajectory);
+	}
+
+	@Override
+	public Trajectory getValue() {
+		return trajectory;
+	}
+
+	@Override
+	public void setValue(Trajectory trajectory) {
+		this.trajectory = trajectory;
+	}
+
+	@Override
+	public void read(DataInputStream dis) throws IOException {
+		super.read(dis);
+		Trajectory trajectory = new Trajectory();
+		trajectory.loadObject(dis);
+		setValue(trajectory);
+	}
+
+	@Override
+	public void write(DataOutputStream dos) throws IOException {
+		super.write(dos);
+		getValue().dumpObject(dos);
+	}
+
+}
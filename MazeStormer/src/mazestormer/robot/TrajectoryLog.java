@@ -0,0 +1,116 @@
+package mazestormer.robot;
+
+import mazestormer.report.Trajectory;
+
+/**
+ * Ring buffer of trajectory samples.
+ * 
+ * <p>
+ * All storage is allocated up front, so recording a sample never allocates.
+ * When the buffer is full, the oldest samples are overwritten. Draining the
+ * log returns all samples recorded since the previous drain, along with the
+ * number of samples which were overwritten in the meantime.
+ * </p>
+ * 
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ */
+public class TrajectoryLog {
+
+	/**
+	 * Default number of samples kept in the log.
+	 */
+	public static final int defaultCapacity = 512;
+
+	private final long[] times;
+	private final float[] distances;
+	private final float[] headings;
+	private final int[] lightValues;
+
+	private int head = 0;
+	private int size = 0;
+	private int nextSequence = 0;
+	private int droppedCount = 0;
+
+	public TrajectoryLog(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		times = new long[capacity];
+		distances = new float[capacity];
+		headings = new float[capacity];
+		lightValues = new int[capacity];
+	}
+
+	public TrajectoryLog() {
+		this(defaultCapacity);
+	}
+
+	public int getCapacity() {
+		return times.length;
+	}
+
+	/**
+	 * Get the number of samples waiting to be drained.
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * Record a sample.
+	 * 
+	 * @param time
+	 *            The time of the sample, in milliseconds.
+	 * @param distance
+	 *            The distance travelled in the current move.
+	 * @param heading
+	 *            The heading of the robot, in degrees.
+	 * @param lightValue
+	 *            The normalized light value.
+	 */
+	public synchronized void record(long time, float distance, float heading, int lightValue) {
+		int index;
+		if (size == times.length) {
+			// Overwrite oldest
+			index = head;
+			head = (head + 1) % times.length;
+			droppedCount++;
+		} else {
+			index = (head + size) % times.length;
+			size++;
+		}
+		times[index] = time;
+		distances[index] = distance;
+		headings[index] = heading;
+		lightValues[index] = lightValue;
+		nextSequence++;
+	}
+
+	/**
+	 * Remove and return all recorded samples.
+	 */
+	public synchronized Trajectory drain() {
+		long[] times = new long[size];
+		float[] distances = new float[size];
+		float[] headings = new float[size];
+		int[] lightValues = new int[size];
+		for (int i = 0; i < size; i++) {
+			int index = (head + i) % this.times.length;
+			times[i] = this.times[index];
+			distances[i] = this.distances[index];
+			headings[i] = this.headings[index];
+			lightValues[i] = this.lightValues[index];
+		}
+		Trajectory trajectory = new Trajectory(nextSequence - size, droppedCount, times, distances, headings,
+				lightValues);
+
+		// Reset
+		head = 0;
+		size = 0;
+		droppedCount = 0;
+		return trajectory;
+	}
+
+}
@@ -0,0 +1,96 @@
+package mazestormer.robot;
+
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Samples the trajectory of a robot into a trajectory log.
+ * 
+ * <p>
+ * Samples are only taken while the robot is moving, plus one final sample when
+ * a move has ended. The recorder runs on its own thread.
+ * </p>
+ */
+public class TrajectoryRecorder implements Runnable {
+
+	/**
+	 * Default time between two samples, in milliseconds.
+	 */
+	public static final long defaultSampleDelay = 20;
+
+	private final ControllableRobot robot;
+	private final TrajectoryLog log;
+	private final long sampleDelay;
+
+	private boolean wasMoving = false;
+
+	private Thread thread;
+	private volatile boolean isRunning = false;
+
+	/**
+	 * Create a new trajectory recorder.
+	 * 
+	 * @param robot
+	 *            The robot to sample.
+	 * @param log
+	 *            The log in which samples are recorded.
+	 * @param sampleDelay
+	 *            The time between two samples, in milliseconds.
+	 */
+	public TrajectoryRecorder(ControllableRobot robot, TrajectoryLog log, long sampleDelay) {
+		this.robot = robot;
+		this.log = log;
+		this.sampleDelay = sampleDelay;
+	}
+
+	public TrajectoryRecorder(ControllableRobot robot) {
+		this(robot, new TrajectoryLog(), defaultSampleDelay);
+	}
+
+	public TrajectoryLog getLog() {
+		return log;
+	}
+
+	public synchronized void start() {
+		if (isRunning)
+			return;
+
+		isRunning = true;
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		isRunning = false;
+		thread = null;
+	}
+
+	@Override
+	public void run() {
+		while (isRunning) {
+			sample();
+			try {
+				Thread.sleep(sampleDelay);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Take a sample if the robot is moving or has just stopped moving.
+	 */
+	public void sample() {
+		Pilot pilot = robot.getPilot();
+		boolean isMoving = pilot.isMoving();
+		if (!isMoving && !wasMoving)
+			return;
+		wasMoving = isMoving;
+
+		float distance = pilot.getMovement().getDistanceTraveled();
+		Pose pose = robot.getPoseProvider().getPose();
+		int lightValue = robot.getLightSensor().getNormalizedLightValue();
+		log.record(System.currentTimeMillis(), distance, pose.getHeading(), lightValue);
+	}
+
+}
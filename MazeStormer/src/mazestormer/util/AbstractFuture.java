@@ -1,111 +1,181 @@
 package mazestormer.util;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Base implementation of a future which is resolved or cancelled by a
+ * subclass.
+ *
+ * <p>
+ * The whole state of the future is held in a single word which is only
+ * changed through compare-and-set. While the future is pending, the word holds
+ * a stack of registered listeners and blocked threads. Once the future is
+ * done, it holds the outcome. Completing the future swaps the outcome in,
+ * wakes all blocked threads and then notifies the listeners in the order in
+ * which they were added.
+ * </p>
+ *
+ * <p>
+ * Threads waiting in {@link #get()} are parked until the future completes.
+ * Timed waits are woken by the {@linkplain HashedWheelTimer#getShared() shared
+ * timer}, so no thread is created per call.
+ * </p>
+ */
 public class AbstractFuture<V> implements Future<V> {
 
-	private volatile boolean isCancelled = false;
-	private volatile boolean isResolved = false;
-	private volatile V result;
+	private static final Result CANCELLED = new Result(null);
 
-	private List<FutureListener<? super V>> listeners = new ArrayList<FutureListener<? super V>>();
+	/**
+	 * Either null or a {@link Node} while pending, or a {@link Result} when
+	 * done.
+	 */
+	private final AtomicReference<Object> state = new AtomicReference<Object>();
 
-	private synchronized boolean isResolved() {
-		return isResolved;
-	}
-
-	protected synchronized boolean resolve(V result) {
-		if (!isDone()) {
-			this.result = result;
-			isResolved = true;
-			fireResolved();
+	protected boolean resolve(V result) {
+		if (complete(new Result(result))) {
+			return true;
 		}
-		return isResolved();
+		return state.get() != CANCELLED;
 	}
 
 	@Override
-	public synchronized boolean isCancelled() {
-		return isCancelled;
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
 	}
 
 	@Override
-	public synchronized boolean cancel() {
+	public boolean cancel() {
 		return cancel(false);
 	}
 
+	/**
+	 * Cancel this future.
+	 *
+	 * @return True if this future was cancelled, false if it was already done.
+	 */
 	@Override
-	public synchronized boolean cancel(boolean mayInterruptIfRunning) {
-		if (!isCancelled()) {
-			isCancelled = true;
-			fireCancelled();
-			return true;
-		}
-		return false;
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return complete(CANCELLED);
 	}
 
 	@Override
-	public synchronized boolean isDone() {
-		return isCancelled() || isResolved();
+	public boolean isDone() {
+		return state.get() instanceof Result;
 	}
 
+	/**
+	 * Wait until this future is done and get its result.
+	 *
+	 * <p>
+	 * The wait is not interrupted. If the thread is interrupted while waiting,
+	 * its interrupt status is restored before returning.
+	 * </p>
+	 */
 	@Override
 	public V get() throws CancellationException {
-		while (!isDone()) {
-			Thread.yield();
-		}
-
-		if (isResolved()) {
-			return result;
-		} else if (isCancelled()) {
-			throw new CancellationException();
-		} else {
-			return null;
+		Object current = state.get();
+		if (!(current instanceof Result)) {
+			current = await(new Waiter(Thread.currentThread()));
 		}
+		return getResult((Result) current);
 	}
 
 	@Override
-	public V get(long timeout, TimeUnit unit) throws CancellationException,
-			TimeoutException {
-		// Start timeout timer
-		TimeoutTask timeoutTask = new TimeoutTask();
-		Timer timer = new Timer();
-		timer.schedule(timeoutTask, unit.toMillis(timeout));
+	public V get(long timeout, TimeUnit unit) throws CancellationException, TimeoutException {
+		Object current = state.get();
+		if (!(current instanceof Result)) {
+			// Wake up when timed out
+			Waiter waiter = new Waiter(Thread.currentThread());
+			HashedWheelTimer.Timeout timerTimeout = HashedWheelTimer.getShared().schedule(waiter, timeout, unit);
+			try {
+				current = await(waiter);
+			} finally {
+				timerTimeout.cancel();
+			}
+			if (!(current instanceof Result)) {
+				throw new TimeoutException();
+			}
+		}
+		return getResult((Result) current);
+	}
 
-		// Wait until done or time out
-		while (!isDone() && !timeoutTask.isTimeout()) {
-			Thread.yield();
+	@SuppressWarnings("unchecked")
+	private V getResult(Result result) throws CancellationException {
+		if (result == CANCELLED) {
+			throw new CancellationException();
 		}
+		return (V) result.value;
+	}
 
-		// Cancel timeout timer
-		timer.cancel();
+	/**
+	 * Park the current thread until this future is done or the waiter times
+	 * out.
+	 *
+	 * @return The state of this future after waiting.
+	 */
+	private Object await(Waiter waiter) {
+		boolean isInterrupted = false;
+		boolean isQueued = false;
+		try {
+			while (true) {
+				Object current = state.get();
+				if (current instanceof Result) {
+					return current;
+				}
+				if (waiter.isTimeout()) {
+					removeWaiter(waiter);
+					return state.get();
+				}
+				if (!isQueued) {
+					isQueued = state.compareAndSet(current, new Node(waiter, null, (Node) current));
+					continue;
+				}
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					isInterrupted = true;
+				}
+			}
+		} finally {
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 
-		if (isResolved()) {
-			return result;
-		} else if (isCancelled()) {
-			throw new CancellationException();
-		} else if (timeoutTask.isTimeout()) {
-			throw new TimeoutException();
-		} else {
-			return null;
+	/**
+	 * Remove a timed out waiter from the stack.
+	 */
+	private void removeWaiter(Waiter waiter) {
+		while (true) {
+			Object current = state.get();
+			if (!(current instanceof Node)) {
+				return;
+			}
+			Node stack = (Node) current;
+			Node removed = stack.without(waiter);
+			if (removed == stack || state.compareAndSet(stack, removed)) {
+				return;
+			}
 		}
 	}
 
 	@Override
 	public void addFutureListener(FutureListener<? super V> listener) {
-		listeners.add(listener);
-
-		// Fire handlers on late listeners
-		if (isResolved()) {
-			listener.futureResolved(this, result);
-		} else if (isCancelled()) {
-			listener.futureCancelled(this);
+		while (true) {
+			Object current = state.get();
+			if (current instanceof Result) {
+				// Fire handlers on late listeners
+				fire(listener, (Result) current);
+				return;
+			}
+			if (state.compareAndSet(current, new Node(null, listener, (Node) current))) {
+				return;
+			}
 		}
 	}
 
@@ -124,22 +194,123 @@ public class AbstractFuture<V> implements Future<V> {
 		});
 	}
 
-	private void fireResolved() {
-		for (FutureListener<? super V> listener : listeners) {
-			listener.futureResolved(this, result);
+	/**
+	 * Complete this future with the given outcome, if it is still pending.
+	 */
+	private boolean complete(Result result) {
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Result) {
+				return false;
+			}
+		} while (!state.compareAndSet(current, result));
+
+		// Restore registration order
+		Node stack = null;
+		for (Node node = (Node) current; node != null; node = node.next) {
+			stack = new Node(node.waiter, node.listener, stack);
 		}
+
+		// Wake waiters before running listeners
+		for (Node node = stack; node != null; node = node.next) {
+			if (node.waiter != null) {
+				LockSupport.unpark(node.waiter.thread);
+			}
+		}
+
+		// Notify all listeners, even if one of them fails
+		RuntimeException failure = null;
+		for (Node node = stack; node != null; node = node.next) {
+			if (node.listener != null) {
+				try {
+					fire(node.listener, result);
+				} catch (RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return true;
 	}
 
-	private void fireCancelled() {
-		for (FutureListener<? super V> listener : listeners) {
-			listener.futureCancelled(this);
+	@SuppressWarnings("unchecked")
+	private void fire(FutureListener<?> listener, Result result) {
+		FutureListener<? super V> futureListener = (FutureListener<? super V>) listener;
+		if (result == CANCELLED) {
+			futureListener.futureCancelled(this);
+		} else {
+			futureListener.futureResolved(this, (V) result.value);
 		}
 	}
 
-	private class TimeoutTask extends TimerTask {
+	/**
+	 * The outcome of a future.
+	 */
+	private static final class Result {
+
+		private final Object value;
+
+		public Result(Object value) {
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * An immutable entry on the stack of a pending future, holding either a
+	 * waiter or a listener.
+	 */
+	private static final class Node {
 
+		private final Waiter waiter;
+		private final FutureListener<?> listener;
+		private final Node next;
+
+		public Node(Waiter waiter, FutureListener<?> listener, Node next) {
+			this.waiter = waiter;
+			this.listener = listener;
+			this.next = next;
+		}
+
+		/**
+		 * Get this stack without the given waiter.
+		 *
+		 * @return This node if the waiter is not on the stack.
+		 */
+		public Node without(Waiter waiter) {
+			if (this.waiter == waiter) {
+				return next;
+			}
+			if (next == null) {
+				return this;
+			}
+			Node removed = next.without(waiter);
+			if (removed == next) {
+				return this;
+			}
+			return new Node(this.waiter, listener, removed);
+		}
+
+	}
+
+	/**
+	 * A thread blocked on a future, which is woken when the future completes or
+	 * when it times out.
+	 */
+	private static final class Waiter implements Runnable {
+
+		private final Thread thread;
 		private volatile boolean isTimeout = false;
 
+		public Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
 		public boolean isTimeout() {
 			return isTimeout;
 		}
@@ -147,6 +318,7 @@ public class AbstractFuture<V> implements Future<V> {
 		@Override
 		public void run() {
 			isTimeout = true;
+			LockSupport.unpark(thread);
 		}
 
 	}
@@ -0,0 +1,273 @@
+package mazestormer.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer which runs delayed tasks using a hashed timing wheel.
+ *
+ * <p>
+ * Timeouts are hashed into a fixed number of buckets by their deadline. A
+ * single worker thread advances through the buckets once every tick and runs
+ * the tasks whose deadline has passed. Scheduling and cancelling a timeout
+ * takes constant time, at the cost of timeouts being rounded up to the next
+ * tick.
+ * </p>
+ *
+ * <p>
+ * Tasks are run on the worker thread and should therefore be short.
+ * </p>
+ */
+public class HashedWheelTimer implements Runnable {
+
+	/**
+	 * Default duration of a single tick, in milliseconds.
+	 */
+	public static final long defaultTickDuration = 10;
+
+	/**
+	 * Default number of buckets on the wheel.
+	 */
+	public static final int defaultWheelSize = 512;
+
+	private static HashedWheelTimer shared;
+
+	private final long tickDuration;
+	private final Timeout[] wheel;
+	private long startTime;
+	private long tick = 0;
+
+	private Thread thread;
+	private boolean isRunning = false;
+
+	/**
+	 * Create a new timer.
+	 *
+	 * @param tickDuration
+	 *            The duration of a single tick.
+	 * @param unit
+	 *            The time unit of the tick duration.
+	 * @param wheelSize
+	 *            The number of buckets on the wheel.
+	 */
+	public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0 || wheelSize <= 0) {
+			throw new IllegalArgumentException("Tick duration and wheel size must be positive.");
+		}
+		this.tickDuration = Math.max(1, unit.toMillis(tickDuration));
+		this.wheel = new Timeout[wheelSize];
+	}
+
+	public HashedWheelTimer() {
+		this(defaultTickDuration, TimeUnit.MILLISECONDS, defaultWheelSize);
+	}
+
+	/**
+	 * Get the timer shared by all components in this virtual machine.
+	 */
+	public static synchronized HashedWheelTimer getShared() {
+		if (shared == null) {
+			shared = new HashedWheelTimer();
+		}
+		return shared;
+	}
+
+	/**
+	 * Run the given task after the given delay.
+	 *
+	 * @param task
+	 *            The task to run.
+	 * @param delay
+	 *            The delay.
+	 * @param unit
+	 *            The time unit of the delay.
+	 * @return A timeout handle which can be used to cancel the task.
+	 */
+	public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		start();
+
+		// Find the tick at which the deadline has passed
+		long deadline = System.currentTimeMillis() + Math.max(0, unit.toMillis(delay));
+		long deadlineTick = (deadline - startTime + tickDuration - 1) / tickDuration;
+		long targetTick = Math.max(deadlineTick, tick);
+
+		// Add to bucket
+		Timeout timeout = new Timeout(task, (targetTick - tick) / wheel.length);
+		int bucket = (int) (targetTick % wheel.length);
+		timeout.link(bucket);
+		return timeout;
+	}
+
+	/**
+	 * Stop the worker thread.
+	 *
+	 * <p>
+	 * Pending timeouts are discarded.
+	 * </p>
+	 */
+	public synchronized void stop() {
+		if (!isRunning)
+			return;
+
+		isRunning = false;
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = null;
+		}
+		notifyAll();
+	}
+
+	private void start() {
+		if (isRunning)
+			return;
+
+		isRunning = true;
+		startTime = System.currentTimeMillis();
+		tick = 0;
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		Thread current = Thread.currentThread();
+		while (true) {
+			Timeout expired;
+			synchronized (this) {
+				// Wait for next tick
+				long now = System.currentTimeMillis();
+				long nextTickTime = startTime + tick * tickDuration;
+				while (isRunning && thread == current && now < nextTickTime) {
+					try {
+						wait(nextTickTime - now);
+					} catch (InterruptedException e) {
+					}
+					now = System.currentTimeMillis();
+				}
+				if (!isRunning || thread != current)
+					return;
+
+				// Collect expired timeouts
+				expired = expireBucket((int) (tick % wheel.length));
+				tick++;
+			}
+
+			// Run expired tasks
+			while (expired != null) {
+				Timeout next = expired.next;
+				expired.next = null;
+				try {
+					expired.task.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				expired = next;
+			}
+		}
+	}
+
+	private Timeout expireBucket(int bucket) {
+		Timeout expired = null;
+		Timeout timeout = wheel[bucket];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.remainingRounds <= 0) {
+				timeout.unlink();
+				timeout.state = Timeout.EXPIRED;
+				timeout.next = expired;
+				expired = timeout;
+			} else {
+				timeout.remainingRounds--;
+			}
+			timeout = next;
+		}
+		return expired;
+	}
+
+	/**
+	 * Handle to a scheduled task.
+	 */
+	public class Timeout {
+
+		private static final int PENDING = 0;
+		private static final int EXPIRED = 1;
+		private static final int CANCELLED = 2;
+
+		private final Runnable task;
+		private long remainingRounds;
+		private int state = PENDING;
+
+		private int bucket = -1;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(Runnable task, long remainingRounds) {
+			this.task = task;
+			this.remainingRounds = remainingRounds;
+		}
+
+		/**
+		 * Check whether the task has been run or is currently running.
+		 */
+		public boolean isExpired() {
+			synchronized (HashedWheelTimer.this) {
+				return state == EXPIRED;
+			}
+		}
+
+		/**
+		 * Check whether this timeout was cancelled.
+		 */
+		public boolean isCancelled() {
+			synchronized (HashedWheelTimer.this) {
+				return state == CANCELLED;
+			}
+		}
+
+		/**
+		 * Cancel this timeout.
+		 *
+		 * @return True if the task will no longer run, false if it has already
+		 *         expired or was cancelled before.
+		 */
+		public boolean cancel() {
+			synchronized (HashedWheelTimer.this) {
+				if (state != PENDING)
+					return false;
+				state = CANCELLED;
+				unlink();
+				return true;
+			}
+		}
+
+		private void link(int bucket) {
+			this.bucket = bucket;
+			this.previous = null;
+			this.next = wheel[bucket];
+			if (next != null) {
+				next.previous = this;
+			}
+			wheel[bucket] = this;
+		}
+
+		private void unlink() {
+			if (bucket < 0)
+				return;
+			if (previous != null) {
+				previous.next = next;
+			} else if (wheel[bucket] == this) {
+				wheel[bucket] = next;
+			}
+			if (next != null) {
+				next.previous = previous;
+			}
+			previous = null;
+			next = null;
+			bucket = -1;
+		}
+
+	}
+
+}